@@ -0,0 +1,45 @@
+package software.amazon.lakeformation.plugin.accessgrants;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the plugin's JMH benchmarks once per thread count, with the GC profiler attached so every result reports
+ * the bytes allocated per operation ({@code gc.alloc.rate.norm}).
+ *
+ * <p>Arguments, all optional: a regular expression selecting the benchmarks (default: all), and a comma-separated
+ * list of thread counts (default: {@value #DEFAULT_THREAD_COUNTS}). Results are written as JSON to
+ * {@code target/jmh-result-<threads>-threads.json}.
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_INCLUDE = "software\\.amazon\\.lakeformation\\.plugin\\.accessgrants\\..*Benchmark";
+    private static final String DEFAULT_THREAD_COUNTS = "1,4,16";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final String include = args.length > 0 ? args[0] : DEFAULT_INCLUDE;
+        final String threadCounts = args.length > 1 ? args[1] : DEFAULT_THREAD_COUNTS;
+
+        for (final String threadCount : threadCounts.split(",")) {
+            final int threads = Integer.parseInt(threadCount.trim());
+            final Options options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result-" + threads + "-threads.json")
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
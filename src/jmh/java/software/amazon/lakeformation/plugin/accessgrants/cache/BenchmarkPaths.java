@@ -0,0 +1,26 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+/**
+ * Builds the S3 paths used by the benchmarks.
+ */
+public final class BenchmarkPaths {
+
+    private BenchmarkPaths() {
+    }
+
+    /**
+     * Returns {@code root} followed by {@code depth} folders of {@code segmentLength} characters each, for example
+     * {@code s3://bucket/aaaa/bbbb} for a depth of 2 and a segment length of 4.
+     */
+    public static String path(final String root, final int depth, final int segmentLength) {
+        final StringBuilder path = new StringBuilder(root);
+        for (int level = 0; level < depth; level++) {
+            path.append('/');
+            final char segmentChar = (char) ('a' + level % 26);
+            for (int i = 0; i < segmentLength; i++) {
+                path.append(segmentChar);
+            }
+        }
+        return path.toString();
+    }
+}
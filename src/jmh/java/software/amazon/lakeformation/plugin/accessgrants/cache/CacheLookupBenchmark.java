@@ -0,0 +1,155 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.services.lakeformation.model.AccessDeniedException;
+import software.amazon.awssdk.services.lakeformation.model.EntityNotFoundException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Benchmarks the lookups behind every credential resolution: a hit on the exact grant target, a hit on a grant
+ * several folders above the requested object, a hit on a wildcard grant, a full miss served by an in-memory Lake
+ * Formation client, and hits in the access-denied and negative caches.
+ *
+ * <p>Each operation builds its {@link CacheKey} from the requester's credentials, as the identity provider does,
+ * so key construction and hashing are part of the measured cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheLookupBenchmark {
+
+    private static final Logger PLUGIN_LOGGER = Logger.getLogger("software.amazon.lakeformation.plugin.accessgrants");
+    private static final String OBJECT_NAME = "/part-00000.parquet";
+
+    /**
+     * Number of folders between the bucket and the requested object.
+     */
+    @Param({"2", "8", "32"})
+    public int depth;
+
+    /**
+     * Length of each folder name.
+     */
+    @Param({"8", "32"})
+    public int segmentLength;
+
+    private final AtomicLong missCounter = new AtomicLong();
+
+    private AwsCredentialsIdentity requester;
+    private AccessGrantsCache accessGrantsCache;
+    private AccessDeniedCache accessDeniedCache;
+    private ExceptionCache exceptionCache;
+    private StubLakeFormationClient lfClient;
+
+    private String exactPath;
+    private String parentWalkPath;
+    private String wildcardPath;
+    private String missPathSuffix;
+    private String deniedPath;
+    private String negativePath;
+
+    @Setup
+    public void setUp() {
+        PLUGIN_LOGGER.setLevel(Level.WARNING);
+
+        requester = AwsBasicCredentials.create("requesterAccessKey", "requesterSecretKey");
+        accessGrantsCache = new AccessGrantsCache();
+        accessDeniedCache = new AccessDeniedCache();
+        exceptionCache = new ExceptionCache();
+        lfClient = new StubLakeFormationClient();
+
+        exactPath = BenchmarkPaths.path("s3://exact-bucket", depth, segmentLength);
+        grant(exactPath);
+
+        parentWalkPath = BenchmarkPaths.path("s3://parent-bucket", depth, segmentLength) + OBJECT_NAME;
+        grant(BenchmarkPaths.path("s3://parent-bucket", 1, segmentLength));
+
+        wildcardPath = BenchmarkPaths.path("s3://wildcard-bucket/data-2024", depth, segmentLength) + OBJECT_NAME;
+        grant("s3://wildcard-bucket/data*");
+
+        missPathSuffix = BenchmarkPaths.path("", depth, segmentLength) + OBJECT_NAME;
+
+        deniedPath = BenchmarkPaths.path("s3://denied-bucket", depth, segmentLength) + OBJECT_NAME;
+        accessDeniedCache.putValueInCache(key(deniedPath),
+            AccessDeniedException.builder().message("Access denied").build());
+
+        negativePath = BenchmarkPaths.path("s3://negative-bucket", depth, segmentLength) + OBJECT_NAME;
+        exceptionCache.cacheForImmediateParent(key(negativePath),
+            EntityNotFoundException.builder().message("Entity not found").build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        PLUGIN_LOGGER.setLevel(null);
+    }
+
+    private CacheKey key(final String s3Prefix) {
+        return new CacheKey(requester, Permission.READ, s3Prefix);
+    }
+
+    /**
+     * Caches a grant for {@code target} by serving a miss on it through the stub client, which vends credentials
+     * for exactly the requested location.
+     */
+    private void grant(final String target) {
+        accessGrantsCache.getCredentials(lfClient, key(target), accessDeniedCache, exceptionCache);
+    }
+
+    @Benchmark
+    public AwsCredentials hitExactPrefix() {
+        return accessGrantsCache.getCredentials(lfClient, key(exactPath), accessDeniedCache, exceptionCache);
+    }
+
+    @Benchmark
+    public AwsCredentials hitViaParentWalk() {
+        return accessGrantsCache.getCredentials(lfClient, key(parentWalkPath), accessDeniedCache, exceptionCache);
+    }
+
+    @Benchmark
+    public AwsCredentials hitViaWildcardWalk() {
+        return accessGrantsCache.getCredentials(lfClient, key(wildcardPath), accessDeniedCache, exceptionCache);
+    }
+
+    /**
+     * Requests a path no grant covers, so every operation calls the stub client and caches the result. Once the
+     * cache is full, each miss also pays for an eviction.
+     */
+    @Benchmark
+    public AwsCredentials fullMiss() {
+        final String path = "s3://miss-bucket/" + missCounter.incrementAndGet() + missPathSuffix;
+        return accessGrantsCache.getCredentials(lfClient, key(path), accessDeniedCache, exceptionCache);
+    }
+
+    @Benchmark
+    public NegativeEntry deniedCacheHit() {
+        return accessDeniedCache.getEntryFromCache(key(deniedPath));
+    }
+
+    @Benchmark
+    public LakeFormationException negativeCacheHit() {
+        try {
+            accessGrantsCache.getCredentials(lfClient, key(negativePath), accessDeniedCache, exceptionCache);
+        } catch (LakeFormationException e) {
+            return e;
+        }
+        throw new IllegalStateException("Expected a cached negative response for " + negativePath);
+    }
+}
@@ -0,0 +1,149 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.benmanes.caffeine.cache.Scheduler;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Measures the heap still held by expired entries after an idle phase, such as the gap between two batch stages.
+ * Each operation fills an {@link AccessGrantsCache} and a {@link NegativeIndex} with one-off partitions whose
+ * entries expire after about a second, leaves both caches untouched for {@value #IDLE_MILLIS} ms, and reports the
+ * used heap after a full GC, compared to before the fill, divided by the number of entries.
+ *
+ * <p>Without a scheduler, expired entries, and the credentials they hold, stay reachable until later cache activity
+ * purges them, so the bytes retained per entry stay at the size of a live entry. With
+ * {@link ExpiryScheduler#shared()} they are removed at expiry and the retained bytes drop to about zero.
+ *
+ * <p>The numbers are only meaningful single-threaded, for example with {@code -Djmh.threads=1}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ExpiryFootprintBenchmark {
+
+    private static final Logger PLUGIN_LOGGER = Logger.getLogger("software.amazon.lakeformation.plugin.accessgrants");
+    private static final long IDLE_MILLIS = 3000;
+    private static final int PRINCIPALS = 100;
+    // The shortest duration Lake Formation vends, with a margin that leaves cached credentials one second to live.
+    private static final int DURATION_SECONDS = 900;
+    private static final int SAFETY_MARGIN_SECONDS = DURATION_SECONDS - 1;
+    private static final long NEGATIVE_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Whether the caches remove expired entries on {@link ExpiryScheduler#shared()}.
+     */
+    @Param({"false", "true"})
+    public boolean scheduledExpiry;
+
+    /**
+     * Number of one-off partitions written to each cache.
+     */
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private CacheKey[] grantKeys;
+    private CacheKey[] deniedKeys;
+    private StubLakeFormationClient lfClient;
+    private AccessDeniedCache unusedAccessDeniedCache;
+    private ExceptionCache unusedExceptionCache;
+
+    private AccessGrantsCache accessGrantsCache;
+    private NegativeIndex negativeIndex;
+
+    /**
+     * Bytes retained per entry once the idle phase is over, reported next to the fill time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedBytesPerEntry;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytesPerEntry = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PLUGIN_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        final AwsCredentials[] principals = new AwsCredentials[PRINCIPALS];
+        for (int i = 0; i < PRINCIPALS; i++) {
+            principals[i] = AwsBasicCredentials.create("accessKey" + i, "secretKey" + i);
+        }
+        grantKeys = new CacheKey[entries];
+        deniedKeys = new CacheKey[entries];
+        for (int i = 0; i < entries; i++) {
+            final AwsCredentials principal = principals[i % PRINCIPALS];
+            grantKeys[i] = new CacheKey(principal, Permission.READ, "s3://bucket/table/partition=" + i);
+            deniedKeys[i] = new CacheKey(principal, Permission.READ, "s3://denied-bucket/table/partition=" + i);
+        }
+        lfClient = new StubLakeFormationClient();
+        unusedAccessDeniedCache = new AccessDeniedCache();
+        unusedExceptionCache = new ExceptionCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PLUGIN_LOGGER.setLevel(null);
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        accessGrantsCache = null;
+        negativeIndex = null;
+    }
+
+    @Benchmark
+    public Object fillAndIdle(final Footprint footprint) throws InterruptedException {
+        final Scheduler scheduler = scheduledExpiry ? ExpiryScheduler.shared() : Scheduler.disabledScheduler();
+        final long before = usedHeapAfterGc();
+        accessGrantsCache = AccessGrantsCache.builder()
+            .cacheSize(entries)
+            .duration(DURATION_SECONDS)
+            .expirationSafetyMargin(SAFETY_MARGIN_SECONDS)
+            .expiryScheduler(scheduler)
+            .build();
+        negativeIndex = new NegativeIndex(MetricsListener.NONE, scheduler);
+        for (int i = 0; i < entries; i++) {
+            accessGrantsCache.getCredentials(lfClient, grantKeys[i], unusedAccessDeniedCache, unusedExceptionCache);
+            negativeIndex.put(deniedKeys[i], deniedKeys[i].getS3Prefix(), NegativeIndex.Kind.ACCESS_DENIED,
+                Permission.READ, NegativeIndex.Scope.SIBLINGS, "AccessDenied", "Access Denied", NEGATIVE_TTL_NANOS,
+                entries);
+        }
+
+        Thread.sleep(IDLE_MILLIS);
+
+        footprint.retainedBytesPerEntry = (usedHeapAfterGc() - before) / (2L * entries);
+        return new Object[] {accessGrantsCache, negativeIndex};
+    }
+
+    private static long usedHeapAfterGc() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,157 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.lakeformation.model.AccessDeniedException;
+import software.amazon.awssdk.services.lakeformation.model.ConflictException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Measures the heap retained per negative cache entry. Each operation fills a fresh {@link AccessDeniedCache} and
+ * {@link ExceptionCache} with failures built the way the SDK builds them, with error details, HTTP response headers,
+ * a request ID and a stack trace, and reports the growth of the used heap after a full GC divided by the number of
+ * entries.
+ *
+ * <p>The numbers are only meaningful single-threaded, for example with {@code -Djmh.threads=1}; the reported time
+ * is the cost of filling the caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class NegativeCacheFootprintBenchmark {
+
+    private static final int PRINCIPALS = 100;
+    private static final int TTL_SECONDS = 3600;
+
+    /**
+     * Number of entries written to each cache.
+     */
+    @Param({"3000", "10000"})
+    public int entries;
+
+    private CacheKey[] deniedKeys;
+    private CacheKey[] failedKeys;
+
+    private AccessDeniedCache accessDeniedCache;
+    private ExceptionCache exceptionCache;
+
+    /**
+     * Bytes retained per entry, reported next to the fill time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long deniedBytesPerEntry;
+        public long failureBytesPerEntry;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            deniedBytesPerEntry = 0;
+            failureBytesPerEntry = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final AwsCredentials[] principals = new AwsCredentials[PRINCIPALS];
+        for (int i = 0; i < PRINCIPALS; i++) {
+            principals[i] = AwsBasicCredentials.create("accessKey" + i, "secretKey" + i);
+        }
+        deniedKeys = new CacheKey[entries];
+        failedKeys = new CacheKey[entries];
+        for (int i = 0; i < entries; i++) {
+            final AwsCredentials principal = principals[i % PRINCIPALS];
+            deniedKeys[i] = new CacheKey(principal, Permission.READ, "s3://denied-bucket-" + i + "/table/part.parquet");
+            failedKeys[i] = new CacheKey(principal, Permission.READ, "s3://failed-bucket-" + i + "/table/part.parquet");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        accessDeniedCache = null;
+        exceptionCache = null;
+    }
+
+    @Benchmark
+    public Object fill(final Footprint footprint) {
+        final long beforeDenied = usedHeapAfterGc();
+        accessDeniedCache = new AccessDeniedCache(entries, TTL_SECONDS);
+        for (final CacheKey key : deniedKeys) {
+            accessDeniedCache.putValueInCache(key, accessDenied());
+        }
+        final long afterDenied = usedHeapAfterGc();
+        exceptionCache = new ExceptionCache(entries, TTL_SECONDS);
+        for (final CacheKey key : failedKeys) {
+            exceptionCache.cacheForImmediateParent(key, conflict());
+        }
+        final long afterFailures = usedHeapAfterGc();
+
+        footprint.deniedBytesPerEntry = (afterDenied - beforeDenied) / entries;
+        footprint.failureBytesPerEntry = (afterFailures - afterDenied) / entries;
+        return new Object[] {accessDeniedCache, exceptionCache};
+    }
+
+    private static LakeFormationException accessDenied() {
+        return (LakeFormationException) AccessDeniedException.builder()
+            .awsErrorDetails(errorDetails("AccessDeniedException",
+                "Insufficient Lake Formation permission(s) on s3://denied-bucket/table"))
+            .requestId(UUID.randomUUID().toString())
+            .statusCode(400)
+            .build();
+    }
+
+    private static LakeFormationException conflict() {
+        return (LakeFormationException) ConflictException.builder()
+            .awsErrorDetails(errorDetails("ConflictException",
+                "Multiple resources exist with the same Amazon S3 location"))
+            .requestId(UUID.randomUUID().toString())
+            .statusCode(400)
+            .build();
+    }
+
+    private static AwsErrorDetails errorDetails(final String errorCode, final String errorMessage) {
+        return AwsErrorDetails.builder()
+            .errorCode(errorCode)
+            .errorMessage(errorMessage)
+            .serviceName("LakeFormation")
+            .sdkHttpResponse(SdkHttpResponse.builder()
+                .statusCode(400)
+                .statusText("Bad Request")
+                .putHeader("x-amzn-RequestId", UUID.randomUUID().toString())
+                .putHeader("Content-Type", "application/x-amz-json-1.1")
+                .putHeader("Content-Length", "128")
+                .putHeader("Date", "Thu, 01 Jan 2026 00:00:00 GMT")
+                .putHeader("x-amzn-ErrorType", errorCode)
+                .build())
+            .build();
+    }
+
+    private static long usedHeapAfterGc() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
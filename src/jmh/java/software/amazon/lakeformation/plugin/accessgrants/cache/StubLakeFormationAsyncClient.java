@@ -0,0 +1,38 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+import software.amazon.awssdk.services.lakeformation.LakeFormationAsyncClient;
+import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsRequest;
+import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsResponse;
+
+/**
+ * Asynchronous counterpart of {@link StubLakeFormationClient}: every call completes immediately on the calling
+ * thread.
+ */
+public final class StubLakeFormationAsyncClient implements LakeFormationAsyncClient {
+
+    private final StubLakeFormationClient delegate = new StubLakeFormationClient();
+
+    @Override
+    public CompletableFuture<GetTemporaryDataLocationCredentialsResponse> getTemporaryDataLocationCredentials(
+            final GetTemporaryDataLocationCredentialsRequest request) {
+        return CompletableFuture.completedFuture(delegate.getTemporaryDataLocationCredentials(request));
+    }
+
+    /**
+     * Returns the number of calls made to this client.
+     */
+    public long calls() {
+        return delegate.calls();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,52 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import software.amazon.awssdk.services.lakeformation.LakeFormationClient;
+import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsRequest;
+import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsResponse;
+import software.amazon.awssdk.services.lakeformation.model.TemporaryCredentials;
+
+/**
+ * In-memory Lake Formation client for benchmarks. Every call succeeds immediately and vends fresh credentials
+ * for exactly the requested data locations, so a benchmark measures the plugin's own work on a miss and not the
+ * network.
+ */
+public final class StubLakeFormationClient implements LakeFormationClient {
+
+    private final AtomicLong calls = new AtomicLong();
+
+    @Override
+    public GetTemporaryDataLocationCredentialsResponse getTemporaryDataLocationCredentials(
+            final GetTemporaryDataLocationCredentialsRequest request) {
+        final long call = calls.incrementAndGet();
+        return GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId("benchmarkAccessKey" + call)
+                .secretAccessKey("benchmarkSecretKey")
+                .sessionToken("benchmarkSessionToken")
+                .expiration(Instant.now().plus(Duration.ofSeconds(request.durationSeconds())))
+                .build())
+            .accessibleDataLocations(new ArrayList<>(request.dataLocations()))
+            .build();
+    }
+
+    /**
+     * Returns the number of calls made to this client.
+     */
+    public long calls() {
+        return calls.get();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
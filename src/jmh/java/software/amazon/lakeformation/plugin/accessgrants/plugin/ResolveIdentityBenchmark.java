@@ -0,0 +1,108 @@
+package software.amazon.lakeformation.plugin.accessgrants.plugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.identity.spi.ResolveIdentityRequest;
+import software.amazon.lakeformation.plugin.accessgrants.cache.AccessDeniedCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.AccessGrantsCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.BenchmarkPaths;
+import software.amazon.lakeformation.plugin.accessgrants.cache.ExceptionCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.StubLakeFormationAsyncClient;
+import software.amazon.lakeformation.plugin.accessgrants.cache.StubLakeFormationClient;
+
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PERMISSION_PROPERTY;
+import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PREFIX_PROPERTY;
+
+/**
+ * Benchmarks {@link LakeFormationAccessGrantsIdentityProvider#resolveIdentity} end to end for a request whose
+ * grant is already cached, with both the blocking and the non-blocking Lake Formation client: resolving the caller
+ * identity, the access-denied check, the grant lookup and returning the cached identity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResolveIdentityBenchmark {
+
+    private static final Logger PLUGIN_LOGGER = Logger.getLogger("software.amazon.lakeformation.plugin.accessgrants");
+
+    /**
+     * Number of folders between the bucket and the requested object.
+     */
+    @Param({"2", "8", "32"})
+    public int depth;
+
+    /**
+     * Length of each folder name.
+     */
+    @Param({"8", "32"})
+    public int segmentLength;
+
+    private LakeFormationAccessGrantsIdentityProvider identityProvider;
+    private LakeFormationAccessGrantsIdentityProvider asyncIdentityProvider;
+    private ResolveIdentityRequest request;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        PLUGIN_LOGGER.setLevel(Level.WARNING);
+
+        final StaticCredentialsProvider requester =
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("requesterAccessKey", "requesterSecretKey"));
+        identityProvider = new LakeFormationAccessGrantsIdentityProvider(
+            requester,
+            new StubLakeFormationClient(),
+            new AccessDeniedCache(),
+            new AccessGrantsCache(),
+            new ExceptionCache(),
+            false,
+            null);
+        asyncIdentityProvider = new LakeFormationAccessGrantsIdentityProvider(
+            requester,
+            new StubLakeFormationAsyncClient(),
+            new AccessDeniedCache(),
+            new AccessGrantsCache(),
+            new ExceptionCache(),
+            false,
+            null);
+        request = ResolveIdentityRequest.builder()
+            .putProperty(PREFIX_PROPERTY, BenchmarkPaths.path("s3://bucket", depth, segmentLength) + "/part-00000.parquet")
+            .putProperty(PERMISSION_PROPERTY, "READ")
+            .build();
+
+        // Serve one miss so that every measured resolution is a cache hit.
+        identityProvider.resolveIdentity(request).join();
+        asyncIdentityProvider.resolveIdentity(request).join();
+    }
+
+    @TearDown
+    public void tearDown() {
+        identityProvider.close();
+        asyncIdentityProvider.close();
+        PLUGIN_LOGGER.setLevel(null);
+    }
+
+    @Benchmark
+    public AwsCredentialsIdentity resolveIdentityCacheHit() {
+        return identityProvider.resolveIdentity(request).join();
+    }
+
+    @Benchmark
+    public AwsCredentialsIdentity resolveIdentityAsyncCacheHit() {
+        return asyncIdentityProvider.resolveIdentity(request).join();
+    }
+}
@@ -1,15 +1,42 @@
 package software.amazon.lakeformation.plugin.accessgrants.cache;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
 
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
 import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.lakeformation.LakeFormationAsyncClient;
 import software.amazon.awssdk.services.lakeformation.LakeFormationClient;
 import software.amazon.awssdk.services.lakeformation.model.CredentialsScope;
 import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsRequest;
@@ -17,91 +44,729 @@ import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocat
 import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
 import software.amazon.awssdk.services.lakeformation.model.TemporaryCredentials;
 import software.amazon.awssdk.services.s3control.model.Permission;
+import software.amazon.awssdk.utils.CompletableFutureUtils;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+import software.amazon.awssdk.utils.ThreadFactoryBuilder;
 
 /**
  * Cache for storing access grants credentials.
+ *
+ * <p>Credentials are held in Caffeine, which owns their TTL and eviction. A {@link GrantIndex} tracks the
+ * grant targets of the cached entries so a lookup finds the most specific covering grant in one pass over
+ * the requested path; Caffeine's eviction listener keeps the index in step with the cache.
+ *
+ * <p>Credentials are cached under every accessible data location Lake Formation reports for them. Such a group
+ * shares one credentials object, and therefore one expiry; when any member leaves the cache, its removal listener
+ * drops the rest of the group, so the group is never partially served.
+ *
+ * <p>Each entry lives until the expiration Lake Formation reports for its credentials, less a safety margin, so
+ * credentials that are already expired are never handed out. Credentials without an expiration fall back to
+ * {@value #CACHE_EXPIRATION_TIME_PERCENTAGE}% of the requested duration.
+ *
+ * <p>Optionally, misses for the same principal and permission that arrive within a short window are micro-batched
+ * into one multi-location Lake Formation request; every location in the response is cached and each waiting caller
+ * is served from the cache, falling back to its own request if the batch did not cover it or failed.
+ *
+ * <p>Entries that are read when they are within {@value #REFRESH_AHEAD_PERCENTAGE}% of the configured lifetime of
+ * expiring are re-vended in the background (refresh-ahead) while readers keep being served the still-valid
+ * credentials, so hot prefixes never take a synchronous Lake Formation round trip on expiry. Entries that are not
+ * read in that window lapse.
+ *
+ * <p>Concurrent misses under the same folder share one Lake Formation call (see {@link SingleFlight}).
+ *
+ * <p>Lake Formation calls pass through a {@link ConcurrencyLimiter}. Throttled single-location calls are retried with
+ * jittered backoff under a shared retry budget. Callers for a recently throttled folder wait out its backoff before
+ * calling, so they back off together; a blocking caller only fails at once when the remaining backoff is longer than
+ * it may sleep (see {@link ThrottleRetryPolicy}). A
+ * {@link CircuitBreaker} behind the limiter rejects calls at once while Lake Formation is failing or slow, so
+ * callers fall back without waiting for a Lake Formation timeout; it only sees calls the limiter admitted.
+ *
+ * <p>With stale-while-revalidate enabled, an entry that expires at its safety margin moves to a grace tier and lives
+ * there until the expiration Lake Formation actually reported for its credentials. A lookup that misses the main
+ * cache is served from the grace tier while one background revalidation re-vends the grant, so a Lake Formation
+ * outage or throttling burst does not fail readers whose credentials are still valid. Grace entries are never served
+ * past the real credential expiration, and are dropped when revalidation reports the grant as denied (see
+ * {@link GraceTier}).
+ *
+ * <p>With an expiry {@link Scheduler}, such as {@link ExpiryScheduler#shared()}, expired entries in both tiers are
+ * removed at their expiry instead of by later cache activity, so their credentials do not stay reachable while the
+ * cache is idle.
+ *
+ * <p>With a {@link MemoryBudget} the cache is bounded by the estimated bytes of its entries, which grow with the
+ * length of their S3 paths and credentials, rather than by their number. Its limit follows what the budget's other
+ * caches leave free, and the least valuable grants are evicted to stay within it.
+ *
+ * <p>With a {@link PrincipalQuota} each principal's grants are held in a Caffeine cache of their own, so a principal
+ * reading many distinct paths evicts its own grants rather than other principals' hot ones, and each principal's
+ * lookups and occupancy are reported. {@link GrantPartitions} keeps the partitions within the cache's capacity.
+ *
+ * <p>Lookups, evictions and Lake Formation calls are reported to a {@link MetricsListener}. A hit is classified by the
+ * grant that served it, without extra work on the lookup path.
  */
-public class AccessGrantsCache {
+public class AccessGrantsCache implements SdkAutoCloseable {
     private static final Logger LOGGER = Logger.getLogger(AccessGrantsCache.class.getName());
 
-    private static final int DEFAULT_ACCESS_GRANTS_CACHE_SIZE = 30000;
+    public static final int DEFAULT_ACCESS_GRANTS_CACHE_SIZE = 30000;
+    public static final int GET_DATA_ACCESS_DURATION = 1 * 60 * 60; // 1 hour
+    public static final int DEFAULT_EXPIRATION_SAFETY_MARGIN = 5 * 60; // 5 minutes
+    public static final int DEFAULT_BATCH_WINDOW_MILLIS = 0; // batching disabled
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10;
+    public static final boolean DEFAULT_STALE_WHILE_REVALIDATE = false;
     private static final int MAX_LIMIT_ACCESS_GRANTS_CACHE_SIZE = 1000000;
-    private static final int GET_DATA_ACCESS_DURATION = 1 * 60 * 60; // 1 hour
+    private static final int MIN_GET_DATA_ACCESS_DURATION = 15 * 60; // 15 minutes
     private static final int MAX_GET_DATA_ACCESS_DURATION = 12 * 60 * 60; // 12 hours
     private static final int CACHE_EXPIRATION_TIME_PERCENTAGE = 90;
+    private static final int REFRESH_AHEAD_PERCENTAGE = 10;
+    private static final int REFRESH_AHEAD_THREADS = 2;
+    private static final int REFRESH_AHEAD_QUEUE_SIZE = 1000;
+    private static final long REFRESH_AHEAD_KEEP_ALIVE_SECONDS = 60;
 
-    private final Cache<CacheKey, AwsCredentials> accessGrantsCache;
+    private final GrantPartitions partitions;
+    private final GraceTier graceTier; // null unless stale-while-revalidate is enabled
+    private final Scheduler expiryScheduler;
+    private final int duration;
+    private final boolean requestsDuration;
+    private final long safetyMarginNanos;
+    private final long defaultTtlNanos;
+    private final long refreshAheadNanos;
+    private final Executor refreshExecutor;
+    private final ExecutorService ownedRefreshExecutor; // null when the builder supplied the refresh executor
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final ThrottleRetryPolicy retryPolicy;
+    private final Ticker ticker;
+    private final Instant tickerOrigin; // wall-clock time at which the ticker read tickerOriginNanos
+    private final long tickerOriginNanos;
+    private final MetricsListener metricsListener;
+    private final Set<CacheKey> refreshingGrants = ConcurrentHashMap.newKeySet();
+    private final MicroBatcher<BatchKey, String, Boolean> batcher;
+    private final GrantIndex grantIndex = new GrantIndex();
+    private final ConcurrentMap<AwsCredentials, List<CacheKey>> credentialGroups = new ConcurrentHashMap<>();
+    private final SingleFlight singleFlight = new SingleFlight(this::searchCredentials);
 
     public AccessGrantsCache() {
-        this(DEFAULT_ACCESS_GRANTS_CACHE_SIZE, GET_DATA_ACCESS_DURATION);
+        this(builder());
     }
 
+    /**
+     * Creates a cache with the bounds it has always accepted: a duration below Lake Formation's minimum is not sent
+     * with the request, and the expiration safety margin is at most a tenth of the duration. Use {@link #builder()}
+     * for the full set of options and their stricter validation.
+     */
     public AccessGrantsCache(final int cacheSize, final int duration) {
-        if (cacheSize > MAX_LIMIT_ACCESS_GRANTS_CACHE_SIZE) {
+        this(legacyBuilder(cacheSize, duration));
+    }
+
+    private static Builder legacyBuilder(final int cacheSize, final int duration) {
+        final Builder builder = builder()
+            .cacheSize(cacheSize)
+            .duration(duration)
+            .expirationSafetyMargin(Math.max(0, Math.min(DEFAULT_EXPIRATION_SAFETY_MARGIN, duration / 10)));
+        builder.legacyBounds = true;
+        return builder;
+    }
+
+    private AccessGrantsCache(final Builder builder) {
+        if (builder.cacheSize > MAX_LIMIT_ACCESS_GRANTS_CACHE_SIZE) {
             throw new IllegalArgumentException(
                 "Max cache size should be less than or equal to " + MAX_LIMIT_ACCESS_GRANTS_CACHE_SIZE);
         }
 
-        if (duration > MAX_GET_DATA_ACCESS_DURATION) {
+        if (builder.duration > MAX_GET_DATA_ACCESS_DURATION) {
             throw new IllegalArgumentException(
                 "Maximum duration should be less than or equal to " + MAX_GET_DATA_ACCESS_DURATION);
         }
 
-        long cacheTtl = ((long) duration * CACHE_EXPIRATION_TIME_PERCENTAGE) / 100;
-        this.accessGrantsCache = Caffeine.newBuilder()
-            .maximumSize(cacheSize)
-            .expireAfterWrite(Duration.ofSeconds(cacheTtl))
+        if (!builder.legacyBounds && builder.duration < MIN_GET_DATA_ACCESS_DURATION) {
+            throw new IllegalArgumentException(
+                "Minimum duration should be greater than or equal to " + MIN_GET_DATA_ACCESS_DURATION);
+        }
+
+        if (!builder.legacyBounds
+                && (builder.expirationSafetyMargin < 0 || builder.expirationSafetyMargin >= builder.duration)) {
+            throw new IllegalArgumentException(
+                "Expiration safety margin should be non-negative and less than the duration " + builder.duration);
+        }
+
+        if (builder.batchWindowMillis < 0) {
+            throw new IllegalArgumentException("Batch window should be non-negative");
+        }
+
+        long cacheTtl = ((long) builder.duration * CACHE_EXPIRATION_TIME_PERCENTAGE) / 100;
+        this.batcher = builder.batchWindowMillis == 0 ? null
+            : new MicroBatcher<>(TimeUnit.MILLISECONDS.toNanos(builder.batchWindowMillis), builder.maxBatchSize,
+                DelayScheduler.shared());
+        this.duration = builder.duration;
+        this.requestsDuration = builder.duration >= MIN_GET_DATA_ACCESS_DURATION;
+        this.safetyMarginNanos = TimeUnit.SECONDS.toNanos(builder.expirationSafetyMargin);
+        this.defaultTtlNanos = TimeUnit.SECONDS.toNanos(cacheTtl);
+        this.refreshAheadNanos = (defaultTtlNanos * REFRESH_AHEAD_PERCENTAGE) / 100;
+        this.ownedRefreshExecutor = builder.refreshExecutor != null ? null : newRefreshExecutor();
+        this.refreshExecutor = builder.refreshExecutor != null ? builder.refreshExecutor : ownedRefreshExecutor;
+        this.concurrencyLimiter = builder.concurrencyLimiter != null ? builder.concurrencyLimiter
+            : new ConcurrencyLimiter();
+        this.ticker = builder.ticker;
+        this.circuitBreaker = new CircuitBreaker(ticker, builder.metricsListener);
+        this.retryPolicy = new ThrottleRetryPolicy(ThrottleRetryPolicy.DEFAULT_MAX_ATTEMPTS,
+            builder.retryBudget != null ? builder.retryBudget : new RetryBudget(), ticker);
+        this.tickerOrigin = Instant.now();
+        this.tickerOriginNanos = ticker.read();
+        this.metricsListener = builder.metricsListener;
+        this.expiryScheduler = builder.expiryScheduler;
+        this.graceTier = !builder.staleWhileRevalidate ? null : new GraceTier(
+            GrantPartitions.newBoundedBuilder(builder.cacheSize, builder.memoryBudget)
+                .ticker(ticker)
+                .scheduler(expiryScheduler),
+            ticker, this::remainingNanos);
+        this.partitions = new GrantPartitions(builder.cacheSize, builder.memoryBudget, builder.principalQuota,
+            expiryScheduler, metricsListener, graceTier, this::newGrantsCache);
+    }
+
+    /**
+     * Completes a bounded builder into a Caffeine cache of grants, whose eviction listener keeps the grant index in
+     * step and moves expired grants to the grace tier.
+     */
+    private Cache<CacheKey, AwsCredentials> newGrantsCache(final Caffeine<Object, Object> boundedBuilder) {
+        return boundedBuilder
+            .expireAfter(new CredentialsExpiry())
+            .ticker(ticker)
+            .scheduler(expiryScheduler)
+            .evictionListener((CacheKey key, AwsCredentials value, RemovalCause cause) -> {
+                metricsListener.onCacheEviction(MetricsListener.CacheLayer.ACCESS_GRANTS);
+                if (key != null && value != null) {
+                    grantIndex.remove(key, value);
+                    if (cause == RemovalCause.EXPIRED) {
+                        moveToGrace(key, value);
+                    }
+                }
+            })
+            .removalListener((CacheKey key, AwsCredentials value, RemovalCause cause) -> {
+                if (value != null) {
+                    removeCredentialGroup(value, cause == RemovalCause.EXPIRED);
+                }
+            })
             .build();
     }
 
-    private AwsCredentials searchCredentialsAtPrefixLevel(final CacheKey cacheKey) {
-        String prefix = cacheKey.getS3Prefix();
-        while (!prefix.equals("s3:")) {
-            final CacheKey searchKey = new CacheKey(cacheKey, null, prefix);
-            final AwsCredentials cacheValue = accessGrantsCache.getIfPresent(searchKey);
-            if (cacheValue != null) {
-                LOGGER.info("Successfully retrieved credentials from cache.");
-                return cacheValue;
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Stops the refresh-ahead threads the cache started. Refreshes issued afterwards are skipped and their entries
+     * lapse; lookups and Lake Formation calls keep working, so a cache still referenced by an in-flight request
+     * serves it. The timers and expiry scheduler are shared by every cache in the process and are left running.
+     */
+    @Override
+    public void close() {
+        if (ownedRefreshExecutor != null) {
+            ownedRefreshExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Configures an {@link AccessGrantsCache}. Every option starts at its default, so callers set only the options
+     * they change.
+     */
+    public static final class Builder {
+        private int cacheSize = DEFAULT_ACCESS_GRANTS_CACHE_SIZE;
+        private int duration = GET_DATA_ACCESS_DURATION;
+        private int expirationSafetyMargin = DEFAULT_EXPIRATION_SAFETY_MARGIN;
+        private int batchWindowMillis = DEFAULT_BATCH_WINDOW_MILLIS;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private boolean staleWhileRevalidate = DEFAULT_STALE_WHILE_REVALIDATE;
+        private MetricsListener metricsListener = MetricsListener.NONE;
+        private Scheduler expiryScheduler = Scheduler.disabledScheduler();
+        private MemoryBudget memoryBudget = MemoryBudget.UNLIMITED;
+        private PrincipalQuota principalQuota = PrincipalQuota.NONE;
+        private RetryBudget retryBudget; // null for a budget of the cache's own
+        private Ticker ticker = Ticker.systemTicker();
+        private Executor refreshExecutor; // null for the cache's own refresh-ahead pool
+        private ConcurrencyLimiter concurrencyLimiter; // null for a limiter of the cache's own
+        private boolean legacyBounds; // set by the (cacheSize, duration) constructor only
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of cached grants; not used when the cache draws from a memory budget.
+         */
+        public Builder cacheSize(final int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Sets the lifetime in seconds requested for credentials vended by Lake Formation.
+         */
+        public Builder duration(final int duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Sets the seconds before the reported credentials expiration at which an entry is evicted.
+         */
+        public Builder expirationSafetyMargin(final int expirationSafetyMargin) {
+            this.expirationSafetyMargin = expirationSafetyMargin;
+            return this;
+        }
+
+        /**
+         * Sets how long a miss waits for other misses to share its Lake Formation request; 0 disables batching.
+         */
+        public Builder batchWindowMillis(final int batchWindowMillis) {
+            this.batchWindowMillis = batchWindowMillis;
+            return this;
+        }
+
+        /**
+         * Sets the number of data locations at which a batch is sent without waiting for the window.
+         */
+        public Builder maxBatchSize(final int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets whether entries past the safety margin keep serving, until their credentials actually expire, while a
+         * background call revalidates them.
+         */
+        public Builder staleWhileRevalidate(final boolean staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        /**
+         * Sets the listener that receives the cache's lookups and evictions and its Lake Formation calls.
+         */
+        public Builder metricsListener(final MetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that removes entries at their expiry, such as {@link ExpiryScheduler#shared()}; with
+         * {@link Scheduler#disabledScheduler()} expired entries are removed by later cache activity.
+         */
+        public Builder expiryScheduler(final Scheduler expiryScheduler) {
+            this.expiryScheduler = expiryScheduler;
+            return this;
+        }
+
+        /**
+         * Bounds the cache by the estimated bytes of its entries instead of their number;
+         * {@link MemoryBudget#UNLIMITED} bounds it by the cache size.
+         */
+        public Builder memoryBudget(final MemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Partitions the cache by principal with the given shares of its capacity; {@link PrincipalQuota#NONE} keeps
+         * one cache for every principal.
+         */
+        public Builder principalQuota(final PrincipalQuota principalQuota) {
+            this.principalQuota = principalQuota;
+            return this;
+        }
+
+        /**
+         * Sets the budget that pays for retries of throttled Lake Formation calls, such as one shared by every cache
+         * calling the same Lake Formation endpoint; by default the cache has a budget of its own. A blocking lookup
+         * retries on the request thread, so with the backoff of a recently throttled folder it may wait up to one
+         * second in total before it returns or fails; asynchronous lookups wait without holding a thread.
+         */
+        public Builder retryBudget(final RetryBudget retryBudget) {
+            this.retryBudget = retryBudget;
+            return this;
+        }
+
+        Builder ticker(final Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        Builder refreshExecutor(final Executor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+            return this;
+        }
+
+        Builder concurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        public AccessGrantsCache build() {
+            return new AccessGrantsCache(this);
+        }
+    }
+
+    /**
+     * Returns the number of principals' partitions, or 1 when the cache is not partitioned, for tests.
+     */
+    int partitionCount() {
+        return partitions.partitionCount();
+    }
+
+    /**
+     * Returns the limiter that bounds concurrent Lake Formation calls made by this cache, for monitoring.
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Returns the policy that retries throttled Lake Formation calls, for tests.
+     */
+    ThrottleRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Returns the circuit breaker around this cache's Lake Formation calls, for monitoring.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Runs a blocking Lake Formation call through the concurrency limiter and then the circuit breaker. The breaker
+     * sees a call only once the limiter admits it, so the limiter's own rejections do not count as Lake Formation
+     * failures and time spent waiting for a permit does not make a call slow. The reported latency excludes that wait
+     * too.
+     */
+    private <T> T callLakeFormation(final Supplier<T> lfCall) {
+        return concurrencyLimiter.call(() -> circuitBreaker.call(() -> timed(lfCall)));
+    }
+
+    private <T> CompletableFuture<T> callLakeFormationAsync(final Supplier<CompletableFuture<T>> lfCall) {
+        return concurrencyLimiter.callAsync(() -> circuitBreaker.callAsync(() -> timedAsync(lfCall)));
+    }
+
+    private <T> T timed(final Supplier<T> lfCall) {
+        final long startNanos = ticker.read();
+        try {
+            final T response = lfCall.get();
+            metricsListener.onLakeFormationCall(ticker.read() - startNanos, null);
+            return response;
+        } catch (RuntimeException e) {
+            metricsListener.onLakeFormationCall(ticker.read() - startNanos, errorCode(e));
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> timedAsync(final Supplier<CompletableFuture<T>> lfCall) {
+        final long startNanos = ticker.read();
+        final CompletableFuture<T> call;
+        try {
+            call = lfCall.get();
+        } catch (RuntimeException e) {
+            metricsListener.onLakeFormationCall(ticker.read() - startNanos, errorCode(e));
+            throw e;
+        }
+        call.whenComplete((response, throwable) -> metricsListener.onLakeFormationCall(ticker.read() - startNanos,
+            throwable == null ? null : errorCode(unwrap(throwable))));
+        return call;
+    }
+
+    private static String errorCode(final Throwable throwable) {
+        return throwable instanceof Exception
+            ? NegativeEntry.errorCodeOf((Exception) throwable)
+            : throwable.getClass().getSimpleName();
+    }
+
+    /**
+     * Batches are formed per Lake Formation client, principal and permission, because one multi-location request
+     * vends a single set of credentials under a single credentials scope.
+     */
+    private static final class BatchKey {
+        private final Object lfClient;
+        private final CacheKey scope;
+
+        BatchKey(final Object lfClient, final CacheKey cacheKey) {
+            this.lfClient = lfClient;
+            this.scope = new CacheKey(cacheKey, null, "");
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
             }
-            final int lastSlash = prefix.lastIndexOf("/");
-            if (lastSlash == -1) break;
-            prefix = prefix.substring(0, lastSlash);
+            if (!(obj instanceof BatchKey)) {
+                return false;
+            }
+            final BatchKey other = (BatchKey) obj;
+            return lfClient == other.lfClient && scope.equals(other.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(lfClient) + scope.hashCode();
         }
-        return null;
     }
 
-    private AwsCredentials searchCredentialsAtCharacterLevel(final CacheKey cacheKey) {
-        String prefix = cacheKey.getS3Prefix();
-        while (!prefix.equals("s3://")) {
-            final CacheKey searchKey = new CacheKey(cacheKey, null, prefix + "*");
-            final AwsCredentials cacheValue = accessGrantsCache.getIfPresent(searchKey);
+    /**
+     * Expires each entry at the expiration reported for its credentials less the safety margin. A replaced entry
+     * takes the lifetime of its new credentials; reads leave the lifetime untouched.
+     */
+    private final class CredentialsExpiry implements Expiry<CacheKey, AwsCredentials> {
+        @Override
+        public long expireAfterCreate(final CacheKey key, final AwsCredentials value, final long currentTime) {
+            return lifetimeNanos(value, currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(
+                final CacheKey key,
+                final AwsCredentials value,
+                final long currentTime,
+                final long currentDuration) {
+            return lifetimeNanos(value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+                final CacheKey key,
+                final AwsCredentials value,
+                final long currentTime,
+                final long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private long lifetimeNanos(final AwsCredentials credentials, final long currentTime) {
+        if (!(credentials instanceof AwsSessionCredentials)) {
+            return defaultTtlNanos;
+        }
+        final Optional<Instant> expiration = ((AwsSessionCredentials) credentials).expirationTime();
+        if (!expiration.isPresent()) {
+            return defaultTtlNanos;
+        }
+        return Math.max(0, remainingNanos(expiration.get(), currentTime) - safetyMarginNanos);
+    }
+
+    /**
+     * Time from ticker time {@code currentTime} until the wall-clock {@code expiration}. The wall clock is read once,
+     * at construction, and advanced by the ticker from there, so lifetimes are measured on the same clock Caffeine
+     * expires entries by and are not skewed by wall-clock adjustments.
+     */
+    private long remainingNanos(final Instant expiration, final long currentTime) {
+        return Duration.between(tickerOrigin, expiration).toNanos() - (currentTime - tickerOriginNanos);
+    }
+
+    /**
+     * Bounded, daemon-threaded executor for refresh-ahead calls. Idle threads time out, so a cache that never
+     * refreshes holds no threads; when the queue is full further refreshes are skipped and those entries lapse.
+     */
+    private static ExecutorService newRefreshExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            REFRESH_AHEAD_THREADS, REFRESH_AHEAD_THREADS,
+            REFRESH_AHEAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(REFRESH_AHEAD_QUEUE_SIZE),
+            new ThreadFactoryBuilder().threadNamePrefix("lakeformation-access-grants-refresh").daemonThreads(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Looks up the best cached grant covering the requested path with a single descent of the grant index,
+     * then confirms it against Caffeine. A grant that Caffeine no longer holds (for example one that expired
+     * before its eviction was processed) is dropped from the index and the next best grant is tried.
+     */
+    private GrantIndex.Grant searchGrant(final CacheKey cacheKey) {
+        final GrantPartitions.Partition partition = partitions.partition(cacheKey);
+        final GrantIndex.Grant grant = partition == null ? null
+            : searchGrant(grantIndex, partition.cache, cacheKey, this::onLapsedGrant);
+        if (grant != null) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Successfully retrieved credentials from cache.");
+            }
+        }
+        return grant;
+    }
+
+    /**
+     * Looks up the best grace-tier grant covering the requested path, or null when stale-while-revalidate is
+     * disabled or no expired grant with still-valid credentials covers it. Caffeine hands expired entries to the
+     * grace tier during its maintenance; a grant that expired since is handed over by {@link #searchGrant(CacheKey)}
+     * as it drops the grant from the index, so no maintenance has to be forced on the lookup path.
+     */
+    private GrantIndex.Grant searchStaleGrant(final CacheKey cacheKey) {
+        return graceTier == null ? null : graceTier.find(cacheKey);
+    }
+
+    /**
+     * Moves a grant the lookup found expired, but whose eviction Caffeine has not processed yet, to the grace tier.
+     * Grants dropped for any other reason were evicted, or replaced, rather than expired, and are not moved.
+     */
+    private void onLapsedGrant(final CacheKey grantKey, final AwsCredentials credentials) {
+        if (graceTier != null && lifetimeNanos(credentials, ticker.read()) == 0) {
+            graceTier.admit(grantKey, credentials);
+        }
+    }
+
+    /**
+     * Finds the longest grant in {@code index} covering the requested path that {@code cache} still holds, dropping
+     * the grants it no longer holds from the index on the way and passing each of them to {@code onDropped}.
+     */
+    static GrantIndex.Grant searchGrant(
+            final GrantIndex index,
+            final Cache<CacheKey, AwsCredentials> cache,
+            final CacheKey cacheKey,
+            final BiConsumer<CacheKey, AwsCredentials> onDropped) {
+        GrantIndex.Grant grant = index.findLongestMatch(cacheKey);
+        while (grant != null) {
+            final AwsCredentials cacheValue = cache.getIfPresent(grant.getCacheKey());
             if (cacheValue != null) {
-                LOGGER.info("Successfully retrieved credentials from cache.");
-                return cacheValue;
+                return cacheValue == grant.getCredentials() ? grant : new GrantIndex.Grant(grant.getCacheKey(), cacheValue);
             }
-            if (prefix.length() <= 1) break;
-            prefix = prefix.substring(0, prefix.length() - 1);
+            index.remove(grant.getCacheKey(), grant.getCredentials());
+            onDropped.accept(grant.getCacheKey(), grant.getCredentials());
+            grant = index.findLongestMatch(cacheKey);
         }
         return null;
     }
 
+    private AwsCredentials searchCredentials(final CacheKey cacheKey) {
+        final GrantIndex.Grant grant = searchGrant(cacheKey);
+        return grant == null ? null : grant.getCredentials();
+    }
+
+    private boolean isRefreshDue(final GrantIndex.Grant grant) {
+        final GrantPartitions.Partition partition = partitions.partition(grant.getCacheKey());
+        if (partition == null) {
+            return false;
+        }
+        final OptionalLong remaining =
+            partition.expirationPolicy.getExpiresAfter(grant.getCacheKey(), TimeUnit.NANOSECONDS);
+        return remaining.isPresent() && remaining.getAsLong() <= refreshAheadNanos;
+    }
+
+    /**
+     * Re-vends a near-expiry grant in the background. The refresh asks Lake Formation for the path that was just
+     * read under the grant's permission, so the response names the same accessible data location and replaces the
+     * cached entry. At most one refresh per grant runs at a time. If Lake Formation now denies the grant, the entry
+     * is dropped so the next reader goes through the regular miss path; any other failure leaves the entry to serve
+     * until it expires. Grace-tier grants are revalidated the same way.
+     */
+    private void refreshAhead(
+            final GrantIndex.Grant grant,
+            final CacheKey cacheKey,
+            final Function<CacheKey, CompletableFuture<GetTemporaryDataLocationCredentialsResponse>> lfCall) {
+        final CacheKey grantKey = grant.getCacheKey();
+        if (!refreshingGrants.add(grantKey)) {
+            return;
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Refreshing credentials ahead of expiry for s3Prefix: " + grantKey.getS3Prefix());
+        }
+        final CacheKey refreshKey = new CacheKey(grantKey, null, cacheKey.getS3Prefix());
+        try {
+            lfCall.apply(refreshKey).whenComplete((response, throwable) -> {
+                try {
+                    if (throwable == null) {
+                        cacheLfResponse(refreshKey, response);
+                    } else {
+                        handleRefreshFailure(grant, unwrap(throwable));
+                    }
+                } catch (RuntimeException e) {
+                    handleRefreshFailure(grant, e);
+                } finally {
+                    refreshingGrants.remove(grantKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingGrants.remove(grantKey);
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Refresh-ahead queue is full or the cache is closed, credentials will expire for s3Prefix: "
+                    + grantKey.getS3Prefix());
+            }
+        }
+    }
+
+    private void handleRefreshFailure(final GrantIndex.Grant grant, final Throwable throwable) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Refresh-ahead failed for s3Prefix: " + grant.getCacheKey().getS3Prefix()
+                + ": " + throwable.getMessage());
+        }
+        if (throwable instanceof LakeFormationException) {
+            final LakeFormationException e = (LakeFormationException) throwable;
+            if (isAccessDenied(e) || ExceptionCache.isNegativeCacheable(e)) {
+                final GrantPartitions.Partition partition = partitions.partition(grant.getCacheKey());
+                if (partition != null && partition.cache.asMap().remove(grant.getCacheKey(), grant.getCredentials())) {
+                    grantIndex.remove(grant.getCacheKey(), grant.getCredentials());
+                }
+                if (graceTier != null) {
+                    graceTier.remove(grant.getCacheKey(), grant.getCredentials());
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls Lake Formation for one location, retrying throttled calls as the {@link ThrottleRetryPolicy} allows. The
+     * caller leads the scope's flight, so callers that arrive meanwhile wait on it rather than calling Lake Formation
+     * themselves.
+     */
     private GetTemporaryDataLocationCredentialsResponse getCredentialsFromLfService(
             final LakeFormationClient lfClient,
             final CacheKey cacheKey) {
         if (lfClient == null) {
             throw new RuntimeException("Unknown error occurred when initializing LakeFormation client");
         }
+        final GetTemporaryDataLocationCredentialsRequest request = buildLfRequest(cacheKey);
+        return retryPolicy.call(SingleFlight.flightKey(cacheKey),
+            () -> callLakeFormation(() -> lfClient.getTemporaryDataLocationCredentials(request)));
+    }
+
+    private CompletableFuture<GetTemporaryDataLocationCredentialsResponse> getCredentialsFromLfServiceAsync(
+            final LakeFormationAsyncClient lfAsyncClient,
+            final CacheKey cacheKey) {
+        if (lfAsyncClient == null) {
+            return CompletableFutureUtils.failedFuture(
+                new RuntimeException("Unknown error occurred when initializing LakeFormation client"));
+        }
+        final GetTemporaryDataLocationCredentialsRequest request = buildLfRequest(cacheKey);
+        return retryPolicy.callAsync(SingleFlight.flightKey(cacheKey),
+            () -> callLakeFormationAsync(() -> lfAsyncClient.getTemporaryDataLocationCredentials(request)));
+    }
+
+    private GetTemporaryDataLocationCredentialsRequest buildLfRequest(final CacheKey cacheKey) {
         final CredentialsScope credentialsScope = toCredentialsScope(cacheKey.getPermission());
-        LOGGER.info("Fetching credentials from Lake Formation for s3Prefix: " + cacheKey.getS3Prefix()
-            + ", permission: " + cacheKey.getPermission() + ", credentialsScope: " + credentialsScope);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Fetching credentials from Lake Formation for s3Prefix: " + cacheKey.getS3Prefix()
+                + ", permission: " + cacheKey.getPermission() + ", credentialsScope: " + credentialsScope);
+        }
+        return buildLfRequest(cacheKey, credentialsScope).dataLocations(cacheKey.getS3Prefix()).build();
+    }
+
+    private GetTemporaryDataLocationCredentialsRequest buildLfBatchRequest(
+            final CacheKey cacheKey,
+            final List<String> s3Prefixes) {
+        final CredentialsScope credentialsScope = toCredentialsScope(cacheKey.getPermission());
+        final List<String> dataLocations = new ArrayList<>(new LinkedHashSet<>(s3Prefixes));
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Fetching credentials from Lake Formation for a batch of " + dataLocations.size()
+                + " s3Prefixes, permission: " + cacheKey.getPermission() + ", credentialsScope: " + credentialsScope);
+        }
+        return buildLfRequest(cacheKey, credentialsScope).dataLocations(dataLocations).build();
+    }
 
+    private GetTemporaryDataLocationCredentialsRequest.Builder buildLfRequest(
+            final CacheKey cacheKey,
+            final CredentialsScope credentialsScope) {
         final GetTemporaryDataLocationCredentialsRequest.Builder requestBuilder =
-            GetTemporaryDataLocationCredentialsRequest.builder()
-                .dataLocations(cacheKey.getS3Prefix());
+            GetTemporaryDataLocationCredentialsRequest.builder();
+        if (requestsDuration) {
+            requestBuilder.durationSeconds(duration);
+        }
         if (credentialsScope != null) {
             requestBuilder.credentialsScope(credentialsScope);
         }
-        return lfClient.getTemporaryDataLocationCredentials(requestBuilder.build());
+        return requestBuilder;
     }
 
     /**
@@ -135,65 +800,478 @@ public class AccessGrantsCache {
             final CacheKey cacheKey,
             final AccessDeniedCache accessDeniedCache,
             final ExceptionCache exceptionCache) {
-        LOGGER.info("Fetching credentials from LakeFormation for s3Prefix: " + cacheKey.getS3Prefix());
-        AwsCredentials credentials = searchCredentialsAtPrefixLevel(cacheKey);
-        if (credentials == null && (Permission.READ.equals(cacheKey.getPermission())
-                || Permission.WRITE.equals(cacheKey.getPermission()))) {
-            credentials = searchCredentialsAtPrefixLevel(new CacheKey(cacheKey, Permission.READWRITE));
+        final GrantIndex.Grant grant = findGrant(lfClient, cacheKey);
+        if (grant != null) {
+            return grant.getCredentials();
         }
-        if (credentials == null) {
-            credentials = searchCredentialsAtCharacterLevel(cacheKey);
+        throwIfNegativeCached(cacheKey, exceptionCache);
+        return fetchUncached(lfClient, cacheKey, accessDeniedCache, exceptionCache);
+    }
+
+    /**
+     * Variant of {@link #getCredentials} that returns the credentials as a completed future. A cache hit returns a
+     * future created once when the grant was cached and shared by every reader, so serving a hit allocates nothing;
+     * callers must not complete or obtrude a value on the returned future. A miss calls Lake Formation on the
+     * calling thread and throws its failures, exactly like {@link #getCredentials}.
+     */
+    public CompletableFuture<AwsCredentials> getCompletedCredentials(
+            final LakeFormationClient lfClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        final GrantIndex.Grant grant = findGrant(lfClient, cacheKey);
+        if (grant != null) {
+            return grant.getCompletedCredentials();
         }
-        if (credentials == null && (Permission.READ.equals(cacheKey.getPermission())
-                || Permission.WRITE.equals(cacheKey.getPermission()))) {
-            credentials = searchCredentialsAtCharacterLevel(new CacheKey(cacheKey, Permission.READWRITE));
+        throwIfNegativeCached(cacheKey, exceptionCache);
+        return CompletableFuture.completedFuture(fetchUncached(lfClient, cacheKey, accessDeniedCache, exceptionCache));
+    }
+
+    /**
+     * Looks the request up without calling Lake Formation on a miss. Returns the shared, already completed future of
+     * the cached credentials covering the request, or null on a miss, so callers can tell a miss from a cached
+     * failure before deciding whether to call Lake Formation. A due refresh-ahead, or the revalidation of a
+     * grace-tier grant, is still issued on {@code lfClient}.
+     */
+    public CompletableFuture<AwsCredentials> findCompletedCredentials(
+            final LakeFormationClient lfClient,
+            final CacheKey cacheKey) {
+        final GrantIndex.Grant grant = findGrant(lfClient, cacheKey);
+        return grant != null ? grant.getCompletedCredentials() : null;
+    }
+
+    /**
+     * Counterpart of {@link #findCompletedCredentials} for asynchronous S3 clients, issuing refreshes on
+     * {@code lfAsyncClient}.
+     */
+    public CompletableFuture<AwsCredentials> findCredentialsAsync(
+            final LakeFormationAsyncClient lfAsyncClient,
+            final CacheKey cacheKey) {
+        final GrantIndex.Grant grant = findGrantAsync(lfAsyncClient, cacheKey);
+        return grant != null ? grant.getCompletedCredentials() : null;
+    }
+
+    /**
+     * Fetches the credentials for a request that {@link #findCompletedCredentials} has just missed, as a completed
+     * future. The caller has already checked {@code exceptionCache} for a cached failure, so neither the grant index
+     * nor the negative cache is searched again and the miss is reported only once. Lake Formation is called on the
+     * calling thread and its failures are thrown, like {@link #getCredentials}.
+     */
+    public CompletableFuture<AwsCredentials> fetchOnMiss(
+            final LakeFormationClient lfClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        return CompletableFuture.completedFuture(fetchUncached(lfClient, cacheKey, accessDeniedCache, exceptionCache));
+    }
+
+    /**
+     * Counterpart of {@link #fetchOnMiss} for a request that {@link #findCredentialsAsync} has just missed, calling
+     * Lake Formation on {@code lfAsyncClient} without blocking.
+     */
+    public CompletableFuture<AwsCredentials> fetchOnMissAsync(
+            final LakeFormationAsyncClient lfAsyncClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        return fetchUncachedAsync(lfAsyncClient, cacheKey, accessDeniedCache, exceptionCache);
+    }
+
+    /**
+     * Returns the cached grant covering the request, issuing a refresh-ahead if it is due, or null on a miss. A miss
+     * that a grace-tier grant covers is served from the grace tier and revalidated in the background.
+     */
+    private GrantIndex.Grant findGrant(final LakeFormationClient lfClient, final CacheKey cacheKey) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Fetching credentials from LakeFormation for s3Prefix: " + cacheKey.getS3Prefix());
         }
-        // If no credentials, check negative cache instead of re-calling Lake Formation for a non-retryable failure
-        if (credentials == null) {
-            final LakeFormationException negativeCacheException = exceptionCache.getIfParentCached(cacheKey);
-            if (negativeCacheException != null) {
+        final GrantIndex.Grant grant = searchGrant(cacheKey);
+        if (grant != null) {
+            metricsListener.onCacheHit(MetricsListener.CacheLayer.ACCESS_GRANTS, hitType(grant, cacheKey));
+            partitions.reportLookup(cacheKey, true);
+            if (lfClient != null && isRefreshDue(grant)) {
+                refreshAhead(grant, cacheKey, refreshCall(lfClient));
+            }
+            return grant;
+        }
+        final GrantIndex.Grant staleGrant = searchStaleGrant(cacheKey);
+        if (staleGrant == null) {
+            metricsListener.onCacheMiss(MetricsListener.CacheLayer.ACCESS_GRANTS);
+            partitions.reportLookup(cacheKey, false);
+            return null;
+        }
+        metricsListener.onCacheHit(MetricsListener.CacheLayer.ACCESS_GRANTS, MetricsListener.HitType.STALE);
+        partitions.reportLookup(cacheKey, true);
+        if (lfClient != null) {
+            refreshAhead(staleGrant, cacheKey, refreshCall(lfClient));
+        }
+        return staleGrant;
+    }
+
+    /**
+     * Classifies a hit by the grant that served it: a READWRITE grant serving a narrower permission, a wildcard grant,
+     * a grant for the requested path itself, or a grant for a folder above it.
+     */
+    private static MetricsListener.HitType hitType(final GrantIndex.Grant grant, final CacheKey cacheKey) {
+        final CacheKey grantKey = grant.getCacheKey();
+        if (grantKey.getPermission() != cacheKey.getPermission()) {
+            return MetricsListener.HitType.READWRITE_UPGRADE;
+        }
+        final String target = grantKey.getS3Prefix();
+        if (!target.isEmpty() && target.charAt(target.length() - 1) == '*') {
+            return MetricsListener.HitType.CHARACTER;
+        }
+        return target.equals(cacheKey.getS3Prefix()) ? MetricsListener.HitType.EXACT : MetricsListener.HitType.PREFIX;
+    }
+
+    private Function<CacheKey, CompletableFuture<GetTemporaryDataLocationCredentialsResponse>> refreshCall(
+            final LakeFormationClient lfClient) {
+        return refreshKey -> CompletableFuture.supplyAsync(
+            () -> callLakeFormation(() -> lfClient.getTemporaryDataLocationCredentials(buildLfRequest(refreshKey))),
+            refreshExecutor);
+    }
+
+    private Function<CacheKey, CompletableFuture<GetTemporaryDataLocationCredentialsResponse>> refreshCall(
+            final LakeFormationAsyncClient lfAsyncClient) {
+        return refreshKey -> callLakeFormationAsync(
+            () -> lfAsyncClient.getTemporaryDataLocationCredentials(buildLfRequest(refreshKey)));
+    }
+
+    /**
+     * Throws the cached non-retryable failure covering the request, if any, instead of re-calling Lake Formation.
+     */
+    private static void throwIfNegativeCached(final CacheKey cacheKey, final ExceptionCache exceptionCache) {
+        final LakeFormationException cachedException = exceptionCache.getIfParentCached(cacheKey);
+        if (cachedException != null) {
+            if (LOGGER.isLoggable(Level.INFO)) {
                 LOGGER.info("Found cached non-retryable exception for s3Prefix: "
                     + cacheKey.getS3Prefix());
-                throw negativeCacheException;
-            }
-
-            LOGGER.info("Credentials not available in the cache. Fetching credentials from LakeFormation service.");
-            try {
-                final GetTemporaryDataLocationCredentialsResponse response = getCredentialsFromLfService(
-                        lfClient, cacheKey);
-                final TemporaryCredentials temporaryCredentials = response.credentials();
-                credentials = AwsSessionCredentials.create(
-                    temporaryCredentials.accessKeyId(),
-                    temporaryCredentials.secretAccessKey(),
-                    temporaryCredentials.sessionToken()
-                );
-                final List<String> locations = response.accessibleDataLocations();
-                if (locations.isEmpty()) {
-                    throw new NoSuchElementException("No accessible data locations returned from Lake Formation");
+            }
+            throw cachedException;
+        }
+    }
+
+    private AwsCredentials fetchUncached(
+            final LakeFormationClient lfClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        circuitBreaker.rejectIfOpen();
+        LOGGER.info("Credentials not available in the cache. Fetching credentials from LakeFormation service.");
+        return singleFlight.fetch(cacheKey, exceptionCache,
+            () -> fetchCredentialsFromLfService(lfClient, cacheKey, accessDeniedCache, exceptionCache));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getCredentials} for asynchronous S3 clients. Cache hits return the grant's
+     * shared, already completed future, and a due refresh-ahead is issued on the asynchronous client rather than the
+     * refresh executor; misses are served by {@link LakeFormationAsyncClient} and share the same single-flight and
+     * negative-cache handling as the synchronous path, without blocking the calling thread.
+     */
+    public CompletableFuture<AwsCredentials> getCredentialsAsync(
+            final LakeFormationAsyncClient lfAsyncClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        final GrantIndex.Grant grant = findGrantAsync(lfAsyncClient, cacheKey);
+        if (grant != null) {
+            return grant.getCompletedCredentials();
+        }
+        try {
+            throwIfNegativeCached(cacheKey, exceptionCache);
+        } catch (LakeFormationException e) {
+            return CompletableFutureUtils.failedFuture(e);
+        }
+        return fetchUncachedAsync(lfAsyncClient, cacheKey, accessDeniedCache, exceptionCache);
+    }
+
+    private CompletableFuture<AwsCredentials> fetchUncachedAsync(
+            final LakeFormationAsyncClient lfAsyncClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        try {
+            circuitBreaker.rejectIfOpen();
+        } catch (SdkClientException e) {
+            return CompletableFutureUtils.failedFuture(e);
+        }
+
+        LOGGER.info("Credentials not available in the cache. Fetching credentials from LakeFormation service.");
+        return singleFlight.fetchAsync(cacheKey, exceptionCache,
+            () -> fetchCredentialsFromLfServiceAsync(lfAsyncClient, cacheKey, accessDeniedCache, exceptionCache));
+    }
+
+    /**
+     * Counterpart of {@link #findGrant} that issues refreshes on the asynchronous client rather than the refresh
+     * executor.
+     */
+    private GrantIndex.Grant findGrantAsync(final LakeFormationAsyncClient lfAsyncClient, final CacheKey cacheKey) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Fetching credentials from LakeFormation for s3Prefix: " + cacheKey.getS3Prefix());
+        }
+        final GrantIndex.Grant grant = searchGrant(cacheKey);
+        if (grant != null) {
+            metricsListener.onCacheHit(MetricsListener.CacheLayer.ACCESS_GRANTS, hitType(grant, cacheKey));
+            partitions.reportLookup(cacheKey, true);
+            if (lfAsyncClient != null && isRefreshDue(grant)) {
+                refreshAhead(grant, cacheKey, refreshCall(lfAsyncClient));
+            }
+            return grant;
+        }
+        final GrantIndex.Grant staleGrant = searchStaleGrant(cacheKey);
+        if (staleGrant == null) {
+            metricsListener.onCacheMiss(MetricsListener.CacheLayer.ACCESS_GRANTS);
+            partitions.reportLookup(cacheKey, false);
+            return null;
+        }
+        metricsListener.onCacheHit(MetricsListener.CacheLayer.ACCESS_GRANTS, MetricsListener.HitType.STALE);
+        partitions.reportLookup(cacheKey, true);
+        if (lfAsyncClient != null) {
+            refreshAhead(staleGrant, cacheKey, refreshCall(lfAsyncClient));
+        }
+        return staleGrant;
+    }
+
+    private AwsCredentials fetchCredentialsFromLfService(
+            final LakeFormationClient lfClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        if (batcher != null && lfClient != null) {
+            final Boolean batched = batcher.submit(new BatchKey(lfClient, cacheKey), cacheKey.getS3Prefix(),
+                s3Prefixes -> {
+                    try {
+                        final GetTemporaryDataLocationCredentialsRequest request =
+                            buildLfBatchRequest(cacheKey, s3Prefixes);
+                        return cacheLfBatchResponse(cacheKey,
+                            callLakeFormation(() -> lfClient.getTemporaryDataLocationCredentials(request)));
+                    } catch (RuntimeException e) {
+                        return batchFailed(e);
+                    }
+                });
+            final AwsCredentials credentials = fromBatch(batched, cacheKey);
+            if (credentials != null) {
+                return credentials;
+            }
+        }
+        try {
+            return cacheLfResponse(cacheKey, getCredentialsFromLfService(lfClient, cacheKey));
+        } catch (LakeFormationException e) {
+            cacheLfFailure(cacheKey, e, accessDeniedCache, exceptionCache);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<AwsCredentials> fetchCredentialsFromLfServiceAsync(
+            final LakeFormationAsyncClient lfAsyncClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        if (batcher == null || lfAsyncClient == null) {
+            return fetchSingleLocationAsync(lfAsyncClient, cacheKey, accessDeniedCache, exceptionCache);
+        }
+        return batcher.submitAsync(new BatchKey(lfAsyncClient, cacheKey), cacheKey.getS3Prefix(),
+            s3Prefixes -> callLakeFormationAsync(() ->
+                    lfAsyncClient.getTemporaryDataLocationCredentials(buildLfBatchRequest(cacheKey, s3Prefixes)))
+                .handle((response, throwable) -> {
+                    if (throwable != null) {
+                        return batchFailed(unwrap(throwable));
+                    }
+                    try {
+                        return cacheLfBatchResponse(cacheKey, response);
+                    } catch (RuntimeException e) {
+                        return batchFailed(e);
+                    }
+                }))
+            .thenCompose(batched -> {
+                final AwsCredentials credentials = fromBatch(batched, cacheKey);
+                return credentials != null
+                    ? CompletableFuture.completedFuture(credentials)
+                    : fetchSingleLocationAsync(lfAsyncClient, cacheKey, accessDeniedCache, exceptionCache);
+            });
+    }
+
+    private CompletableFuture<AwsCredentials> fetchSingleLocationAsync(
+            final LakeFormationAsyncClient lfAsyncClient,
+            final CacheKey cacheKey,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        final CompletableFuture<AwsCredentials> result = new CompletableFuture<>();
+        getCredentialsFromLfServiceAsync(lfAsyncClient, cacheKey).whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                try {
+                    result.complete(cacheLfResponse(cacheKey, response));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
                 }
-                final String accessibleDataLocation = locations.get(0);
+                return;
+            }
+            final Throwable cause = unwrap(throwable);
+            if (cause instanceof LakeFormationException) {
+                cacheLfFailure(cacheKey, (LakeFormationException) cause, accessDeniedCache, exceptionCache);
+            }
+            result.completeExceptionally(cause);
+        });
+        return result;
+    }
+
+    /**
+     * Serves a batch member from the cache once its batch has completed. Returns null when the member has to make
+     * its own request: the batch was not sent (it had no other members), failed, or did not cover this path.
+     */
+    private AwsCredentials fromBatch(final Boolean batched, final CacheKey cacheKey) {
+        if (!Boolean.TRUE.equals(batched)) {
+            return null;
+        }
+        final AwsCredentials credentials = searchCredentials(cacheKey);
+        if (credentials == null) {
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Batched Lake Formation request did not cover s3Prefix: " + cacheKey.getS3Prefix());
+            }
+        }
+        return credentials;
+    }
+
+    /**
+     * A failed batch cannot be attributed to any one location, so its members retry individually; this keeps
+     * AccessDenied and negative caching per location.
+     */
+    private Boolean batchFailed(final Throwable throwable) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Batched Lake Formation request failed, retrying its locations individually: "
+                + throwable.getMessage());
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Caches the credentials vended for a batch under every returned accessible data location.
+     */
+    private Boolean cacheLfBatchResponse(
+            final CacheKey cacheKey,
+            final GetTemporaryDataLocationCredentialsResponse response) {
+        cacheGrants(cacheKey, toAwsCredentials(response.credentials()), response.accessibleDataLocations());
+        return Boolean.TRUE;
+    }
+
+    private static AwsCredentials toAwsCredentials(final TemporaryCredentials temporaryCredentials) {
+        return AwsSessionCredentials.builder()
+            .accessKeyId(temporaryCredentials.accessKeyId())
+            .secretAccessKey(temporaryCredentials.secretAccessKey())
+            .sessionToken(temporaryCredentials.sessionToken())
+            .expirationTime(temporaryCredentials.expiration())
+            .build();
+    }
+
+    /**
+     * Caches the credentials vended by Lake Formation under the returned accessible data location.
+     */
+    private AwsCredentials cacheLfResponse(
+            final CacheKey cacheKey,
+            final GetTemporaryDataLocationCredentialsResponse response) {
+        final AwsCredentials credentials = toAwsCredentials(response.credentials());
+        final List<String> locations = response.accessibleDataLocations();
+        if (locations.isEmpty()) {
+            throw new NoSuchElementException("No accessible data locations returned from Lake Formation");
+        }
+        cacheGrants(cacheKey, credentials, locations);
+        LOGGER.info("Successfully retrieved credentials from Lake Formation service.");
+        return credentials;
+    }
+
+    /**
+     * Caches one set of credentials under each of the accessible data locations it was vended for. A multi-location
+     * group is registered before its entries are written so that the removal of any member can find the others.
+     */
+    private void cacheGrants(final CacheKey cacheKey, final AwsCredentials credentials, final List<String> locations) {
+        final List<CacheKey> grantKeys = new ArrayList<>(locations.size());
+        for (final String accessibleDataLocation : locations) {
+            if (LOGGER.isLoggable(Level.INFO)) {
                 LOGGER.info("Caching the credentials for s3Prefix:" + accessibleDataLocation
                     + " and permission: " + cacheKey.getPermission());
-                accessGrantsCache.put(
-                    new CacheKey(cacheKey, null, processMatchedTarget(accessibleDataLocation)),
-                    credentials
-                );
-                LOGGER.info("Successfully retrieved credentials from Lake Formation service.");
-            } catch (LakeFormationException e) {
-                LOGGER.info("Exception occurred while fetching the credentials from Lake Formation: "
-                    + e.getMessage());
-                if (isAccessDenied(e)) {
-                    LOGGER.info("Caching the Access Denied request.");
-                    accessDeniedCache.putValueInCache(cacheKey, e);
-                } else if (ExceptionCache.isNegativeCacheable(e)) {
-                    LOGGER.info("Caching the non-retryable Lake Formation exception in the negative cache: "
-                        + e.getClass().getSimpleName());
-                    exceptionCache.cacheForImmediateParent(cacheKey, e);
+            }
+            grantKeys.add(new CacheKey(cacheKey, null, processMatchedTarget(accessibleDataLocation)));
+        }
+        if (grantKeys.size() > 1) {
+            credentialGroups.put(credentials, grantKeys);
+        }
+        partitions.write(cacheKey, partition -> putGrants(partition, grantKeys, credentials));
+    }
+
+    private void putGrants(
+            final GrantPartitions.Partition partition,
+            final List<CacheKey> grantKeys,
+            final AwsCredentials credentials) {
+        for (final CacheKey grantKey : grantKeys) {
+            partition.cache.put(grantKey, credentials);
+            grantIndex.add(grantKey, credentials);
+            if (graceTier != null) {
+                graceTier.remove(grantKey);
+            }
+        }
+    }
+
+    /**
+     * Keeps an expired entry in the grace tier until its credentials actually expire, when stale-while-revalidate is
+     * enabled.
+     */
+    private void moveToGrace(final CacheKey grantKey, final AwsCredentials credentials) {
+        if (graceTier != null) {
+            graceTier.admit(grantKey, credentials);
+        }
+    }
+
+    /**
+     * Drops the remaining members of the group a removed entry belonged to. Members already holding other
+     * credentials (for example after a refresh) are left in place. When the group expired, its members move to the
+     * grace tier along with the entry that triggered the removal.
+     */
+    private void removeCredentialGroup(final AwsCredentials credentials, final boolean expired) {
+        final List<CacheKey> grantKeys = credentialGroups.remove(credentials);
+        if (grantKeys == null) {
+            return;
+        }
+        for (final CacheKey grantKey : grantKeys) {
+            final GrantPartitions.Partition partition = partitions.partition(grantKey);
+            if (partition != null && partition.cache.asMap().remove(grantKey, credentials)) {
+                grantIndex.remove(grantKey, credentials);
+                if (expired) {
+                    moveToGrace(grantKey, credentials);
                 }
-                throw e;
             }
         }
-        return credentials;
+    }
+
+    /**
+     * Records an AccessDenied or non-retryable Lake Formation failure in the matching negative cache.
+     */
+    private void cacheLfFailure(
+            final CacheKey cacheKey,
+            final LakeFormationException e,
+            final AccessDeniedCache accessDeniedCache,
+            final ExceptionCache exceptionCache) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Exception occurred while fetching the credentials from Lake Formation: "
+                + e.getMessage());
+        }
+        if (isAccessDenied(e)) {
+            LOGGER.info("Caching the Access Denied request.");
+            accessDeniedCache.putValueInCache(cacheKey, e);
+        } else if (ExceptionCache.isNegativeCacheable(e)) {
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Caching the non-retryable Lake Formation exception in the negative cache: "
+                    + e.getClass().getSimpleName());
+            }
+            exceptionCache.cacheForImmediateParent(cacheKey, e);
+        }
+    }
+
+    static Throwable unwrap(final Throwable throwable) {
+        if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
     }
 
     /**
@@ -201,7 +1279,7 @@ public class AccessGrantsCache {
      * either
      * "AccessDenied" or "AccessDeniedException" as the error code.
      */
-    private static boolean isAccessDenied(final LakeFormationException e) {
+    static boolean isAccessDenied(final LakeFormationException e) {
         return e.awsErrorDetails() != null
                 && e.awsErrorDetails().errorCode() != null
                 && e.awsErrorDetails().errorCode().startsWith("AccessDenied");
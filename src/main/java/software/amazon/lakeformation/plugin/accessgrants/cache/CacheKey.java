@@ -3,17 +3,30 @@ package software.amazon.lakeformation.plugin.accessgrants.cache;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.services.s3control.model.Permission;
 
-import java.util.Objects;
-
 /**
  * Cache key for storing access grants credentials.
+ *
+ * <p>Keys identify their principal by a {@link PrincipalFingerprint} computed once from the credentials, or from
+ * the name a {@link PrincipalResolver} gives them, and shared with every key derived from this one, and cache their
+ * hash code, so probing the caches with derived keys hashes only the new prefix and never reads the secret key.
  */
 public class CacheKey {
     private final AwsCredentialsIdentity credentials;
+    private final PrincipalFingerprint principal;
     private final Permission permission;
     private final String s3Prefix;
+    private final int hash;
 
     public CacheKey(AwsCredentialsIdentity credentials, Permission permission, String s3Prefix) {
+        this(credentials, PrincipalResolver.ACCESS_KEY, permission, s3Prefix);
+    }
+
+    /**
+     * Creates a key whose principal is the one {@code principalResolver} names for {@code credentials}, so keys
+     * built from rotated credentials of the same principal are equal.
+     */
+    public CacheKey(AwsCredentialsIdentity credentials, PrincipalResolver principalResolver, Permission permission,
+                    String s3Prefix) {
         this.credentials = credentials;
         this.permission = permission;
         this.s3Prefix = s3Prefix;
@@ -21,19 +34,25 @@ public class CacheKey {
         if (credentials == null || permission == null || s3Prefix == null) {
             throw new IllegalArgumentException("Credentials, permission, and s3_prefix must be provided");
         }
+        final String name = principalResolver.resolvePrincipal(credentials);
+        this.principal = name == null ? PrincipalFingerprint.of(credentials) : PrincipalFingerprint.of(name);
+        this.hash = hash(principal, permission, s3Prefix);
     }
 
     public CacheKey(CacheKey cacheKey, Permission permission) {
         this.credentials = cacheKey.credentials;
+        this.principal = cacheKey.principal;
         this.s3Prefix = cacheKey.s3Prefix;
         this.permission = permission;
 
         if (this.credentials == null || this.permission == null || this.s3Prefix == null) {
             throw new IllegalArgumentException("Credentials, permission, and s3_prefix must be provided");
         }
+        this.hash = hash(principal, this.permission, this.s3Prefix);
     }
 
     public CacheKey(CacheKey cacheKey, Permission permission, String s3Prefix) {
+        this.principal = cacheKey.principal;
         if (permission != null) {
             this.credentials = cacheKey.credentials;
             this.s3Prefix = cacheKey.s3Prefix;
@@ -51,12 +70,43 @@ public class CacheKey {
         if (this.credentials == null || this.permission == null || this.s3Prefix == null) {
             throw new IllegalArgumentException("Credentials, permission, and s3_prefix must be provided");
         }
+        this.hash = hash(principal, this.permission, this.s3Prefix);
+    }
+
+    private CacheKey(CacheKey cacheKey, Permission permission, String s3Prefix, int hash) {
+        this.credentials = cacheKey.credentials;
+        this.principal = cacheKey.principal;
+        this.permission = permission;
+        this.s3Prefix = s3Prefix;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns a key for the same principal with the given permission and prefix, reusing this key's
+     * fingerprint.
+     */
+    public CacheKey derive(Permission permission, String s3Prefix) {
+        if (permission == null || s3Prefix == null) {
+            throw new IllegalArgumentException("Credentials, permission, and s3_prefix must be provided");
+        }
+        return new CacheKey(this, permission, s3Prefix, hash(principal, permission, s3Prefix));
+    }
+
+    private static int hash(PrincipalFingerprint principal, Permission permission, String s3Prefix) {
+        int result = principal.hashCode();
+        result = 31 * result + permission.ordinal();
+        result = 31 * result + s3Prefix.hashCode();
+        return result;
     }
 
     public AwsCredentialsIdentity getCredentials() {
         return credentials;
     }
 
+    PrincipalFingerprint getPrincipal() {
+        return principal;
+    }
+
     public Permission getPermission() {
         return permission;
     }
@@ -74,14 +124,14 @@ public class CacheKey {
             return false;
         }
         CacheKey cacheKey = (CacheKey) obj;
-        return Objects.equals(credentials.accessKeyId(), cacheKey.credentials.accessKeyId())
-               && Objects.equals(credentials.secretAccessKey(), cacheKey.credentials.secretAccessKey())
-               && Objects.equals(permission, cacheKey.permission)
-               && Objects.equals(s3Prefix, cacheKey.s3Prefix);
+        return hash == cacheKey.hash
+               && permission == cacheKey.permission
+               && principal.equals(cacheKey.principal)
+               && s3Prefix.equals(cacheKey.s3Prefix);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(credentials.accessKeyId(), credentials.secretAccessKey(), permission, s3Prefix);
+        return hash;
     }
 }
@@ -0,0 +1,332 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.lakeformation.model.InternalServiceException;
+import software.amazon.awssdk.utils.CompletableFutureUtils;
+
+/**
+ * Circuit breaker around Lake Formation calls.
+ *
+ * <p>While the breaker is {@link State#CLOSED}, the outcome of each call is recorded in a sliding window of the most
+ * recent calls. A call fails when Lake Formation cannot answer it: it times out or cannot connect, or gets a server
+ * error. Answers such as AccessDenied are successful calls, and so are throttled calls, which the
+ * {@link ConcurrencyLimiter} and {@link ThrottleRetryPolicy} already back off from. A call is slow when it takes longer than
+ * the slow-call threshold. Once the window holds the minimum number of calls, the breaker opens if the share of
+ * failed calls, or of slow calls, reaches the threshold.
+ *
+ * <p>While the breaker is {@link State#OPEN}, calls are rejected with an {@link SdkClientException} without reaching
+ * Lake Formation, so callers fall back at once instead of waiting for Lake Formation to time out. After the open
+ * duration the breaker turns {@link State#HALF_OPEN} and lets a few probe calls through: if they all succeed without
+ * being slow the breaker closes, and if any of them fails or is slow it opens again.
+ *
+ * <p>The state, the number of transitions into each state and the number of rejected calls are exposed for
+ * monitoring, and each transition and rejection is reported to a {@link MetricsListener}.
+ */
+public final class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50; // percent
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 3000;
+    public static final int DEFAULT_WINDOW_SIZE = 50;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+    public static final int DEFAULT_HALF_OPEN_PROBES = 3;
+    private static final byte SUCCEEDED = 0;
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+    private static final int SERVER_ERROR_STATUS_CODE = 500;
+
+    /**
+     * States of the breaker.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final Ticker ticker;
+    private final MetricsListener metricsListener;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final byte[] window; // guarded by this
+    private final Map<State, Long> transitions = new EnumMap<>(State.class); // guarded by this
+    private int windowNext; // guarded by this
+    private int windowCalls; // guarded by this
+    private int failedCalls; // guarded by this
+    private int slowCalls; // guarded by this
+    private State state = State.CLOSED; // guarded by this
+    private long generation; // guarded by this
+    private long openedAtNanos; // guarded by this
+    private int probesInFlight; // guarded by this
+    private int probesSucceeded; // guarded by this
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_SLOW_CALL_MILLIS, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS,
+            DEFAULT_OPEN_MILLIS, DEFAULT_HALF_OPEN_PROBES);
+    }
+
+    /**
+     * @param failureRateThreshold percentage of failed calls, or of slow calls, in the window at which the breaker opens
+     * @param slowCallMillis duration above which a call counts as slow
+     * @param windowSize number of most recent calls the rates are computed over
+     * @param minimumCalls number of calls the window must hold before the breaker can open
+     * @param openMillis how long the breaker stays open before probing Lake Formation again
+     * @param halfOpenProbes number of probe calls that must succeed for the breaker to close
+     */
+    public CircuitBreaker(final int failureRateThreshold, final long slowCallMillis, final int windowSize,
+                          final int minimumCalls, final long openMillis, final int halfOpenProbes) {
+        this(failureRateThreshold, slowCallMillis, windowSize, minimumCalls, openMillis, halfOpenProbes,
+            Ticker.systemTicker(), MetricsListener.NONE);
+    }
+
+    CircuitBreaker(final Ticker ticker, final MetricsListener metricsListener) {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_SLOW_CALL_MILLIS, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS,
+            DEFAULT_OPEN_MILLIS, DEFAULT_HALF_OPEN_PROBES, ticker, metricsListener);
+    }
+
+    CircuitBreaker(final int failureRateThreshold, final long slowCallMillis, final int windowSize,
+                   final int minimumCalls, final long openMillis, final int halfOpenProbes, final Ticker ticker,
+                   final MetricsListener metricsListener) {
+        if (failureRateThreshold < 1 || failureRateThreshold > 100) {
+            throw new IllegalArgumentException("Failure rate threshold should be between 1 and 100");
+        }
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Circuit breaker window should satisfy 1 <= minimumCalls <= windowSize");
+        }
+        if (slowCallMillis < 0 || openMillis < 0 || halfOpenProbes < 1) {
+            throw new IllegalArgumentException(
+                "Slow call and open durations should be non-negative and at least one probe is required");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.window = new byte[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenProbes = halfOpenProbes;
+        this.ticker = ticker;
+        this.metricsListener = metricsListener;
+        for (final State s : State.values()) {
+            transitions.put(s, 0L);
+        }
+    }
+
+    /**
+     * Returns the current state of the breaker.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of times the breaker has moved into {@code target}.
+     */
+    public synchronized long getTransitionCount(final State target) {
+        return transitions.get(target);
+    }
+
+    /**
+     * Returns the number of calls rejected so far without reaching Lake Formation.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Runs a blocking Lake Formation call if the breaker lets it through.
+     *
+     * @throws SdkClientException if the breaker is open
+     */
+    <T> T call(final Supplier<T> lfCall) {
+        final Attempt attempt = acquire();
+        final T result;
+        try {
+            result = lfCall.get();
+        } catch (RuntimeException | Error e) {
+            record(attempt, e);
+            throw e;
+        }
+        record(attempt, null);
+        return result;
+    }
+
+    /**
+     * Starts a non-blocking Lake Formation call if the breaker lets it through; otherwise returns a future failed with
+     * an {@link SdkClientException}.
+     */
+    <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> lfCall) {
+        final Attempt attempt;
+        try {
+            attempt = acquire();
+        } catch (SdkClientException e) {
+            return CompletableFutureUtils.failedFuture(e);
+        }
+        final CompletableFuture<T> call;
+        try {
+            call = lfCall.get();
+        } catch (RuntimeException | Error e) {
+            record(attempt, e);
+            throw e;
+        }
+        return call.whenComplete((result, throwable) -> record(attempt, throwable));
+    }
+
+    /**
+     * Throws at once while the breaker is open and not yet due for probing, so a cache miss is not queued behind
+     * single-flight or batching only to be rejected there.
+     *
+     * @throws SdkClientException if the breaker is open
+     */
+    void rejectIfOpen() {
+        final long now = ticker.read();
+        synchronized (this) {
+            if (state != State.OPEN || now - openedAtNanos >= openNanos) {
+                return;
+            }
+        }
+        throw reject();
+    }
+
+    /**
+     * Returns true if the failure shows that Lake Formation could not answer the call. Throttling is not a failure,
+     * whatever its status code.
+     */
+    static boolean isFailure(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause() : throwable;
+        if (cause == null || ConcurrencyLimiter.isThrottled(cause)) {
+            return false;
+        }
+        if (cause instanceof InternalServiceException) {
+            return true;
+        }
+        if (cause instanceof SdkServiceException) {
+            return ((SdkServiceException) cause).statusCode() >= SERVER_ERROR_STATUS_CODE;
+        }
+        return cause instanceof SdkClientException;
+    }
+
+    private Attempt acquire() {
+        final long now = ticker.read();
+        synchronized (this) {
+            if (state == State.OPEN && now - openedAtNanos >= openNanos) {
+                transition(State.HALF_OPEN, now);
+            }
+            if (state == State.CLOSED) {
+                return new Attempt(now, generation, false);
+            }
+            if (state == State.HALF_OPEN && probesInFlight < halfOpenProbes - probesSucceeded) {
+                probesInFlight++;
+                return new Attempt(now, generation, true);
+            }
+        }
+        throw reject();
+    }
+
+    private SdkClientException reject() {
+        rejectedCount.incrementAndGet();
+        metricsListener.onCircuitBreakerRejection();
+        return SdkClientException.create("Lake Formation circuit breaker is open");
+    }
+
+    /**
+     * Records the outcome of a call. Outcomes of calls started before the last transition are ignored.
+     */
+    private void record(final Attempt attempt, final Throwable failure) {
+        final long now = ticker.read();
+        final byte outcome = isFailure(failure) ? FAILED
+            : now - attempt.startNanos > slowCallNanos ? SLOW : SUCCEEDED;
+        synchronized (this) {
+            if (attempt.generation != generation) {
+                return;
+            }
+            if (attempt.probe) {
+                probesInFlight--;
+                if (outcome != SUCCEEDED) {
+                    transition(State.OPEN, now);
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    transition(State.CLOSED, now);
+                }
+                return;
+            }
+            if (windowCalls == window.length) {
+                forget(window[windowNext]);
+            } else {
+                windowCalls++;
+            }
+            window[windowNext] = outcome;
+            windowNext = (windowNext + 1) % window.length;
+            if (outcome == FAILED) {
+                failedCalls++;
+            } else if (outcome == SLOW) {
+                slowCalls++;
+            }
+            if (windowCalls >= minimumCalls
+                    && (failedCalls * 100 >= failureRateThreshold * windowCalls
+                        || slowCalls * 100 >= failureRateThreshold * windowCalls)) {
+                transition(State.OPEN, now);
+            }
+        }
+    }
+
+    private void forget(final byte outcome) {
+        if (outcome == FAILED) {
+            failedCalls--;
+        } else if (outcome == SLOW) {
+            slowCalls--;
+        }
+    }
+
+    /**
+     * Must be called holding the lock, which also keeps the transitions reported to the listener in order.
+     */
+    private void transition(final State target, final long now) {
+        LOGGER.info("Lake Formation circuit breaker moved from " + state + " to " + target);
+        metricsListener.onCircuitBreakerTransition(state, target);
+        state = target;
+        generation++;
+        transitions.put(target, transitions.get(target) + 1);
+        probesInFlight = 0;
+        probesSucceeded = 0;
+        if (target == State.OPEN) {
+            openedAtNanos = now;
+        } else if (target == State.CLOSED) {
+            windowNext = 0;
+            windowCalls = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+        }
+    }
+
+    /**
+     * A call let through the breaker, remembering when it started and in which state period.
+     */
+    private static final class Attempt {
+        private final long startNanos;
+        private final long generation;
+        private final boolean probe;
+
+        Attempt(final long startNanos, final long generation, final boolean probe) {
+            this.startNanos = startNanos;
+            this.generation = generation;
+            this.probe = probe;
+        }
+    }
+}
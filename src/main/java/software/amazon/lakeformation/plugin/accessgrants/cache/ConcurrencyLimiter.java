@@ -0,0 +1,376 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
+import software.amazon.awssdk.utils.CompletableFutureUtils;
+
+/**
+ * Adaptive limit on the number of concurrent Lake Formation calls.
+ *
+ * <p>The limit follows an additive-increase / multiplicative-decrease rule driven by what Lake Formation reports:
+ * <ul>
+ *   <li>a call that completes within {@value #LATENCY_TOLERANCE}x the lowest latency seen, while the limit was at
+ *       least half used, raises the limit by {@code 1 / limit}, so a fully used limit grows by one per round;</li>
+ *   <li>a call that is throttled halves the limit;</li>
+ *   <li>a call that completes slower than that, a sign that Lake Formation is queueing, lowers the limit by
+ *       10%.</li>
+ * </ul>
+ * A decrease only applies to calls started after the previous decrease, so one burst of throttling shrinks the
+ * limit once rather than once per throttled call.
+ *
+ * <p>Calls over the limit wait in a bounded FIFO queue. A call that cannot be queued, or that is still queued when
+ * its deadline passes, is rejected with an {@link SdkClientException} without reaching Lake Formation. Blocking
+ * calls wait on the calling thread; non-blocking calls are chained onto their permit and never block.
+ *
+ * <p>The current limit, the number of calls in flight and queued, and the number of rejected calls are exposed for
+ * monitoring.
+ */
+public final class ConcurrencyLimiter {
+    private static final Logger LOGGER = Logger.getLogger(ConcurrencyLimiter.class.getName());
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 200;
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5000;
+    private static final double THROTTLE_BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final int MIN_LATENCY_WINDOW = 1000; // samples after which the lowest latency is re-learned
+    private static final int THROTTLED_STATUS_CODE = 429;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final long maxWaitNanos;
+    private final Ticker ticker;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>(); // guarded by this
+    private double limit; // guarded by this
+    private int inFlight; // guarded by this
+    private long minLatencyNanos = Long.MAX_VALUE; // guarded by this
+    private int latencySamples; // guarded by this
+    private long lastDecreaseNanos; // guarded by this
+
+    public ConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_MAX_QUEUE_SIZE,
+            DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param initialLimit number of concurrent calls allowed before any call has completed
+     * @param minLimit lowest limit a decrease can reach
+     * @param maxLimit highest limit an increase can reach
+     * @param maxQueueSize number of calls that may wait for a permit; further calls are rejected
+     * @param maxWaitMillis how long a call may wait for a permit before it is rejected
+     */
+    public ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final int maxQueueSize,
+                              final long maxWaitMillis) {
+        this(initialLimit, minLimit, maxLimit, maxQueueSize, maxWaitMillis, Ticker.systemTicker());
+    }
+
+    ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final int maxQueueSize,
+                       final long maxWaitMillis, final Ticker ticker) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(
+                "Concurrency limits should satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (maxQueueSize < 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Queue size and wait time should be non-negative");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueSize = maxQueueSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.ticker = ticker;
+        this.lastDecreaseNanos = ticker.read();
+    }
+
+    /**
+     * Returns the current limit on concurrent Lake Formation calls.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of Lake Formation calls currently in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of calls waiting for a permit.
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of calls rejected so far because the queue was full or their deadline passed.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Runs a blocking Lake Formation call once a permit is available, waiting on the calling thread.
+     *
+     * @throws SdkClientException if no permit became available before the deadline
+     */
+    <T> T call(final Supplier<T> lfCall) {
+        final Permit permit = acquire();
+        final T result;
+        try {
+            result = lfCall.get();
+        } catch (RuntimeException | Error e) {
+            release(permit, e);
+            throw e;
+        }
+        release(permit, null);
+        return result;
+    }
+
+    /**
+     * Starts a non-blocking Lake Formation call once a permit is available.
+     */
+    <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> lfCall) {
+        return acquireAsync().thenCompose(permit -> {
+            final CompletableFuture<T> call;
+            try {
+                call = lfCall.get();
+            } catch (RuntimeException | Error e) {
+                release(permit, e);
+                throw e;
+            }
+            return call.whenComplete((result, throwable) -> release(permit, throwable));
+        });
+    }
+
+    /**
+     * Returns true if the failure tells the caller that Lake Formation is throttling it.
+     */
+    static boolean isThrottled(final Throwable throwable) {
+        if (throwable instanceof ThrottledException) {
+            return true;
+        }
+        if (!(throwable instanceof LakeFormationException)) {
+            return false;
+        }
+        final LakeFormationException e = (LakeFormationException) throwable;
+        return e.statusCode() == THROTTLED_STATUS_CODE
+            || (e.awsErrorDetails() != null && e.awsErrorDetails().errorCode() != null
+                && e.awsErrorDetails().errorCode().startsWith("Throttl"));
+    }
+
+    private Permit acquire() {
+        final Waiter waiter;
+        synchronized (this) {
+            final Permit permit = tryAcquire();
+            if (permit != null) {
+                return permit;
+            }
+            waiter = enqueue();
+        }
+        if (waiter == null) {
+            throw rejection("the wait queue is full");
+        }
+        try {
+            return waiter.permit.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return expire(waiter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(waiter);
+            throw SdkClientException.create("Interrupted while waiting for a Lake Formation call permit", e);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    private CompletableFuture<Permit> acquireAsync() {
+        final Waiter waiter;
+        synchronized (this) {
+            final Permit permit = tryAcquire();
+            if (permit != null) {
+                return CompletableFuture.completedFuture(permit);
+            }
+            waiter = enqueue();
+        }
+        if (waiter == null) {
+            return CompletableFutureUtils.failedFuture(rejection("the wait queue is full"));
+        }
+        waiter.timeout = DelayScheduler.shared().schedule(() -> {
+            try {
+                expire(waiter);
+            } catch (SdkClientException e) {
+                waiter.permit.completeExceptionally(e);
+            }
+        }, maxWaitNanos, TimeUnit.NANOSECONDS);
+        if (waiter.permit.isDone()) {
+            waiter.timeout.cancel(false);
+        }
+        return waiter.permit;
+    }
+
+    /**
+     * Takes a permit if the limit allows and no earlier call is waiting. Must be called holding the lock.
+     */
+    private Permit tryAcquire() {
+        if (queue.isEmpty() && inFlight < (int) limit) {
+            return grant();
+        }
+        return null;
+    }
+
+    /**
+     * Queues a waiter, or returns null if the queue is full. Must be called holding the lock.
+     */
+    private Waiter enqueue() {
+        if (queue.size() >= maxQueueSize) {
+            return null;
+        }
+        final Waiter waiter = new Waiter();
+        queue.addLast(waiter);
+        return waiter;
+    }
+
+    private Permit grant() {
+        inFlight++;
+        return new Permit(ticker.read(), inFlight);
+    }
+
+    /**
+     * Rejects a waiter whose deadline passed, unless it was granted a permit in the meantime.
+     */
+    private Permit expire(final Waiter waiter) {
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                throw rejection("no permit became available within "
+                    + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+            }
+        }
+        return waiter.permit.join();
+    }
+
+    /**
+     * Withdraws a waiter whose caller gave up, handing back a permit it may already have been granted.
+     */
+    private void abandon(final Waiter waiter) {
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                return;
+            }
+        }
+        release(waiter.permit.join(), null);
+    }
+
+    private SdkClientException rejection(final String reason) {
+        rejectedCount.incrementAndGet();
+        LOGGER.info("Rejecting Lake Formation call, " + reason);
+        return SdkClientException.create("Lake Formation concurrency limit reached: " + reason);
+    }
+
+    /**
+     * Returns a permit, adapts the limit to the call's outcome and hands freed permits to waiting calls.
+     */
+    private void release(final Permit permit, final Throwable failure) {
+        final long now = ticker.read();
+        final List<Waiter> granted = new ArrayList<>();
+        final List<Permit> permits = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            adapt(permit, failure, now);
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                granted.add(queue.pollFirst());
+                permits.add(grant());
+            }
+        }
+        // Complete outside the lock: non-blocking waiters start their call on this thread.
+        for (int i = 0; i < granted.size(); i++) {
+            final Waiter waiter = granted.get(i);
+            waiter.permit.complete(permits.get(i));
+            if (waiter.timeout != null) {
+                waiter.timeout.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void adapt(final Permit permit, final Throwable failure, final long now) {
+        final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause() : failure;
+        if (isThrottled(cause)) {
+            decrease(permit, THROTTLE_BACKOFF_RATIO, now);
+            return;
+        }
+        if (cause != null) {
+            // Other failures say nothing about Lake Formation's capacity.
+            return;
+        }
+        final long latencyNanos = now - permit.startNanos;
+        if (++latencySamples >= MIN_LATENCY_WINDOW) {
+            // Re-learn the lowest latency so a one-off fast call does not make every later call look slow.
+            latencySamples = 0;
+            minLatencyNanos = latencyNanos;
+        } else if (latencyNanos < minLatencyNanos) {
+            minLatencyNanos = latencyNanos;
+        }
+        if (latencyNanos > minLatencyNanos * LATENCY_TOLERANCE) {
+            decrease(permit, LATENCY_BACKOFF_RATIO, now);
+        } else if (permit.inFlightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private void decrease(final Permit permit, final double ratio, final long now) {
+        if (permit.startNanos - lastDecreaseNanos < 0) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * ratio);
+        LOGGER.info("Lowered the Lake Formation concurrency limit to " + (int) limit);
+    }
+
+    /**
+     * A granted slot, remembering when its call started and how busy the limiter was at the time.
+     */
+    private static final class Permit {
+        private final long startNanos;
+        private final int inFlightAtStart;
+
+        Permit(final long startNanos, final int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+    }
+
+    /**
+     * A queued call waiting for a permit.
+     */
+    private static final class Waiter {
+        private final CompletableFuture<Permit> permit = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> timeout;
+    }
+}
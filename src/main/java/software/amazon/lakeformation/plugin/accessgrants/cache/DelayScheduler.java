@@ -0,0 +1,42 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import software.amazon.awssdk.utils.ThreadFactoryBuilder;
+
+/**
+ * Process-wide timer for the non-blocking waits around Lake Formation calls: the permit timeouts of a
+ * {@link ConcurrencyLimiter}, the throttling backoffs of a {@link ThrottleRetryPolicy} and the windows of
+ * asynchronous micro-batches.
+ *
+ * <p>A timer only completes a future or hands a batch to the asynchronous Lake Formation client, so, like
+ * {@link ExpiryScheduler}, every cache in the process shares one daemon thread. The thread times out once no timer
+ * is pending, so idle caches hold no thread and no cache has a timer of its own to shut down.
+ */
+final class DelayScheduler {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final ScheduledThreadPoolExecutor SHARED = newScheduler();
+
+    private DelayScheduler() {
+    }
+
+    private static ScheduledThreadPoolExecutor newScheduler() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().threadNamePrefix("lakeformation-access-grants-delay").daemonThreads(true).build());
+        executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Returns the timer shared by every cache in the process.
+     */
+    static ScheduledExecutorService shared() {
+        return SHARED;
+    }
+}
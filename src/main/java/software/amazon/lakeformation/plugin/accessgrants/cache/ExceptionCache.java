@@ -1,16 +1,11 @@
 package software.amazon.lakeformation.plugin.accessgrants.cache;
 
-import java.time.Duration;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-
 import software.amazon.awssdk.services.lakeformation.model.ConflictException;
 import software.amazon.awssdk.services.lakeformation.model.EntityNotFoundException;
 import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
-import software.amazon.awssdk.services.s3control.model.Permission;
 
 /**
  * Negative cache for non-retryable Lake Formation exceptions.
@@ -25,34 +20,38 @@ import software.amazon.awssdk.services.s3control.model.Permission;
  * {@code s3://bucket/folder1/folder2/other.csv} share the same parent and will be
  * short-circuited, but unrelated paths like {@code s3://bucket/folder1/otherFolder/file.csv}
  * will NOT be affected.
+ *
+ * <p>Entries are held in a {@link NegativeIndex}, which may be shared with an {@link AccessDeniedCache}.
  */
 public class ExceptionCache {
     private static final Logger LOGGER = Logger.getLogger(ExceptionCache.class.getName());
 
     private static final int EXCEPTION_CACHE_SIZE = 10000;
     private static final int EXCEPTION_CACHE_TTL = 3 * 60; // 3 minutes in seconds
-    private static final String S3_SCHEME = "s3://";
-
-    /**
-     * Negative-cache entries are permission-agnostic. Conflict / EntityNotFound errors reflect how
-     * a location is registered in Lake Formation, independent of the READ / WRITE / READWRITE
-     * scope of the request, so every permission is normalized to this single sentinel when building
-     * keys. This lets a WRITE failure suppress a subsequent READ request (and vice versa) for the
-     * same prefix.
-     */
-    private static final Permission NEGATIVE_CACHE_PERMISSION = Permission.READWRITE;
 
-    private final Cache<CacheKey, LakeFormationException> exceptionCache;
+    private final NegativeIndex negativeIndex;
+    private final int cacheSize;
+    private final long ttlNanos;
 
     public ExceptionCache() {
         this(EXCEPTION_CACHE_SIZE, EXCEPTION_CACHE_TTL);
     }
 
     public ExceptionCache(final int cacheSize, final int ttl) {
-        this.exceptionCache = Caffeine.newBuilder()
-                .maximumSize(cacheSize)
-                .expireAfterWrite(Duration.ofSeconds(ttl))
-                .build();
+        this(cacheSize, ttl, new NegativeIndex());
+    }
+
+    /**
+     * Creates a cache with the default size and TTL that records its entries in {@code negativeIndex}.
+     */
+    public ExceptionCache(final NegativeIndex negativeIndex) {
+        this(EXCEPTION_CACHE_SIZE, EXCEPTION_CACHE_TTL, negativeIndex);
+    }
+
+    ExceptionCache(final int cacheSize, final int ttl, final NegativeIndex negativeIndex) {
+        this.negativeIndex = negativeIndex;
+        this.cacheSize = cacheSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
     }
 
     /**
@@ -73,113 +72,53 @@ public class ExceptionCache {
      * under the same folder.
      *
      * @param cacheKey the original request cache key (with full object path)
-     * @param e the non-retryable exception to cache
+     * @param e the non-retryable exception to cache; only its error code and message are kept
      */
     public void cacheForImmediateParent(final CacheKey cacheKey,
                                         final LakeFormationException e) {
-        final Optional<String> parent = immediateParent(cacheKey.getS3Prefix());
-        if (parent.isPresent()) {
-            LOGGER.info("Caching negative response at immediate parent: " + parent.get()
+        final String parent = NegativeIndex.immediateParent(cacheKey.getS3Prefix());
+        // Entries are permission-agnostic: Conflict / EntityNotFound errors reflect how a location is
+        // registered in Lake Formation, independent of the permission requested, so a WRITE failure
+        // also suppresses a subsequent READ request for the same folder (and vice versa).
+        if (parent == null) {
+            LOGGER.info("No cacheable parent found for path: " + cacheKey.getS3Prefix());
+            return;
+        }
+        final NegativeIndex.Admission admission = negativeIndex.put(cacheKey, parent, NegativeIndex.Kind.NON_RETRYABLE,
+            null, NegativeIndex.Scope.SIBLINGS, e, ttlNanos, cacheSize);
+        if (admission == NegativeIndex.Admission.RECORDED) {
+            LOGGER.info("Caching negative response at immediate parent: " + parent
                 + " for path: " + cacheKey.getS3Prefix());
-            exceptionCache.put(negativeKey(cacheKey, parent.get()), e);
         } else {
-            LOGGER.info("No cacheable parent found for path: " + cacheKey.getS3Prefix());
+            LOGGER.info("Negative cache is " + admission.reason() + ", not caching response for path: "
+                + cacheKey.getS3Prefix());
         }
     }
 
     /**
-     * Checks only the immediate parent of the requested key for a cached exception.
+     * Checks only the immediate parent of the requested key for a cached failure.
      *
      * @param cacheKey the request cache key to check
-     * @return the cached exception if the immediate parent has a negative entry, or null if not
+     * @return an exception rebuilt from the cached failure if the immediate parent has a negative entry, or null if
+     *     not
      */
     public LakeFormationException getIfParentCached(final CacheKey cacheKey) {
-        final Optional<String> parent = immediateParent(cacheKey.getS3Prefix());
-        if (parent.isPresent()) {
-            final LakeFormationException cached =
-                exceptionCache.getIfPresent(negativeKey(cacheKey, parent.get()));
-            if (cached != null) {
-                LOGGER.info("Found cached negative response at parent: " + parent.get());
-                return cached;
-            }
-        }
-        return null;
+        final NegativeEntry cached = getEntryIfParentCached(cacheKey);
+        return cached != null ? cached.toException() : null;
     }
 
     /**
-     * Builds a permission-agnostic negative-cache key for a given prefix.
-     */
-    private CacheKey negativeKey(final CacheKey cacheKey, final String prefix) {
-        return new CacheKey(cacheKey.getCredentials(), NEGATIVE_CACHE_PERMISSION, prefix);
-    }
-
-    /**
-     * Returns the immediate parent directory of an S3 path.
-     *
-     * <p>If the path ends with "/*" or "/", it is a directory reference and the normalized form
-     * IS the parent directory (objects under it share this as their parent). Otherwise, the leaf
-     * segment (file name) is dropped to find the parent.
-     *
-     * <p>Examples:
-     * <ul>
-     *   <li>{@code s3://bucket/f1/f2/file.csv} returns {@code s3://bucket/f1/f2}</li>
-     *   <li>{@code s3://bucket/folder1/file.csv} returns {@code s3://bucket/folder1}</li>
-     *   <li>{@code s3://bucket/file.csv} returns {@code s3://bucket}</li>
-     *   <li>{@code s3://bucket/folder1/folder2/*} returns {@code s3://bucket/folder1/folder2}
-     *       (directory reference)</li>
-     *   <li>{@code s3://bucket/folder1/folder2/} returns {@code s3://bucket/folder1/folder2}
-     *       (directory reference)</li>
-     *   <li>{@code s3://bucket} returns empty (no parent above bucket root)</li>
-     * </ul>
+     * Variant of {@link #getIfParentCached} that returns the cached entry itself, so a caller that only routes the
+     * request does not build an exception.
      *
-     * @param s3Prefix the full S3 path
-     * @return the immediate parent directory, or empty if no valid parent exists
-     */
-    private Optional<String> immediateParent(final String s3Prefix) {
-        final String normalized = normalize(s3Prefix);
-        if (!normalized.startsWith(S3_SCHEME)) {
-            return Optional.empty();
-        }
-
-        // First "/" after the scheme separates the bucket from the key.
-        final int bucketRootEnd = normalized.indexOf('/', S3_SCHEME.length());
-        if (bucketRootEnd == -1) {
-            // If original was a directory reference at bucket root (e.g., "s3://bucket/*"),
-            // the normalized bucket root IS the parent for objects under it.
-            if (s3Prefix.endsWith("/*") || s3Prefix.endsWith("/")) {
-                return Optional.of(normalized);
-            }
-            // Only a bucket root was supplied; there is nothing above it to cache.
-            return Optional.empty();
-        }
-
-        // If the original path ended with /* or /, it is a directory reference.
-        // The normalized form IS the parent directory for objects under it.
-        if (s3Prefix.endsWith("/*") || s3Prefix.endsWith("/")) {
-            return Optional.of(normalized);
-        }
-
-        // Drop the leaf segment to get the immediate parent.
-        final int lastSlash = normalized.lastIndexOf('/');
-        if (lastSlash > bucketRootEnd) {
-            return Optional.of(normalized.substring(0, lastSlash));
-        }
-        // The path is directly under the bucket root (e.g., s3://bucket/file.csv).
-        final String bucketRoot = normalized.substring(0, bucketRootEnd);
-        return Optional.of(bucketRoot);
-    }
-
-    /**
-     * Strips a trailing "/*" or "/" from a prefix so directory / wildcard requests produce the
-     * same keys as object requests under the same location. Mirrors the normalization done for
-     * the positive cache when processing a matched grant target.
+     * @param cacheKey the request cache key to check
+     * @return the cached failure if the immediate parent has a negative entry, or null if not
      */
-    private String normalize(final String prefix) {
-        if (prefix.endsWith("/*")) {
-            return prefix.substring(0, prefix.length() - 2);
-        } else if (prefix.endsWith("/")) {
-            return prefix.substring(0, prefix.length() - 1);
+    public NegativeEntry getEntryIfParentCached(final CacheKey cacheKey) {
+        final NegativeEntry cached = negativeIndex.find(cacheKey, NegativeIndex.Kind.NON_RETRYABLE);
+        if (cached != null) {
+            LOGGER.info("Found cached negative response for path: " + cacheKey.getS3Prefix());
         }
-        return prefix;
+        return cached;
     }
 }
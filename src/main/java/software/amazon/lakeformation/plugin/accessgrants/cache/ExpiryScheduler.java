@@ -0,0 +1,56 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.github.benmanes.caffeine.cache.Scheduler;
+
+import software.amazon.awssdk.utils.ThreadFactoryBuilder;
+
+/**
+ * Process-wide {@link Scheduler} that removes expired entries from the plugin's caches when they expire, rather than
+ * when later cache activity happens to notice them.
+ *
+ * <p>Without a scheduler, an expired grant keeps its credentials reachable until the next read or write of the
+ * cache purges it, which after a burst of one-off paths can be long after the burst ends. With this scheduler
+ * {@link AccessGrantsCache} and {@link NegativeIndex} schedule their own cleanup at the next expiry, so expired
+ * credentials become unreachable, and collectable, within about a second of expiring even while the caches are
+ * idle.
+ *
+ * <p>Every cache shares one daemon thread, which also runs the scheduled maintenance itself so it never lands on a
+ * request thread. The thread times out once no cleanup is pending, so idle caches hold no thread.
+ */
+public final class ExpiryScheduler implements Scheduler {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final ExpiryScheduler SHARED = new ExpiryScheduler();
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private ExpiryScheduler() {
+        executor = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().threadNamePrefix("lakeformation-access-grants-expiry").daemonThreads(true).build());
+        executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the scheduler shared by every cache in the process.
+     */
+    public static ExpiryScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * Runs {@code command} on the scheduler's thread after {@code delay}. Caffeine's {@code executor} is not used:
+     * expiry cleanup is short, and running it here keeps it off both request threads and the common pool.
+     */
+    @Override
+    public Future<?> schedule(final Executor executor, final Runnable command, final long delay, final TimeUnit unit) {
+        return this.executor.schedule(command, delay, unit);
+    }
+}
@@ -0,0 +1,104 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+
+/**
+ * Routing cache for locations that Lake Formation does not serve.
+ *
+ * <p>When Lake Formation fails a path with a non-retryable, registration-driven error (see
+ * {@link ExceptionCache#isNegativeCacheable}), the request is resolved by the fallback provider: S3 Access Grants,
+ * which in turn falls back to the caller's IAM credentials. This cache remembers that outcome for the whole subtree
+ * of the failed path's immediate parent directory, so later requests for any path below it, including new
+ * subdirectories, are sent straight to the fallback provider without calling Lake Formation.
+ *
+ * <p>Example: a failure at {@code s3://bucket/logs/2024/01/file.json} routes {@code s3://bucket/logs/2024/01} and
+ * everything below it, such as {@code s3://bucket/logs/2024/01/02/file.json}, to the fallback provider. Paths
+ * outside that directory, such as {@code s3://bucket/logs/2024/02/file.json}, still try Lake Formation first.
+ *
+ * <p>A route records that Lake Formation lost, not which fallback won: the S3 Access Grants provider decides on its
+ * own whether to vend grant credentials or fall back to IAM, and does not report which it did, so a routed request
+ * is still handed to that provider rather than straight to the caller's IAM credentials. Grants that succeed in
+ * Lake Formation are remembered by {@link AccessGrantsCache} instead.
+ *
+ * <p>Routes are permission-agnostic, like the entries of {@link ExceptionCache}, and have their own size bound and
+ * TTL. Entries are held in a {@link NegativeIndex}, which may be shared with the other negative caches.
+ */
+public class FallbackRouteCache {
+    private static final Logger LOGGER = Logger.getLogger(FallbackRouteCache.class.getName());
+
+    private static final int FALLBACK_ROUTE_CACHE_SIZE = 10000;
+    private static final int FALLBACK_ROUTE_CACHE_TTL = 5 * 60; // 5 minutes in seconds
+
+    private final NegativeIndex negativeIndex;
+    private final int cacheSize;
+    private final long ttlNanos;
+
+    public FallbackRouteCache() {
+        this(FALLBACK_ROUTE_CACHE_SIZE, FALLBACK_ROUTE_CACHE_TTL);
+    }
+
+    public FallbackRouteCache(final int cacheSize, final int ttl) {
+        this(cacheSize, ttl, new NegativeIndex());
+    }
+
+    /**
+     * Creates a cache with the default size and TTL that records its entries in {@code negativeIndex}.
+     */
+    public FallbackRouteCache(final NegativeIndex negativeIndex) {
+        this(FALLBACK_ROUTE_CACHE_SIZE, FALLBACK_ROUTE_CACHE_TTL, negativeIndex);
+    }
+
+    FallbackRouteCache(final int cacheSize, final int ttl, final NegativeIndex negativeIndex) {
+        this.negativeIndex = negativeIndex;
+        this.cacheSize = cacheSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+    }
+
+    /**
+     * Routes the subtree of the immediate parent directory of the requested path to the fallback provider, if
+     * {@code e} shows that Lake Formation does not serve the path.
+     *
+     * @param cacheKey the request cache key (with full object path)
+     * @param e the Lake Formation failure that sent the request to the fallback provider
+     */
+    public void routeToFallback(final CacheKey cacheKey, final LakeFormationException e) {
+        if (ExceptionCache.isNegativeCacheable(e)) {
+            route(cacheKey, NegativeEntry.errorCodeOf(e), NegativeEntry.messageOf(e));
+        }
+    }
+
+    private void route(final CacheKey cacheKey, final String errorCode, final String message) {
+        final String parent = NegativeIndex.immediateParent(cacheKey.getS3Prefix());
+        if (parent == null) {
+            LOGGER.info("No routable parent found for path: " + cacheKey.getS3Prefix());
+            return;
+        }
+        final NegativeIndex.Admission admission = negativeIndex.put(cacheKey, parent, NegativeIndex.Kind.FALLBACK_ROUTE,
+            null, NegativeIndex.Scope.SUBTREE, errorCode, message, ttlNanos, cacheSize);
+        if (admission == NegativeIndex.Admission.RECORDED) {
+            LOGGER.info("Routing " + parent + " to the fallback provider after: " + errorCode);
+        } else {
+            LOGGER.info("Fallback route cache is " + admission.reason() + ", not routing path: " + cacheKey.getS3Prefix());
+        }
+    }
+
+    /**
+     * Routes the subtree of the immediate parent directory of the requested path to the fallback provider, if
+     * {@code cached} is a non-retryable failure served from {@link ExceptionCache}.
+     */
+    public void routeToFallback(final CacheKey cacheKey, final NegativeEntry cached) {
+        if (cached.kind() == NegativeIndex.Kind.NON_RETRYABLE) {
+            route(cacheKey, cached.getErrorCode(), cached.getMessage());
+        }
+    }
+
+    /**
+     * Returns true if the requested path lies in a subtree routed to the fallback provider.
+     */
+    public boolean isRoutedToFallback(final CacheKey cacheKey) {
+        return negativeIndex.find(cacheKey, NegativeIndex.Kind.FALLBACK_ROUTE) != null;
+    }
+}
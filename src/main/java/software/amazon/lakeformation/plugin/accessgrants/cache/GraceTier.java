@@ -0,0 +1,161 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+
+/**
+ * Grace tier behind {@link AccessGrantsCache} when stale-while-revalidate is enabled.
+ *
+ * <p>Grants that expire at their safety margin are moved here and live until the expiration Lake Formation actually
+ * reported for their credentials, so they can still be served while a background revalidation re-vends them.
+ * Credentials without an expiration have no grace period and are never admitted. A {@link GrantIndex} of its own
+ * tracks the grant targets of the tier's entries; the eviction listener keeps it in step with the tier.
+ */
+final class GraceTier {
+    private static final Logger LOGGER = Logger.getLogger(GraceTier.class.getName());
+
+    /**
+     * Measures the time from a ticker time until a wall-clock expiration, on the clock the tier expires entries by.
+     */
+    interface Clock {
+        long remainingNanos(Instant expiration, long currentTime);
+    }
+
+    private final Cache<CacheKey, AwsCredentials> cache;
+    private final Policy.Eviction<CacheKey, AwsCredentials> evictionPolicy;
+    private final GrantIndex index = new GrantIndex();
+    private final Ticker ticker;
+    private final Clock clock;
+
+    /**
+     * @param builder a bounded builder that already carries the tier's ticker and expiry scheduler
+     */
+    GraceTier(final Caffeine<Object, Object> builder, final Ticker ticker, final Clock clock) {
+        this.ticker = ticker;
+        this.clock = clock;
+        this.cache = builder
+            .expireAfter(new GraceExpiry())
+            .evictionListener((CacheKey key, AwsCredentials value, RemovalCause cause) -> {
+                if (key != null && value != null) {
+                    index.remove(key, value);
+                }
+            })
+            .build();
+        this.evictionPolicy = cache.policy().eviction().orElseThrow(IllegalStateException::new);
+    }
+
+    /**
+     * Expires each grace entry at the expiration reported for its credentials, with no safety margin.
+     */
+    private final class GraceExpiry implements Expiry<CacheKey, AwsCredentials> {
+        @Override
+        public long expireAfterCreate(final CacheKey key, final AwsCredentials value, final long currentTime) {
+            return lifetimeNanos(value, currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(
+                final CacheKey key,
+                final AwsCredentials value,
+                final long currentTime,
+                final long currentDuration) {
+            return lifetimeNanos(value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+                final CacheKey key,
+                final AwsCredentials value,
+                final long currentTime,
+                final long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Time left at ticker time {@code currentTime} until the credentials actually expire, or 0 for credentials
+     * without an expiration, which have no grace period.
+     */
+    private long lifetimeNanos(final AwsCredentials credentials, final long currentTime) {
+        if (!(credentials instanceof AwsSessionCredentials)) {
+            return 0;
+        }
+        final Optional<Instant> expiration = ((AwsSessionCredentials) credentials).expirationTime();
+        if (!expiration.isPresent()) {
+            return 0;
+        }
+        return Math.max(0, clock.remainingNanos(expiration.get(), currentTime));
+    }
+
+    /**
+     * Keeps an expired entry until its credentials actually expire.
+     */
+    void admit(final CacheKey grantKey, final AwsCredentials credentials) {
+        if (lifetimeNanos(credentials, ticker.read()) == 0) {
+            return;
+        }
+        cache.put(grantKey, credentials);
+        index.add(grantKey, credentials);
+    }
+
+    /**
+     * Looks up the best grant covering the requested path whose credentials are still valid, or null if none does.
+     */
+    GrantIndex.Grant find(final CacheKey cacheKey) {
+        final GrantIndex.Grant grant = AccessGrantsCache.searchGrant(index, cache, cacheKey, (key, value) -> { });
+        if (grant != null) {
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Serving expired credentials from the grace tier while revalidating s3Prefix: "
+                    + grant.getCacheKey().getS3Prefix());
+            }
+        }
+        return grant;
+    }
+
+    /**
+     * Drops the entry for {@code grantKey}, once a fresh grant has been cached under it.
+     */
+    void remove(final CacheKey grantKey) {
+        final AwsCredentials stale = cache.asMap().remove(grantKey);
+        if (stale != null) {
+            index.remove(grantKey, stale);
+        }
+    }
+
+    /**
+     * Drops the entry for {@code grantKey} if it still holds {@code credentials}.
+     */
+    void remove(final CacheKey grantKey, final AwsCredentials credentials) {
+        if (cache.asMap().remove(grantKey, credentials)) {
+            index.remove(grantKey, credentials);
+        }
+    }
+
+    /**
+     * Returns the grants held, or their estimated bytes when the tier is weighted.
+     */
+    long occupancy() {
+        final OptionalLong weightedSize = evictionPolicy.weightedSize();
+        return weightedSize.isPresent() ? weightedSize.getAsLong() : cache.estimatedSize();
+    }
+
+    /**
+     * Sets the most the tier may hold; Caffeine evicts down to a lowered maximum at once.
+     */
+    void resize(final long maximum) {
+        evictionPolicy.setMaximum(maximum);
+    }
+}
@@ -0,0 +1,447 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Per-principal index of the grant targets held in {@link AccessGrantsCache}.
+ *
+ * <p>Each principal owns a compressed radix trie over its cached grant targets. Two kinds of target are
+ * recorded:
+ * <ul>
+ *   <li>a <em>prefix grant</em> such as {@code s3://bucket/folder}, which matches the target itself and
+ *       every path below it at a "/" boundary;</li>
+ *   <li>a <em>wildcard grant</em> such as {@code s3://bucket/data*}, which matches every path starting
+ *       with {@code s3://bucket/data}.</li>
+ * </ul>
+ * A single descent of the requested path finds the longest grant of each kind, for both the requested
+ * permission and READWRITE, without building intermediate substrings or cache keys. This replaces the
+ * earlier walks that probed the cache once per "/" and once per character.
+ *
+ * <p>The index only locates keys. Caffeine remains the source of truth for values, TTL and eviction:
+ * callers confirm every match against the cache and remove matches that are no longer present there.
+ */
+final class GrantIndex {
+
+    private static final String S3_SCHEME = "s3://";
+    private static final char WILDCARD = '*';
+    private static final char DELIMITER = '/';
+    private static final int PERMISSION_COUNT = Permission.values().length;
+
+    private final ConcurrentMap<PrincipalFingerprint, PrincipalTrie> tries = new ConcurrentHashMap<>();
+
+    /**
+     * Records the grant target of {@code cacheKey} for its principal and permission. A target ending in
+     * "*" is recorded as a wildcard grant, any other target as a prefix grant. An existing grant for the
+     * same target and permission is replaced.
+     */
+    void add(final CacheKey cacheKey, final AwsCredentials credentials) {
+        final PrincipalFingerprint principal = cacheKey.getPrincipal();
+        while (true) {
+            final PrincipalTrie trie = tries.computeIfAbsent(principal, p -> new PrincipalTrie());
+            if (trie.add(cacheKey, credentials)) {
+                return;
+            }
+            // The trie was retired by a concurrent removal of its last grant; retry on a fresh one.
+            tries.remove(principal, trie);
+        }
+    }
+
+    /**
+     * Removes the grant recorded for {@code cacheKey}, but only if it still refers to {@code credentials}.
+     * The identity check keeps a late eviction of an old value from removing a grant that has since been
+     * re-recorded with fresh credentials.
+     */
+    void remove(final CacheKey cacheKey, final AwsCredentials credentials) {
+        final PrincipalFingerprint principal = cacheKey.getPrincipal();
+        final PrincipalTrie trie = tries.get(principal);
+        if (trie != null && trie.remove(cacheKey, credentials)) {
+            tries.remove(principal, trie);
+        }
+    }
+
+    /**
+     * Finds the best grant covering the requested path of {@code cacheKey}. Matches are preferred in the
+     * order the cache has always searched them:
+     * <ol>
+     *   <li>the longest prefix grant for the requested permission;</li>
+     *   <li>the longest prefix grant for READWRITE, when READ or WRITE was requested;</li>
+     *   <li>the longest wildcard grant for the requested permission;</li>
+     *   <li>the longest wildcard grant for READWRITE, when READ or WRITE was requested.</li>
+     * </ol>
+     *
+     * @return the matching grant, or null if no recorded grant covers the path
+     */
+    Grant findLongestMatch(final CacheKey cacheKey) {
+        final PrincipalTrie trie = tries.get(cacheKey.getPrincipal());
+        if (trie == null) {
+            return null;
+        }
+        return trie.findLongestMatch(cacheKey.getS3Prefix(), cacheKey.getPermission());
+    }
+
+    /**
+     * Returns the number of grants currently recorded across all principals.
+     */
+    int size() {
+        int size = 0;
+        for (PrincipalTrie trie : tries.values()) {
+            size += trie.size();
+        }
+        return size;
+    }
+
+    /**
+     * A grant recorded in the index: the cache key it was stored under and the credentials stored with it.
+     * The grant also holds an already completed future of its credentials, so that a cache hit can be returned
+     * to callers of the future-based APIs without allocating.
+     */
+    static final class Grant {
+        private final CacheKey cacheKey;
+        private final AwsCredentials credentials;
+        private final CompletableFuture<AwsCredentials> completedCredentials;
+
+        Grant(final CacheKey cacheKey, final AwsCredentials credentials) {
+            this.cacheKey = cacheKey;
+            this.credentials = credentials;
+            this.completedCredentials = CompletableFuture.completedFuture(credentials);
+        }
+
+        CacheKey getCacheKey() {
+            return cacheKey;
+        }
+
+        AwsCredentials getCredentials() {
+            return credentials;
+        }
+
+        CompletableFuture<AwsCredentials> getCompletedCredentials() {
+            return completedCredentials;
+        }
+    }
+
+    /**
+     * Radix trie of one principal's grants, guarded by a read-write lock so lookups proceed in parallel.
+     */
+    private static final class PrincipalTrie {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Node root = new Node("");
+        private int size;
+        private boolean retired;
+
+        /**
+         * @return false if this trie has been retired and must no longer receive grants
+         */
+        boolean add(final CacheKey cacheKey, final AwsCredentials credentials) {
+            final String target = cacheKey.getS3Prefix();
+            final boolean wildcard = isWildcard(target);
+            final int length = wildcard ? target.length() - 1 : target.length();
+
+            lock.writeLock().lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                Node node = root;
+                int depth = 0;
+                while (depth < length) {
+                    final char c = target.charAt(depth);
+                    final Node child = node.child(c);
+                    if (child == null) {
+                        final Node leaf = new Node(target.substring(depth, length));
+                        node.putChild(c, leaf);
+                        node = leaf;
+                        depth = length;
+                        break;
+                    }
+                    final int common = commonPrefixLength(target, depth, length, child.label);
+                    if (common < child.label.length()) {
+                        // Split the edge so the new target ends on (or branches from) a node of its own.
+                        final Node middle = new Node(child.label.substring(0, common));
+                        child.label = child.label.substring(common);
+                        middle.putChild(child.label.charAt(0), child);
+                        node.putChild(c, middle);
+                        node = middle;
+                    } else {
+                        node = child;
+                    }
+                    depth += common;
+                }
+                if (node.set(wildcard, cacheKey.getPermission(), new Grant(cacheKey, credentials))) {
+                    size++;
+                }
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return true if the trie became empty and has been retired
+         */
+        boolean remove(final CacheKey cacheKey, final AwsCredentials credentials) {
+            final String target = cacheKey.getS3Prefix();
+            final boolean wildcard = isWildcard(target);
+            final int length = wildcard ? target.length() - 1 : target.length();
+
+            lock.writeLock().lock();
+            try {
+                final List<Node> path = new ArrayList<>();
+                Node node = root;
+                int depth = 0;
+                path.add(node);
+                while (depth < length) {
+                    node = node.child(target.charAt(depth));
+                    if (node == null || !target.regionMatches(depth, node.label, 0, node.label.length())
+                            || depth + node.label.length() > length) {
+                        return false;
+                    }
+                    depth += node.label.length();
+                    path.add(node);
+                }
+                if (!node.clear(wildcard, cacheKey.getPermission(), credentials)) {
+                    return false;
+                }
+                size--;
+                compact(path);
+                if (size == 0) {
+                    retired = true;
+                }
+                return retired;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Grant findLongestMatch(final String path, final Permission permission) {
+            final boolean upgrade = Permission.READ.equals(permission) || Permission.WRITE.equals(permission);
+            final int minimumDepth = path.startsWith(S3_SCHEME) ? S3_SCHEME.length() + 1 : 1;
+            Grant prefixMatch = null;
+            Grant prefixUpgradeMatch = null;
+            Grant wildcardMatch = null;
+            Grant wildcardUpgradeMatch = null;
+
+            lock.readLock().lock();
+            try {
+                Node node = root;
+                int depth = 0;
+                while (true) {
+                    if (depth >= minimumDepth) {
+                        // Every node on the descent is a prefix of the path, so its wildcard grants match.
+                        wildcardMatch = node.wildcard(permission, wildcardMatch);
+                        if (upgrade) {
+                            wildcardUpgradeMatch = node.wildcard(Permission.READWRITE, wildcardUpgradeMatch);
+                        }
+                        // Prefix grants match only at a segment boundary.
+                        if (depth == path.length() || path.charAt(depth) == DELIMITER) {
+                            prefixMatch = node.prefix(permission, prefixMatch);
+                            if (upgrade) {
+                                prefixUpgradeMatch = node.prefix(Permission.READWRITE, prefixUpgradeMatch);
+                            }
+                        }
+                    }
+                    if (depth == path.length()) {
+                        break;
+                    }
+                    final Node child = node.child(path.charAt(depth));
+                    if (child == null || !path.regionMatches(depth, child.label, 0, child.label.length())) {
+                        break;
+                    }
+                    depth += child.label.length();
+                    node = child;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            if (prefixMatch != null) {
+                return prefixMatch;
+            }
+            if (prefixUpgradeMatch != null) {
+                return prefixUpgradeMatch;
+            }
+            return wildcardMatch != null ? wildcardMatch : wildcardUpgradeMatch;
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Prunes empty leaves along the removed path and merges pass-through nodes back into their single
+         * child, so the trie stays compressed as grants are evicted.
+         */
+        private void compact(final List<Node> path) {
+            for (int i = path.size() - 1; i > 0; i--) {
+                final Node node = path.get(i);
+                final Node parent = path.get(i - 1);
+                if (node.isEmpty() && node.childCount() == 0) {
+                    parent.removeChild(node.label.charAt(0));
+                } else if (node.isEmpty() && node.childCount() == 1) {
+                    node.absorbOnlyChild();
+                    return;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static boolean isWildcard(final String target) {
+            return !target.isEmpty() && target.charAt(target.length() - 1) == WILDCARD;
+        }
+
+        private static int commonPrefixLength(final String target, final int offset, final int length,
+                                              final String label) {
+            final int max = Math.min(length - offset, label.length());
+            int i = 0;
+            while (i < max && target.charAt(offset + i) == label.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * A trie node. Children are kept in arrays sorted by the first character of their edge label.
+     */
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private String label;
+        private char[] childKeys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private Grant[] prefixGrants;
+        private Grant[] wildcardGrants;
+
+        Node(final String label) {
+            this.label = label;
+        }
+
+        Node child(final char c) {
+            final int index = Arrays.binarySearch(childKeys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        int childCount() {
+            return children.length;
+        }
+
+        void putChild(final char c, final Node child) {
+            final int index = Arrays.binarySearch(childKeys, c);
+            if (index >= 0) {
+                children[index] = child;
+                return;
+            }
+            final int insertAt = -index - 1;
+            final char[] keys = new char[childKeys.length + 1];
+            final Node[] nodes = new Node[children.length + 1];
+            System.arraycopy(childKeys, 0, keys, 0, insertAt);
+            System.arraycopy(children, 0, nodes, 0, insertAt);
+            keys[insertAt] = c;
+            nodes[insertAt] = child;
+            System.arraycopy(childKeys, insertAt, keys, insertAt + 1, childKeys.length - insertAt);
+            System.arraycopy(children, insertAt, nodes, insertAt + 1, children.length - insertAt);
+            childKeys = keys;
+            children = nodes;
+        }
+
+        void removeChild(final char c) {
+            final int index = Arrays.binarySearch(childKeys, c);
+            if (index < 0) {
+                return;
+            }
+            final char[] keys = new char[childKeys.length - 1];
+            final Node[] nodes = new Node[children.length - 1];
+            System.arraycopy(childKeys, 0, keys, 0, index);
+            System.arraycopy(children, 0, nodes, 0, index);
+            System.arraycopy(childKeys, index + 1, keys, index, keys.length - index);
+            System.arraycopy(children, index + 1, nodes, index, nodes.length - index);
+            childKeys = keys;
+            children = nodes;
+        }
+
+        /**
+         * Merges the only child into this node, concatenating the edge labels. Only valid when this node
+         * holds no grants.
+         */
+        void absorbOnlyChild() {
+            final Node child = children[0];
+            label = label + child.label;
+            childKeys = child.childKeys;
+            children = child.children;
+            prefixGrants = child.prefixGrants;
+            wildcardGrants = child.wildcardGrants;
+        }
+
+        Grant prefix(final Permission permission, final Grant current) {
+            final Grant grant = prefixGrants == null ? null : prefixGrants[permission.ordinal()];
+            return grant != null ? grant : current;
+        }
+
+        Grant wildcard(final Permission permission, final Grant current) {
+            final Grant grant = wildcardGrants == null ? null : wildcardGrants[permission.ordinal()];
+            return grant != null ? grant : current;
+        }
+
+        /**
+         * @return true if a new grant was recorded, false if an existing one was replaced
+         */
+        boolean set(final boolean wildcard, final Permission permission, final Grant grant) {
+            if (wildcard) {
+                if (wildcardGrants == null) {
+                    wildcardGrants = new Grant[PERMISSION_COUNT];
+                }
+                final boolean added = wildcardGrants[permission.ordinal()] == null;
+                wildcardGrants[permission.ordinal()] = grant;
+                return added;
+            }
+            if (prefixGrants == null) {
+                prefixGrants = new Grant[PERMISSION_COUNT];
+            }
+            final boolean added = prefixGrants[permission.ordinal()] == null;
+            prefixGrants[permission.ordinal()] = grant;
+            return added;
+        }
+
+        /**
+         * @return true if the grant was present with the given credentials and has been cleared
+         */
+        boolean clear(final boolean wildcard, final Permission permission, final AwsCredentials credentials) {
+            final Grant[] grants = wildcard ? wildcardGrants : prefixGrants;
+            if (grants == null || grants[permission.ordinal()] == null
+                    || grants[permission.ordinal()].getCredentials() != credentials) {
+                return false;
+            }
+            grants[permission.ordinal()] = null;
+            for (Grant grant : grants) {
+                if (grant != null) {
+                    return true;
+                }
+            }
+            if (wildcard) {
+                wildcardGrants = null;
+            } else {
+                prefixGrants = null;
+            }
+            return true;
+        }
+
+        boolean isEmpty() {
+            return prefixGrants == null && wildcardGrants == null;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.Scheduler;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+
+/**
+ * Keeps the grants of an {@link AccessGrantsCache} within its capacity: the cache size or, with a
+ * {@link MemoryBudget}, the limit the budget leaves the cache, which the grace tier draws from too.
+ *
+ * <p>Without a {@link PrincipalQuota} the grants are held in one Caffeine cache. With one, each principal's grants
+ * are held in a Caffeine cache of their own and the capacity is divided between them after each write. Each write
+ * also sweeps one other partition in turn, so the partitions of principals that have gone idle are dropped once
+ * their grants expire, with or without an expiry scheduler. The
+ * {@link AccessGrantsCache} builds each Caffeine cache from the bounded builder it is handed, adding the expiry and
+ * the listeners that keep its grant index in step.
+ */
+final class GrantPartitions {
+    private static final long IDLE_PARTITION_CLEANUP_SECONDS = 60;
+    // Caffeine node, key, grant index node and credentials object of one entry, roughly.
+    private static final long GRANT_ENTRY_BYTES = 200;
+
+    private final Partition sharedPartition; // null when partitioned by principal
+    private final ConcurrentMap<PrincipalFingerprint, Partition> partitions; // null unless partitioned by principal
+    private final Object balanceLock = new Object();
+    private final Set<Partition> overGuarantee = new HashSet<>(); // guarded by balanceLock
+    private long partitionsUsed; // guarded by balanceLock
+    private boolean idleCleanupScheduled; // guarded by balanceLock
+    private Iterator<Map.Entry<PrincipalFingerprint, Partition>> sweep; // guarded by balanceLock
+    private final int cacheSize;
+    private final MemoryBudget memoryBudget;
+    private final PrincipalQuota principalQuota;
+    private final Scheduler expiryScheduler;
+    private final MetricsListener metricsListener;
+    private final GraceTier graceTier; // null unless stale-while-revalidate is enabled
+    private final Function<Caffeine<Object, Object>, Cache<CacheKey, AwsCredentials>> cacheFactory;
+
+    /**
+     * @param graceTier the grace tier drawing from the same capacity, or null
+     * @param cacheFactory builds a partition's Caffeine cache from a builder that already carries its bound
+     */
+    GrantPartitions(
+            final int cacheSize,
+            final MemoryBudget memoryBudget,
+            final PrincipalQuota principalQuota,
+            final Scheduler expiryScheduler,
+            final MetricsListener metricsListener,
+            final GraceTier graceTier,
+            final Function<Caffeine<Object, Object>, Cache<CacheKey, AwsCredentials>> cacheFactory) {
+        this.cacheSize = cacheSize;
+        this.memoryBudget = memoryBudget;
+        this.principalQuota = principalQuota;
+        this.expiryScheduler = expiryScheduler;
+        this.metricsListener = metricsListener;
+        this.graceTier = graceTier;
+        this.cacheFactory = cacheFactory;
+        if (!principalQuota.isPartitioned()) {
+            this.sharedPartition = newPartition(initialCapacity(), null);
+            this.partitions = null;
+        } else {
+            this.sharedPartition = null;
+            this.partitions = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * One Caffeine cache of grants: the whole cache, or one principal's partition of it.
+     */
+    static final class Partition {
+        final Cache<CacheKey, AwsCredentials> cache;
+        final Policy.VarExpiration<CacheKey, AwsCredentials> expirationPolicy;
+        private final Policy.Eviction<CacheKey, AwsCredentials> evictionPolicy;
+        private final String principal; // metrics label, null for the shared partition
+        private long trackedOccupancy; // guarded by balanceLock
+
+        Partition(final Cache<CacheKey, AwsCredentials> cache, final String principal) {
+            this.cache = cache;
+            this.principal = principal;
+            this.expirationPolicy = cache.policy().expireVariably().orElseThrow(IllegalStateException::new);
+            this.evictionPolicy = cache.policy().eviction().orElseThrow(IllegalStateException::new);
+        }
+
+        /**
+         * Returns the grants held, or their estimated bytes with a memory budget.
+         */
+        long occupancy() {
+            final OptionalLong weightedSize = evictionPolicy.weightedSize();
+            return weightedSize.isPresent() ? weightedSize.getAsLong() : cache.estimatedSize();
+        }
+
+        /**
+         * Sets the most the partition may hold; Caffeine evicts down to a lowered maximum at once.
+         */
+        void resize(final long maximum) {
+            if (evictionPolicy.getMaximum() != maximum) {
+                evictionPolicy.setMaximum(maximum);
+            }
+        }
+    }
+
+    /**
+     * Returns a builder bounded like the grants of a cache of {@code cacheSize} entries drawing from
+     * {@code memoryBudget}, for a tier that shares their capacity.
+     */
+    static Caffeine<Object, Object> newBoundedBuilder(final int cacheSize, final MemoryBudget memoryBudget) {
+        return memoryBudget == MemoryBudget.UNLIMITED
+            ? newBoundedBuilder(cacheSize, false)
+            : newBoundedBuilder(memoryBudget.limitBytes(MetricsListener.CacheLayer.ACCESS_GRANTS), true);
+    }
+
+    /**
+     * Bounds a cache by {@code maximum} entries or, when weighted, by the estimated bytes of its entries.
+     */
+    private static Caffeine<Object, Object> newBoundedBuilder(final long maximum, final boolean weighted) {
+        final Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (!weighted) {
+            return builder.maximumSize(maximum);
+        }
+        builder.maximumWeight(maximum).weigher(GrantPartitions::weigh);
+        return builder;
+    }
+
+    private boolean isWeighted() {
+        return memoryBudget != MemoryBudget.UNLIMITED;
+    }
+
+    /**
+     * Returns the capacity a new cache starts with: the cache size or, with a memory budget, everything the budget
+     * could give this cache. It follows the budget after each write.
+     */
+    private long initialCapacity() {
+        return isWeighted() ? memoryBudget.limitBytes(MetricsListener.CacheLayer.ACCESS_GRANTS) : cacheSize;
+    }
+
+    /**
+     * Estimates the heap retained by one entry: its key and path, the cache and index nodes that hold it, and its
+     * credential strings. Credentials shared by a multi-location group are counted in full by every member, which
+     * over- rather than under-estimates.
+     */
+    static int weigh(final CacheKey grantKey, final AwsCredentials credentials) {
+        // The path is held by the key and again, split into edges, by the grant index.
+        long bytes = GRANT_ENTRY_BYTES + 2 * MemoryBudget.stringBytes(grantKey.getS3Prefix())
+            + MemoryBudget.stringBytes(credentials.accessKeyId()) + MemoryBudget.stringBytes(credentials.secretAccessKey());
+        if (credentials instanceof AwsSessionCredentials) {
+            bytes += MemoryBudget.stringBytes(((AwsSessionCredentials) credentials).sessionToken());
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    /**
+     * Keeps the grants within their capacity after a write to {@code written}. With a memory budget, reports the
+     * cache's weight to the budget and takes up the limit the budget now leaves it, so room released by the other
+     * caches is used and room they have taken is given back; the grace tier draws from the same limit. When
+     * partitioned by principal, divides the capacity between the partitions.
+     */
+    private void syncCapacity(final Partition written) {
+        if (!isWeighted() && partitions == null) {
+            return;
+        }
+        // Applies the pending writes, and the evictions they cause, so the occupancy is current.
+        written.cache.cleanUp();
+        if (partitions == null) {
+            resizeCapacity(() -> sharedPartition.resize(capacity()), sharedPartition::occupancy);
+            return;
+        }
+        synchronized (balanceLock) {
+            measure(written);
+            sweepNextPartition(written);
+            resizeCapacity(() -> rebalancePartitions(written, capacity()), () -> partitionsUsed);
+            if (!idleCleanupScheduled) {
+                idleCleanupScheduled = true;
+                expiryScheduler.schedule(Runnable::run, this::cleanUpIdlePartitions, IDLE_PARTITION_CLEANUP_SECONDS,
+                    TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs {@code resize}, which sizes the grants to {@link #capacity()}, between reports of their weight to the
+     * memory budget; {@code grantsOccupancy} gives the weight of the grants outside the grace tier.
+     */
+    private void resizeCapacity(final Runnable resize, final LongSupplier grantsOccupancy) {
+        if (isWeighted()) {
+            memoryBudget.update(MetricsListener.CacheLayer.ACCESS_GRANTS, graceOccupancy() + grantsOccupancy.getAsLong());
+        }
+        resize.run();
+        if (isWeighted()) {
+            final long graceOccupancy = graceOccupancy();
+            if (graceTier != null) {
+                graceTier.resize(capacity() + graceOccupancy);
+            }
+            memoryBudget.update(MetricsListener.CacheLayer.ACCESS_GRANTS, graceOccupancy + grantsOccupancy.getAsLong());
+        }
+    }
+
+    /**
+     * Returns the capacity of the grants outside the grace tier: the cache size or, with a memory budget, the limit
+     * the budget leaves the cache less what the grace tier holds.
+     */
+    private long capacity() {
+        return isWeighted()
+            ? Math.max(0, memoryBudget.limitBytes(MetricsListener.CacheLayer.ACCESS_GRANTS) - graceOccupancy())
+            : cacheSize;
+    }
+
+    /**
+     * Divides {@code capacity} between the principals' partitions. Each active principal is guaranteed its share and
+     * may grow into the capacity the others leave unused, up to its maximum share. The partition just written takes
+     * up its limit first; then, while the partitions together exceed the capacity, those above their limit are
+     * trimmed, which is how a principal gets its guaranteed share back from the principals that grew into it.
+     *
+     * <p>The partitions' total occupancy and those above their guaranteed share are tracked as partitions are written
+     * and trimmed, so a write measures only its own partition and the few above their share, not every principal's.
+     * Untouched partitions only shrink as their grants expire, so the tracked total can only over-estimate; if it is
+     * still over the capacity after trimming, every partition is measured again and trimmed once more. Must be called
+     * holding the balance lock.
+     */
+    private void rebalancePartitions(final Partition written, final long capacity) {
+        final int count = Math.max(1, partitions.size());
+        final long guaranteed = principalQuota.guaranteedShare(capacity, count);
+        classify(written, guaranteed);
+        for (final Partition partition : new ArrayList<>(overGuarantee)) {
+            if (partition != written) {
+                measure(partition);
+                classify(partition, guaranteed);
+            }
+        }
+        trimPartitions(written, capacity, count);
+        if (partitionsUsed > capacity) {
+            remeasurePartitions(guaranteed);
+            trimPartitions(written, capacity, count);
+        }
+    }
+
+    /**
+     * Resizes {@code written} to its limit, then trims the partitions above their limit while the partitions together
+     * exceed {@code capacity}. Only partitions above their guaranteed share can be above their limit.
+     */
+    private void trimPartitions(final Partition written, final long capacity, final int count) {
+        final long guaranteed = principalQuota.guaranteedShare(capacity, count);
+        final long maximum = principalQuota.maxShare(capacity);
+        final long pool = capacity - guaranteed * count;
+        long sharedUsed = 0;
+        for (final Partition partition : overGuarantee) {
+            sharedUsed += partition.trackedOccupancy - guaranteed;
+        }
+        sharedUsed = resizePartition(written, guaranteed, maximum, pool, sharedUsed);
+        for (final Partition partition : new ArrayList<>(overGuarantee)) {
+            if (partitionsUsed <= capacity) {
+                return;
+            }
+            final long share = partition.trackedOccupancy - guaranteed;
+            if (partition != written && partition.trackedOccupancy > limit(guaranteed, maximum, pool, sharedUsed, share)) {
+                sharedUsed = resizePartition(partition, guaranteed, maximum, pool, sharedUsed);
+            }
+        }
+    }
+
+    /**
+     * Resizes a partition to its limit and returns the pool's new use.
+     */
+    private long resizePartition(final Partition partition, final long guaranteed, final long maximum, final long pool,
+                                 final long sharedUsed) {
+        final long share = Math.max(0, partition.trackedOccupancy - guaranteed);
+        final long limit = limit(guaranteed, maximum, pool, sharedUsed, share);
+        partition.resize(limit);
+        measure(partition);
+        classify(partition, guaranteed);
+        metricsListener.onPartitionOccupancy(partition.principal, partition.trackedOccupancy, limit);
+        return sharedUsed - share + Math.max(0, partition.trackedOccupancy - guaranteed);
+    }
+
+    /**
+     * Returns the most a partition using {@code share} of the pool may hold: its guaranteed share and what the others
+     * leave of the pool, up to the maximum share.
+     */
+    private static long limit(final long guaranteed, final long maximum, final long pool, final long sharedUsed,
+                              final long share) {
+        return Math.min(maximum, guaranteed + Math.max(0, pool - (sharedUsed - share)));
+    }
+
+    /**
+     * Updates the tracked occupancy of a partition and the partitions' total. Must be called holding the balance
+     * lock.
+     */
+    private void measure(final Partition partition) {
+        final long occupancy = partition.occupancy();
+        partitionsUsed += occupancy - partition.trackedOccupancy;
+        partition.trackedOccupancy = occupancy;
+    }
+
+    /**
+     * Tracks whether a partition holds more than its guaranteed share. Must be called holding the balance lock.
+     */
+    private void classify(final Partition partition, final long guaranteed) {
+        if (partition.trackedOccupancy > guaranteed) {
+            overGuarantee.add(partition);
+        } else {
+            overGuarantee.remove(partition);
+        }
+    }
+
+    /**
+     * Measures every partition again, after removing its expired grants, and drops those left empty. Must be called
+     * holding the balance lock.
+     */
+    private void remeasurePartitions(final long guaranteed) {
+        for (final Map.Entry<PrincipalFingerprint, Partition> entry : partitions.entrySet()) {
+            remeasurePartition(entry.getKey(), entry.getValue(), guaranteed);
+        }
+    }
+
+    /**
+     * Measures a partition again, after removing its expired grants, and drops it if it is left empty. Must be called
+     * holding the balance lock.
+     */
+    private void remeasurePartition(final PrincipalFingerprint principal, final Partition partition,
+                                    final long guaranteed) {
+        // Expired grants of idle principals are otherwise only removed when those principals are next active.
+        partition.cache.cleanUp();
+        measure(partition);
+        classify(partition, guaranteed);
+        if (partition.trackedOccupancy == 0 && partitions.computeIfPresent(principal,
+                (key, idle) -> idle == partition && idle.cache.estimatedSize() == 0 ? null : idle) == null) {
+            overGuarantee.remove(partition);
+        }
+    }
+
+    /**
+     * Measures the next partition in turn after a write to {@code written}, dropping it if its grants have all
+     * expired. A sweep through every partition takes as many writes as there are partitions, so each write measures
+     * one more partition at most. Must be called holding the balance lock.
+     */
+    private void sweepNextPartition(final Partition written) {
+        if (sweep == null || !sweep.hasNext()) {
+            sweep = partitions.entrySet().iterator();
+        }
+        if (sweep.hasNext()) {
+            final Map.Entry<PrincipalFingerprint, Partition> entry = sweep.next();
+            if (entry.getValue() != written) {
+                remeasurePartition(entry.getKey(), entry.getValue(),
+                    principalQuota.guaranteedShare(capacity(), Math.max(1, partitions.size())));
+            }
+        }
+    }
+
+    /**
+     * Runs on the expiry scheduler a while after a write, so expired grants are removed, and their empty partitions
+     * dropped, even once no principal writes any more.
+     */
+    private void cleanUpIdlePartitions() {
+        synchronized (balanceLock) {
+            idleCleanupScheduled = false;
+            final long capacity = capacity();
+            remeasurePartitions(principalQuota.guaranteedShare(capacity, Math.max(1, partitions.size())));
+            if (isWeighted()) {
+                memoryBudget.update(MetricsListener.CacheLayer.ACCESS_GRANTS, graceOccupancy() + partitionsUsed);
+            }
+        }
+    }
+
+    private long graceOccupancy() {
+        return graceTier == null ? 0 : graceTier.occupancy();
+    }
+
+    /**
+     * Returns the number of principals' partitions, or 1 when the cache is not partitioned, for tests.
+     */
+    int partitionCount() {
+        return partitions == null ? 1 : partitions.size();
+    }
+
+    /**
+     * Returns the partition holding the grants of {@code cacheKey}'s principal, or null if it holds none.
+     */
+    Partition partition(final CacheKey cacheKey) {
+        return partitions == null ? sharedPartition : partitions.get(cacheKey.getPrincipal());
+    }
+
+    private Partition newPartition(final long maximum, final String principal) {
+        return new Partition(cacheFactory.apply(newBoundedBuilder(maximum, isWeighted())), principal);
+    }
+
+    /**
+     * Runs {@code writer} on the partition of {@code cacheKey}'s principal, creating it if needed, then keeps the
+     * grants within their capacity.
+     */
+    void write(final CacheKey cacheKey, final Consumer<Partition> writer) {
+        final Partition written;
+        if (partitions == null) {
+            written = sharedPartition;
+            writer.accept(written);
+        } else {
+            // Writing under the map's lock keeps an idle partition from being dropped while grants go into it.
+            written = partitions.compute(cacheKey.getPrincipal(), (principal, partition) -> {
+                final Partition target = partition != null ? partition
+                    : newPartition(principalQuota.maxShare(initialCapacity()), principal.toString());
+                writer.accept(target);
+                return target;
+            });
+        }
+        syncCapacity(written);
+    }
+
+    /**
+     * Reports a lookup under the label of the principal's partition, which is formatted once when the partition is
+     * created rather than on every lookup. A principal without a partition holds no grants and is labelled afresh.
+     */
+    void reportLookup(final CacheKey cacheKey, final boolean hit) {
+        if (partitions == null || metricsListener == MetricsListener.NONE) {
+            return;
+        }
+        final Partition partition = partitions.get(cacheKey.getPrincipal());
+        metricsListener.onPartitionLookup(partition != null ? partition.principal : cacheKey.getPrincipal().toString(),
+            hit);
+    }
+}
@@ -0,0 +1,188 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One memory budget, in bytes, shared by the plugin's caches.
+ *
+ * <p>Each cache, identified by its {@link MetricsListener.CacheLayer}, may always use up to its floor. Bytes above
+ * the floors come from a shared pool, the budget minus the sum of the floors, on a first-come basis. So a cache that
+ * is busy can grow into the room the others are not using, and cannot squeeze a quiet one below its floor.
+ *
+ * <p>Entries are weighed by an estimate of the heap they retain, including their S3 paths and credential strings,
+ * rather than counted. {@link AccessGrantsCache} evicts its least valuable grants to stay within its limit;
+ * {@link NegativeIndex} stops recording new failures for a cache that has reached its limit, as it does when a cache
+ * reaches its entry count. The bytes used by each cache and in total can be compared to the budget at any time.
+ * Accounting is lock-free and may briefly lag concurrent writes and evictions.
+ */
+public final class MemoryBudget {
+
+    // Rough per-object overheads on a 64-bit JVM with compressed references.
+    private static final long STRING_BYTES = 40;
+    private static final long BYTES_PER_CHAR = 2;
+
+    private static final MetricsListener.CacheLayer[] LAYERS = MetricsListener.CacheLayer.values();
+
+    /**
+     * A budget that never limits a cache. Its usage is not tracked.
+     */
+    public static final MemoryBudget UNLIMITED = new MemoryBudget(Long.MAX_VALUE);
+
+    private final long budgetBytes;
+    private final long[] floorBytes = new long[LAYERS.length];
+    private final long sharedPoolBytes;
+    private final AtomicLongArray usedBytes = new AtomicLongArray(LAYERS.length);
+    private final AtomicLong sharedUsedBytes = new AtomicLong();
+
+    /**
+     * Creates a budget of {@code budgetBytes} with no floors: every cache draws from the whole budget.
+     */
+    public MemoryBudget(final long budgetBytes) {
+        this(budgetBytes, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a budget of {@code budgetBytes} in which each cache in {@code floorBytes} is guaranteed its floor.
+     *
+     * @throws IllegalArgumentException if the budget or a floor is negative, or the floors exceed the budget
+     */
+    public MemoryBudget(final long budgetBytes, final Map<MetricsListener.CacheLayer, Long> floorBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget should be positive");
+        }
+        final Map<MetricsListener.CacheLayer, Long> floors = floorBytes.isEmpty()
+            ? Collections.emptyMap() : new EnumMap<>(floorBytes);
+        long totalFloorBytes = 0;
+        for (Map.Entry<MetricsListener.CacheLayer, Long> floor : floors.entrySet()) {
+            if (floor.getValue() < 0) {
+                throw new IllegalArgumentException("Memory floor should be non-negative for " + floor.getKey());
+            }
+            this.floorBytes[floor.getKey().ordinal()] = floor.getValue();
+            totalFloorBytes += floor.getValue();
+        }
+        if (totalFloorBytes > budgetBytes) {
+            throw new IllegalArgumentException("Memory floors should not exceed the budget of " + budgetBytes + " bytes");
+        }
+        this.budgetBytes = budgetBytes;
+        this.sharedPoolBytes = budgetBytes - totalFloorBytes;
+    }
+
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    public long floorBytes(final MetricsListener.CacheLayer cache) {
+        return floorBytes[cache.ordinal()];
+    }
+
+    /**
+     * Returns the bytes currently used by {@code cache}.
+     */
+    public long usedBytes(final MetricsListener.CacheLayer cache) {
+        return usedBytes.get(cache.ordinal());
+    }
+
+    /**
+     * Returns the bytes currently used by every cache together.
+     */
+    public long usedBytes() {
+        long total = 0;
+        for (int i = 0; i < LAYERS.length; i++) {
+            total += usedBytes.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns how many bytes {@code cache} may use: its floor, plus the part of the shared pool the other caches
+     * are not using.
+     */
+    public long limitBytes(final MetricsListener.CacheLayer cache) {
+        if (this == UNLIMITED) {
+            return Long.MAX_VALUE;
+        }
+        final int layer = cache.ordinal();
+        final long othersSharedBytes = sharedUsedBytes.get() - sharedShare(layer, usedBytes.get(layer));
+        return floorBytes[layer] + Math.max(0, sharedPoolBytes - othersSharedBytes);
+    }
+
+    /**
+     * Charges {@code bytes} to {@code cache} if it stays within its limit.
+     *
+     * @return true if the bytes were charged
+     */
+    boolean tryCharge(final MetricsListener.CacheLayer cache, final long bytes) {
+        if (this == UNLIMITED) {
+            return true;
+        }
+        if (charge(cache.ordinal(), bytes) <= sharedPoolBytes) {
+            return true;
+        }
+        release(cache, bytes);
+        return false;
+    }
+
+    /**
+     * Charges {@code bytes} to {@code cache} even if that takes it past its limit.
+     */
+    void charge(final MetricsListener.CacheLayer cache, final long bytes) {
+        if (this != UNLIMITED) {
+            charge(cache.ordinal(), bytes);
+        }
+    }
+
+    void release(final MetricsListener.CacheLayer cache, final long bytes) {
+        if (this != UNLIMITED) {
+            charge(cache.ordinal(), -bytes);
+        }
+    }
+
+    /**
+     * Records that {@code cache} now uses {@code bytes} in total, for caches that weigh their own entries.
+     */
+    void update(final MetricsListener.CacheLayer cache, final long bytes) {
+        if (this == UNLIMITED) {
+            return;
+        }
+        final int layer = cache.ordinal();
+        final long before = usedBytes.getAndSet(layer, bytes);
+        sharedUsedBytes.addAndGet(sharedShare(layer, bytes) - sharedShare(layer, before));
+    }
+
+    /**
+     * Adds {@code bytes}, which may be negative, to the usage of {@code layer}.
+     *
+     * @return the bytes of the shared pool in use afterwards
+     */
+    private long charge(final int layer, final long bytes) {
+        final long after = usedBytes.addAndGet(layer, bytes);
+        // Each update moves the shared usage by the change in this layer's share, so concurrent updates add up.
+        return sharedUsedBytes.addAndGet(sharedShare(layer, after) - sharedShare(layer, after - bytes));
+    }
+
+    private long sharedShare(final int layer, final long used) {
+        return Math.max(0, used - floorBytes[layer]);
+    }
+
+    /**
+     * Estimates the heap retained by a string of {@code value}, or 0 for null.
+     */
+    static long stringBytes(final String value) {
+        return value == null ? 0 : STRING_BYTES + BYTES_PER_CHAR * value.length();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("MemoryBudget(used=").append(usedBytes())
+            .append(", budget=").append(budgetBytes);
+        for (MetricsListener.CacheLayer layer : LAYERS) {
+            builder.append(", ").append(layer).append('=').append(usedBytes(layer))
+                .append('/').append(floorBytes(layer));
+        }
+        return builder.append(')').toString();
+    }
+}
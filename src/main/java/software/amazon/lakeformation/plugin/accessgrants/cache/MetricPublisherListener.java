@@ -0,0 +1,375 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import software.amazon.awssdk.metrics.MetricCategory;
+import software.amazon.awssdk.metrics.MetricCollector;
+import software.amazon.awssdk.metrics.MetricLevel;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+import software.amazon.awssdk.utils.ThreadFactoryBuilder;
+
+/**
+ * Publishes the plugin's metrics through an SDK {@link MetricPublisher}, such as the CloudWatch metric publisher.
+ *
+ * <p>Events are aggregated as they happen, into counters and latency histograms that a request thread updates
+ * without allocating, and published together once per interval and when the listener is closed. Each publish is one
+ * {@code MetricCollection} named {@value #METRICS}, holding a child collection for every count that changed in the
+ * interval:
+ * <ul>
+ *   <li>{@value #CACHE_LOOKUP}: {@link #CACHE}, {@link #CACHE_RESULT}, the {@link MetricsListener.HitType} of a hit
+ *       or {@code MISS}, and {@link #COUNT};</li>
+ *   <li>{@value #CACHE_EVICTION}: {@link #CACHE} and {@link #COUNT};</li>
+ *   <li>{@value #LAKE_FORMATION_CALL}: {@link #LAKE_FORMATION_ERROR_CODE}, absent for calls that succeeded, and
+ *       {@link #COUNT};</li>
+ *   <li>{@value #LAKE_FORMATION_CALL_LATENCY}: {@link #LATENCY_BUCKET_FLOOR} and {@link #COUNT}, the Lake Formation
+ *       calls that took at least the floor and less than the next bucket's;</li>
+ *   <li>{@value #CIRCUIT_BREAKER_TRANSITION}: {@link #CIRCUIT_BREAKER_FROM}, {@link #CIRCUIT_BREAKER_TO} and
+ *       {@link #COUNT};</li>
+ *   <li>{@value #CIRCUIT_BREAKER_REJECTION}: {@link #COUNT}, the Lake Formation calls the circuit breaker rejected;</li>
+ *   <li>{@value #FALLBACK}: {@link #FALLBACK_REASON} and {@link #COUNT};</li>
+ *   <li>{@value #RESOLVE_IDENTITY_LATENCY}: {@link #LATENCY_BUCKET_FLOOR} and {@link #COUNT}, for
+ *       {@code resolveIdentity};</li>
+ *   <li>{@value #PARTITION_LOOKUP}: {@link #PRINCIPAL}, {@link #CACHE_RESULT}, {@code HIT} or {@code MISS}, and
+ *       {@link #COUNT};</li>
+ *   <li>{@value #PARTITION_OCCUPANCY}: {@link #PRINCIPAL} and the last reported {@link #PARTITION_OCCUPANCY_VALUE}
+ *       and {@link #PARTITION_LIMIT}.</li>
+ * </ul>
+ * Histogram buckets double in width from one millisecond, so a latency distribution costs a fixed number of counters.
+ * Publishing runs on a daemon thread shared by every listener. The publisher is owned by the caller and is not closed
+ * by the plugin.
+ */
+public final class MetricPublisherListener implements MetricsListener, SdkAutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MetricPublisherListener.class.getName());
+
+    public static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 60000;
+
+    public static final String METRICS = "LakeFormationAccessGrants";
+    public static final String CACHE_LOOKUP = "LakeFormationAccessGrantsCacheLookup";
+    public static final String CACHE_EVICTION = "LakeFormationAccessGrantsCacheEviction";
+    public static final String LAKE_FORMATION_CALL = "LakeFormationAccessGrantsLakeFormationCall";
+    public static final String LAKE_FORMATION_CALL_LATENCY = "LakeFormationAccessGrantsLakeFormationCallLatency";
+    public static final String CIRCUIT_BREAKER_TRANSITION = "LakeFormationAccessGrantsCircuitBreakerTransition";
+    public static final String CIRCUIT_BREAKER_REJECTION = "LakeFormationAccessGrantsCircuitBreakerRejection";
+    public static final String FALLBACK = "LakeFormationAccessGrantsFallback";
+    public static final String RESOLVE_IDENTITY_LATENCY = "LakeFormationAccessGrantsResolveIdentityLatency";
+    public static final String PARTITION_LOOKUP = "LakeFormationAccessGrantsPartitionLookup";
+    public static final String PARTITION_OCCUPANCY = "LakeFormationAccessGrantsPartitionOccupancy";
+
+    private static final String HIT = "HIT";
+    private static final String MISS = "MISS";
+    private static final String SUCCEEDED = "";
+    // Bucket 0 holds latencies under a millisecond, bucket i those of at least 2^(i-1) ms; the last one is open-ended.
+    private static final int LATENCY_BUCKETS = 18;
+    private static final long PUBLISHER_KEEP_ALIVE_SECONDS = 60;
+    private static final ScheduledThreadPoolExecutor PUBLISHER = newPublisher();
+
+    /** The {@link MetricsListener.CacheLayer} of a lookup or eviction. */
+    public static final SdkMetric<String> CACHE = SdkMetric.create(
+        "LakeFormationAccessGrantsCache", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The {@link MetricsListener.HitType} of a cache hit, or {@code MISS}. */
+    public static final SdkMetric<String> CACHE_RESULT = SdkMetric.create(
+        "LakeFormationAccessGrantsCacheResult", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The number of events of a child collection's kind since the previous publish. */
+    public static final SdkMetric<Long> COUNT = SdkMetric.create(
+        "LakeFormationAccessGrantsCount", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The error code of failed Lake Formation calls. */
+    public static final SdkMetric<String> LAKE_FORMATION_ERROR_CODE = SdkMetric.create(
+        "LakeFormationAccessGrantsLakeFormationErrorCode", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The shortest latency counted by a histogram bucket. */
+    public static final SdkMetric<Duration> LATENCY_BUCKET_FLOOR = SdkMetric.create(
+        "LakeFormationAccessGrantsLatencyBucketFloor", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The {@link CircuitBreaker.State} the circuit breaker moved from. */
+    public static final SdkMetric<String> CIRCUIT_BREAKER_FROM = SdkMetric.create(
+        "LakeFormationAccessGrantsCircuitBreakerFrom", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The {@link CircuitBreaker.State} the circuit breaker moved to. */
+    public static final SdkMetric<String> CIRCUIT_BREAKER_TO = SdkMetric.create(
+        "LakeFormationAccessGrantsCircuitBreakerTo", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The {@link MetricsListener.FallbackReason} of requests resolved by the fallback provider. */
+    public static final SdkMetric<String> FALLBACK_REASON = SdkMetric.create(
+        "LakeFormationAccessGrantsFallbackReason", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The label of the principal a partition lookup or occupancy belongs to. */
+    public static final SdkMetric<String> PRINCIPAL = SdkMetric.create(
+        "LakeFormationAccessGrantsPrincipal", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** Grants held for a principal, or their estimated bytes with a memory budget. */
+    public static final SdkMetric<Long> PARTITION_OCCUPANCY_VALUE = SdkMetric.create(
+        "LakeFormationAccessGrantsPartitionOccupancy", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    /** The most a principal's partition may hold at present. */
+    public static final SdkMetric<Long> PARTITION_LIMIT = SdkMetric.create(
+        "LakeFormationAccessGrantsPartitionLimit", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    private final MetricPublisher publisher;
+    private final LongAdder[][] hits = counters(CacheLayer.values().length, HitType.values().length);
+    private final LongAdder[] misses = counters(CacheLayer.values().length);
+    private final LongAdder[] evictions = counters(CacheLayer.values().length);
+    private final LongAdder[][] circuitBreakerTransitions =
+        counters(CircuitBreaker.State.values().length, CircuitBreaker.State.values().length);
+    private final LongAdder circuitBreakerRejections = new LongAdder();
+    private final LongAdder[] fallbacks = counters(FallbackReason.values().length);
+    private final ConcurrentMap<String, LongAdder> lakeFormationCalls = new ConcurrentHashMap<>();
+    private final LongAdder[] lakeFormationLatency = counters(LATENCY_BUCKETS);
+    private final LongAdder[] resolveIdentityLatency = counters(LATENCY_BUCKETS);
+    private final ConcurrentMap<String, LongAdder[]> partitionLookups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PartitionGauge> partitionOccupancy = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> publishing;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public MetricPublisherListener(final MetricPublisher publisher) {
+        this(publisher, DEFAULT_PUBLISH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param publisher receives the aggregated metrics
+     * @param publishIntervalMillis how often the metrics aggregated since the previous publish are published
+     */
+    public MetricPublisherListener(final MetricPublisher publisher, final long publishIntervalMillis) {
+        if (publishIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Publish interval should be positive");
+        }
+        this.publisher = publisher;
+        this.publishing = PUBLISHER.scheduleAtFixedRate(this::publishQuietly, publishIntervalMillis,
+            publishIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor newPublisher() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().threadNamePrefix("lakeformation-access-grants-metrics").daemonThreads(true).build());
+        executor.setKeepAliveTime(PUBLISHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @Override
+    public void onCacheHit(final CacheLayer cache, final HitType hitType) {
+        hits[cache.ordinal()][hitType.ordinal()].increment();
+    }
+
+    @Override
+    public void onCacheMiss(final CacheLayer cache) {
+        misses[cache.ordinal()].increment();
+    }
+
+    @Override
+    public void onCacheEviction(final CacheLayer cache) {
+        evictions[cache.ordinal()].increment();
+    }
+
+    @Override
+    public void onLakeFormationCall(final long latencyNanos, final String errorCode) {
+        final String outcome = errorCode == null ? SUCCEEDED : errorCode;
+        LongAdder calls = lakeFormationCalls.get(outcome);
+        if (calls == null) {
+            calls = lakeFormationCalls.computeIfAbsent(outcome, code -> new LongAdder());
+        }
+        calls.increment();
+        lakeFormationLatency[latencyBucket(latencyNanos)].increment();
+    }
+
+    @Override
+    public void onCircuitBreakerTransition(final CircuitBreaker.State from, final CircuitBreaker.State to) {
+        circuitBreakerTransitions[from.ordinal()][to.ordinal()].increment();
+    }
+
+    @Override
+    public void onCircuitBreakerRejection() {
+        circuitBreakerRejections.increment();
+    }
+
+    @Override
+    public void onFallback(final FallbackReason reason) {
+        fallbacks[reason.ordinal()].increment();
+    }
+
+    @Override
+    public void onResolveIdentity(final long latencyNanos) {
+        resolveIdentityLatency[latencyBucket(latencyNanos)].increment();
+    }
+
+    @Override
+    public void onPartitionLookup(final String principal, final boolean hit) {
+        LongAdder[] lookups = partitionLookups.get(principal);
+        if (lookups == null) {
+            lookups = partitionLookups.computeIfAbsent(principal, p -> counters(2));
+        }
+        lookups[hit ? 1 : 0].increment();
+    }
+
+    @Override
+    public void onPartitionOccupancy(final String principal, final long occupancy, final long limit) {
+        PartitionGauge gauge = partitionOccupancy.get(principal);
+        if (gauge == null) {
+            gauge = partitionOccupancy.computeIfAbsent(principal, p -> new PartitionGauge());
+        }
+        gauge.occupancy = occupancy;
+        gauge.limit = limit;
+    }
+
+    /**
+     * Publishes the metrics aggregated since the previous publish, if there are any, and starts a new interval.
+     */
+    public void publish() {
+        final MetricCollector collector = MetricCollector.create(METRICS);
+        boolean any = false;
+        for (final CacheLayer cache : CacheLayer.values()) {
+            for (final HitType hitType : HitType.values()) {
+                any |= reportCount(collector, CACHE_LOOKUP, hits[cache.ordinal()][hitType.ordinal()],
+                    CACHE, cache.name(), CACHE_RESULT, hitType.name());
+            }
+            any |= reportCount(collector, CACHE_LOOKUP, misses[cache.ordinal()], CACHE, cache.name(), CACHE_RESULT, MISS);
+            any |= reportCount(collector, CACHE_EVICTION, evictions[cache.ordinal()], CACHE, cache.name(), null, null);
+        }
+        for (final Map.Entry<String, LongAdder> calls : lakeFormationCalls.entrySet()) {
+            any |= calls.getKey().equals(SUCCEEDED)
+                ? reportCount(collector, LAKE_FORMATION_CALL, calls.getValue(), null, null, null, null)
+                : reportCount(collector, LAKE_FORMATION_CALL, calls.getValue(),
+                    LAKE_FORMATION_ERROR_CODE, calls.getKey(), null, null);
+        }
+        any |= reportHistogram(collector, LAKE_FORMATION_CALL_LATENCY, lakeFormationLatency);
+        for (final CircuitBreaker.State from : CircuitBreaker.State.values()) {
+            for (final CircuitBreaker.State to : CircuitBreaker.State.values()) {
+                any |= reportCount(collector, CIRCUIT_BREAKER_TRANSITION,
+                    circuitBreakerTransitions[from.ordinal()][to.ordinal()],
+                    CIRCUIT_BREAKER_FROM, from.name(), CIRCUIT_BREAKER_TO, to.name());
+            }
+        }
+        any |= reportCount(collector, CIRCUIT_BREAKER_REJECTION, circuitBreakerRejections, null, null, null, null);
+        for (final FallbackReason reason : FallbackReason.values()) {
+            any |= reportCount(collector, FALLBACK, fallbacks[reason.ordinal()], FALLBACK_REASON, reason.name(),
+                null, null);
+        }
+        any |= reportHistogram(collector, RESOLVE_IDENTITY_LATENCY, resolveIdentityLatency);
+        for (final Map.Entry<String, LongAdder[]> lookups : partitionLookups.entrySet()) {
+            final boolean hit = reportCount(collector, PARTITION_LOOKUP, lookups.getValue()[1],
+                PRINCIPAL, lookups.getKey(), CACHE_RESULT, HIT);
+            final boolean miss = reportCount(collector, PARTITION_LOOKUP, lookups.getValue()[0],
+                PRINCIPAL, lookups.getKey(), CACHE_RESULT, MISS);
+            if (!hit && !miss) {
+                // Principals idle for a whole interval are forgotten, so the map only holds recently active ones.
+                partitionLookups.remove(lookups.getKey(), lookups.getValue());
+            }
+            any |= hit || miss;
+        }
+        for (final String principal : partitionOccupancy.keySet()) {
+            final PartitionGauge gauge = partitionOccupancy.remove(principal);
+            if (gauge != null) {
+                final MetricCollector child = collector.createChild(PARTITION_OCCUPANCY);
+                child.reportMetric(PRINCIPAL, principal);
+                child.reportMetric(PARTITION_OCCUPANCY_VALUE, gauge.occupancy);
+                child.reportMetric(PARTITION_LIMIT, gauge.limit);
+                any = true;
+            }
+        }
+        if (any) {
+            publisher.publish(collector.collect());
+        }
+    }
+
+    /**
+     * Stops publishing periodically and publishes what was aggregated since the previous publish. The publisher is
+     * not closed.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            publishing.cancel(false);
+            publish();
+        }
+    }
+
+    private void publishQuietly() {
+        try {
+            publish();
+        } catch (RuntimeException e) {
+            // Keep the periodic task scheduled; a later publish carries the next interval's metrics.
+            LOGGER.log(Level.WARNING, "Failed to publish Lake Formation Access Grants metrics", e);
+        }
+    }
+
+    /**
+     * Reports a counter's value since the previous publish as a child collection with up to two dimensions, and
+     * resets it. Returns false, adding no child, if the counter did not change.
+     */
+    private static boolean reportCount(final MetricCollector collector, final String name, final LongAdder counter,
+                                       final SdkMetric<String> dimension, final String value,
+                                       final SdkMetric<String> otherDimension, final String otherValue) {
+        final long count = counter.sumThenReset();
+        if (count == 0) {
+            return false;
+        }
+        final MetricCollector child = collector.createChild(name);
+        if (dimension != null) {
+            child.reportMetric(dimension, value);
+        }
+        if (otherDimension != null) {
+            child.reportMetric(otherDimension, otherValue);
+        }
+        child.reportMetric(COUNT, count);
+        return true;
+    }
+
+    private static boolean reportHistogram(final MetricCollector collector, final String name,
+                                           final LongAdder[] buckets) {
+        boolean any = false;
+        for (int i = 0; i < buckets.length; i++) {
+            final long count = buckets[i].sumThenReset();
+            if (count > 0) {
+                final MetricCollector child = collector.createChild(name);
+                child.reportMetric(LATENCY_BUCKET_FLOOR, i == 0 ? Duration.ZERO : Duration.ofMillis(1L << (i - 1)));
+                child.reportMetric(COUNT, count);
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    static int latencyBucket(final long latencyNanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, latencyNanos));
+        return Math.min(LATENCY_BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(millis));
+    }
+
+    private static LongAdder[] counters(final int size) {
+        final LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static LongAdder[][] counters(final int rows, final int size) {
+        final LongAdder[][] counters = new LongAdder[rows][];
+        for (int i = 0; i < rows; i++) {
+            counters[i] = counters(size);
+        }
+        return counters;
+    }
+
+    /**
+     * The last occupancy and limit reported for a principal's partition in the current interval.
+     */
+    private static final class PartitionGauge {
+        private volatile long occupancy;
+        private volatile long limit;
+    }
+}
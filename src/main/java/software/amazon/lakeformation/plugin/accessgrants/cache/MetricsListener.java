@@ -0,0 +1,210 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+/**
+ * Receives the plugin's metrics: lookups and evictions in each cache, Lake Formation calls, the transitions and
+ * rejections of the {@link CircuitBreaker}, fallbacks to the S3 Access Grants provider and end-to-end
+ * {@code resolveIdentity} latency, and, when the grants cache is partitioned by principal, each principal's lookups
+ * and occupancy.
+ *
+ * <p>Events are reported on the thread that produced them, including request threads on the cache-hit path, so
+ * implementations must be thread-safe and should do no more than update counters or histograms. Every method has an
+ * empty default, so an implementation only overrides the events it records. {@link MetricPublisherListener} forwards
+ * the events to an SDK {@code MetricPublisher}.
+ */
+public interface MetricsListener {
+
+    /**
+     * A listener that records nothing.
+     */
+    MetricsListener NONE = new MetricsListener() {
+    };
+
+    /**
+     * The cache a lookup or eviction happened in.
+     */
+    enum CacheLayer {
+        /** Credentials vended by Lake Formation ({@link AccessGrantsCache}). */
+        ACCESS_GRANTS,
+        /** Cached AccessDenied responses ({@link AccessDeniedCache}). */
+        ACCESS_DENIED,
+        /** Cached non-retryable Lake Formation failures ({@link ExceptionCache}). */
+        EXCEPTION,
+        /** Locations routed to the fallback provider ({@link FallbackRouteCache}). */
+        FALLBACK_ROUTE
+    }
+
+    /**
+     * How a cache hit was found.
+     */
+    enum HitType {
+        /** An entry recorded for the requested path itself. */
+        EXACT,
+        /** An entry recorded for a folder above the requested path. */
+        PREFIX,
+        /** A wildcard grant, such as {@code s3://bucket/data*}, matching the requested path character by character. */
+        CHARACTER,
+        /** A READWRITE grant serving a READ or WRITE request. */
+        READWRITE_UPGRADE,
+        /** An expired grant served from the grace tier while it is revalidated. */
+        STALE
+    }
+
+    /**
+     * Why a request was resolved by the fallback provider.
+     */
+    enum FallbackReason {
+        /** The location was routed to the fallback provider by an earlier Lake Formation failure. */
+        ROUTE,
+        /** A cached AccessDenied or non-retryable Lake Formation failure covers the location. */
+        CACHED_FAILURE,
+        /** Lake Formation, or resolving the caller identity, failed for this request. */
+        FAILURE
+    }
+
+    /**
+     * Called when a lookup in {@code cache} finds an entry.
+     */
+    default void onCacheHit(final CacheLayer cache, final HitType hitType) {
+    }
+
+    /**
+     * Called when a lookup in {@code cache} finds no entry.
+     */
+    default void onCacheMiss(final CacheLayer cache) {
+    }
+
+    /**
+     * Called when an entry leaves {@code cache} because it expired or the cache was full.
+     */
+    default void onCacheEviction(final CacheLayer cache) {
+    }
+
+    /**
+     * Called when a Lake Formation call completes.
+     *
+     * @param latencyNanos time from sending the request to its completion
+     * @param errorCode the error code of a failed call, such as {@code ThrottledException}, or null if it succeeded
+     */
+    default void onLakeFormationCall(final long latencyNanos, final String errorCode) {
+    }
+
+    /**
+     * Called when the {@link CircuitBreaker} around Lake Formation calls moves from state {@code from} to {@code to}.
+     */
+    default void onCircuitBreakerTransition(final CircuitBreaker.State from, final CircuitBreaker.State to) {
+    }
+
+    /**
+     * Called when the {@link CircuitBreaker} rejects a Lake Formation call without letting it through.
+     */
+    default void onCircuitBreakerRejection() {
+    }
+
+    /**
+     * Called when a request is handed to the S3 Access Grants fallback provider.
+     */
+    default void onFallback(final FallbackReason reason) {
+    }
+
+    /**
+     * Called when {@code resolveIdentity} completes, successfully or not.
+     *
+     * @param latencyNanos time from the call to the completion of the returned future
+     */
+    default void onResolveIdentity(final long latencyNanos) {
+    }
+
+    /**
+     * Called, when the grants cache is partitioned by a {@link PrincipalQuota}, for each lookup of a principal's
+     * grants, along with the {@code onCacheHit} or {@code onCacheMiss} of the lookup.
+     *
+     * @param principal a stable, non-secret label of the principal
+     * @param hit whether the lookup found a grant, including a stale one
+     */
+    default void onPartitionLookup(final String principal, final boolean hit) {
+    }
+
+    /**
+     * Called, when the grants cache is partitioned by a {@link PrincipalQuota}, after grants are written to a
+     * principal's partition or the partition is trimmed to make room for other principals.
+     *
+     * @param principal a stable, non-secret label of the principal
+     * @param occupancy grants held for the principal, or their estimated bytes with a {@link MemoryBudget}
+     * @param limit the most the principal may hold at present, in the same unit
+     */
+    default void onPartitionOccupancy(final String principal, final long occupancy, final long limit) {
+    }
+
+    /**
+     * Returns a listener that reports every event to {@code first} and then to {@code second}.
+     */
+    static MetricsListener combine(final MetricsListener first, final MetricsListener second) {
+        if (first == NONE) {
+            return second;
+        }
+        if (second == NONE) {
+            return first;
+        }
+        return new MetricsListener() {
+            @Override
+            public void onCacheHit(final CacheLayer cache, final HitType hitType) {
+                first.onCacheHit(cache, hitType);
+                second.onCacheHit(cache, hitType);
+            }
+
+            @Override
+            public void onCacheMiss(final CacheLayer cache) {
+                first.onCacheMiss(cache);
+                second.onCacheMiss(cache);
+            }
+
+            @Override
+            public void onCacheEviction(final CacheLayer cache) {
+                first.onCacheEviction(cache);
+                second.onCacheEviction(cache);
+            }
+
+            @Override
+            public void onLakeFormationCall(final long latencyNanos, final String errorCode) {
+                first.onLakeFormationCall(latencyNanos, errorCode);
+                second.onLakeFormationCall(latencyNanos, errorCode);
+            }
+
+            @Override
+            public void onCircuitBreakerTransition(final CircuitBreaker.State from, final CircuitBreaker.State to) {
+                first.onCircuitBreakerTransition(from, to);
+                second.onCircuitBreakerTransition(from, to);
+            }
+
+            @Override
+            public void onCircuitBreakerRejection() {
+                first.onCircuitBreakerRejection();
+                second.onCircuitBreakerRejection();
+            }
+
+            @Override
+            public void onFallback(final FallbackReason reason) {
+                first.onFallback(reason);
+                second.onFallback(reason);
+            }
+
+            @Override
+            public void onResolveIdentity(final long latencyNanos) {
+                first.onResolveIdentity(latencyNanos);
+                second.onResolveIdentity(latencyNanos);
+            }
+
+            @Override
+            public void onPartitionLookup(final String principal, final boolean hit) {
+                first.onPartitionLookup(principal, hit);
+                second.onPartitionLookup(principal, hit);
+            }
+
+            @Override
+            public void onPartitionOccupancy(final String principal, final long occupancy, final long limit) {
+                first.onPartitionOccupancy(principal, occupancy, limit);
+                second.onPartitionOccupancy(principal, occupancy, limit);
+            }
+        };
+    }
+}
@@ -0,0 +1,198 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects items submitted under the same key within a short window, or until a maximum batch size is reached,
+ * and hands them to a single flush call whose result is shared by every submitter of the batch.
+ *
+ * <p>A batch that closes with a single item is not flushed; its submitter receives {@code null} and is expected to
+ * issue its regular, unbatched call, so a lone request pays only the window and never a batching-specific failure
+ * mode.
+ *
+ * @param <K> key that partitions items into compatible batches
+ * @param <T> item type
+ * @param <R> result shared by the members of a batch
+ */
+final class MicroBatcher<K, T, R> {
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<K, Batch<T, R>> openBatches = new ConcurrentHashMap<>();
+
+    MicroBatcher(final long windowNanos, final int maxBatchSize, final ScheduledExecutorService scheduler) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("Batch window should be positive");
+        }
+        if (maxBatchSize < 2) {
+            throw new IllegalArgumentException("Maximum batch size should be at least 2");
+        }
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+    }
+
+    private static final class Batch<T, R> {
+        private final List<T> items = new ArrayList<>();
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private boolean closed;
+    }
+
+    private static final class Membership<T, R> {
+        private final Batch<T, R> batch;
+        private final boolean opened;
+        private final boolean filled;
+
+        Membership(final Batch<T, R> batch, final boolean opened, final boolean filled) {
+            this.batch = batch;
+            this.opened = opened;
+            this.filled = filled;
+        }
+    }
+
+    /**
+     * Joins (or opens) the batch for {@code key}, closing it if this item brings it to the maximum size.
+     */
+    private Membership<T, R> join(final K key, final T item) {
+        while (true) {
+            final Batch<T, R> batch = openBatches.computeIfAbsent(key, k -> new Batch<>());
+            synchronized (batch) {
+                if (batch.closed) {
+                    openBatches.remove(key, batch);
+                    continue;
+                }
+                final boolean opened = batch.items.isEmpty();
+                batch.items.add(item);
+                final boolean filled = batch.items.size() >= maxBatchSize && close(key, batch);
+                return new Membership<>(batch, opened, filled);
+            }
+        }
+    }
+
+    /**
+     * Marks the batch closed. Must be called while holding the batch's monitor.
+     *
+     * @return whether this call closed the batch
+     */
+    private boolean close(final K key, final Batch<T, R> batch) {
+        if (batch.closed) {
+            return false;
+        }
+        batch.closed = true;
+        openBatches.remove(key, batch);
+        batch.notifyAll();
+        return true;
+    }
+
+    /**
+     * Blocking submission. The submitter that opens a batch waits for the window to elapse or the batch to fill,
+     * then runs {@code flush} on its own thread; the other members wait for its result.
+     */
+    R submit(final K key, final T item, final Function<List<T>, R> flush) {
+        final Membership<T, R> membership = join(key, item);
+        final Batch<T, R> batch = membership.batch;
+
+        if (membership.opened) {
+            final List<T> items;
+            synchronized (batch) {
+                final long deadline = System.nanoTime() + windowNanos;
+                long remaining = windowNanos;
+                try {
+                    while (!batch.closed && remaining > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(batch, remaining);
+                        remaining = deadline - System.nanoTime();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                close(key, batch);
+                items = new ArrayList<>(batch.items);
+            }
+            try {
+                final R result = items.size() > 1 ? flush.apply(items) : null;
+                batch.result.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                batch.result.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return batch.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking submission. The batch is flushed by the scheduler when the window elapses, or by the submitter
+     * that fills it.
+     */
+    CompletableFuture<R> submitAsync(final K key, final T item, final Function<List<T>, CompletableFuture<R>> flush) {
+        final Membership<T, R> membership = join(key, item);
+        final Batch<T, R> batch = membership.batch;
+
+        if (membership.filled) {
+            flushAsync(batch, flush);
+        } else if (membership.opened) {
+            try {
+                scheduler.schedule(() -> {
+                    synchronized (batch) {
+                        if (!close(key, batch)) {
+                            return;
+                        }
+                    }
+                    flushAsync(batch, flush);
+                }, windowNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                final boolean closed;
+                synchronized (batch) {
+                    closed = close(key, batch);
+                }
+                if (closed) {
+                    flushAsync(batch, flush);
+                }
+            }
+        }
+        return batch.result;
+    }
+
+    private void flushAsync(final Batch<T, R> batch, final Function<List<T>, CompletableFuture<R>> flush) {
+        final List<T> items;
+        synchronized (batch) {
+            items = new ArrayList<>(batch.items);
+        }
+        if (items.size() <= 1) {
+            batch.result.complete(null);
+            return;
+        }
+        try {
+            flush.apply(items).whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    batch.result.complete(result);
+                } else {
+                    batch.result.completeExceptionally(throwable);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            batch.result.completeExceptionally(e);
+        }
+    }
+}
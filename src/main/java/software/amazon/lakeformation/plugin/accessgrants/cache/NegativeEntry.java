@@ -0,0 +1,183 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.lakeformation.model.AccessDeniedException;
+import software.amazon.awssdk.services.lakeformation.model.ConflictException;
+import software.amazon.awssdk.services.lakeformation.model.EntityNotFoundException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * A cached negative response, recorded in a {@link NegativeIndex}.
+ *
+ * <p>An entry keeps only what is needed to route the request and to explain it: the kind of failure, its error code,
+ * a short message and when the entry expires. The exception Lake Formation returned is not retained, so an entry
+ * does not hold on to its stack trace, error details, HTTP response headers or request ID. When a cached failure
+ * must be surfaced, {@link #toException()} rebuilds a lightweight exception of the same type.
+ */
+public final class NegativeEntry {
+
+    static final int MAX_MESSAGE_LENGTH = 256;
+
+    // The entry object and its slot in the node's entry array, roughly.
+    private static final long ENTRY_BYTES = 48;
+
+    private static final String ACCESS_DENIED = "AccessDenied";
+    private static final String ACCESS_DENIED_EXCEPTION = "AccessDeniedException";
+    private static final String CONFLICT_EXCEPTION = "ConflictException";
+    private static final String ENTITY_NOT_FOUND_EXCEPTION = "EntityNotFoundException";
+    static final String SERVICE_NAME = "LakeFormation";
+
+    private final NegativeIndex.Kind kind;
+    private final Permission permission;
+    private final NegativeIndex.Scope scope;
+    private final String errorCode;
+    private final String message;
+    private final long expiresAtNanos;
+
+    NegativeEntry(final NegativeIndex.Kind kind, final Permission permission, final NegativeIndex.Scope scope,
+                  final String errorCode, final String message, final long expiresAtNanos) {
+        this.kind = kind;
+        this.permission = permission;
+        this.scope = scope;
+        this.errorCode = errorCode;
+        this.message = message;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Returns the error code of the cached failure, such as {@code AccessDenied} or {@code ConflictException}.
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Returns the message of the cached failure, cut to {@value #MAX_MESSAGE_LENGTH} characters.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Estimates the heap retained by this entry, including its error code and message.
+     */
+    long weighBytes() {
+        return ENTRY_BYTES + MemoryBudget.stringBytes(errorCode) + MemoryBudget.stringBytes(message);
+    }
+
+    /**
+     * Returns true if Lake Formation denied the requester access to the path.
+     */
+    public boolean isAccessDenied() {
+        return kind == NegativeIndex.Kind.ACCESS_DENIED;
+    }
+
+    /**
+     * Rebuilds an exception for the cached failure, of the type Lake Formation returned for the known error codes.
+     * Each call creates a new exception, so it should only be called when the failure is surfaced to a caller.
+     */
+    public LakeFormationException toException() {
+        final LakeFormationException.Builder builder;
+        if (CONFLICT_EXCEPTION.equals(errorCode)) {
+            builder = ConflictException.builder();
+        } else if (ENTITY_NOT_FOUND_EXCEPTION.equals(errorCode)) {
+            builder = EntityNotFoundException.builder();
+        } else if (kind == NegativeIndex.Kind.ACCESS_DENIED) {
+            builder = AccessDeniedException.builder();
+        } else {
+            builder = LakeFormationException.builder();
+        }
+        return (LakeFormationException) builder
+            .awsErrorDetails(AwsErrorDetails.builder()
+                .errorCode(errorCode)
+                .errorMessage(message)
+                .serviceName(SERVICE_NAME)
+                .build())
+            .message(message)
+            .build();
+    }
+
+    NegativeIndex.Kind kind() {
+        return kind;
+    }
+
+    Permission permission() {
+        return permission;
+    }
+
+    NegativeIndex.Scope scope() {
+        return scope;
+    }
+
+    boolean covers(final boolean self, final boolean parent) {
+        switch (scope) {
+            case EXACT:
+                return self;
+            case SIBLINGS:
+                return self || parent;
+            default:
+                return true;
+        }
+    }
+
+    boolean isExpired(final long now) {
+        return now - expiresAtNanos >= 0;
+    }
+
+    /**
+     * Returns the nanoseconds left before this entry expires at {@code now}.
+     */
+    long remainingNanos(final long now) {
+        return expiresAtNanos - now;
+    }
+
+    boolean sameSlot(final NegativeEntry other) {
+        return kind == other.kind && permission == other.permission && scope == other.scope;
+    }
+
+    /**
+     * Returns the error code to record for {@code e}: the service error code when it has one, otherwise the
+     * exception's simple class name. Well-known codes are returned as shared constants rather than per-response
+     * strings.
+     */
+    static String errorCodeOf(final Exception e) {
+        String code = null;
+        if (e instanceof LakeFormationException && ((LakeFormationException) e).awsErrorDetails() != null) {
+            code = ((LakeFormationException) e).awsErrorDetails().errorCode();
+        }
+        if (code == null) {
+            code = e.getClass().getSimpleName();
+        }
+        switch (code) {
+            case ACCESS_DENIED:
+                return ACCESS_DENIED;
+            case ACCESS_DENIED_EXCEPTION:
+                return ACCESS_DENIED_EXCEPTION;
+            case CONFLICT_EXCEPTION:
+                return CONFLICT_EXCEPTION;
+            case ENTITY_NOT_FOUND_EXCEPTION:
+                return ENTITY_NOT_FOUND_EXCEPTION;
+            default:
+                return code;
+        }
+    }
+
+    /**
+     * Returns the message to record for {@code e}: the service error message when it has one, otherwise the
+     * exception message, cut to {@value #MAX_MESSAGE_LENGTH} characters.
+     */
+    static String messageOf(final Exception e) {
+        String text = null;
+        if (e instanceof LakeFormationException && ((LakeFormationException) e).awsErrorDetails() != null) {
+            text = ((LakeFormationException) e).awsErrorDetails().errorMessage();
+        }
+        if (text == null) {
+            text = e.getMessage();
+        }
+        if (text == null || text.length() <= MAX_MESSAGE_LENGTH) {
+            return text;
+        }
+        return text.substring(0, MAX_MESSAGE_LENGTH);
+    }
+}
@@ -0,0 +1,801 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Per-principal index of the negative responses behind {@link AccessDeniedCache}, {@link ExceptionCache} and
+ * {@link FallbackRouteCache}.
+ *
+ * <p>Each principal owns a tree of its known-bad S3 paths, with one node per path segment below the bucket
+ * root. A node records, for each cached failure, a compact {@link NegativeEntry}: its {@link Kind}, the
+ * {@link Scope} of paths it covers, its error code and message, and when it expires. A lookup is a single
+ * descent of the requested path that answers whether the path is known-bad and why, without building parent
+ * prefixes or cache keys.
+ *
+ * <p>Unlike {@link GrantIndex}, this index is the store itself: entries expire on read, and expired entries
+ * are purged when the node is next written. Each kind also keeps its entries in the order they were recorded;
+ * recording an entry removes the expired entries at the head of that order, and a kind at its capacity evicts
+ * its oldest entry to make room. Replaced and purged entries leave their place in the order behind, so once a
+ * kind's order grows past twice its live entries it is compacted. The caches can share one index, which is then
+ * the single place negative responses are recorded, expired and invalidated.
+ *
+ * <p>With an expiry {@link Scheduler}, such as {@link ExpiryScheduler#shared()}, the index also purges itself when
+ * its entries expire. One purge is pending at a time, at the earliest expiry plus up to a second, so entries
+ * expiring close together are purged together.
+ *
+ * <p>With a {@link MemoryBudget}, each kind draws the estimated bytes of its entries, and of the path nodes they
+ * sit under, from the budget under the cache that records that kind. A node shared by several kinds is charged to
+ * each of them, and released from a kind once none of its entries remain at or below it, so evicting a kind's
+ * entries always frees what that kind was charged. A kind that has reached its limit in the budget is
+ * treated as full, like a kind that has reached its capacity, and evicts its oldest entries until the new one fits.
+ */
+public final class NegativeIndex {
+
+    private static final String S3_SCHEME = "s3://";
+    private static final char DELIMITER = '/';
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final NegativeEntry[] NO_ENTRIES = new NegativeEntry[0];
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+    private static final long PURGE_TOLERANCE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // A node object, its per-kind entry counts and its slot in the parent's child array, roughly.
+    private static final long NODE_BYTES = 64;
+
+    /**
+     * Why a path is known to be bad.
+     */
+    enum Kind {
+        /** Lake Formation denied the requester access to the path, for one permission. */
+        ACCESS_DENIED(MetricsListener.CacheLayer.ACCESS_DENIED),
+        /** Lake Formation failed the path with a non-retryable, registration-driven error, for any permission. */
+        NON_RETRYABLE(MetricsListener.CacheLayer.EXCEPTION),
+        /** Lake Formation does not serve the paths below the node, which are resolved by the fallback provider. */
+        FALLBACK_ROUTE(MetricsListener.CacheLayer.FALLBACK_ROUTE);
+
+        private final MetricsListener.CacheLayer cacheLayer;
+
+        Kind(final MetricsListener.CacheLayer cacheLayer) {
+            this.cacheLayer = cacheLayer;
+        }
+    }
+
+    /**
+     * Which paths an entry recorded at a node covers.
+     */
+    enum Scope {
+        /** Only the node's own path. */
+        EXACT,
+        /** The node's own path and every path directly below it. */
+        SIBLINGS,
+        /** The node's own path and every path below it. */
+        SUBTREE
+    }
+
+    /**
+     * Whether {@link #put} recorded an entry and, if not, which limit kept it out.
+     */
+    enum Admission {
+        RECORDED(null),
+        /** The kind holds {@code capacity} entries and has none left to evict. */
+        OVER_CAPACITY("full"),
+        /** The kind has reached its limit in the memory budget and has no entry left to evict. */
+        OVER_MEMORY_BUDGET("out of memory budget");
+
+        private final String reason;
+
+        Admission(final String reason) {
+            this.reason = reason;
+        }
+
+        /**
+         * Describes why the entry was not recorded, such as {@code full}, or returns null if it was.
+         */
+        String reason() {
+            return reason;
+        }
+    }
+
+    private final ConcurrentMap<PrincipalFingerprint, PrincipalTree> trees = new ConcurrentHashMap<>();
+    private final AtomicInteger[] sizes = new AtomicInteger[Kind.values().length];
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<Recorded>[] recordingOrders = new ConcurrentLinkedQueue[Kind.values().length];
+    // Approximate length of each recording order; reset to the exact length whenever the order is compacted.
+    private final AtomicInteger[] recordingOrderLengths = new AtomicInteger[Kind.values().length];
+    private final Ticker ticker;
+    private final MetricsListener metricsListener;
+    private final Scheduler expiryScheduler;
+    private final MemoryBudget memoryBudget;
+    private final Object purgeLock = new Object();
+    private boolean purgePending; // guarded by purgeLock
+    private long purgeAtNanos; // guarded by purgeLock
+
+    public NegativeIndex() {
+        this(MetricsListener.NONE);
+    }
+
+    /**
+     * Creates an index that reports the lookups and expirations of each kind to {@code metricsListener}, under
+     * the cache that records that kind.
+     */
+    public NegativeIndex(final MetricsListener metricsListener) {
+        this(metricsListener, Scheduler.disabledScheduler());
+    }
+
+    /**
+     * Creates an index that reports to {@code metricsListener} and purges expired entries on
+     * {@code expiryScheduler}.
+     */
+    public NegativeIndex(final MetricsListener metricsListener, final Scheduler expiryScheduler) {
+        this(metricsListener, expiryScheduler, MemoryBudget.UNLIMITED);
+    }
+
+    /**
+     * Creates an index that reports to {@code metricsListener}, purges expired entries on {@code expiryScheduler}
+     * and draws the bytes of its entries from {@code memoryBudget}.
+     */
+    public NegativeIndex(final MetricsListener metricsListener, final Scheduler expiryScheduler,
+                         final MemoryBudget memoryBudget) {
+        this(Ticker.systemTicker(), metricsListener, expiryScheduler, memoryBudget);
+    }
+
+    NegativeIndex(final Ticker ticker) {
+        this(ticker, MetricsListener.NONE);
+    }
+
+    NegativeIndex(final Ticker ticker, final MetricsListener metricsListener) {
+        this(ticker, metricsListener, Scheduler.disabledScheduler());
+    }
+
+    NegativeIndex(final Ticker ticker, final MetricsListener metricsListener, final Scheduler expiryScheduler) {
+        this(ticker, metricsListener, expiryScheduler, MemoryBudget.UNLIMITED);
+    }
+
+    NegativeIndex(final Ticker ticker, final MetricsListener metricsListener, final Scheduler expiryScheduler,
+                  final MemoryBudget memoryBudget) {
+        this.ticker = ticker;
+        this.metricsListener = metricsListener;
+        this.expiryScheduler = expiryScheduler;
+        this.memoryBudget = memoryBudget;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = new AtomicInteger();
+            recordingOrders[i] = new ConcurrentLinkedQueue<>();
+            recordingOrderLengths[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Records the error code and message of {@code exception} for the principal of {@code cacheKey} at
+     * {@code path}; the exception itself is not retained.
+     *
+     * @see #put(CacheKey, String, Kind, Permission, Scope, String, String, long, int)
+     */
+    Admission put(final CacheKey cacheKey, final String path, final Kind kind, final Permission permission,
+                final Scope scope, final Exception exception, final long ttlNanos, final int capacity) {
+        return put(cacheKey, path, kind, permission, scope, NegativeEntry.errorCodeOf(exception),
+            NegativeEntry.messageOf(exception), ttlNanos, capacity);
+    }
+
+    /**
+     * Records a failure for the principal of {@code cacheKey} at {@code path}. An unexpired entry of the same
+     * kind, permission and scope at that path is replaced. When the kind already holds {@code capacity}
+     * entries, or has reached its limit in the memory budget, its oldest entries are evicted until the new entry
+     * fits; the entry is only not recorded when the kind holds nothing left to evict.
+     *
+     * @param permission the permission the entry applies to, or null if it applies to every permission
+     * @return {@link Admission#RECORDED} if the entry was recorded, otherwise the limit that kept it out
+     */
+    Admission put(final CacheKey cacheKey, final String path, final Kind kind, final Permission permission,
+                final Scope scope, final String errorCode, final String message, final long ttlNanos,
+                final int capacity) {
+        final AtomicInteger size = sizes[kind.ordinal()];
+        final long now = ticker.read();
+        final NegativeEntry entry = new NegativeEntry(kind, permission, scope, errorCode, message, now + ttlNanos);
+        final long entryBytes = entry.weighBytes();
+        final ConcurrentLinkedQueue<Recorded> recordingOrder = recordingOrders[kind.ordinal()];
+        final AtomicInteger recordingOrderLength = recordingOrderLengths[kind.ordinal()];
+        removeExpiredHead(recordingOrder, recordingOrderLength, now);
+        // The bytes are only charged once the capacity check has passed, so a rejected entry leaves no charge.
+        while (true) {
+            final Admission rejection;
+            if (size.get() >= capacity) {
+                rejection = Admission.OVER_CAPACITY;
+            } else if (!memoryBudget.tryCharge(kind.cacheLayer, entryBytes)) {
+                rejection = Admission.OVER_MEMORY_BUDGET;
+            } else {
+                break;
+            }
+            if (!evictOldest(recordingOrder, recordingOrderLength)) {
+                return rejection;
+            }
+        }
+        final PrincipalFingerprint principal = cacheKey.getPrincipal();
+        while (true) {
+            final PrincipalTree tree = trees.computeIfAbsent(principal, p -> new PrincipalTree());
+            final Node node = tree.put(path, normalizedLength(path), entry, now);
+            if (node != null) {
+                recordingOrder.add(new Recorded(principal, tree, node, entry));
+                if (recordingOrderLength.incrementAndGet() > 2 * size.get()) {
+                    compact(recordingOrder, recordingOrderLength);
+                }
+                schedulePurge(now, ttlNanos);
+                return Admission.RECORDED;
+            }
+            // The tree was retired by a concurrent purge of its last entry; retry on a fresh one.
+            trees.remove(principal, tree);
+        }
+    }
+
+    /**
+     * Removes the expired entries at the head of a kind's recording order. Entries of a kind share one TTL, so
+     * they expire roughly in the order they were recorded and each call removes only a few.
+     */
+    private void removeExpiredHead(final ConcurrentLinkedQueue<Recorded> recordingOrder,
+                                   final AtomicInteger recordingOrderLength, final long now) {
+        Recorded head;
+        while ((head = recordingOrder.peek()) != null && head.entry.isExpired(now)) {
+            if (recordingOrder.remove(head)) {
+                recordingOrderLength.decrementAndGet();
+                remove(head);
+            }
+        }
+    }
+
+    /**
+     * Evicts the oldest entry of a kind that is still recorded, skipping entries that have since been replaced
+     * or purged.
+     *
+     * @return false if the kind holds no entry to evict
+     */
+    private boolean evictOldest(final ConcurrentLinkedQueue<Recorded> recordingOrder,
+                                final AtomicInteger recordingOrderLength) {
+        Recorded oldest;
+        while ((oldest = recordingOrder.poll()) != null) {
+            recordingOrderLength.decrementAndGet();
+            if (remove(oldest)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the places in a kind's recording order whose entries have since been replaced or purged, so the order
+     * holds roughly one place per live entry. The order only grows past twice the kind's live entries after as
+     * many replacements, so the cost of a compaction is spread across the puts that made it necessary.
+     */
+    private void compact(final ConcurrentLinkedQueue<Recorded> recordingOrder,
+                         final AtomicInteger recordingOrderLength) {
+        recordingOrder.removeIf(recorded -> !recorded.tree.contains(recorded.node, recorded.entry));
+        recordingOrderLength.set(recordingOrder.size());
+    }
+
+    /**
+     * Removes a recorded entry from its node, if it is still there, and retires its principal's tree when that
+     * leaves the tree empty.
+     *
+     * @return true if the entry was removed
+     */
+    private boolean remove(final Recorded recorded) {
+        final PrincipalTree tree = recorded.tree;
+        if (!tree.remove(recorded.node, recorded.entry)) {
+            return false;
+        }
+        if (tree.retired) {
+            trees.remove(recorded.principal, tree);
+        }
+        return true;
+    }
+
+    /**
+     * Finds an unexpired entry of {@code kind} that covers the requested path of {@code cacheKey}. Entries for
+     * a single permission only match that permission; permission-agnostic entries match every permission.
+     *
+     * @return the recorded entry, or null if the path is not known to be bad for that kind
+     */
+    NegativeEntry find(final CacheKey cacheKey, final Kind kind) {
+        final PrincipalTree tree = sizes[kind.ordinal()].get() == 0 ? null : trees.get(cacheKey.getPrincipal());
+        if (tree == null) {
+            metricsListener.onCacheMiss(kind.cacheLayer);
+            return null;
+        }
+        final String path = cacheKey.getS3Prefix();
+        return tree.find(path, normalizedLength(path), parentLength(path, kind),
+            kind == Kind.ACCESS_DENIED && isBucketRootReference(path), kind, cacheKey.getPermission(), ticker.read());
+    }
+
+    /**
+     * Returns the number of entries of {@code kind} currently recorded, including expired entries that have
+     * not been purged yet.
+     */
+    int size(final Kind kind) {
+        return sizes[kind.ordinal()].get();
+    }
+
+    /**
+     * Returns the number of places in the recording order of {@code kind}, including those of entries that have
+     * been replaced or purged since.
+     */
+    int recordingOrderLength(final Kind kind) {
+        return recordingOrders[kind.ordinal()].size();
+    }
+
+    /**
+     * Removes every expired entry and every principal left without entries.
+     *
+     * @return nanoseconds until the earliest remaining entry expires, or {@code Long.MAX_VALUE} if none remains
+     */
+    long purgeExpired(final long now) {
+        long nextExpiryNanos = NO_EXPIRY;
+        final Iterator<PrincipalTree> iterator = trees.values().iterator();
+        while (iterator.hasNext()) {
+            final PrincipalTree tree = iterator.next();
+            nextExpiryNanos = Math.min(nextExpiryNanos, tree.purgeExpired(now));
+            if (tree.retired) {
+                iterator.remove();
+            }
+        }
+        return nextExpiryNanos;
+    }
+
+    /**
+     * Schedules a purge for an entry expiring {@code delayNanos} after {@code now}, unless a pending purge already
+     * runs within a second of that expiry.
+     */
+    private void schedulePurge(final long now, final long delayNanos) {
+        if (expiryScheduler == Scheduler.disabledScheduler()) {
+            return;
+        }
+        final long purgeAt = now + delayNanos + PURGE_TOLERANCE_NANOS;
+        synchronized (purgeLock) {
+            if (purgePending && purgeAtNanos - purgeAt <= 0) {
+                return;
+            }
+            purgePending = true;
+            purgeAtNanos = purgeAt;
+        }
+        expiryScheduler.schedule(Runnable::run, this::scheduledPurge, purgeAt - now, TimeUnit.NANOSECONDS);
+    }
+
+    private void scheduledPurge() {
+        synchronized (purgeLock) {
+            purgePending = false;
+        }
+        final long now = ticker.read();
+        final long nextExpiryNanos = purgeExpired(now);
+        if (nextExpiryNanos != NO_EXPIRY) {
+            schedulePurge(now, nextExpiryNanos);
+        }
+    }
+
+    /**
+     * Returns the immediate parent directory of an S3 path, or null if no valid parent exists.
+     *
+     * <p>If the path ends with "/*" or "/", it is a directory reference and the normalized form IS the parent
+     * directory (objects under it share this as their parent). Otherwise, the leaf segment (file name) is
+     * dropped to find the parent.
+     *
+     * <p>Examples:
+     * <ul>
+     *   <li>{@code s3://bucket/f1/f2/file.csv} returns {@code s3://bucket/f1/f2}</li>
+     *   <li>{@code s3://bucket/file.csv} returns {@code s3://bucket}</li>
+     *   <li>{@code s3://bucket/folder/} and {@code s3://bucket/folder/*} return {@code s3://bucket/folder}</li>
+     *   <li>{@code s3://bucket/} and {@code s3://bucket/*} return {@code s3://bucket}</li>
+     *   <li>{@code s3://bucket} returns null (no parent above bucket root)</li>
+     * </ul>
+     */
+    static String immediateParent(final String s3Prefix) {
+        final int parentLength = parentLength(s3Prefix);
+        return parentLength < 0 ? null : s3Prefix.substring(0, parentLength);
+    }
+
+    /**
+     * Variant of {@link #immediateParent(String)} for entries of {@code kind}. A denial of a bucket root
+     * reference, {@code s3://bucket/} or {@code s3://bucket/*}, has no parent: it is recorded for that path only,
+     * as {@link AccessDeniedCache} always has, rather than for every object at the root of the bucket.
+     */
+    static String immediateParent(final String s3Prefix, final Kind kind) {
+        return kind == Kind.ACCESS_DENIED && isBucketRootReference(s3Prefix) ? null : immediateParent(s3Prefix);
+    }
+
+    /**
+     * Returns the length of {@code path} once a trailing "/*" or "/" is stripped, so that directory and
+     * wildcard requests land on the same node as object requests under the same location.
+     */
+    private static int normalizedLength(final String path) {
+        if (path.endsWith("/*")) {
+            return path.length() - 2;
+        } else if (path.endsWith("/")) {
+            return path.length() - 1;
+        }
+        return path.length();
+    }
+
+    /**
+     * Returns the length of the immediate parent directory of {@code path}, or -1 if it has none.
+     *
+     * @see #immediateParent(String)
+     */
+    private static int parentLength(final String path) {
+        if (!path.startsWith(S3_SCHEME)) {
+            return -1;
+        }
+        final int normalizedLength = normalizedLength(path);
+        if (normalizedLength <= S3_SCHEME.length()) {
+            return -1;
+        }
+        if (normalizedLength < path.length()) {
+            return normalizedLength;
+        }
+        final int lastSlash = path.lastIndexOf(DELIMITER, normalizedLength - 1);
+        return lastSlash >= S3_SCHEME.length() ? lastSlash : -1;
+    }
+
+    /**
+     * Returns the length of the immediate parent directory of {@code path} for entries of {@code kind}, or -1 if
+     * it has none.
+     *
+     * @see #immediateParent(String, Kind)
+     */
+    private static int parentLength(final String path, final Kind kind) {
+        return kind == Kind.ACCESS_DENIED && isBucketRootReference(path) ? -1 : parentLength(path);
+    }
+
+    /**
+     * Returns whether {@code path} is a directory reference to the root of a bucket, such as {@code s3://bucket/}.
+     */
+    private static boolean isBucketRootReference(final String path) {
+        final int normalizedLength = normalizedLength(path);
+        return path.startsWith(S3_SCHEME) && normalizedLength < path.length()
+            && path.indexOf(DELIMITER, S3_SCHEME.length()) == normalizedLength;
+    }
+
+    /**
+     * Returns the end of the segment of {@code path} starting at {@code start}. The first segment is the
+     * bucket root including the scheme, such as {@code s3://bucket}; a path without the scheme is a single
+     * segment.
+     */
+    private static int segmentEnd(final String path, final int start, final int length) {
+        final int from = start == 0 ? (path.startsWith(S3_SCHEME) ? S3_SCHEME.length() : length) : start;
+        final int slash = path.indexOf(DELIMITER, from);
+        return slash < 0 || slash > length ? length : slash;
+    }
+
+    /**
+     * Tree of one principal's negative entries, guarded by a read-write lock so lookups proceed in parallel.
+     */
+    private final class PrincipalTree {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Node root = new Node("", null);
+        private boolean retired;
+
+        /**
+         * @return the node the entry was recorded at, or null if this tree has been retired and must no longer
+         *         receive entries
+         */
+        Node put(final String path, final int length, final NegativeEntry entry, final long now) {
+            lock.writeLock().lock();
+            try {
+                if (retired) {
+                    return null;
+                }
+                Node node = root;
+                int start = 0;
+                while (start < length) {
+                    final int end = segmentEnd(path, start, length);
+                    Node child = node.child(path, start, end);
+                    if (child == null) {
+                        child = new Node(path.substring(start, end), node);
+                        node.addChild(child);
+                    }
+                    node = child;
+                    start = end + 1;
+                }
+                node.put(entry, now);
+                return node;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Removes {@code entry} from {@code node}, then the nodes left empty on the way up, and retires the tree
+         * if it became empty.
+         *
+         * @return false if the entry is no longer recorded at the node
+         */
+        boolean remove(final Node node, final NegativeEntry entry) {
+            lock.writeLock().lock();
+            try {
+                if (!node.remove(entry)) {
+                    return false;
+                }
+                Node emptied = node;
+                while (emptied.parent != null && emptied.isEmpty()) {
+                    emptied.parent.removeChild(emptied);
+                    emptied = emptied.parent;
+                }
+                retired = root.isEmpty();
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean contains(final Node node, final NegativeEntry entry) {
+            lock.readLock().lock();
+            try {
+                return node.contains(entry);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        NegativeEntry find(final String path, final int length, final int parentLength, final boolean exactOnly,
+                           final Kind kind, final Permission permission, final long now) {
+            NegativeEntry match = null;
+            boolean self = false;
+            lock.readLock().lock();
+            try {
+                Node node = root;
+                int start = 0;
+                while (start < length) {
+                    final int end = segmentEnd(path, start, length);
+                    node = node.child(path, start, end);
+                    if (node == null) {
+                        break;
+                    }
+                    // Every node on the descent is an ancestor of the path, or the path itself.
+                    match = node.find(kind, permission, end == length, end == parentLength, exactOnly, now);
+                    if (match != null) {
+                        self = end == length;
+                        break;
+                    }
+                    start = end + 1;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (match == null) {
+                metricsListener.onCacheMiss(kind.cacheLayer);
+            } else {
+                metricsListener.onCacheHit(kind.cacheLayer,
+                    self ? MetricsListener.HitType.EXACT : MetricsListener.HitType.PREFIX);
+            }
+            return match;
+        }
+
+        /**
+         * Purges expired entries and retires the tree if it became empty.
+         *
+         * @return nanoseconds until the earliest remaining entry expires, or {@code Long.MAX_VALUE} if none remains
+         */
+        long purgeExpired(final long now) {
+            lock.writeLock().lock();
+            try {
+                final long nextExpiryNanos = root.purgeExpired(now);
+                retired = root.isEmpty();
+                return nextExpiryNanos;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * A path segment and the negative entries recorded for the path ending at it.
+     */
+    private final class Node {
+        private final String segment;
+        private final Node parent; // null for the root
+        // Entries of each kind at or below this node; the node's bytes are charged to every kind with a count.
+        private final int[] entryCounts = new int[Kind.values().length];
+        private Node[] children = NO_CHILDREN;
+        private NegativeEntry[] entries = NO_ENTRIES;
+
+        Node(final String segment, final Node parent) {
+            this.segment = segment;
+            this.parent = parent;
+        }
+
+        /**
+         * Counts an entry of {@code kind} recorded here against this node and its ancestors, charging the kind for
+         * each node it did not use yet.
+         */
+        void countEntry(final Kind kind) {
+            for (Node node = this; node.parent != null; node = node.parent) {
+                if (node.entryCounts[kind.ordinal()]++ == 0) {
+                    memoryBudget.charge(kind.cacheLayer, node.weighBytes());
+                }
+            }
+        }
+
+        /**
+         * Reverses {@link #countEntry}, releasing each node the kind no longer uses.
+         */
+        void uncountEntry(final Kind kind) {
+            for (Node node = this; node.parent != null; node = node.parent) {
+                if (--node.entryCounts[kind.ordinal()] == 0) {
+                    memoryBudget.release(kind.cacheLayer, node.weighBytes());
+                }
+            }
+        }
+
+        Node child(final String path, final int start, final int end) {
+            final int length = end - start;
+            for (Node child : children) {
+                if (child.segment.length() == length && path.regionMatches(start, child.segment, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        void addChild(final Node child) {
+            final Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, children.length);
+            grown[children.length] = child;
+            children = grown;
+        }
+
+        void removeChild(final Node child) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == child) {
+                    final Node[] shrunk = new Node[children.length - 1];
+                    System.arraycopy(children, 0, shrunk, 0, i);
+                    System.arraycopy(children, i + 1, shrunk, i, shrunk.length - i);
+                    children = shrunk.length == 0 ? NO_CHILDREN : shrunk;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Removes {@code entry}, reporting it as an eviction like an expired entry.
+         *
+         * @return false if the entry is no longer recorded here
+         */
+        boolean remove(final NegativeEntry entry) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] == entry) {
+                    final NegativeEntry[] shrunk = new NegativeEntry[entries.length - 1];
+                    System.arraycopy(entries, 0, shrunk, 0, i);
+                    System.arraycopy(entries, i + 1, shrunk, i, shrunk.length - i);
+                    entries = shrunk.length == 0 ? NO_ENTRIES : shrunk;
+                    expired(this, entry);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean contains(final NegativeEntry entry) {
+            for (NegativeEntry recorded : entries) {
+                if (recorded == entry) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Records {@code entry}, replacing the entry of the same kind, permission and scope and dropping any
+         * entry that has expired.
+         */
+        void put(final NegativeEntry entry, final long now) {
+            // Counted before a replaced entry is uncounted, so a replacement does not release and recharge the path.
+            countEntry(entry.kind());
+            int kept = 0;
+            final NegativeEntry[] updated = new NegativeEntry[entries.length + 1];
+            for (NegativeEntry existing : entries) {
+                if (existing.isExpired(now)) {
+                    expired(this, existing);
+                } else if (existing.sameSlot(entry)) {
+                    sizes[existing.kind().ordinal()].decrementAndGet();
+                    memoryBudget.release(existing.kind().cacheLayer, existing.weighBytes());
+                    uncountEntry(existing.kind());
+                } else {
+                    updated[kept++] = existing;
+                }
+            }
+            updated[kept++] = entry;
+            sizes[entry.kind().ordinal()].incrementAndGet();
+            entries = kept == updated.length ? updated : copyOf(updated, kept);
+        }
+
+        /**
+         * @param self whether this node is the requested path itself
+         * @param parent whether this node is the immediate parent directory of the requested path
+         */
+        NegativeEntry find(final Kind kind, final Permission permission, final boolean self, final boolean parent,
+                           final boolean exactOnly, final long now) {
+            for (NegativeEntry entry : entries) {
+                if (entry.kind() == kind
+                        && (entry.permission() == null || entry.permission() == permission)
+                        && (exactOnly ? self && entry.scope() == Scope.EXACT : entry.covers(self, parent))
+                        && !entry.isExpired(now)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        long purgeExpired(final long now) {
+            long nextExpiryNanos = NO_EXPIRY;
+            int kept = 0;
+            for (NegativeEntry entry : entries) {
+                if (entry.isExpired(now)) {
+                    expired(this, entry);
+                } else {
+                    entries[kept++] = entry;
+                    nextExpiryNanos = Math.min(nextExpiryNanos, entry.remainingNanos(now));
+                }
+            }
+            if (kept < entries.length) {
+                entries = kept == 0 ? NO_ENTRIES : copyOf(entries, kept);
+            }
+
+            int keptChildren = 0;
+            for (Node child : children) {
+                nextExpiryNanos = Math.min(nextExpiryNanos, child.purgeExpired(now));
+                if (!child.isEmpty()) {
+                    children[keptChildren++] = child;
+                }
+            }
+            if (keptChildren < children.length) {
+                final Node[] remaining = new Node[keptChildren];
+                System.arraycopy(children, 0, remaining, 0, keptChildren);
+                children = remaining;
+            }
+            return nextExpiryNanos;
+        }
+
+        boolean isEmpty() {
+            return entries.length == 0 && children.length == 0;
+        }
+
+        long weighBytes() {
+            return NODE_BYTES + MemoryBudget.stringBytes(segment);
+        }
+    }
+
+    private void expired(final Node node, final NegativeEntry entry) {
+        sizes[entry.kind().ordinal()].decrementAndGet();
+        memoryBudget.release(entry.kind().cacheLayer, entry.weighBytes());
+        node.uncountEntry(entry.kind());
+        metricsListener.onCacheEviction(entry.kind().cacheLayer);
+    }
+
+    /**
+     * An entry in its kind's recording order, with the node and tree it was recorded in.
+     */
+    private static final class Recorded {
+        private final PrincipalFingerprint principal;
+        private final PrincipalTree tree;
+        private final Node node;
+        private final NegativeEntry entry;
+
+        Recorded(final PrincipalFingerprint principal, final PrincipalTree tree, final Node node,
+                 final NegativeEntry entry) {
+            this.principal = principal;
+            this.tree = tree;
+            this.node = node;
+            this.entry = entry;
+        }
+    }
+
+    private static NegativeEntry[] copyOf(final NegativeEntry[] entries, final int length) {
+        final NegativeEntry[] copy = new NegativeEntry[length];
+        System.arraycopy(entries, 0, copy, 0, length);
+        return copy;
+    }
+}
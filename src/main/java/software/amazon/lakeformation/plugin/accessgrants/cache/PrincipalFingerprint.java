@@ -0,0 +1,102 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Compact identity of a principal: the first 128 bits of a SHA-256 digest over the name a {@link PrincipalResolver}
+ * gives it or, without one, over its access key ID and secret access key.
+ *
+ * <p>The digest is computed once when a {@link CacheKey} is built from credentials and is carried by every
+ * key derived from it, so comparing principals compares two longs instead of the credential strings, and the
+ * secret key is never read again after resolution. Names and key pairs are digested with different leading bytes,
+ * so a name can never be mistaken for a key pair.
+ */
+final class PrincipalFingerprint {
+
+    private static final byte SEPARATOR = 0;
+    private static final byte KEY_PAIR = 0;
+    private static final byte NAME = 1;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final long high;
+    private final long low;
+
+    private PrincipalFingerprint(final long high, final long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    static PrincipalFingerprint of(final AwsCredentialsIdentity credentials) {
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+        digest.update(KEY_PAIR);
+        digest.update(bytes(credentials.accessKeyId()));
+        digest.update(SEPARATOR);
+        digest.update(bytes(credentials.secretAccessKey()));
+        return of(digest.digest());
+    }
+
+    /**
+     * Returns the fingerprint of a principal named by a {@link PrincipalResolver}.
+     */
+    static PrincipalFingerprint of(final String principal) {
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+        digest.update(NAME);
+        digest.update(bytes(principal));
+        return of(digest.digest());
+    }
+
+    private static PrincipalFingerprint of(final byte[] hash) {
+        return new PrincipalFingerprint(toLong(hash, 0), toLong(hash, 8));
+    }
+
+    private static byte[] bytes(final String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PrincipalFingerprint)) {
+            return false;
+        }
+        final PrincipalFingerprint other = (PrincipalFingerprint) obj;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32));
+    }
+
+    /**
+     * Returns the first 64 bits of the digest in hex: a label for metrics that identifies the principal without
+     * revealing its credentials.
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x", high);
+    }
+}
@@ -0,0 +1,106 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+/**
+ * How {@link AccessGrantsCache} shares its capacity between the principals calling it.
+ *
+ * <p>With a quota, every principal's grants are held in a partition of their own, with its own TinyLFU admission
+ * and eviction, so a principal scanning many distinct paths only evicts its own grants. Each active principal is
+ * guaranteed a share of the capacity, and may grow into capacity the others leave unused up to its maximum share.
+ * When too many principals are active for every guaranteed share to fit, the capacity is split evenly between them.
+ *
+ * <p>Capacity is the cache size or, with a {@link MemoryBudget}, the bytes the budget leaves the cache.
+ */
+public final class PrincipalQuota {
+
+    /**
+     * No partitioning: every principal shares one cache, as without a quota.
+     */
+    public static final PrincipalQuota NONE = new PrincipalQuota(100, 0, false);
+
+    private final int maxSharePercent;
+    private final int guaranteedSharePercent;
+    private final boolean partitioned;
+
+    /**
+     * @param maxSharePercent percentage of the capacity a single principal may use
+     * @param guaranteedSharePercent percentage of the capacity every active principal may use, whatever the others use
+     * @throws IllegalArgumentException if the maximum share is not between 1 and 100, or the guaranteed share is
+     *                                  negative or above the maximum share
+     */
+    public PrincipalQuota(final int maxSharePercent, final int guaranteedSharePercent) {
+        this(maxSharePercent, guaranteedSharePercent, true);
+    }
+
+    private PrincipalQuota(final int maxSharePercent, final int guaranteedSharePercent, final boolean partitioned) {
+        if (maxSharePercent <= 0 || maxSharePercent > 100) {
+            throw new IllegalArgumentException("Maximum principal share should be between 1 and 100 percent");
+        }
+        if (guaranteedSharePercent < 0 || guaranteedSharePercent > maxSharePercent) {
+            throw new IllegalArgumentException(
+                "Guaranteed principal share should be non-negative and at most the maximum share of " + maxSharePercent);
+        }
+        this.maxSharePercent = maxSharePercent;
+        this.guaranteedSharePercent = guaranteedSharePercent;
+        this.partitioned = partitioned;
+    }
+
+    /**
+     * Returns false for {@link #NONE}, which keeps one cache for every principal.
+     */
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    public int maxSharePercent() {
+        return maxSharePercent;
+    }
+
+    public int guaranteedSharePercent() {
+        return guaranteedSharePercent;
+    }
+
+    /**
+     * Returns the part of {@code capacity} a single principal may use.
+     */
+    long maxShare(final long capacity) {
+        return percentOf(capacity, maxSharePercent);
+    }
+
+    /**
+     * Returns the part of {@code capacity} each of {@code principals} active principals is guaranteed.
+     */
+    long guaranteedShare(final long capacity, final int principals) {
+        return Math.min(percentOf(capacity, guaranteedSharePercent), capacity / Math.max(1, principals));
+    }
+
+    private static long percentOf(final long capacity, final int percent) {
+        // Split so large byte capacities do not overflow.
+        return capacity / 100 * percent + capacity % 100 * percent / 100;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PrincipalQuota)) {
+            return false;
+        }
+        final PrincipalQuota other = (PrincipalQuota) obj;
+        return maxSharePercent == other.maxSharePercent && guaranteedSharePercent == other.guaranteedSharePercent
+            && partitioned == other.partitioned;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * maxSharePercent + guaranteedSharePercent) + (partitioned ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        if (!partitioned) {
+            return "PrincipalQuota(NONE)";
+        }
+        return "PrincipalQuota(max=" + maxSharePercent + "%, guaranteed=" + guaranteedSharePercent + "%)";
+    }
+}
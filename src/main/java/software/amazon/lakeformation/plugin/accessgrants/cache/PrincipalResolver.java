@@ -0,0 +1,42 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+
+/**
+ * Names the principal behind a caller's credentials, so a {@link CacheKey} follows the principal rather than its
+ * current key pair.
+ *
+ * <p>Role session credentials rotate every hour or less. Keyed by key pair, every grant, cached failure and route
+ * of a principal becomes unreachable at each rotation and is fetched from Lake Formation again. Keyed by a name
+ * that survives rotation, the entries keep serving the principal's new credentials.
+ *
+ * <p>Lake Formation vends credentials for the plugin's own client identity, not the caller's, so principals that
+ * resolve to the same name share entries that Lake Formation would have vended to each of them alike. A resolver
+ * only decides how finely the caches, and a {@link PrincipalQuota}, tell callers apart. It is called when a caller's
+ * credentials change, not on every request, and must be thread-safe.
+ */
+@FunctionalInterface
+public interface PrincipalResolver {
+
+    /**
+     * Identifies principals by their access key ID and secret access key, so cached entries do not survive a
+     * rotation. This is the plugin's default.
+     */
+    PrincipalResolver ACCESS_KEY = credentials -> null;
+
+    /**
+     * Identifies principals by the account ID and provider name the SDK attaches to their credentials, such as
+     * those of an assumed role session, and by their key pair when the credentials carry no account ID. All roles
+     * and users of an account whose credentials come from the same provider resolve to one principal, so opt in
+     * only when they may share cached grants.
+     */
+    PrincipalResolver ACCOUNT_AND_PROVIDER = credentials -> credentials.accountId()
+        .map(accountId -> accountId + '/' + credentials.providerName().orElse(""))
+        .orElse(null);
+
+    /**
+     * Returns a name that stays the same across rotations of the principal's credentials, or null to identify the
+     * principal by its key pair.
+     */
+    String resolvePrincipal(AwsCredentialsIdentity credentials);
+}
@@ -0,0 +1,57 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that pays for the retries of throttled Lake Formation calls.
+ *
+ * <p>The bucket starts with {@value #MAX_RETRY_TOKENS} tokens. Every first attempt tops it up by
+ * {@value #RETRY_BUDGET_RATIO} of a token and every retry spends one, so once the initial allowance is spent retries
+ * never exceed that fraction of first attempts. Throttling is enforced per Lake Formation account and region rather
+ * than per cache, so caches calling the same endpoint should share one budget; otherwise each cache retries up to
+ * the full fraction on its own. Accounting is lock-free.
+ */
+public final class RetryBudget {
+
+    private static final double RETRY_BUDGET_RATIO = 0.1;
+    private static final long MAX_RETRY_TOKENS = 20;
+    private static final long MILLITOKENS_PER_TOKEN = 1000;
+    private static final long MAX_MILLITOKENS = MAX_RETRY_TOKENS * MILLITOKENS_PER_TOKEN;
+    private static final long MILLITOKENS_PER_ATTEMPT = (long) (RETRY_BUDGET_RATIO * MILLITOKENS_PER_TOKEN);
+
+    private final AtomicLong retryMillitokens = new AtomicLong(MAX_MILLITOKENS);
+
+    /**
+     * Records a first attempt, topping up the budget.
+     */
+    void onFirstAttempt() {
+        long current;
+        do {
+            current = retryMillitokens.get();
+            if (current >= MAX_MILLITOKENS) {
+                return;
+            }
+        } while (!retryMillitokens.compareAndSet(current, Math.min(MAX_MILLITOKENS, current + MILLITOKENS_PER_ATTEMPT)));
+    }
+
+    /**
+     * Spends one token for a retry, or returns false if the budget holds less than one.
+     */
+    boolean tryAcquire() {
+        long current;
+        do {
+            current = retryMillitokens.get();
+            if (current < MILLITOKENS_PER_TOKEN) {
+                return false;
+            }
+        } while (!retryMillitokens.compareAndSet(current, current - MILLITOKENS_PER_TOKEN));
+        return true;
+    }
+
+    /**
+     * Returns the whole tokens left for retries.
+     */
+    public long availableTokens() {
+        return retryMillitokens.get() / MILLITOKENS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,196 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.utils.CompletableFutureUtils;
+
+/**
+ * Coalesces concurrent credential misses so that siblings under the same folder share one Lake Formation call.
+ *
+ * <p>The first miss for a (principal, permission, immediate parent directory) triple becomes the leader and
+ * calls Lake Formation; later misses for the same triple wait on the leader's call. Once it completes, the
+ * leader's grant is in the cache, so each waiter whose path falls under the returned accessible data location
+ * is served from the cache. A waiter that is not covered makes its own call. An AccessDenied failure is shared
+ * with the waiters, since {@link AccessDeniedCache} records it for every sibling anyway; after any other failure,
+ * such as throttling or a timeout, each waiter retries on its own unless the leader recorded the failure in the
+ * {@link ExceptionCache}. Flights are shared between blocking and asynchronous callers.
+ */
+final class SingleFlight {
+    private static final Logger LOGGER = Logger.getLogger(SingleFlight.class.getName());
+
+    private final ConcurrentMap<CacheKey, CompletableFuture<AwsCredentials>> inFlightRequests =
+        new ConcurrentHashMap<>();
+    private final Function<CacheKey, AwsCredentials> cacheLookup;
+
+    /**
+     * @param cacheLookup finds cached credentials covering a path, or returns null
+     */
+    SingleFlight(final Function<CacheKey, AwsCredentials> cacheLookup) {
+        this.cacheLookup = cacheLookup;
+    }
+
+    /**
+     * Returns the key that concurrent misses under the same immediate parent directory share a flight on.
+     */
+    static CacheKey flightKey(final CacheKey cacheKey) {
+        final String parent = NegativeIndex.immediateParent(cacheKey.getS3Prefix());
+        return new CacheKey(cacheKey, null, parent != null ? parent : cacheKey.getS3Prefix());
+    }
+
+    /**
+     * Serves a miss for {@code cacheKey}, making {@code lfCall} only as the leader or as a waiter the leader's call
+     * did not serve.
+     */
+    AwsCredentials fetch(
+            final CacheKey cacheKey,
+            final ExceptionCache exceptionCache,
+            final Supplier<AwsCredentials> lfCall) {
+        final CacheKey flightKey = flightKey(cacheKey);
+        final CompletableFuture<AwsCredentials> flight = new CompletableFuture<>();
+        final CompletableFuture<AwsCredentials> inFlight = inFlightRequests.putIfAbsent(flightKey, flight);
+
+        if (inFlight == null) {
+            try {
+                // A leader that completed between our cache search and registering this flight has already
+                // cached its grant, so search once more before calling Lake Formation.
+                AwsCredentials credentials = cacheLookup.apply(cacheKey);
+                if (credentials == null) {
+                    credentials = lfCall.get();
+                }
+                flight.complete(credentials);
+                return credentials;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlightRequests.remove(flightKey, flight);
+            }
+        }
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Waiting on an in-flight Lake Formation request for s3Prefix: " + flightKey.getS3Prefix());
+        }
+        try {
+            inFlight.join();
+        } catch (CompletionException e) {
+            final Throwable cause = AccessGrantsCache.unwrap(e);
+            if (isSharedWithSiblings(cause)) {
+                throw (LakeFormationException) cause;
+            }
+            return retryAfterFailedFlight(cacheKey, exceptionCache, lfCall, cause);
+        }
+        final AwsCredentials credentials = cacheLookup.apply(cacheKey);
+        if (credentials != null) {
+            return credentials;
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("In-flight Lake Formation request did not cover s3Prefix: " + cacheKey.getS3Prefix());
+        }
+        return lfCall.get();
+    }
+
+    /**
+     * Returns whether a leader's failure also answers its waiters: an AccessDenied, which {@link AccessDeniedCache}
+     * records at the immediate parent directory the flight is keyed on.
+     */
+    private static boolean isSharedWithSiblings(final Throwable throwable) {
+        return throwable instanceof LakeFormationException
+            && AccessGrantsCache.isAccessDenied((LakeFormationException) throwable);
+    }
+
+    /**
+     * Serves a waiter whose leader failed for a reason that is not shared: a non-retryable failure the leader
+     * recorded in the negative cache is thrown, otherwise the waiter makes its own call.
+     */
+    private AwsCredentials retryAfterFailedFlight(
+            final CacheKey cacheKey,
+            final ExceptionCache exceptionCache,
+            final Supplier<AwsCredentials> lfCall,
+            final Throwable leaderFailure) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("In-flight Lake Formation request failed, retrying s3Prefix: " + cacheKey.getS3Prefix()
+                + ": " + leaderFailure.getMessage());
+        }
+        final LakeFormationException cachedException = exceptionCache.getIfParentCached(cacheKey);
+        if (cachedException != null) {
+            throw cachedException;
+        }
+        final AwsCredentials credentials = cacheLookup.apply(cacheKey);
+        if (credentials != null) {
+            return credentials;
+        }
+        return lfCall.get();
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #fetch}. Waiters are chained onto the in-flight call instead of blocking
+     * on it.
+     */
+    CompletableFuture<AwsCredentials> fetchAsync(
+            final CacheKey cacheKey,
+            final ExceptionCache exceptionCache,
+            final Supplier<CompletableFuture<AwsCredentials>> lfCall) {
+        final CacheKey flightKey = flightKey(cacheKey);
+        final CompletableFuture<AwsCredentials> flight = new CompletableFuture<>();
+        final CompletableFuture<AwsCredentials> inFlight = inFlightRequests.putIfAbsent(flightKey, flight);
+
+        if (inFlight == null) {
+            final CompletableFuture<AwsCredentials> call;
+            try {
+                final AwsCredentials cached = cacheLookup.apply(cacheKey);
+                call = cached != null ? CompletableFuture.completedFuture(cached) : lfCall.get();
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                inFlightRequests.remove(flightKey, flight);
+                throw e;
+            }
+            call.whenComplete((credentials, throwable) -> {
+                if (throwable == null) {
+                    flight.complete(credentials);
+                } else {
+                    flight.completeExceptionally(AccessGrantsCache.unwrap(throwable));
+                }
+                inFlightRequests.remove(flightKey, flight);
+            });
+            return flight;
+        }
+
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Waiting on an in-flight Lake Formation request for s3Prefix: " + flightKey.getS3Prefix());
+        }
+        return inFlight.handle((ignored, throwable) -> throwable)
+            .thenCompose(throwable -> {
+                if (throwable != null) {
+                    final Throwable cause = AccessGrantsCache.unwrap(throwable);
+                    if (isSharedWithSiblings(cause)) {
+                        return CompletableFutureUtils.failedFuture(cause);
+                    }
+                    if (LOGGER.isLoggable(Level.INFO)) {
+                        LOGGER.info("In-flight Lake Formation request failed, retrying s3Prefix: "
+                            + cacheKey.getS3Prefix() + ": " + cause.getMessage());
+                    }
+                    final LakeFormationException cachedException = exceptionCache.getIfParentCached(cacheKey);
+                    if (cachedException != null) {
+                        return CompletableFutureUtils.failedFuture(cachedException);
+                    }
+                }
+                final AwsCredentials credentials = cacheLookup.apply(cacheKey);
+                if (credentials != null) {
+                    return CompletableFuture.completedFuture(credentials);
+                }
+                if (throwable == null && LOGGER.isLoggable(Level.INFO)) {
+                    LOGGER.info("In-flight Lake Formation request did not cover s3Prefix: " + cacheKey.getS3Prefix());
+                }
+                return lfCall.get();
+            });
+    }
+}
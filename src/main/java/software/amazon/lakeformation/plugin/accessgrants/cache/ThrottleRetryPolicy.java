@@ -0,0 +1,231 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
+
+/**
+ * Retry policy for Lake Formation calls that were throttled.
+ *
+ * <p>A throttled call is retried after a decorrelated-jitter backoff: each delay is drawn uniformly between the base
+ * delay and three times the previous delay, capped at the maximum delay. Retries are paid for from a
+ * {@link RetryBudget}, which may be shared with other caches calling the same Lake Formation endpoint.
+ *
+ * <p>When a call is throttled, its scope (principal, permission and immediate parent directory) is marked as
+ * throttled for the chosen backoff. New calls for a marked scope wait out the remaining backoff before calling Lake
+ * Formation, so callers that arrive while a scope is throttled back off together instead of retrying immediately.
+ * Blocking calls hold a request thread, so the remaining backoff and the backoffs a blocking call sleeps between its
+ * own retries are capped at {@link #MAX_BLOCKING_WAIT_NANOS} in total: a blocking call for a scope marked for longer
+ * fails at once, and a retry that would exceed the cap is not made.
+ */
+final class ThrottleRetryPolicy {
+    private static final Logger LOGGER = Logger.getLogger(ThrottleRetryPolicy.class.getName());
+
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long MAX_BLOCKING_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long BASE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_DELAY_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final int THROTTLED_SCOPES_SIZE = 10000;
+    private static final String THROTTLED_ERROR_CODE = "ThrottledException";
+
+    private final int maxAttempts;
+    private final Ticker ticker;
+    private final RetryBudget retryBudget;
+    private final Cache<CacheKey, Long> throttledUntil;
+
+    ThrottleRetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, new RetryBudget(), Ticker.systemTicker());
+    }
+
+    ThrottleRetryPolicy(final int maxAttempts, final RetryBudget retryBudget, final Ticker ticker) {
+        this.maxAttempts = maxAttempts;
+        this.retryBudget = retryBudget;
+        this.ticker = ticker;
+        this.throttledUntil = Caffeine.newBuilder()
+            .maximumSize(THROTTLED_SCOPES_SIZE)
+            .expireAfterWrite(Duration.ofNanos(MAX_DELAY_NANOS))
+            .ticker(ticker)
+            .build();
+    }
+
+    /**
+     * Records a first attempt, topping up the retry budget.
+     */
+    void onFirstAttempt() {
+        retryBudget.onFirstAttempt();
+    }
+
+    /**
+     * Decides whether a throttled call may be retried, and if so spends one token of the retry budget.
+     *
+     * @param attempt the number of attempts made so far, starting at 1
+     */
+    boolean tryRetry(final int attempt) {
+        return attempt < maxAttempts && retryBudget.tryAcquire();
+    }
+
+    /**
+     * Returns the decorrelated-jitter delay to wait after a throttled attempt.
+     *
+     * @param previousDelayNanos the delay before the throttled attempt, or 0 after a first attempt
+     */
+    long nextDelayNanos(final long previousDelayNanos) {
+        final long upper = Math.min(MAX_DELAY_NANOS, Math.max(BASE_DELAY_NANOS, previousDelayNanos) * 3);
+        return ThreadLocalRandom.current().nextLong(BASE_DELAY_NANOS, upper + 1);
+    }
+
+    /**
+     * Marks {@code scope} as throttled for {@code delayNanos}, unless it is already marked for longer.
+     */
+    void markThrottled(final CacheKey scope, final long delayNanos) {
+        final long until = ticker.read() + delayNanos;
+        throttledUntil.asMap().merge(scope, until, (current, proposed) -> current - proposed >= 0 ? current : proposed);
+    }
+
+    /**
+     * Returns how long a new call for {@code scope} should wait before calling Lake Formation, or 0 if the scope is
+     * not throttled.
+     */
+    long remainingBackoffNanos(final CacheKey scope) {
+        final Long until = throttledUntil.getIfPresent(scope);
+        if (until == null) {
+            return 0;
+        }
+        return Math.max(0, until - ticker.read());
+    }
+
+    /**
+     * Returns a future that completes after {@code delayNanos}, without blocking the calling thread.
+     */
+    CompletableFuture<Void> delay(final long delayNanos) {
+        if (delayNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> delayed = new CompletableFuture<>();
+        DelayScheduler.shared().schedule(() -> delayed.complete(null), delayNanos, TimeUnit.NANOSECONDS);
+        return delayed;
+    }
+
+    /**
+     * Makes a blocking call for {@code scope}, retrying it while it is throttled. A scope that was recently throttled
+     * first waits out its remaining backoff. The calling thread is a request thread, so the backoff and the retries
+     * sleep for at most {@link #MAX_BLOCKING_WAIT_NANOS} in total; when the remaining backoff alone is longer, the call
+     * fails at once with a {@link ThrottledException}.
+     *
+     * @param scope the principal, permission and immediate parent directory the call is throttled on
+     * @param attempt makes one attempt of the call
+     */
+    <T> T call(final CacheKey scope, final Supplier<T> attempt) {
+        final long backoffNanos = remainingBackoffNanos(scope);
+        if (backoffNanos > MAX_BLOCKING_WAIT_NANOS) {
+            final String message = "Lake Formation is throttling s3Prefix: " + scope.getS3Prefix()
+                + ", backing off for another " + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + " ms";
+            // Carries the error code Lake Formation reports, so metrics and negative caching treat it as throttling.
+            throw ThrottledException.builder()
+                .awsErrorDetails(AwsErrorDetails.builder()
+                    .errorCode(THROTTLED_ERROR_CODE)
+                    .errorMessage(message)
+                    .serviceName(NegativeEntry.SERVICE_NAME)
+                    .build())
+                .message(message)
+                .build();
+        }
+        sleepNanos(backoffNanos);
+        onFirstAttempt();
+        long delayNanos = 0;
+        long waitedNanos = backoffNanos;
+        for (int attempts = 1; ; attempts++) {
+            try {
+                return attempt.get();
+            } catch (LakeFormationException e) {
+                if (!ConcurrencyLimiter.isThrottled(e)) {
+                    throw e;
+                }
+                delayNanos = nextDelayNanos(delayNanos);
+                markThrottled(scope, delayNanos);
+                if (waitedNanos + delayNanos > MAX_BLOCKING_WAIT_NANOS || !tryRetry(attempts)) {
+                    throw e;
+                }
+                logThrottled(scope, delayNanos);
+                sleepNanos(delayNanos);
+                waitedNanos += delayNanos;
+            }
+        }
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #call}: the backoff and the retries are scheduled instead of slept, so they
+     * are not capped.
+     */
+    <T> CompletableFuture<T> callAsync(final CacheKey scope, final Supplier<CompletableFuture<T>> attempt) {
+        return delay(remainingBackoffNanos(scope)).thenCompose(ignored -> {
+            onFirstAttempt();
+            return callAsync(scope, attempt, 1, 0);
+        });
+    }
+
+    private <T> CompletableFuture<T> callAsync(
+            final CacheKey scope,
+            final Supplier<CompletableFuture<T>> attempt,
+            final int attempts,
+            final long previousDelayNanos) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        attempt.get().whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                result.complete(response);
+                return;
+            }
+            final Throwable cause = AccessGrantsCache.unwrap(throwable);
+            if (!ConcurrencyLimiter.isThrottled(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            final long delayNanos = nextDelayNanos(previousDelayNanos);
+            markThrottled(scope, delayNanos);
+            if (!tryRetry(attempts)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            logThrottled(scope, delayNanos);
+            delay(delayNanos)
+                .thenCompose(ignored -> callAsync(scope, attempt, attempts + 1, delayNanos))
+                .whenComplete((retried, retryThrowable) -> {
+                    if (retryThrowable == null) {
+                        result.complete(retried);
+                    } else {
+                        result.completeExceptionally(AccessGrantsCache.unwrap(retryThrowable));
+                    }
+                });
+        });
+        return result;
+    }
+
+    private static void logThrottled(final CacheKey scope, final long delayNanos) {
+        LOGGER.info("Lake Formation throttled the request for s3Prefix: " + scope.getS3Prefix()
+            + ", retrying in " + TimeUnit.NANOSECONDS.toMillis(delayNanos) + " ms");
+    }
+
+    private static void sleepNanos(final long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SdkClientException.create("Interrupted while backing off from Lake Formation throttling", e);
+        }
+    }
+}
@@ -1,10 +1,29 @@
 package software.amazon.lakeformation.plugin.accessgrants.plugin;
 
+import software.amazon.lakeformation.plugin.accessgrants.cache.MemoryBudget;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricsListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalQuota;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalResolver;
 import software.amazon.awssdk.annotations.NotNull;
+import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.utils.builder.CopyableBuilder;
 
 public interface AccessGrantsPluginBuilder extends CopyableBuilder<AccessGrantsPluginBuilder, LakeFormationAccessGrantsPlugin> {
     AccessGrantsPluginBuilder enabled(@NotNull Boolean enabled);
     AccessGrantsPluginBuilder enableFallback(@NotNull Boolean choice);
+    AccessGrantsPluginBuilder enableAsyncResolution(@NotNull Boolean choice);
+    AccessGrantsPluginBuilder credentialsDurationSeconds(@NotNull Integer durationSeconds);
+    AccessGrantsPluginBuilder expirationSafetyMarginSeconds(@NotNull Integer marginSeconds);
+    AccessGrantsPluginBuilder batchWindowMillis(@NotNull Integer windowMillis);
+    AccessGrantsPluginBuilder maxBatchSize(@NotNull Integer batchSize);
+    AccessGrantsPluginBuilder shareResources(@NotNull Boolean choice);
+    AccessGrantsPluginBuilder staleWhileRevalidate(@NotNull Boolean choice);
+    AccessGrantsPluginBuilder scheduledExpiry(@NotNull Boolean choice);
+    AccessGrantsPluginBuilder memoryBudget(MemoryBudget budget);
+    AccessGrantsPluginBuilder principalQuota(PrincipalQuota quota);
+    AccessGrantsPluginBuilder principalResolver(PrincipalResolver resolver);
+    AccessGrantsPluginBuilder callerIdentityTimeoutMillis(@NotNull Integer timeoutMillis);
+    AccessGrantsPluginBuilder metricsListener(MetricsListener listener);
+    AccessGrantsPluginBuilder metricPublisher(MetricPublisher publisher);
     AccessGrantsPluginBuilder userAgent(@NotNull String userAgent);
 }
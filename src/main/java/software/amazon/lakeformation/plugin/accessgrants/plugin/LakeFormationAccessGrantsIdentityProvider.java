@@ -4,32 +4,91 @@ import software.amazon.lakeformation.plugin.accessgrants.cache.AccessDeniedCache
 import software.amazon.lakeformation.plugin.accessgrants.cache.AccessGrantsCache;
 import software.amazon.lakeformation.plugin.accessgrants.cache.CacheKey;
 import software.amazon.lakeformation.plugin.accessgrants.cache.ExceptionCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.FallbackRouteCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricsListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.NegativeEntry;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalResolver;
+import com.github.benmanes.caffeine.cache.Ticker;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
-import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.identity.spi.IdentityProvider;
 import software.amazon.awssdk.identity.spi.ResolveIdentityRequest;
+import software.amazon.awssdk.services.lakeformation.LakeFormationAsyncClient;
 import software.amazon.awssdk.services.lakeformation.LakeFormationClient;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
 import software.amazon.awssdk.services.s3control.model.Permission;
+import software.amazon.awssdk.utils.CompletableFutureUtils;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+import software.amazon.awssdk.utils.ThreadFactoryBuilder;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PERMISSION_PROPERTY;
 import static software.amazon.awssdk.s3accessgrants.plugin.internal.S3AccessGrantsUtils.PREFIX_PROPERTY;
 
-public class LakeFormationAccessGrantsIdentityProvider implements IdentityProvider<AwsCredentialsIdentity> {
+/**
+ * Resolves Lake Formation credentials for S3 requests, falling back to the S3 Access Grants provider.
+ *
+ * <p>The caller identity from the original provider is memoized, so a request whose grant is cached costs a few
+ * map probes rather than a call into a chained or profile provider. The memoized identity is refreshed in the
+ * background once it is a minute old or its credentials are within five minutes of expiring, and is no longer served
+ * from a minute before they expire. Waiting for the original provider is bounded by a timeout, after which the
+ * request fails over like any other failure. An identity that arrives late is still memoized, unless an identity
+ * resolved after it has been memoized in the meantime.
+ */
+public class LakeFormationAccessGrantsIdentityProvider implements IdentityProvider<AwsCredentialsIdentity>,
+        SdkAutoCloseable {
 
     private static final Logger LOGGER = Logger.getLogger(LakeFormationAccessGrantsIdentityProvider.class.getName());
 
+    static final int DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS = 10_000;
+    private static final long CALLER_IDENTITY_MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long CALLER_IDENTITY_REFRESH_AHEAD_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final long CALLER_IDENTITY_STALE_MARGIN_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long CALLER_IDENTITY_REFRESH_KEEP_ALIVE_SECONDS = 60;
+    private static final int CALLER_IDENTITY_REFRESH_QUEUE_CAPACITY = 64;
+
+    // Shared by every provider; each provider queues at most one refresh at a time, and a refresh that does not fit
+    // in the queue is dropped and retried by a later request.
+    private static final ThreadPoolExecutor CALLER_IDENTITY_REFRESHER = newCallerIdentityRefresher();
+
     private final IdentityProvider<? extends AwsCredentialsIdentity> originalProvider;
     private final LakeFormationClient lfClient;
+    private final LakeFormationAsyncClient lfAsyncClient;
     private final AccessDeniedCache accessDeniedCache;
     private final AccessGrantsCache accessGrantsCache;
     private final ExceptionCache exceptionCache;
+    private final FallbackRouteCache fallbackRouteCache;
     private final boolean enableFallback;
     private final IdentityProvider<? extends AwsCredentialsIdentity> s3AccessGrantsIdentityProvider;
+    private final SdkAutoCloseable resources;
+    private final MetricsListener metricsListener;
+    private final PrincipalResolver principalResolver;
+    private final long callerIdentityTimeoutMillis;
+    private final Ticker ticker;
+    private final Instant tickerOrigin; // wall-clock time at which the ticker read tickerOriginNanos
+    private final long tickerOriginNanos;
+    private final AtomicBoolean refreshingCallerIdentity = new AtomicBoolean();
+    private final AtomicLong callerIdentityResolutions = new AtomicLong();
+    private final AtomicReference<CallerIdentity> callerIdentity = new AtomicReference<>();
+    private volatile CacheKey lastRequesterKey;
 
     public LakeFormationAccessGrantsIdentityProvider(
             final IdentityProvider<? extends AwsCredentialsIdentity> originalProvider,
@@ -39,13 +98,99 @@ public class LakeFormationAccessGrantsIdentityProvider implements IdentityProvid
             final ExceptionCache exceptionCache,
             final boolean enableFallback,
             final IdentityProvider<? extends AwsCredentialsIdentity> s3AccessGrantsIdentityProvider) {
+        this(originalProvider, lfClient, null, accessDeniedCache, accessGrantsCache, exceptionCache,
+            new FallbackRouteCache(), enableFallback, s3AccessGrantsIdentityProvider, null, MetricsListener.NONE,
+            PrincipalResolver.ACCESS_KEY, DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a provider that resolves Lake Formation credentials without blocking, for use with asynchronous S3
+     * clients. The caller identity, cache lookups, Lake Formation call and any fallback are composed as futures.
+     */
+    public LakeFormationAccessGrantsIdentityProvider(
+            final IdentityProvider<? extends AwsCredentialsIdentity> originalProvider,
+            final LakeFormationAsyncClient lfAsyncClient,
+            final AccessDeniedCache accessDeniedCache,
+            final AccessGrantsCache accessGrantsCache,
+            final ExceptionCache exceptionCache,
+            final boolean enableFallback,
+            final IdentityProvider<? extends AwsCredentialsIdentity> s3AccessGrantsIdentityProvider) {
+        this(originalProvider, null, lfAsyncClient, accessDeniedCache, accessGrantsCache, exceptionCache,
+            new FallbackRouteCache(), enableFallback, s3AccessGrantsIdentityProvider, null, MetricsListener.NONE,
+            PrincipalResolver.ACCESS_KEY, DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a provider backed by plugin-managed resources, which are released when the provider is closed.
+     * Exactly one of {@code lfClient} and {@code lfAsyncClient} is expected to be set. Fallbacks and the latency of
+     * each resolution are reported to {@code metricsListener}, and cache keys follow the principal that
+     * {@code principalResolver} names for the caller's credentials. A request waits at most
+     * {@code callerIdentityTimeoutMillis} for the original provider.
+     */
+    LakeFormationAccessGrantsIdentityProvider(
+            final IdentityProvider<? extends AwsCredentialsIdentity> originalProvider,
+            final LakeFormationClient lfClient,
+            final LakeFormationAsyncClient lfAsyncClient,
+            final AccessDeniedCache accessDeniedCache,
+            final AccessGrantsCache accessGrantsCache,
+            final ExceptionCache exceptionCache,
+            final FallbackRouteCache fallbackRouteCache,
+            final boolean enableFallback,
+            final IdentityProvider<? extends AwsCredentialsIdentity> s3AccessGrantsIdentityProvider,
+            final SdkAutoCloseable resources,
+            final MetricsListener metricsListener,
+            final PrincipalResolver principalResolver,
+            final long callerIdentityTimeoutMillis) {
+        this(originalProvider, lfClient, lfAsyncClient, accessDeniedCache, accessGrantsCache, exceptionCache,
+            fallbackRouteCache, enableFallback, s3AccessGrantsIdentityProvider, resources, metricsListener,
+            principalResolver, callerIdentityTimeoutMillis, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a provider that reads the time from {@code ticker}, for tests.
+     */
+    LakeFormationAccessGrantsIdentityProvider(
+            final IdentityProvider<? extends AwsCredentialsIdentity> originalProvider,
+            final LakeFormationClient lfClient,
+            final LakeFormationAsyncClient lfAsyncClient,
+            final AccessDeniedCache accessDeniedCache,
+            final AccessGrantsCache accessGrantsCache,
+            final ExceptionCache exceptionCache,
+            final FallbackRouteCache fallbackRouteCache,
+            final boolean enableFallback,
+            final IdentityProvider<? extends AwsCredentialsIdentity> s3AccessGrantsIdentityProvider,
+            final SdkAutoCloseable resources,
+            final MetricsListener metricsListener,
+            final PrincipalResolver principalResolver,
+            final long callerIdentityTimeoutMillis,
+            final Ticker ticker) {
         this.originalProvider = originalProvider;
         this.lfClient = lfClient;
+        this.lfAsyncClient = lfAsyncClient;
         this.accessDeniedCache = accessDeniedCache;
         this.accessGrantsCache = accessGrantsCache;
         this.exceptionCache = exceptionCache;
+        this.fallbackRouteCache = fallbackRouteCache;
         this.enableFallback = enableFallback;
         this.s3AccessGrantsIdentityProvider = s3AccessGrantsIdentityProvider;
+        this.resources = resources;
+        this.metricsListener = metricsListener;
+        this.principalResolver = principalResolver;
+        this.callerIdentityTimeoutMillis = callerIdentityTimeoutMillis;
+        this.ticker = ticker;
+        this.tickerOrigin = Instant.now();
+        this.tickerOriginNanos = ticker.read();
+    }
+
+    /**
+     * Releases the plugin-managed caches and Lake Formation client, if any. A provider built with caller-supplied
+     * clients leaves them open.
+     */
+    @Override
+    public void close() {
+        if (resources != null) {
+            resources.close();
+        }
     }
 
     @Override
@@ -56,50 +201,366 @@ public class LakeFormationAccessGrantsIdentityProvider implements IdentityProvid
     @Override
     public CompletableFuture<? extends AwsCredentialsIdentity> resolveIdentity(
             final ResolveIdentityRequest resolveIdentityRequest) {
-        try {
-            // Get requester credentials
-            final AwsCredentialsIdentity requesterCredentials = originalProvider
-                    .resolveIdentity(resolveIdentityRequest).get();
+        final long startNanos = ticker.read();
+        final CompletableFuture<? extends AwsCredentialsIdentity> result = lfAsyncClient != null
+            ? resolveIdentityAsync(resolveIdentityRequest, startNanos)
+            : resolveIdentitySync(resolveIdentityRequest, startNanos);
+        recordLatency(result, startNanos);
+        return result;
+    }
+
+    /**
+     * Reports the latency of a resolution once its future completes. A completed future, such as a cache hit, is
+     * reported at once without registering a callback.
+     */
+    private void recordLatency(final CompletableFuture<?> result, final long startNanos) {
+        if (result.isDone()) {
+            metricsListener.onResolveIdentity(ticker.read() - startNanos);
+        } else if (metricsListener != MetricsListener.NONE) {
+            result.whenComplete((ignored, throwable) ->
+                metricsListener.onResolveIdentity(ticker.read() - startNanos));
+        }
+    }
 
-            // Get S3 prefix from request properties
-            final String s3Prefix = resolveIdentityRequest.property(PREFIX_PROPERTY).toString();
-            final Permission permission = Permission.fromValue(resolveIdentityRequest.property(PERMISSION_PROPERTY)
-                    .toString());
+    private CompletableFuture<? extends AwsCredentialsIdentity> resolveIdentitySync(
+            final ResolveIdentityRequest resolveIdentityRequest,
+            final long nowNanos) {
+        CacheKey cacheKey = null;
+        try {
+            // Get requester credentials, memoized unless they are stale
+            AwsCredentialsIdentity requesterCredentials = memoizedCallerIdentity(resolveIdentityRequest, nowNanos);
+            if (requesterCredentials == null) {
+                requesterCredentials = resolveCallerIdentity(resolveIdentityRequest);
+            }
 
             // Construct cache key
-            final CacheKey cacheKey = new CacheKey(requesterCredentials, permission, s3Prefix);
+            cacheKey = cacheKey(requesterCredentials, resolveIdentityRequest);
 
-            // Check access denied cache first
-            Exception accessDeniedException = accessDeniedCache.getValueFromCache(cacheKey);
-            if (accessDeniedException != null) {
-                LOGGER.info("Found cached Access Denied Exception: " + accessDeniedException.getMessage());
-                throw new RuntimeException(accessDeniedException);
+            // Locations Lake Formation is known not to serve go straight to the fallback provider
+            if (isRoutedToFallback(cacheKey)) {
+                return routeToFallback(resolveIdentityRequest);
             }
 
-            // Get Lake Formation credentials
-            final AwsCredentials lfTempCredentials = accessGrantsCache.getCredentials(
-                    lfClient, cacheKey, accessDeniedCache, exceptionCache);
+            // Check access denied cache first; a cached failure is routed without throwing
+            final NegativeEntry accessDenied = accessDeniedCache.getEntryFromCache(cacheKey);
+            if (accessDenied != null) {
+                return cachedFailure(resolveIdentityRequest, cacheKey, accessDenied);
+            }
 
-            LOGGER.info("Successfully resolved Lake Formation credentials");
-            if (lfTempCredentials instanceof AwsSessionCredentials) {
-                return CompletableFuture.completedFuture(AwsSessionCredentials.create(
-                        lfTempCredentials.accessKeyId(),
-                        lfTempCredentials.secretAccessKey(),
-                        ((AwsSessionCredentials) lfTempCredentials).sessionToken()));
+            // A cache hit returns the grant's shared, already completed future
+            CompletableFuture<AwsCredentials> lfTempCredentials =
+                    accessGrantsCache.findCompletedCredentials(lfClient, cacheKey);
+            if (lfTempCredentials == null) {
+                final NegativeEntry negativeCacheEntry = exceptionCache.getEntryIfParentCached(cacheKey);
+                if (negativeCacheEntry != null) {
+                    return cachedFailure(resolveIdentityRequest, cacheKey, negativeCacheEntry);
+                }
+                // Get Lake Formation credentials; the lookups above are not repeated
+                lfTempCredentials = accessGrantsCache.fetchOnMiss(
+                        lfClient, cacheKey, accessDeniedCache, exceptionCache);
             }
-            return CompletableFuture.completedFuture(AwsCredentialsIdentity.create(
-                    lfTempCredentials.accessKeyId(), lfTempCredentials.secretAccessKey()));
+
+            LOGGER.info("Successfully resolved Lake Formation credentials");
+            return lfTempCredentials;
+        } catch (InterruptedException e) {
+            // Keep the interrupt for the caller; the fallback provider still answers this request.
+            Thread.currentThread().interrupt();
+            return fallback(resolveIdentityRequest, cacheKey, e);
         } catch (Exception e) {
+            return fallback(resolveIdentityRequest, cacheKey, e);
+        }
+    }
+
+    /**
+     * Resolves the identity without blocking: the caller identity future, the cache lookups and the
+     * {@link LakeFormationAsyncClient} call are chained, and a failure is routed to the fallback provider
+     * asynchronously. When the caller identity is already available and the grant is cached, the grant's completed
+     * future is returned as is, without building a chain.
+     */
+    private CompletableFuture<? extends AwsCredentialsIdentity> resolveIdentityAsync(
+            final ResolveIdentityRequest resolveIdentityRequest,
+            final long nowNanos) {
+        final AwsCredentialsIdentity memoized = memoizedCallerIdentity(resolveIdentityRequest, nowNanos);
+        if (memoized != null) {
+            return lookupAsync(memoized, resolveIdentityRequest);
+        }
+        final long resolution = callerIdentityResolutions.incrementAndGet();
+        final CompletableFuture<? extends AwsCredentialsIdentity> requesterCredentials;
+        try {
+            requesterCredentials = originalProvider.resolveIdentity(resolveIdentityRequest);
+        } catch (RuntimeException e) {
+            return fallback(resolveIdentityRequest, null, e);
+        }
+        if (isCompletedNormally(requesterCredentials)) {
+            memoize(requesterCredentials.join(), resolution);
+            return lookupAsync(requesterCredentials.join(), resolveIdentityRequest);
+        }
+        return requesterCredentials.handle((credentials, throwable) -> {
+            if (throwable != null) {
+                return fallback(resolveIdentityRequest, null, unwrap(throwable));
+            }
+            memoize(credentials, resolution);
+            return lookupAsync(credentials, resolveIdentityRequest)
+                .thenApply(Function.<AwsCredentialsIdentity>identity());
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<? extends AwsCredentialsIdentity> lookupAsync(
+            final AwsCredentialsIdentity requesterCredentials,
+            final ResolveIdentityRequest resolveIdentityRequest) {
+        final CacheKey cacheKey;
+        CompletableFuture<AwsCredentials> lfCredentials;
+        try {
+            cacheKey = cacheKey(requesterCredentials, resolveIdentityRequest);
+            if (isRoutedToFallback(cacheKey)) {
+                return routeToFallback(resolveIdentityRequest);
+            }
+
+            final NegativeEntry accessDenied = accessDeniedCache.getEntryFromCache(cacheKey);
+            if (accessDenied != null) {
+                return cachedFailure(resolveIdentityRequest, cacheKey, accessDenied);
+            }
+            lfCredentials = accessGrantsCache.findCredentialsAsync(lfAsyncClient, cacheKey);
+            if (lfCredentials == null) {
+                final NegativeEntry negativeCacheEntry = exceptionCache.getEntryIfParentCached(cacheKey);
+                if (negativeCacheEntry != null) {
+                    return cachedFailure(resolveIdentityRequest, cacheKey, negativeCacheEntry);
+                }
+                lfCredentials =
+                    accessGrantsCache.fetchOnMissAsync(lfAsyncClient, cacheKey, accessDeniedCache, exceptionCache);
+            }
+        } catch (RuntimeException e) {
+            return fallback(resolveIdentityRequest, null, e);
+        }
+        if (isCompletedNormally(lfCredentials)) {
+            LOGGER.info("Successfully resolved Lake Formation credentials");
+            return lfCredentials;
+        }
+        return lfCredentials.handle((credentials, throwable) -> {
+            if (throwable != null) {
+                return fallback(resolveIdentityRequest, cacheKey, unwrap(throwable));
+            }
+            LOGGER.info("Successfully resolved Lake Formation credentials");
+            return CompletableFuture.<AwsCredentialsIdentity>completedFuture(credentials);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Returns the memoized caller identity if it may still be served at {@code nowNanos}, starting a background
+     * refresh once one is due, or null if the caller identity has to be resolved first.
+     */
+    private AwsCredentialsIdentity memoizedCallerIdentity(
+            final ResolveIdentityRequest resolveIdentityRequest,
+            final long nowNanos) {
+        final CallerIdentity memoized = callerIdentity.get();
+        if (memoized == null || nowNanos - memoized.staleAtNanos >= 0) {
+            return null;
+        }
+        if (nowNanos - memoized.refreshAtNanos >= 0 && refreshingCallerIdentity.compareAndSet(false, true)) {
+            refreshCallerIdentity(resolveIdentityRequest);
+        }
+        return memoized.credentials;
+    }
+
+    /**
+     * Resolves the caller identity with the original provider, waiting at most the caller identity timeout. An
+     * identity that arrives after the timeout is still memoized for later requests.
+     */
+    private AwsCredentialsIdentity resolveCallerIdentity(final ResolveIdentityRequest resolveIdentityRequest)
+            throws InterruptedException, ExecutionException {
+        final long resolution = callerIdentityResolutions.incrementAndGet();
+        final CompletableFuture<? extends AwsCredentialsIdentity> pending =
+            originalProvider.resolveIdentity(resolveIdentityRequest);
+        try {
+            final AwsCredentialsIdentity credentials = pending.get(callerIdentityTimeoutMillis, TimeUnit.MILLISECONDS);
+            memoize(credentials, resolution);
+            return credentials;
+        } catch (TimeoutException e) {
+            pending.thenAccept(credentials -> memoize(credentials, resolution));
+            throw SdkClientException.create(
+                "Timed out after " + callerIdentityTimeoutMillis + " ms resolving the caller identity", e);
+        }
+    }
+
+    /**
+     * Re-resolves the caller identity on the shared refresher thread, so no request waits for it. A failed refresh
+     * leaves the memoized identity to serve until it is stale.
+     */
+    private void refreshCallerIdentity(final ResolveIdentityRequest resolveIdentityRequest) {
+        try {
+            CALLER_IDENTITY_REFRESHER.execute(() -> {
+                try {
+                    resolveCallerIdentity(resolveIdentityRequest);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    LOGGER.info("Refreshing the caller identity failed: " + e.getMessage());
+                } finally {
+                    refreshingCallerIdentity.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingCallerIdentity.set(false);
+        }
+    }
+
+    /**
+     * Memoizes {@code credentials} as the caller identity. They are refreshed after at most a minute, or earlier as
+     * they near their expiration, and are served for at most another minute, or until shortly before they expire.
+     * Credentials from a {@code resolution} started before that of the memoized identity are dropped, so a
+     * resolution that completes late does not replace a newer identity.
+     */
+    private void memoize(final AwsCredentialsIdentity credentials, final long resolution) {
+        if (credentials == null) {
+            return;
+        }
+        final long nowNanos = ticker.read();
+        long refreshAfterNanos = CALLER_IDENTITY_MAX_AGE_NANOS;
+        long staleAfterNanos = 2 * CALLER_IDENTITY_MAX_AGE_NANOS;
+        final Optional<Instant> expirationTime = credentials.expirationTime();
+        if (expirationTime.isPresent()) {
+            final long remainingNanos =
+                Duration.between(tickerOrigin, expirationTime.get()).toNanos() - (nowNanos - tickerOriginNanos);
+            refreshAfterNanos = Math.min(refreshAfterNanos, remainingNanos - CALLER_IDENTITY_REFRESH_AHEAD_NANOS);
+            staleAfterNanos = Math.min(staleAfterNanos, remainingNanos - CALLER_IDENTITY_STALE_MARGIN_NANOS);
+        }
+        final CallerIdentity memoized =
+            new CallerIdentity(credentials, resolution, nowNanos + refreshAfterNanos, nowNanos + staleAfterNanos);
+        CallerIdentity current;
+        do {
+            current = callerIdentity.get();
+            if (current != null && current.resolution > resolution) {
+                return;
+            }
+        } while (!callerIdentity.compareAndSet(current, memoized));
+    }
+
+    private static ThreadPoolExecutor newCallerIdentityRefresher() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+            CALLER_IDENTITY_REFRESH_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(CALLER_IDENTITY_REFRESH_QUEUE_CAPACITY),
+            new ThreadFactoryBuilder().threadNamePrefix("lakeformation-access-grants-identity").daemonThreads(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * A memoized caller identity, with the resolution that produced it, the ticker time from which it is refreshed in
+     * the background and the one from which it is no longer served.
+     */
+    private static final class CallerIdentity {
+        private final AwsCredentialsIdentity credentials;
+        private final long resolution;
+        private final long refreshAtNanos;
+        private final long staleAtNanos;
+
+        CallerIdentity(
+                final AwsCredentialsIdentity credentials,
+                final long resolution,
+                final long refreshAtNanos,
+                final long staleAtNanos) {
+            this.credentials = credentials;
+            this.resolution = resolution;
+            this.refreshAtNanos = refreshAtNanos;
+            this.staleAtNanos = staleAtNanos;
+        }
+    }
+
+    /**
+     * Builds the cache key for a request. Callers' credential providers usually hand out the same credentials
+     * instance until it rotates, so a key for the last seen instance is kept and new keys are derived from it,
+     * reusing its principal fingerprint instead of resolving the principal again. After a rotation the new
+     * credentials resolve to the same principal, so the keys built from them still find the principal's entries.
+     */
+    private CacheKey cacheKey(
+            final AwsCredentialsIdentity requesterCredentials,
+            final ResolveIdentityRequest resolveIdentityRequest) {
+        final String s3Prefix = resolveIdentityRequest.property(PREFIX_PROPERTY).toString();
+        final Permission permission = Permission.fromValue(resolveIdentityRequest.property(PERMISSION_PROPERTY)
+                .toString());
+
+        final CacheKey requesterKey = lastRequesterKey;
+        if (requesterKey != null && requesterKey.getCredentials() == requesterCredentials) {
+            return requesterKey.derive(permission, s3Prefix);
+        }
+        final CacheKey cacheKey = new CacheKey(requesterCredentials, principalResolver, permission, s3Prefix);
+        lastRequesterKey = cacheKey;
+        return cacheKey;
+    }
+
+    private static boolean isCompletedNormally(final CompletableFuture<?> future) {
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    private boolean isRoutedToFallback(final CacheKey cacheKey) {
+        return enableFallback && s3AccessGrantsIdentityProvider != null
+            && fallbackRouteCache.isRoutedToFallback(cacheKey);
+    }
+
+    private CompletableFuture<AwsCredentialsIdentity> routeToFallback(
+            final ResolveIdentityRequest resolveIdentityRequest) {
+        LOGGER.info("Location is not served by Lake Formation, routing to S3AccessGrant credential provider");
+        metricsListener.onFallback(MetricsListener.FallbackReason.ROUTE);
+        return s3AccessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest)
+            .thenApply(Function.identity());
+    }
+
+    /**
+     * Resolves a request whose Lake Formation failure is already cached. No exception is created or thrown on the
+     * way to the fallback provider; one is rebuilt from the cached entry only when the failure is surfaced to the
+     * caller.
+     */
+    private CompletableFuture<AwsCredentialsIdentity> cachedFailure(
+            final ResolveIdentityRequest resolveIdentityRequest,
+            final CacheKey cacheKey,
+            final NegativeEntry cached) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Found cached " + cached.getErrorCode() + " for s3Prefix: " + cacheKey.getS3Prefix());
+        }
+        if (enableFallback && s3AccessGrantsIdentityProvider != null) {
+            fallbackRouteCache.routeToFallback(cacheKey, cached);
+            LOGGER.info("Falling back to S3AccessGrant credential provider");
+            metricsListener.onFallback(MetricsListener.FallbackReason.CACHED_FAILURE);
+            return s3AccessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest)
+                .thenApply(Function.identity());
+        }
+        return fallback(resolveIdentityRequest, cacheKey, cached.toException());
+    }
+
+    /**
+     * Resolves the request with the fallback provider, if enabled. A registration-driven Lake Formation failure also
+     * routes the requested location to the fallback provider for later requests.
+     *
+     * @param cacheKey the cache key of the request, or null if the failure happened before it was built
+     */
+    private CompletableFuture<AwsCredentialsIdentity> fallback(
+            final ResolveIdentityRequest resolveIdentityRequest,
+            final CacheKey cacheKey,
+            final Throwable e) {
+        if (LOGGER.isLoggable(Level.INFO)) {
             LOGGER.info("Lake Formation exception: " + e.getMessage());
-            if (enableFallback && s3AccessGrantsIdentityProvider != null) {
-                LOGGER.info("Falling back to S3AccessGrant credential provider");
-                return s3AccessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest);
-            } else {
-                CompletableFuture<AwsCredentialsIdentity> future = new CompletableFuture<>();
-                future.completeExceptionally(
-                    SdkClientException.create("Failed to resolve Lake Formation credentials", e));
-                return future;
+        }
+        if (enableFallback && s3AccessGrantsIdentityProvider != null) {
+            if (cacheKey != null && e instanceof LakeFormationException) {
+                fallbackRouteCache.routeToFallback(cacheKey, (LakeFormationException) e);
             }
+            LOGGER.info("Falling back to S3AccessGrant credential provider");
+            metricsListener.onFallback(MetricsListener.FallbackReason.FAILURE);
+            return s3AccessGrantsIdentityProvider.resolveIdentity(resolveIdentityRequest)
+                .thenApply(Function.identity());
+        } else {
+            CompletableFuture<AwsCredentialsIdentity> future = new CompletableFuture<>();
+            future.completeExceptionally(
+                SdkClientException.create("Failed to resolve Lake Formation credentials", e));
+            return future;
+        }
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            return throwable.getCause();
         }
+        return throwable;
     }
 }
@@ -1,16 +1,17 @@
 package software.amazon.lakeformation.plugin.accessgrants.plugin;
 
-import software.amazon.lakeformation.plugin.accessgrants.cache.AccessDeniedCache;
 import software.amazon.lakeformation.plugin.accessgrants.cache.AccessGrantsCache;
-import software.amazon.lakeformation.plugin.accessgrants.cache.ExceptionCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MemoryBudget;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricsListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalQuota;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalResolver;
 import software.amazon.awssdk.annotations.NotNull;
 import software.amazon.awssdk.core.SdkPlugin;
 import software.amazon.awssdk.core.SdkServiceClientConfiguration;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.identity.spi.IdentityProvider;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.s3accessgrants.plugin.S3AccessGrantsPlugin;
-import software.amazon.awssdk.services.lakeformation.LakeFormationClient;
 import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
 import software.amazon.awssdk.utils.Validate;
 import software.amazon.awssdk.utils.builder.ToCopyableBuilder;
@@ -27,14 +28,52 @@ public class LakeFormationAccessGrantsPlugin implements SdkPlugin,
     private static final String USER_AGENT = "lakeformation-access-grants-plugin";
     private static final boolean DEFAULT_FALLBACK_SETTING = true;
     private static final boolean DEFAULT_ENABLED_SETTING = false;
+    private static final boolean DEFAULT_ASYNC_RESOLUTION_SETTING = false;
+    private static final int DEFAULT_CREDENTIALS_DURATION_SECONDS = AccessGrantsCache.GET_DATA_ACCESS_DURATION;
+    private static final int DEFAULT_EXPIRATION_SAFETY_MARGIN_SECONDS = AccessGrantsCache.DEFAULT_EXPIRATION_SAFETY_MARGIN;
+    private static final int DEFAULT_BATCH_WINDOW_MILLIS = AccessGrantsCache.DEFAULT_BATCH_WINDOW_MILLIS;
+    private static final int DEFAULT_MAX_BATCH_SIZE = AccessGrantsCache.DEFAULT_MAX_BATCH_SIZE;
+    private static final boolean DEFAULT_SHARE_RESOURCES_SETTING = false;
+    private static final boolean DEFAULT_STALE_WHILE_REVALIDATE_SETTING = AccessGrantsCache.DEFAULT_STALE_WHILE_REVALIDATE;
+    private static final boolean DEFAULT_SCHEDULED_EXPIRY_SETTING = false;
+    private static final int DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS =
+        LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS;
 
     private final boolean enabled;
     private final boolean enableFallback;
+    private final boolean enableAsyncResolution;
+    private final int credentialsDurationSeconds;
+    private final int expirationSafetyMarginSeconds;
+    private final int batchWindowMillis;
+    private final int maxBatchSize;
+    private final boolean shareResources;
+    private final boolean staleWhileRevalidate;
+    private final boolean scheduledExpiry;
+    private final MemoryBudget memoryBudget;
+    private final PrincipalQuota principalQuota;
+    private final PrincipalResolver principalResolver;
+    private final int callerIdentityTimeoutMillis;
+    private final MetricsListener metricsListener;
+    private final MetricPublisher metricPublisher;
     private final String userAgent;
 
     LakeFormationAccessGrantsPlugin(final BuilderImpl builder) {
         this.enabled = builder.enabled;
         this.enableFallback = builder.enableFallback;
+        this.enableAsyncResolution = builder.enableAsyncResolution;
+        this.credentialsDurationSeconds = builder.credentialsDurationSeconds;
+        this.expirationSafetyMarginSeconds = builder.expirationSafetyMarginSeconds;
+        this.batchWindowMillis = builder.batchWindowMillis;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.shareResources = builder.shareResources;
+        this.staleWhileRevalidate = builder.staleWhileRevalidate;
+        this.scheduledExpiry = builder.scheduledExpiry;
+        this.memoryBudget = builder.memoryBudget;
+        this.principalQuota = builder.principalQuota;
+        this.principalResolver = builder.principalResolver;
+        this.callerIdentityTimeoutMillis = builder.callerIdentityTimeoutMillis;
+        this.metricsListener = builder.metricsListener;
+        this.metricPublisher = builder.metricPublisher;
         this.userAgent = builder.userAgent;
     }
 
@@ -50,6 +89,62 @@ public class LakeFormationAccessGrantsPlugin implements SdkPlugin,
         return this.enableFallback;
     }
 
+    boolean enableAsyncResolution() {
+        return this.enableAsyncResolution;
+    }
+
+    int credentialsDurationSeconds() {
+        return this.credentialsDurationSeconds;
+    }
+
+    int expirationSafetyMarginSeconds() {
+        return this.expirationSafetyMarginSeconds;
+    }
+
+    int batchWindowMillis() {
+        return this.batchWindowMillis;
+    }
+
+    int maxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    boolean shareResources() {
+        return this.shareResources;
+    }
+
+    boolean staleWhileRevalidate() {
+        return this.staleWhileRevalidate;
+    }
+
+    boolean scheduledExpiry() {
+        return this.scheduledExpiry;
+    }
+
+    MemoryBudget memoryBudget() {
+        return this.memoryBudget;
+    }
+
+    PrincipalQuota principalQuota() {
+        return this.principalQuota;
+    }
+
+    PrincipalResolver principalResolver() {
+        return this.principalResolver;
+    }
+
+    int callerIdentityTimeoutMillis() {
+        return this.callerIdentityTimeoutMillis;
+    }
+
+    MetricsListener metricsListener() {
+        return this.metricsListener;
+    }
+
+    MetricPublisher metricPublisher() {
+        return this.metricPublisher;
+    }
+
     @Override
     public void configureClient(final SdkServiceClientConfiguration.Builder config) {
         if (!enabled()) {
@@ -71,13 +166,6 @@ public class LakeFormationAccessGrantsPlugin implements SdkPlugin,
                 "Expecting the plugin to be only configured on s3 clients");
 
         final String region = serviceClientConfiguration.region().toString();
-        final LakeFormationClient lfClient = LakeFormationClient.builder()
-                .region(Region.of(region))
-                .build();
-        LOGGER.info("Initializing caches...");
-        final AccessDeniedCache accessDeniedCache = new AccessDeniedCache();
-        final AccessGrantsCache accessGrantsCache = new AccessGrantsCache();
-        final ExceptionCache exceptionCache = new ExceptionCache();
 
         final IdentityProvider<? extends AwsCredentialsIdentity> originalIdentityProvider = serviceClientConfiguration
                 .credentialsProvider();
@@ -93,14 +181,29 @@ public class LakeFormationAccessGrantsPlugin implements SdkPlugin,
                 config,
                 "Expecting the plugin to be only configured on s3 clients");
 
+        LOGGER.info("Initializing caches...");
+        final LakeFormationResources.Key resourcesKey = new LakeFormationResources.Key(region, enableAsyncResolution,
+            credentialsDurationSeconds, expirationSafetyMarginSeconds, batchWindowMillis, maxBatchSize,
+            staleWhileRevalidate, scheduledExpiry, memoryBudget, principalQuota, metricsListener, metricPublisher);
+        final LakeFormationResources.Lease lease = shareResources()
+            ? LakeFormationResources.acquireShared(resourcesKey)
+            : LakeFormationResources.create(resourcesKey);
+        final LakeFormationResources resources = lease.resources();
+
         serviceClientConfiguration.credentialsProvider(new LakeFormationAccessGrantsIdentityProvider(
             originalIdentityProvider,
-            lfClient,
-            accessDeniedCache,
-            accessGrantsCache,
-            exceptionCache,
+            resources.lfClient(),
+            resources.lfAsyncClient(),
+            resources.accessDeniedCache(),
+            resources.accessGrantsCache(),
+            resources.exceptionCache(),
+            resources.fallbackRouteCache(),
             enableFallback,
-            s3AccessGrantClientConfig.credentialsProvider()
+            s3AccessGrantClientConfig.credentialsProvider(),
+            lease,
+            resources.metricsListener(),
+            principalResolver,
+            callerIdentityTimeoutMillis
         ));
 
         LOGGER.info("Completed configuring S3 Clients to use Lake Formation as a permission layer!");
@@ -114,17 +217,58 @@ public class LakeFormationAccessGrantsPlugin implements SdkPlugin,
     public static final class BuilderImpl implements AccessGrantsPluginBuilder {
         private boolean enabled;
         private boolean enableFallback;
+        private boolean enableAsyncResolution;
+        private int credentialsDurationSeconds;
+        private int expirationSafetyMarginSeconds;
+        private int batchWindowMillis;
+        private int maxBatchSize;
+        private boolean shareResources;
+        private boolean staleWhileRevalidate;
+        private boolean scheduledExpiry;
+        private MemoryBudget memoryBudget;
+        private PrincipalQuota principalQuota;
+        private PrincipalResolver principalResolver;
+        private int callerIdentityTimeoutMillis;
+        private MetricsListener metricsListener;
+        private MetricPublisher metricPublisher;
         private String userAgent;
 
         BuilderImpl() {
             this.enabled = DEFAULT_ENABLED_SETTING;
             this.enableFallback = DEFAULT_FALLBACK_SETTING;
+            this.enableAsyncResolution = DEFAULT_ASYNC_RESOLUTION_SETTING;
+            this.credentialsDurationSeconds = DEFAULT_CREDENTIALS_DURATION_SECONDS;
+            this.expirationSafetyMarginSeconds = DEFAULT_EXPIRATION_SAFETY_MARGIN_SECONDS;
+            this.batchWindowMillis = DEFAULT_BATCH_WINDOW_MILLIS;
+            this.maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+            this.shareResources = DEFAULT_SHARE_RESOURCES_SETTING;
+            this.staleWhileRevalidate = DEFAULT_STALE_WHILE_REVALIDATE_SETTING;
+            this.scheduledExpiry = DEFAULT_SCHEDULED_EXPIRY_SETTING;
+            this.memoryBudget = MemoryBudget.UNLIMITED;
+            this.principalQuota = PrincipalQuota.NONE;
+            this.principalResolver = PrincipalResolver.ACCESS_KEY;
+            this.callerIdentityTimeoutMillis = DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS;
+            this.metricsListener = MetricsListener.NONE;
             this.userAgent = USER_AGENT;
         }
 
         BuilderImpl(LakeFormationAccessGrantsPlugin plugin) {
             this.enabled = plugin.enabled;
             this.enableFallback = plugin.enableFallback;
+            this.enableAsyncResolution = plugin.enableAsyncResolution;
+            this.credentialsDurationSeconds = plugin.credentialsDurationSeconds;
+            this.expirationSafetyMarginSeconds = plugin.expirationSafetyMarginSeconds;
+            this.batchWindowMillis = plugin.batchWindowMillis;
+            this.maxBatchSize = plugin.maxBatchSize;
+            this.shareResources = plugin.shareResources;
+            this.staleWhileRevalidate = plugin.staleWhileRevalidate;
+            this.scheduledExpiry = plugin.scheduledExpiry;
+            this.memoryBudget = plugin.memoryBudget;
+            this.principalQuota = plugin.principalQuota;
+            this.principalResolver = plugin.principalResolver;
+            this.callerIdentityTimeoutMillis = plugin.callerIdentityTimeoutMillis;
+            this.metricsListener = plugin.metricsListener;
+            this.metricPublisher = plugin.metricPublisher;
             this.userAgent = plugin.userAgent;
         }
 
@@ -145,6 +289,90 @@ public class LakeFormationAccessGrantsPlugin implements SdkPlugin,
             return this;
         }
 
+        @Override
+        public AccessGrantsPluginBuilder enableAsyncResolution(@NotNull Boolean choice) {
+            this.enableAsyncResolution = choice == null ? DEFAULT_ASYNC_RESOLUTION_SETTING : choice;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder credentialsDurationSeconds(@NotNull Integer durationSeconds) {
+            this.credentialsDurationSeconds = durationSeconds == null ? DEFAULT_CREDENTIALS_DURATION_SECONDS : durationSeconds;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder expirationSafetyMarginSeconds(@NotNull Integer marginSeconds) {
+            this.expirationSafetyMarginSeconds = marginSeconds == null ? DEFAULT_EXPIRATION_SAFETY_MARGIN_SECONDS : marginSeconds;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder batchWindowMillis(@NotNull Integer windowMillis) {
+            this.batchWindowMillis = windowMillis == null ? DEFAULT_BATCH_WINDOW_MILLIS : windowMillis;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder maxBatchSize(@NotNull Integer batchSize) {
+            this.maxBatchSize = batchSize == null ? DEFAULT_MAX_BATCH_SIZE : batchSize;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder shareResources(@NotNull Boolean choice) {
+            this.shareResources = choice == null ? DEFAULT_SHARE_RESOURCES_SETTING : choice;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder staleWhileRevalidate(@NotNull Boolean choice) {
+            this.staleWhileRevalidate = choice == null ? DEFAULT_STALE_WHILE_REVALIDATE_SETTING : choice;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder scheduledExpiry(@NotNull Boolean choice) {
+            this.scheduledExpiry = choice == null ? DEFAULT_SCHEDULED_EXPIRY_SETTING : choice;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder memoryBudget(final MemoryBudget budget) {
+            this.memoryBudget = budget == null ? MemoryBudget.UNLIMITED : budget;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder principalQuota(final PrincipalQuota quota) {
+            this.principalQuota = quota == null ? PrincipalQuota.NONE : quota;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder principalResolver(final PrincipalResolver resolver) {
+            this.principalResolver = resolver == null ? PrincipalResolver.ACCESS_KEY : resolver;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder callerIdentityTimeoutMillis(@NotNull Integer timeoutMillis) {
+            this.callerIdentityTimeoutMillis = timeoutMillis == null ? DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS : timeoutMillis;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder metricsListener(final MetricsListener listener) {
+            this.metricsListener = listener == null ? MetricsListener.NONE : listener;
+            return this;
+        }
+
+        @Override
+        public AccessGrantsPluginBuilder metricPublisher(final MetricPublisher publisher) {
+            this.metricPublisher = publisher;
+            return this;
+        }
+
         @Override
         public AccessGrantsPluginBuilder userAgent(@NotNull String userAgent) {
             if (userAgent == null) {
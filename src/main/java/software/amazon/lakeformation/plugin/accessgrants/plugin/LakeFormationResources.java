@@ -0,0 +1,296 @@
+package software.amazon.lakeformation.plugin.accessgrants.plugin;
+
+import software.amazon.lakeformation.plugin.accessgrants.cache.AccessDeniedCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.AccessGrantsCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.ExceptionCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.ExpiryScheduler;
+import software.amazon.lakeformation.plugin.accessgrants.cache.FallbackRouteCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MemoryBudget;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricPublisherListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricsListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.NegativeIndex;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalQuota;
+import software.amazon.lakeformation.plugin.accessgrants.cache.RetryBudget;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.lakeformation.LakeFormationAsyncClient;
+import software.amazon.awssdk.services.lakeformation.LakeFormationClient;
+import software.amazon.awssdk.utils.IoUtils;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * The caches and Lake Formation client backing the identity providers of one or more S3 clients.
+ *
+ * <p>By default every configured S3 client gets its own resources. When sharing is enabled, S3 clients configured
+ * for the same region and cache configuration share a single instance - and with it the cached grants, the in-flight
+ * Lake Formation requests and the Lake Formation client's connection pool. Each S3 client holds a {@link Lease};
+ * the shared resources are released once the last lease is closed.
+ *
+ * <p>Lake Formation throttles per account and region, so the caches of every resources instance for a region pay for
+ * their throttling retries from one {@link RetryBudget}, whether or not the resources themselves are shared.
+ */
+final class LakeFormationResources {
+
+    private static final Logger LOGGER = Logger.getLogger(LakeFormationResources.class.getName());
+
+    private static final Map<Key, LakeFormationResources> SHARED_RESOURCES = new HashMap<>();
+    private static final Map<String, RetryBudget> RETRY_BUDGETS = new HashMap<>(); // guarded by SHARED_RESOURCES
+
+    private final Key key;
+    private final boolean shared;
+    private final AccessDeniedCache accessDeniedCache;
+    private final AccessGrantsCache accessGrantsCache;
+    private final ExceptionCache exceptionCache;
+    private final FallbackRouteCache fallbackRouteCache;
+    private final MetricsListener metricsListener;
+    private final MetricPublisherListener metricPublisherListener; // null when no metric publisher is configured
+    private final LakeFormationClient lfClient;
+    private final LakeFormationAsyncClient lfAsyncClient;
+    private int references; // guarded by SHARED_RESOURCES
+
+    private LakeFormationResources(final Key key, final boolean shared) {
+        this.key = key;
+        this.shared = shared;
+        final Scheduler expiryScheduler = key.scheduledExpiry ? ExpiryScheduler.shared() : Scheduler.disabledScheduler();
+        this.metricPublisherListener = key.metricPublisher == null ? null
+            : new MetricPublisherListener(key.metricPublisher);
+        this.metricsListener = MetricsListener.combine(key.metricsListener,
+            metricPublisherListener == null ? MetricsListener.NONE : metricPublisherListener);
+        final NegativeIndex negativeIndex = new NegativeIndex(metricsListener, expiryScheduler, key.memoryBudget);
+        this.accessDeniedCache = new AccessDeniedCache(negativeIndex);
+        this.accessGrantsCache = AccessGrantsCache.builder()
+            .duration(key.credentialsDurationSeconds)
+            .expirationSafetyMargin(key.expirationSafetyMarginSeconds)
+            .batchWindowMillis(key.batchWindowMillis)
+            .maxBatchSize(key.maxBatchSize)
+            .staleWhileRevalidate(key.staleWhileRevalidate)
+            .metricsListener(metricsListener)
+            .expiryScheduler(expiryScheduler)
+            .memoryBudget(key.memoryBudget)
+            .principalQuota(key.principalQuota)
+            .retryBudget(retryBudget(key.region))
+            .build();
+        this.exceptionCache = new ExceptionCache(negativeIndex);
+        this.fallbackRouteCache = new FallbackRouteCache(negativeIndex);
+        if (key.asyncResolution) {
+            // Resolve without blocking, so asynchronous S3 clients never park their event-loop threads on Lake Formation.
+            LOGGER.info("Resolving Lake Formation credentials asynchronously.");
+            this.lfClient = null;
+            this.lfAsyncClient = LakeFormationAsyncClient.builder()
+                .region(Region.of(key.region))
+                .build();
+        } else {
+            this.lfClient = LakeFormationClient.builder()
+                .region(Region.of(key.region))
+                .build();
+            this.lfAsyncClient = null;
+        }
+    }
+
+    /**
+     * Returns the retry budget shared by every cache calling Lake Formation in {@code region}.
+     */
+    static RetryBudget retryBudget(final String region) {
+        synchronized (SHARED_RESOURCES) {
+            return RETRY_BUDGETS.computeIfAbsent(region, ignored -> new RetryBudget());
+        }
+    }
+
+    /**
+     * Creates resources owned by a single S3 client.
+     */
+    static Lease create(final Key key) {
+        return new Lease(new LakeFormationResources(key, false));
+    }
+
+    /**
+     * Returns a lease on the shared resources for {@code key}, creating them on first use.
+     */
+    static Lease acquireShared(final Key key) {
+        synchronized (SHARED_RESOURCES) {
+            LakeFormationResources resources = SHARED_RESOURCES.get(key);
+            if (resources == null) {
+                LOGGER.info("Creating shared Lake Formation resources for region: " + key.region);
+                resources = new LakeFormationResources(key, true);
+                SHARED_RESOURCES.put(key, resources);
+            } else {
+                LOGGER.info("Reusing shared Lake Formation resources for region: " + key.region);
+            }
+            resources.references++;
+            return new Lease(resources);
+        }
+    }
+
+    private void release() {
+        if (shared) {
+            synchronized (SHARED_RESOURCES) {
+                if (--references > 0) {
+                    return;
+                }
+                SHARED_RESOURCES.remove(key, this);
+            }
+            LOGGER.info("Releasing shared Lake Formation resources for region: " + key.region);
+        }
+        IoUtils.closeQuietly(accessGrantsCache, null);
+        IoUtils.closeQuietly(lfClient, null);
+        IoUtils.closeQuietly(lfAsyncClient, null);
+        // Publishes the metrics aggregated since the last periodic publish.
+        IoUtils.closeQuietly(metricPublisherListener, null);
+    }
+
+    AccessDeniedCache accessDeniedCache() {
+        return accessDeniedCache;
+    }
+
+    AccessGrantsCache accessGrantsCache() {
+        return accessGrantsCache;
+    }
+
+    ExceptionCache exceptionCache() {
+        return exceptionCache;
+    }
+
+    FallbackRouteCache fallbackRouteCache() {
+        return fallbackRouteCache;
+    }
+
+    /**
+     * Returns the listener the caches report to: the plugin's metrics listener combined with its metric publisher.
+     */
+    MetricsListener metricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Returns the number of open leases on shared resources, for tests.
+     */
+    int references() {
+        synchronized (SHARED_RESOURCES) {
+            return references;
+        }
+    }
+
+    LakeFormationClient lfClient() {
+        return lfClient;
+    }
+
+    LakeFormationAsyncClient lfAsyncClient() {
+        return lfAsyncClient;
+    }
+
+    /**
+     * One S3 client's hold on a set of resources. Closing a lease more than once has no further effect.
+     */
+    static final class Lease implements SdkAutoCloseable {
+        private final LakeFormationResources resources;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(final LakeFormationResources resources) {
+            this.resources = resources;
+        }
+
+        LakeFormationResources resources() {
+            return resources;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                resources.release();
+            }
+        }
+    }
+
+    /**
+     * Identifies resources that can be shared: the region, every setting that shapes the caches or the client,
+     * including the principal quota, and the memory budget the caches draw from and the metrics listener and metric
+     * publisher supplied to the plugin, compared by identity. Plugins given the same listener and publisher therefore
+     * share resources, which report to them once.
+     */
+    static final class Key {
+        private final String region;
+        private final boolean asyncResolution;
+        private final int credentialsDurationSeconds;
+        private final int expirationSafetyMarginSeconds;
+        private final int batchWindowMillis;
+        private final int maxBatchSize;
+        private final boolean staleWhileRevalidate;
+        private final boolean scheduledExpiry;
+        private final MemoryBudget memoryBudget;
+        private final PrincipalQuota principalQuota;
+        private final MetricsListener metricsListener;
+        private final MetricPublisher metricPublisher; // null when none is configured
+
+        Key(final String region,
+            final boolean asyncResolution,
+            final int credentialsDurationSeconds,
+            final int expirationSafetyMarginSeconds,
+            final int batchWindowMillis,
+            final int maxBatchSize,
+            final boolean staleWhileRevalidate,
+            final boolean scheduledExpiry,
+            final MemoryBudget memoryBudget,
+            final PrincipalQuota principalQuota,
+            final MetricsListener metricsListener,
+            final MetricPublisher metricPublisher) {
+            this.region = region;
+            this.asyncResolution = asyncResolution;
+            this.credentialsDurationSeconds = credentialsDurationSeconds;
+            this.expirationSafetyMarginSeconds = expirationSafetyMarginSeconds;
+            this.batchWindowMillis = batchWindowMillis;
+            this.maxBatchSize = maxBatchSize;
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            this.scheduledExpiry = scheduledExpiry;
+            this.memoryBudget = memoryBudget;
+            this.principalQuota = principalQuota;
+            this.metricsListener = metricsListener;
+            this.metricPublisher = metricPublisher;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return region.equals(other.region)
+                && asyncResolution == other.asyncResolution
+                && credentialsDurationSeconds == other.credentialsDurationSeconds
+                && expirationSafetyMarginSeconds == other.expirationSafetyMarginSeconds
+                && batchWindowMillis == other.batchWindowMillis
+                && maxBatchSize == other.maxBatchSize
+                && staleWhileRevalidate == other.staleWhileRevalidate
+                && scheduledExpiry == other.scheduledExpiry
+                && memoryBudget == other.memoryBudget
+                && principalQuota.equals(other.principalQuota)
+                && metricsListener == other.metricsListener
+                && metricPublisher == other.metricPublisher;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = region.hashCode();
+            result = 31 * result + (asyncResolution ? 1 : 0);
+            result = 31 * result + credentialsDurationSeconds;
+            result = 31 * result + expirationSafetyMarginSeconds;
+            result = 31 * result + batchWindowMillis;
+            result = 31 * result + maxBatchSize;
+            result = 31 * result + (staleWhileRevalidate ? 1 : 0);
+            result = 31 * result + (scheduledExpiry ? 1 : 0);
+            result = 31 * result + System.identityHashCode(memoryBudget);
+            result = 31 * result + principalQuota.hashCode();
+            result = 31 * result + System.identityHashCode(metricsListener);
+            result = 31 * result + System.identityHashCode(metricPublisher);
+            return result;
+        }
+    }
+}
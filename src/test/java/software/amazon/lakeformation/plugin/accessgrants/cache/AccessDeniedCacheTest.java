@@ -7,6 +7,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
 import software.amazon.awssdk.services.s3control.model.Permission;
 
 /**
@@ -34,7 +35,7 @@ public class AccessDeniedCacheTest {
         cache.putValueInCache(testKey, testException);
         Exception retrieved = cache.getValueFromCache(testKey);
 
-        assertEquals(testException, retrieved);
+        assertEquals(testException.getMessage(), ((LakeFormationException) retrieved).awsErrorDetails().errorMessage());
     }
 
     @Test
@@ -69,7 +70,7 @@ public class AccessDeniedCacheTest {
         // file2 in the same folder should hit the parent-level cache entry
         Exception retrieved = cache.getValueFromCache(file2Key);
         assertNotNull(retrieved, "Sibling file should hit parent-level cache entry");
-        assertEquals(exception, retrieved);
+        assertEquals(exception.getMessage(), ((LakeFormationException) retrieved).awsErrorDetails().errorMessage());
     }
 
     @Test
@@ -103,7 +104,7 @@ public class AccessDeniedCacheTest {
 
         Exception retrieved = cache.getValueFromCache(testKey);
         assertNotNull(retrieved, "Exact key lookup should still work");
-        assertEquals(exception, retrieved);
+        assertEquals(exception.getMessage(), ((LakeFormationException) retrieved).awsErrorDetails().errorMessage());
     }
 
     @Test
@@ -126,6 +127,38 @@ public class AccessDeniedCacheTest {
         // A file inside that folder should hit the parent-level entry
         Exception retrieved = cache.getValueFromCache(fileInFolderKey);
         assertNotNull(retrieved, "File in folder with trailing slash should hit cache");
-        assertEquals(exception, retrieved);
+        assertEquals(exception.getMessage(), ((LakeFormationException) retrieved).awsErrorDetails().errorMessage());
+    }
+
+    @Test
+    public void testBucketRootReferenceCoversOnlyItself() {
+        // Store for bucket/, lookup for bucket/file.parquet -> MISS; store for bucket/other.parquet,
+        // lookup for bucket/ -> MISS
+        CacheKey bucketRootKey = new CacheKey(
+            AwsBasicCredentials.create("accessKey", "secretKey"),
+            Permission.READ,
+            "s3://test-bucket/"
+        );
+        CacheKey fileAtRootKey = new CacheKey(
+            AwsBasicCredentials.create("accessKey", "secretKey"),
+            Permission.READ,
+            "s3://test-bucket/file.parquet"
+        );
+        CacheKey otherFileAtRootKey = new CacheKey(
+            AwsBasicCredentials.create("accessKey", "secretKey"),
+            Permission.READ,
+            "s3://test-bucket/other.parquet"
+        );
+
+        cache.putValueInCache(bucketRootKey, new RuntimeException("Access denied for bucket root"));
+
+        assertNotNull(cache.getValueFromCache(bucketRootKey), "Bucket root reference should hit its own entry");
+        assertNull(cache.getValueFromCache(fileAtRootKey), "Bucket root denial should not cover the objects in it");
+
+        AccessDeniedCache siblingCache = new AccessDeniedCache();
+        siblingCache.putValueInCache(otherFileAtRootKey, new RuntimeException("Access denied for sibling"));
+
+        assertNotNull(siblingCache.getValueFromCache(fileAtRootKey), "Sibling at bucket root should hit cache");
+        assertNull(siblingCache.getValueFromCache(bucketRootKey), "Sibling denial should not cover the bucket root");
     }
 }
@@ -1,8 +1,25 @@
 package software.amazon.lakeformation.plugin.accessgrants.cache;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
@@ -16,25 +33,32 @@ import org.mockito.ArgumentCaptor;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.Mock;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
 import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
 import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.lakeformation.LakeFormationAsyncClient;
 import software.amazon.awssdk.services.lakeformation.LakeFormationClient;
 import software.amazon.awssdk.services.lakeformation.model.ConflictException;
 import software.amazon.awssdk.services.lakeformation.model.CredentialsScope;
 import software.amazon.awssdk.services.lakeformation.model.EntityNotFoundException;
 import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsRequest;
 import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsResponse;
+import software.amazon.awssdk.services.lakeformation.model.InternalServiceException;
 import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
 import software.amazon.awssdk.services.lakeformation.model.TemporaryCredentials;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
 import software.amazon.awssdk.services.s3control.model.Permission;
+import software.amazon.awssdk.utils.CompletableFutureUtils;
 
 /**
  * Test class for AccessGrantsCache.
@@ -49,6 +73,9 @@ public class AccessGrantsCacheTest {
     @Mock
     private LakeFormationClient mockLakeFormationClient;
 
+    @Mock
+    private LakeFormationAsyncClient mockLakeFormationAsyncClient;
+
     @Mock
     private AccessDeniedCache mockAccessDeniedCache;
 
@@ -81,6 +108,34 @@ public class AccessGrantsCacheTest {
         });
     }
 
+    @Test
+    public void testCacheWithDurationBelowMinimum() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            testCache().duration(600).build(); // Below Lake Formation's minimum duration
+        });
+    }
+
+    @Test
+    @DisplayName("The (cacheSize, duration) constructor still accepts short durations and leaves them out of the request")
+    public void testLegacyConstructorAcceptsDurationBelowMinimum() {
+        cache = new AccessGrantsCache(1000, 300);
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("tableAccessKey"));
+
+        cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        ArgumentCaptor<GetTemporaryDataLocationCredentialsRequest> captor =
+            ArgumentCaptor.forClass(GetTemporaryDataLocationCredentialsRequest.class);
+        verify(mockLakeFormationClient).getTemporaryDataLocationCredentials(captor.capture());
+        assertNull(captor.getValue().durationSeconds());
+    }
+
+    @Test
+    public void testCacheWithInvalidExpirationSafetyMargin() {
+        assertThrows(IllegalArgumentException.class, () -> testCache().expirationSafetyMargin(-1).build());
+        assertThrows(IllegalArgumentException.class, () -> testCache().expirationSafetyMargin(3600).build());
+    }
+
     @Test
     public void testGetCredentialsFromLakeFormation() {
         // Mock successful LakeFormation response
@@ -756,4 +811,1128 @@ public class AccessGrantsCacheTest {
         assertEquals(Permission.UNKNOWN_TO_SDK_VERSION, unknownPermission);
         assertNull(captureScopeForPermission(unknownPermission));
     }
+
+    /**
+     * Starts {@code threads} concurrent misses for distinct objects under {@code folder} and returns their outcomes.
+     */
+    private List<Future<AwsCredentials>> concurrentMisses(final int threads, final String folder)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<AwsCredentials>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                CacheKey key = new CacheKey(testCredentials, Permission.READ, folder + "/part-" + i + ".parquet");
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+                }));
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        return results;
+    }
+
+    @Test
+    @DisplayName("Concurrent misses for sibling objects share a single Lake Formation call")
+    public void testConcurrentMissesShareSingleLakeFormationCall() throws Exception {
+        GetTemporaryDataLocationCredentialsResponse mockResponse = GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId("tableAccessKey")
+                .secretAccessKey("tableSecretKey")
+                .sessionToken("tableSessionToken")
+                .build())
+            .accessibleDataLocations(Collections.singletonList("s3://test-bucket/table"))
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> {
+                // Hold the call open so the other threads pile up behind it.
+                Thread.sleep(200);
+                return mockResponse;
+            });
+
+        List<Future<AwsCredentials>> results = concurrentMisses(64, "s3://test-bucket/table");
+
+        for (Future<AwsCredentials> result : results) {
+            assertEquals("tableAccessKey", result.get().accessKeyId());
+        }
+        verify(mockLakeFormationClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("An AccessDenied in-flight Lake Formation call is shared with its waiters")
+    public void testConcurrentMissesShareAccessDenied() throws Exception {
+        LakeFormationException accessDeniedException = (LakeFormationException) LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").errorMessage("Access Denied").build())
+            .message("Access Denied")
+            .build();
+        // Every miss consults the negative cache before joining the flight; hold the call open until all have.
+        CountDownLatch arrived = new CountDownLatch(16);
+        when(mockExceptionCache.getIfParentCached(any())).thenAnswer(invocation -> {
+            arrived.countDown();
+            return null;
+        });
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> {
+                arrived.await(10, TimeUnit.SECONDS);
+                Thread.sleep(200);
+                throw accessDeniedException;
+            });
+
+        List<Future<AwsCredentials>> results = concurrentMisses(16, "s3://test-bucket/table");
+
+        for (Future<AwsCredentials> result : results) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+            assertSame(accessDeniedException, thrown.getCause());
+        }
+        verify(mockLakeFormationClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Waiters retry on their own when the in-flight call fails for another reason")
+    public void testWaitersRetryAfterInFlightCallFails() throws Exception {
+        LakeFormationException internalException = (LakeFormationException) LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("InternalError").build())
+            .message("Internal Server Error")
+            .build();
+        CountDownLatch arrived = new CountDownLatch(16);
+        when(mockExceptionCache.getIfParentCached(any())).thenAnswer(invocation -> {
+            arrived.countDown();
+            return null;
+        });
+        AtomicInteger calls = new AtomicInteger();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> {
+                if (calls.getAndIncrement() > 0) {
+                    return tableResponse("tableAccessKey");
+                }
+                arrived.await(10, TimeUnit.SECONDS);
+                Thread.sleep(200);
+                throw internalException;
+            });
+
+        List<Future<AwsCredentials>> results = concurrentMisses(16, "s3://test-bucket/table");
+
+        int failed = 0;
+        for (Future<AwsCredentials> result : results) {
+            try {
+                assertEquals("tableAccessKey", result.get().accessKeyId());
+            } catch (ExecutionException e) {
+                assertSame(internalException, e.getCause());
+                failed++;
+            }
+        }
+        // Only the leader sees its own failure; the waiters are served by their retries.
+        assertEquals(1, failed);
+        assertTrue(calls.get() >= 2);
+    }
+
+    @Test
+    @DisplayName("A waiter not covered by the in-flight call's location makes its own call")
+    public void testWaiterNotCoveredByInFlightCallFetchesItsOwnCredentials() throws Exception {
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> {
+                Thread.sleep(200);
+                String requested = ((GetTemporaryDataLocationCredentialsRequest) invocation.getArgument(0))
+                    .dataLocations().get(0);
+                return GetTemporaryDataLocationCredentialsResponse.builder()
+                    .credentials(TemporaryCredentials.builder()
+                        .accessKeyId(requested)
+                        .secretAccessKey("objectSecretKey")
+                        .sessionToken("objectSessionToken")
+                        .build())
+                    .accessibleDataLocations(Collections.singletonList(requested))
+                    .build();
+            });
+
+        List<Future<AwsCredentials>> results = concurrentMisses(2, "s3://test-bucket/table");
+
+        assertEquals("s3://test-bucket/table/part-0.parquet", results.get(0).get().accessKeyId());
+        assertEquals("s3://test-bucket/table/part-1.parquet", results.get(1).get().accessKeyId());
+        verify(mockLakeFormationClient, times(2))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Async lookup is served from the cache without calling Lake Formation")
+    public void testGetCredentialsAsyncCacheHit() throws Exception {
+        GetTemporaryDataLocationCredentialsResponse mockResponse = GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId("tempAccessKey")
+                .secretAccessKey("tempSecretKey")
+                .sessionToken("tempSessionToken")
+                .build())
+            .accessibleDataLocations(Collections.singletonList("s3://test-bucket"))
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(mockResponse);
+        cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        CompletableFuture<AwsCredentials> result = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        assertTrue(result.isDone());
+        assertEquals("tempAccessKey", result.get().accessKeyId());
+        verify(mockLakeFormationAsyncClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Concurrent async misses chain onto a single Lake Formation call without blocking")
+    public void testConcurrentAsyncMissesShareSingleLakeFormationCall() throws Exception {
+        CompletableFuture<GetTemporaryDataLocationCredentialsResponse> lfCall = new CompletableFuture<>();
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(
+            any(GetTemporaryDataLocationCredentialsRequest.class))).thenReturn(lfCall);
+
+        List<CompletableFuture<AwsCredentials>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-" + i);
+            results.add(cache.getCredentialsAsync(
+                mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache));
+        }
+        for (CompletableFuture<AwsCredentials> result : results) {
+            assertFalse(result.isDone());
+        }
+
+        lfCall.complete(GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId("tableAccessKey")
+                .secretAccessKey("tableSecretKey")
+                .sessionToken("tableSessionToken")
+                .build())
+            .accessibleDataLocations(Collections.singletonList("s3://test-bucket/table"))
+            .build());
+
+        for (CompletableFuture<AwsCredentials> result : results) {
+            assertEquals("tableAccessKey", result.get(5, TimeUnit.SECONDS).accessKeyId());
+        }
+        verify(mockLakeFormationAsyncClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Async AccessDenied is cached and surfaced through the future")
+    public void testGetCredentialsAsyncHandlesAccessDenied() {
+        LakeFormationException accessDeniedException = (LakeFormationException) LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").errorMessage("Access Denied").build())
+            .message("Access Denied")
+            .build();
+        CompletableFuture<GetTemporaryDataLocationCredentialsResponse> failedCall = new CompletableFuture<>();
+        failedCall.completeExceptionally(accessDeniedException);
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(
+            any(GetTemporaryDataLocationCredentialsRequest.class))).thenReturn(failedCall);
+
+        CompletableFuture<AwsCredentials> result = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+        assertSame(accessDeniedException, thrown.getCause());
+        verify(mockAccessDeniedCache).putValueInCache(eq(testKey), any(LakeFormationException.class));
+    }
+
+    @Test
+    @DisplayName("Async lookup short-circuits on a cached non-retryable exception")
+    public void testGetCredentialsAsyncNegativeCacheHit() {
+        ConflictException cachedException = ConflictException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ConflictException").build())
+            .message("Multiple resources exist with the same Amazon S3 location")
+            .build();
+        when(mockExceptionCache.getIfParentCached(testKey)).thenReturn(cachedException);
+
+        CompletableFuture<AwsCredentials> result = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+        assertSame(cachedException, thrown.getCause());
+        verify(mockLakeFormationAsyncClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    private static GetTemporaryDataLocationCredentialsResponse tableResponse(final String accessKeyId) {
+        return GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId(accessKeyId)
+                .secretAccessKey("tableSecretKey")
+                .sessionToken("tableSessionToken")
+                .build())
+            .accessibleDataLocations(Collections.singletonList("s3://test-bucket/table"))
+            .build();
+    }
+
+    @Test
+    @DisplayName("A hot entry read near expiry is refreshed in the background while the current value is served")
+    public void testHotEntryNearExpiryIsRefreshedAhead() {
+        AtomicLong now = new AtomicLong();
+        // 1 hour duration -> 54 minute TTL; refresh-ahead starts in the last 10% of it.
+        cache = testCache(now).build();
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("firstAccessKey"), tableResponse("refreshedAccessKey"));
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3000));
+        AwsCredentials served = cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        assertEquals("firstAccessKey", served.accessKeyId());
+
+        // Past the original entry's expiry the refreshed value is still served without another call.
+        now.addAndGet(TimeUnit.SECONDS.toNanos(600));
+        AwsCredentials refreshed = cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        assertEquals("refreshedAccessKey", refreshed.accessKeyId());
+        verify(mockLakeFormationClient, times(2))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("A closed cache skips refresh-ahead and keeps serving its entries")
+    public void testClosedCacheSkipsRefreshAhead() {
+        AtomicLong now = new AtomicLong();
+        cache = testCache().ticker(now::get).build();
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("firstAccessKey"));
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        cache.close();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3000));
+        AwsCredentials served = cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        assertEquals("firstAccessKey", served.accessKeyId());
+        verify(mockLakeFormationClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("An entry read well before expiry is not refreshed")
+    public void testEntryOutsideRefreshWindowIsNotRefreshed() {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).build();
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("firstAccessKey"));
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1800));
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        verify(mockLakeFormationClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("A refresh that is denied drops the entry so the next read goes to Lake Formation")
+    public void testDeniedRefreshDropsEntry() {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).build();
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        LakeFormationException accessDeniedException = (LakeFormationException) LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").errorMessage("Access Denied").build())
+            .message("Access Denied")
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("firstAccessKey"))
+            .thenThrow(accessDeniedException);
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3000));
+        assertEquals("firstAccessKey",
+            cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache).accessKeyId());
+
+        assertThrows(LakeFormationException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache));
+        verify(mockLakeFormationClient, times(3))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Async reads refresh a near-expiry entry through the async client")
+    public void testAsyncHotEntryNearExpiryIsRefreshedAhead() throws Exception {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).build();
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        CompletableFuture<GetTemporaryDataLocationCredentialsResponse> refreshCall = new CompletableFuture<>();
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(
+            any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(tableResponse("firstAccessKey")), refreshCall);
+        cache.getCredentialsAsync(mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache).get();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3000));
+        CompletableFuture<AwsCredentials> served = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache);
+        assertTrue(served.isDone());
+        assertEquals("firstAccessKey", served.get().accessKeyId());
+
+        refreshCall.complete(tableResponse("refreshedAccessKey"));
+        assertEquals("refreshedAccessKey", cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache).get().accessKeyId());
+        verify(mockLakeFormationAsyncClient, times(2))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testLakeFormationRequestCarriesConfiguredDuration() {
+        cache = testCache().duration(43200).expirationSafetyMargin(600).build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("tableAccessKey"));
+
+        cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        ArgumentCaptor<GetTemporaryDataLocationCredentialsRequest> captor =
+            ArgumentCaptor.forClass(GetTemporaryDataLocationCredentialsRequest.class);
+        verify(mockLakeFormationClient).getTemporaryDataLocationCredentials(captor.capture());
+        assertEquals(43200, captor.getValue().durationSeconds());
+    }
+
+    @Test
+    @DisplayName("Entries live until the reported credentials expiration less the safety margin")
+    public void testEntryLifetimeFollowsCredentialsExpiration() {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).build();
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        // Lake Formation reports a two hour expiration, well beyond the 54 minute fallback TTL.
+        GetTemporaryDataLocationCredentialsResponse response = GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId("tableAccessKey")
+                .secretAccessKey("tableSecretKey")
+                .sessionToken("tableSessionToken")
+                .expiration(Instant.now().plusSeconds(7200))
+                .build())
+            .accessibleDataLocations(Collections.singletonList("s3://test-bucket/table"))
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(response);
+
+        AwsCredentials vended = cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        assertTrue(((AwsSessionCredentials) vended).expirationTime().isPresent());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5000));
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        verify(mockLakeFormationClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+
+        // Within the safety margin of the expiration the entry is gone and credentials are vended again.
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1950));
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        verify(mockLakeFormationClient, times(2))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    /**
+     * Starts concurrent misses for one object in each of {@code tables} distinct tables and returns their outcomes.
+     */
+    private List<Future<AwsCredentials>> concurrentMissesAcrossTables(final int tables) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(tables);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<AwsCredentials>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < tables; i++) {
+                CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table-" + i + "/part-0.parquet");
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+                }));
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        return results;
+    }
+
+    private static GetTemporaryDataLocationCredentialsResponse responseFor(final GetTemporaryDataLocationCredentialsRequest request) {
+        return GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId(request.dataLocations().size() > 1 ? "batchAccessKey" : "singleAccessKey")
+                .secretAccessKey("secretKey")
+                .sessionToken("sessionToken")
+                .build())
+            .accessibleDataLocations(request.dataLocations())
+            .build();
+    }
+
+    @Test
+    @DisplayName("Concurrent misses across tables are batched into one multi-location Lake Formation call")
+    public void testConcurrentMissesAcrossTablesAreBatched() throws Exception {
+        cache = testCache().batchWindowMillis(500).maxBatchSize(8).build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> responseFor(invocation.getArgument(0)));
+
+        List<Future<AwsCredentials>> results = concurrentMissesAcrossTables(8);
+
+        for (Future<AwsCredentials> result : results) {
+            assertEquals("batchAccessKey", result.get().accessKeyId());
+        }
+        ArgumentCaptor<GetTemporaryDataLocationCredentialsRequest> captor =
+            ArgumentCaptor.forClass(GetTemporaryDataLocationCredentialsRequest.class);
+        verify(mockLakeFormationClient, times(1)).getTemporaryDataLocationCredentials(captor.capture());
+        assertEquals(8, captor.getValue().dataLocations().size());
+    }
+
+    @Test
+    @DisplayName("Members of a failed batch retry their locations individually")
+    public void testFailedBatchFallsBackToIndividualCalls() throws Exception {
+        cache = testCache().batchWindowMillis(500).maxBatchSize(2).build();
+        ConflictException conflictException = ConflictException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ConflictException").build())
+            .message("Multiple resources exist with the same Amazon S3 location")
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> {
+                GetTemporaryDataLocationCredentialsRequest request = invocation.getArgument(0);
+                if (request.dataLocations().size() > 1) {
+                    throw conflictException;
+                }
+                return responseFor(request);
+            });
+
+        List<Future<AwsCredentials>> results = concurrentMissesAcrossTables(2);
+
+        for (Future<AwsCredentials> result : results) {
+            assertEquals("singleAccessKey", result.get().accessKeyId());
+        }
+        verify(mockLakeFormationClient, times(3))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Concurrent async misses across tables are batched into one multi-location Lake Formation call")
+    public void testConcurrentAsyncMissesAcrossTablesAreBatched() throws Exception {
+        cache = testCache().batchWindowMillis(200).maxBatchSize(10).build();
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(
+            any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(responseFor(invocation.getArgument(0))));
+
+        List<CompletableFuture<AwsCredentials>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table-" + i + "/part-0.parquet");
+            results.add(cache.getCredentialsAsync(
+                mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache));
+        }
+
+        for (CompletableFuture<AwsCredentials> result : results) {
+            assertEquals("batchAccessKey", result.get(5, TimeUnit.SECONDS).accessKeyId());
+        }
+        verify(mockLakeFormationAsyncClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Credentials are cached under every accessible data location returned by Lake Formation")
+    public void testEveryAccessibleDataLocationIsCached() {
+        GetTemporaryDataLocationCredentialsResponse mockResponse = GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId("sharedAccessKey")
+                .secretAccessKey("sharedSecretKey")
+                .sessionToken("sharedSessionToken")
+                .build())
+            .accessibleDataLocations(Arrays.asList(
+                "s3://test-bucket/table/dt=2024-01-01", "s3://test-bucket/table/dt=2024-01-02"))
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(mockResponse);
+
+        AwsCredentials first = cache.getCredentials(mockLakeFormationClient,
+            new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/dt=2024-01-01/part-0.parquet"),
+            mockAccessDeniedCache, mockExceptionCache);
+        AwsCredentials second = cache.getCredentials(mockLakeFormationClient,
+            new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/dt=2024-01-02/part-0.parquet"),
+            mockAccessDeniedCache, mockExceptionCache);
+
+        assertSame(first, second);
+        verify(mockLakeFormationClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Cache hits return the grant's shared completed future instead of allocating a new one")
+    public void testCacheHitsShareCompletedFuture() {
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("tableAccessKey"));
+
+        CompletableFuture<AwsCredentials> miss =
+            cache.getCompletedCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        CompletableFuture<AwsCredentials> firstHit =
+            cache.getCompletedCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        CompletableFuture<AwsCredentials> secondHit = cache.getCompletedCredentials(mockLakeFormationClient,
+            new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-1.parquet"),
+            mockAccessDeniedCache, mockExceptionCache);
+        CompletableFuture<AwsCredentials> asyncHit =
+            cache.getCredentialsAsync(null, key, mockAccessDeniedCache, mockExceptionCache);
+
+        assertEquals("tableAccessKey", miss.join().accessKeyId());
+        assertSame(miss.join(), firstHit.join());
+        assertSame(firstHit, secondHit);
+        assertSame(firstHit, asyncHit);
+        verify(mockLakeFormationClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("A throttled Lake Formation call is retried, lowers the concurrency limit and is rethrown when retries run out")
+    public void testThrottledCallIsRetriedAndLowersConcurrencyLimit() {
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenThrow(throttledException());
+        int initialLimit = cache.getConcurrencyLimiter().getLimit();
+
+        assertThrows(ThrottledException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache));
+
+        verify(mockLakeFormationClient, times(ThrottleRetryPolicy.DEFAULT_MAX_ATTEMPTS))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+        assertTrue(cache.getConcurrencyLimiter().getLimit() < initialLimit);
+        assertEquals(0, cache.getConcurrencyLimiter().getInFlight());
+    }
+
+    @Test
+    @DisplayName("A throttled Lake Formation call that succeeds on retry is cached")
+    public void testThrottledCallSucceedsOnRetry() {
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenThrow(throttledException())
+            .thenAnswer(invocation -> responseFor(invocation.getArgument(0)));
+
+        AwsCredentials credentials =
+            cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        assertEquals("singleAccessKey", credentials.accessKeyId());
+        cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+        verify(mockLakeFormationClient, times(2))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Blocking calls arriving during a folder's backoff wait it out and get Lake Formation credentials")
+    public void testBlockingCallsDuringBackoffGetLakeFormationCredentials() throws Exception {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> responseFor(invocation.getArgument(0)));
+        String folder = "s3://test-bucket/throttled";
+        CacheKey scope = SingleFlight.flightKey(new CacheKey(testCredentials, Permission.READ, folder + "/part-0.parquet"));
+        cache.getRetryPolicy().markThrottled(scope, TimeUnit.MILLISECONDS.toNanos(200));
+
+        for (Future<AwsCredentials> result : concurrentMisses(4, folder)) {
+            assertEquals("singleAccessKey", result.get().accessKeyId());
+        }
+    }
+
+    @Test
+    @DisplayName("A blocking call for a folder backing off for longer than it may sleep fails at once")
+    public void testBlockingCallForFolderBackingOffTooLongFailsWithoutWaiting() {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).build();
+        cache.getRetryPolicy().markThrottled(SingleFlight.flightKey(testKey), 2 * ThrottleRetryPolicy.MAX_BLOCKING_WAIT_NANOS);
+
+        ThrottledException thrown = assertThrows(ThrottledException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache));
+
+        assertEquals("ThrottledException", thrown.awsErrorDetails().errorCode());
+        verify(mockLakeFormationClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("A throttled asynchronous Lake Formation call is retried")
+    public void testThrottledAsyncCallSucceedsOnRetry() throws Exception {
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(CompletableFutureUtils.failedFuture(throttledException()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(responseFor(invocation.getArgument(0))));
+
+        AwsCredentials credentials = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, testKey, mockAccessDeniedCache, mockExceptionCache).get(10, TimeUnit.SECONDS);
+
+        assertEquals("singleAccessKey", credentials.accessKeyId());
+        verify(mockLakeFormationAsyncClient, times(2))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    private AccessGrantsCache staleWhileRevalidateCache(final AtomicLong now) {
+        return testCache(now).staleWhileRevalidate(true).build();
+    }
+
+    /**
+     * A table grant whose credentials Lake Formation reports as expiring in one hour.
+     */
+    private static GetTemporaryDataLocationCredentialsResponse expiringTableResponse(final String accessKeyId) {
+        return expiringTableResponse(accessKeyId, new AtomicLong());
+    }
+
+    /**
+     * A table grant whose credentials expire one hour after the current time of the test's ticker, which the cache
+     * measures their lifetime on.
+     */
+    private static GetTemporaryDataLocationCredentialsResponse expiringTableResponse(
+            final String accessKeyId,
+            final AtomicLong now) {
+        return GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId(accessKeyId)
+                .secretAccessKey("tableSecretKey")
+                .sessionToken("tableSessionToken")
+                .expiration(Instant.now().plusNanos(now.get()).plusSeconds(3600))
+                .build())
+            .accessibleDataLocations(Collections.singletonList("s3://test-bucket/table"))
+            .build();
+    }
+
+    @Test
+    @DisplayName("Without stale-while-revalidate an entry past its safety margin is not served")
+    public void testExpiredEntryIsNotServedByDefault() {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).build();
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(expiringTableResponse("firstAccessKey"))
+            .thenThrow(InternalServiceException.builder().message("Service unavailable").build());
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3400));
+        assertThrows(InternalServiceException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache));
+    }
+
+    @Test
+    @DisplayName("With stale-while-revalidate an expired entry is served until its credentials actually expire")
+    public void testStaleEntryIsServedUntilCredentialsExpire() {
+        AtomicLong now = new AtomicLong();
+        cache = staleWhileRevalidateCache(now);
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(expiringTableResponse("firstAccessKey"))
+            .thenThrow(InternalServiceException.builder().message("Service unavailable").build());
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        // Past the safety margin the entry is served from the grace tier, and keeps being served while each read's
+        // revalidation fails.
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3400));
+        assertEquals("firstAccessKey",
+            cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache).accessKeyId());
+        assertEquals("firstAccessKey",
+            cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache).accessKeyId());
+        verify(mockLakeFormationClient, times(3))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+
+        // Once the credentials themselves expire the grace entry is gone and the failure reaches the caller.
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3600));
+        assertThrows(InternalServiceException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache));
+    }
+
+    @Test
+    @DisplayName("Entry lifetimes are measured on the cache's ticker rather than the wall clock")
+    public void testGraceEntryExpiresAtCredentialsExpirationOnTheTicker() {
+        AtomicLong now = new AtomicLong();
+        cache = staleWhileRevalidateCache(now);
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(expiringTableResponse("firstAccessKey"))
+            .thenThrow(InternalServiceException.builder().message("Service unavailable").build());
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        // The grace entry is created 3400 ticker seconds in, with 200 seconds left on its credentials.
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3400));
+        assertEquals("firstAccessKey",
+            cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache).accessKeyId());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(201));
+        assertThrows(InternalServiceException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache));
+    }
+
+    @Test
+    @DisplayName("A successful revalidation replaces the stale entry")
+    public void testRevalidationReplacesStaleEntry() throws Exception {
+        AtomicLong now = new AtomicLong();
+        cache = staleWhileRevalidateCache(now);
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(expiringTableResponse("firstAccessKey")))
+            // Vended once the ticker has moved on, so it expires an hour after the revalidation.
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(expiringTableResponse("secondAccessKey", now)));
+        cache.getCredentialsAsync(mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache)
+            .get(10, TimeUnit.SECONDS);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3400));
+        AwsCredentials stale = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache).get(10, TimeUnit.SECONDS);
+        AwsCredentials revalidated = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache).get(10, TimeUnit.SECONDS);
+
+        assertEquals("firstAccessKey", stale.accessKeyId());
+        assertEquals("secondAccessKey", revalidated.accessKeyId());
+        verify(mockLakeFormationAsyncClient, times(2))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("A revalidation that is denied drops the stale entry")
+    public void testDeniedRevalidationDropsStaleEntry() {
+        AtomicLong now = new AtomicLong();
+        cache = staleWhileRevalidateCache(now);
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        LakeFormationException accessDeniedException = (LakeFormationException) LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").errorMessage("Access Denied").build())
+            .message("Access Denied")
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(expiringTableResponse("firstAccessKey"))
+            .thenThrow(accessDeniedException);
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3400));
+        assertEquals("firstAccessKey",
+            cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache).accessKeyId());
+
+        assertThrows(LakeFormationException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache));
+        verify(mockLakeFormationClient, times(3))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Misses are rejected without calling Lake Formation while the circuit breaker is open")
+    public void testOpenCircuitBreakerRejectsMissesWithoutCallingLakeFormation() {
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenThrow(InternalServiceException.builder().message("Service unavailable").build());
+        for (int i = 0; i < CircuitBreaker.DEFAULT_MINIMUM_CALLS; i++) {
+            CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/folder-" + i + "/key");
+            assertThrows(RuntimeException.class,
+                () -> cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, cache.getCircuitBreaker().getState());
+        clearInvocations(mockLakeFormationClient);
+
+        assertThrows(SdkClientException.class,
+            () -> cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache));
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, testKey, mockAccessDeniedCache, mockExceptionCache).get());
+
+        assertInstanceOf(SdkClientException.class, thrown.getCause());
+        verify(mockLakeFormationClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+        verify(mockLakeFormationAsyncClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Calls the saturated concurrency limiter rejects leave the circuit breaker closed")
+    public void testLimiterRejectionsDoNotOpenCircuitBreaker() throws Exception {
+        cache = testCache().concurrencyLimiter(new ConcurrencyLimiter(1, 1, 1, 0, 0)).build();
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(
+            any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(new CompletableFuture<>());
+        CompletableFuture<AwsCredentials> holdingPermit = cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        for (int i = 0; i < CircuitBreaker.DEFAULT_MINIMUM_CALLS; i++) {
+            CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/folder-" + i + "/key");
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> cache.getCredentialsAsync(
+                mockLakeFormationAsyncClient, key, mockAccessDeniedCache, mockExceptionCache).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(SdkClientException.class, thrown.getCause());
+        }
+
+        assertFalse(holdingPermit.isDone());
+        assertEquals(CircuitBreaker.DEFAULT_MINIMUM_CALLS, cache.getConcurrencyLimiter().getRejectedCount());
+        assertEquals(CircuitBreaker.State.CLOSED, cache.getCircuitBreaker().getState());
+        assertEquals(0, cache.getCircuitBreaker().getTransitionCount(CircuitBreaker.State.OPEN));
+        verify(mockLakeFormationAsyncClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    @DisplayName("Finding credentials reports a miss without calling Lake Formation")
+    public void testFindCredentialsDoesNotCallLakeFormationOnMiss() {
+        assertNull(cache.findCompletedCredentials(mockLakeFormationClient, testKey));
+        assertNull(cache.findCredentialsAsync(mockLakeFormationAsyncClient, testKey));
+        verify(mockLakeFormationClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> responseFor(invocation.getArgument(0)));
+        AwsCredentials credentials =
+            cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        assertSame(credentials, cache.findCompletedCredentials(mockLakeFormationClient, testKey).join());
+        assertSame(credentials, cache.findCredentialsAsync(mockLakeFormationAsyncClient, testKey).join());
+    }
+
+    @Test
+    @DisplayName("Hits are reported by how the grant serving them was found")
+    public void testMetricsClassifyHits() {
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        cache = metricsCache(new AtomicLong(), metrics);
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(grantResponse("s3://test-bucket/table"), grantResponse("s3://test-bucket/data*"),
+                grantResponse("s3://test-bucket/shared"));
+        CacheKey table = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table");
+        CacheKey partition = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        CacheKey wildcard = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/data-2026/part-0.parquet");
+        CacheKey shared = new CacheKey(testCredentials, Permission.READWRITE, "s3://test-bucket/shared");
+        CacheKey sharedRead = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/shared/part-0.parquet");
+
+        for (CacheKey key : Arrays.asList(table, table, partition, wildcard, wildcard, shared, sharedRead)) {
+            cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        }
+
+        assertEquals(Arrays.asList(
+            "miss ACCESS_GRANTS", "lakeFormationCall OK",
+            "hit ACCESS_GRANTS EXACT",
+            "hit ACCESS_GRANTS PREFIX",
+            "miss ACCESS_GRANTS", "lakeFormationCall OK",
+            "hit ACCESS_GRANTS CHARACTER",
+            "miss ACCESS_GRANTS", "lakeFormationCall OK",
+            "hit ACCESS_GRANTS READWRITE_UPGRADE"), metrics.events());
+    }
+
+    @Test
+    @DisplayName("Lake Formation calls are reported with their latency and, when they fail, their error code")
+    public void testMetricsReportLakeFormationCalls() throws Exception {
+        AtomicLong now = new AtomicLong();
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        cache = metricsCache(now, metrics);
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> {
+                now.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+                return responseFor(invocation.getArgument(0));
+            });
+        when(mockLakeFormationAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(CompletableFutureUtils.failedFuture(ConflictException.builder()
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("ConflictException").build())
+                .message("Multiple resources exist with the same Amazon S3 location")
+                .build()));
+
+        cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+        CacheKey conflicting = new CacheKey(testCredentials, Permission.READ, "s3://other-bucket/table/part-0.parquet");
+        assertThrows(ExecutionException.class, () -> cache.getCredentialsAsync(
+            mockLakeFormationAsyncClient, conflicting, mockAccessDeniedCache, mockExceptionCache).get(10, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("miss ACCESS_GRANTS", "lakeFormationCall OK",
+            "miss ACCESS_GRANTS", "lakeFormationCall ConflictException"), metrics.events());
+        assertEquals(Arrays.asList(TimeUnit.MILLISECONDS.toNanos(40), 0L), metrics.latencies());
+    }
+
+    @Test
+    @DisplayName("Expired grants are reported as evictions and served stale grants as stale hits")
+    public void testMetricsReportEvictionsAndStaleHits() throws Exception {
+        AtomicLong now = new AtomicLong();
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        cache = metricsCache(now, metrics);
+        CacheKey key = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table/part-0.parquet");
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(expiringTableResponse("firstAccessKey"))
+            .thenThrow(InternalServiceException.builder().message("Service unavailable").build());
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+        metrics.clear();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3400));
+        cache.getCredentials(mockLakeFormationClient, key, mockAccessDeniedCache, mockExceptionCache);
+
+        // The lookup hands the expired grant to the grace tier itself; Caffeine reports its eviction during the
+        // maintenance the lookup scheduled, which may complete after the stale hit.
+        List<String> events = metrics.events();
+        events.remove("eviction ACCESS_GRANTS");
+        assertEquals(Arrays.asList("hit ACCESS_GRANTS STALE", "lakeFormationCall InternalServiceException"), events);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!metrics.events().contains("eviction ACCESS_GRANTS") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, Collections.frequency(metrics.events(), "eviction ACCESS_GRANTS"));
+    }
+
+    @Test
+    @DisplayName("With an expiry scheduler an expired grant is removed without further cache activity")
+    public void testExpirySchedulerRemovesExpiredGrantsWhileIdle() throws Exception {
+        AtomicLong now = new AtomicLong();
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        BlockingQueue<Runnable> scheduled = new LinkedBlockingQueue<>();
+        cache = testCache(now).metricsListener(metrics)
+            .expiryScheduler((executor, command, delay, unit) -> {
+                scheduled.add(command);
+                return CompletableFuture.completedFuture(null);
+            })
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(tableResponse("tableAccessKey"));
+        cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+
+        // Caffeine schedules the cleanup once it has processed the write.
+        Runnable cleanUp = scheduled.poll(10, TimeUnit.SECONDS);
+        assertNotNull(cleanUp);
+        metrics.clear();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3600));
+        cleanUp.run();
+
+        assertEquals(Collections.singletonList("eviction ACCESS_GRANTS"), metrics.events());
+        assertNull(cache.findCompletedCredentials(mockLakeFormationClient, testKey));
+    }
+
+    @Test
+    @DisplayName("With a memory budget grants are evicted by their estimated bytes as the budget's other caches grow")
+    public void testMemoryBudgetBoundsGrantsByEstimatedBytes() {
+        AtomicLong now = new AtomicLong();
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        int grantBytes = GrantPartitions.weigh(
+            new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table-0"),
+            AwsSessionCredentials.create("grantAccessKey", "grantSecretKey", "grantSessionToken"));
+        MemoryBudget budget = new MemoryBudget(4L * grantBytes);
+        cache = testCache(now).metricsListener(metrics).memoryBudget(budget).build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(grantResponse("s3://test-bucket/table-0/"), grantResponse("s3://test-bucket/table-1/"),
+                grantResponse("s3://test-bucket/table-2/"), grantResponse("s3://test-bucket/table-3/"),
+                grantResponse("s3://test-bucket/table-4/"), grantResponse("s3://test-bucket/table-5/"));
+
+        for (int i = 0; i < 5; i++) {
+            cache.getCredentials(mockLakeFormationClient,
+                new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table-" + i + "/part-0.parquet"),
+                mockAccessDeniedCache, mockExceptionCache);
+        }
+
+        assertEquals(1, Collections.frequency(metrics.events(), "eviction ACCESS_GRANTS"));
+        assertEquals(4L * grantBytes, budget.usedBytes(MetricsListener.CacheLayer.ACCESS_GRANTS));
+
+        // Bytes taken by another cache shrink the grants' share of the budget on the next write.
+        budget.charge(MetricsListener.CacheLayer.EXCEPTION, 2L * grantBytes);
+        cache.getCredentials(mockLakeFormationClient,
+            new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table-5/part-0.parquet"),
+            mockAccessDeniedCache, mockExceptionCache);
+
+        assertEquals(4, Collections.frequency(metrics.events(), "eviction ACCESS_GRANTS"));
+        assertEquals(2L * grantBytes, budget.usedBytes(MetricsListener.CacheLayer.ACCESS_GRANTS));
+        assertEquals(budget.budgetBytes(), budget.usedBytes());
+    }
+
+    @Test
+    @DisplayName("With a principal quota a principal reading many distinct paths only evicts its own grants")
+    public void testPrincipalQuotaIsolatesPrincipals() {
+        AtomicLong now = new AtomicLong();
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        cache = testCache(now).cacheSize(10).metricsListener(metrics)
+            .principalQuota(new PrincipalQuota(80, 20))
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> grantResponse(
+                ((GetTemporaryDataLocationCredentialsRequest) invocation.getArgument(0)).dataLocations().get(0)));
+        AwsCredentials tenantCredentials = AwsBasicCredentials.create("tenantAccessKey", "tenantSecretKey");
+        List<CacheKey> hotKeys = Arrays.asList(
+            new CacheKey(tenantCredentials, Permission.READ, "s3://test-bucket/hot-0"),
+            new CacheKey(tenantCredentials, Permission.READ, "s3://test-bucket/hot-1"));
+        for (CacheKey hotKey : hotKeys) {
+            cache.getCredentials(mockLakeFormationClient, hotKey, mockAccessDeniedCache, mockExceptionCache);
+        }
+
+        for (int i = 0; i < 20; i++) {
+            cache.getCredentials(mockLakeFormationClient,
+                new CacheKey(testCredentials, Permission.READ, String.format("s3://test-bucket/scan-%02d", i)),
+                mockAccessDeniedCache, mockExceptionCache);
+        }
+
+        // With two principals each is guaranteed 2 of the 10 grants, and the scanner may grow to its maximum of 8.
+        String scanner = new CacheKey(testCredentials, Permission.READ, "s3://test-bucket").getPrincipal().toString();
+        assertTrue(metrics.events().contains("partitionOccupancy " + scanner + " 8/8"));
+        clearInvocations(mockLakeFormationClient);
+        metrics.clear();
+
+        for (CacheKey hotKey : hotKeys) {
+            assertNotNull(cache.getCredentials(mockLakeFormationClient, hotKey, mockAccessDeniedCache,
+                mockExceptionCache));
+        }
+        verify(mockLakeFormationClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+        String tenant = hotKeys.get(0).getPrincipal().toString();
+        assertEquals(Arrays.asList("hit ACCESS_GRANTS EXACT", "partitionLookup " + tenant + " HIT",
+            "hit ACCESS_GRANTS EXACT", "partitionLookup " + tenant + " HIT"), metrics.events());
+    }
+
+    @Test
+    @DisplayName("With an expiry scheduler the partitions of principals gone idle are dropped on the scheduler")
+    public void testIdlePartitionsAreDroppedOnTheExpiryScheduler() {
+        AtomicLong now = new AtomicLong();
+        BlockingQueue<Runnable> scheduled = new LinkedBlockingQueue<>();
+        cache = testCache(now).principalQuota(new PrincipalQuota(80, 20))
+            .expiryScheduler((executor, command, delay, unit) -> {
+                scheduled.add(command);
+                return CompletableFuture.completedFuture(null);
+            })
+            .build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> grantResponse(
+                ((GetTemporaryDataLocationCredentialsRequest) invocation.getArgument(0)).dataLocations().get(0)));
+        AwsCredentials tenantCredentials = AwsBasicCredentials.create("tenantAccessKey", "tenantSecretKey");
+        cache.getCredentials(mockLakeFormationClient,
+            new CacheKey(tenantCredentials, Permission.READ, "s3://test-bucket/tenant"), mockAccessDeniedCache,
+            mockExceptionCache);
+        cache.getCredentials(mockLakeFormationClient, testKey, mockAccessDeniedCache, mockExceptionCache);
+        assertEquals(2, cache.partitionCount());
+
+        // No principal writes once the grants expire, so only the scheduler drops their partitions.
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3600));
+        List<Runnable> commands = new ArrayList<>();
+        scheduled.drainTo(commands);
+        commands.forEach(Runnable::run);
+
+        assertEquals(0, cache.partitionCount());
+    }
+
+    @Test
+    @DisplayName("Without an expiry scheduler the partition of a principal gone idle is dropped as others write")
+    public void testIdlePartitionsAreDroppedOnWrite() {
+        AtomicLong now = new AtomicLong();
+        cache = testCache(now).principalQuota(new PrincipalQuota(80, 20)).build();
+        when(mockLakeFormationClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenAnswer(invocation -> grantResponse(
+                ((GetTemporaryDataLocationCredentialsRequest) invocation.getArgument(0)).dataLocations().get(0)));
+        AwsCredentials tenantCredentials = AwsBasicCredentials.create("tenantAccessKey", "tenantSecretKey");
+        cache.getCredentials(mockLakeFormationClient,
+            new CacheKey(tenantCredentials, Permission.READ, "s3://test-bucket/tenant"), mockAccessDeniedCache,
+            mockExceptionCache);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3600));
+
+        // Each write sweeps one other partition, so a few writes reach the idle tenant's.
+        for (int i = 0; i < 3; i++) {
+            cache.getCredentials(mockLakeFormationClient,
+                new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/table-" + i), mockAccessDeniedCache,
+                mockExceptionCache);
+        }
+
+        assertEquals(1, cache.partitionCount());
+    }
+
+    private static AccessGrantsCache.Builder testCache() {
+        return AccessGrantsCache.builder().cacheSize(1000).duration(3600);
+    }
+
+    /**
+     * A cache on a manual ticker that refreshes ahead on the calling thread.
+     */
+    private static AccessGrantsCache.Builder testCache(final AtomicLong now) {
+        return testCache().ticker(now::get).refreshExecutor(Runnable::run);
+    }
+
+    private AccessGrantsCache metricsCache(final AtomicLong now, final MetricsListener metrics) {
+        return testCache(now).staleWhileRevalidate(true).metricsListener(metrics).build();
+    }
+
+    private static GetTemporaryDataLocationCredentialsResponse grantResponse(final String location) {
+        return GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId("grantAccessKey")
+                .secretAccessKey("grantSecretKey")
+                .sessionToken("grantSessionToken")
+                .build())
+            .accessibleDataLocations(Collections.singletonList(location))
+            .build();
+    }
+
+    private static ThrottledException throttledException() {
+        return ThrottledException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottledException").build())
+            .message("Rate exceeded")
+            .build();
+    }
 }
@@ -4,8 +4,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.services.s3control.model.Permission;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -54,4 +58,87 @@ public class CacheKeyTest {
             new CacheKey(testCredentials, Permission.READ, null);
         });
     }
+
+    @Test
+    public void testCacheKeysForDifferentSecretsAreNotEqual() {
+        CacheKey otherSecret = new CacheKey(
+            AwsBasicCredentials.create("accessKey", "otherSecretKey"), Permission.READ, "s3://test-bucket/test-key");
+
+        assertNotEquals(cacheKey, otherSecret);
+    }
+
+    @Test
+    public void testDerivedKeyEqualsKeyBuiltFromCredentials() {
+        CacheKey derived = cacheKey.derive(Permission.WRITE, "s3://test-bucket/other-key");
+        CacheKey built = new CacheKey(testCredentials, Permission.WRITE, "s3://test-bucket/other-key");
+
+        assertEquals(built, derived);
+        assertEquals(built.hashCode(), derived.hashCode());
+        assertSame(testCredentials, derived.getCredentials());
+        assertThrows(IllegalArgumentException.class, () -> cacheKey.derive(null, "s3://test-bucket/test-key"));
+    }
+
+    @Test
+    public void testSecretKeyReadOnlyWhenBuiltFromCredentials() {
+        AtomicInteger secretReads = new AtomicInteger();
+        AwsCredentialsIdentity countingCredentials = new AwsCredentialsIdentity() {
+            @Override
+            public String accessKeyId() {
+                return "accessKey";
+            }
+
+            @Override
+            public String secretAccessKey() {
+                secretReads.incrementAndGet();
+                return "secretKey";
+            }
+        };
+
+        CacheKey key = new CacheKey(countingCredentials, Permission.READ, "s3://test-bucket/test-key");
+        CacheKey parent = key.derive(Permission.READ, "s3://test-bucket");
+        CacheKey readWrite = new CacheKey(key, Permission.READWRITE);
+        key.hashCode();
+        parent.equals(new CacheKey(key, null, "s3://test-bucket"));
+        readWrite.equals(key);
+
+        assertEquals(1, secretReads.get());
+        assertEquals(cacheKey, key);
+    }
+
+    @Test
+    public void testKeysFollowTheResolvedPrincipalAcrossRotations() {
+        CacheKey key = new CacheKey(sessionCredentials("firstAccessKey", "111122223333"),
+            PrincipalResolver.ACCOUNT_AND_PROVIDER, Permission.READ, "s3://test-bucket/test-key");
+        CacheKey rotated = new CacheKey(sessionCredentials("rotatedAccessKey", "111122223333"),
+            PrincipalResolver.ACCOUNT_AND_PROVIDER, Permission.READ, "s3://test-bucket/test-key");
+        CacheKey otherAccount = new CacheKey(sessionCredentials("rotatedAccessKey", "444455556666"),
+            PrincipalResolver.ACCOUNT_AND_PROVIDER, Permission.READ, "s3://test-bucket/test-key");
+
+        assertEquals(key, rotated);
+        assertEquals(key.hashCode(), rotated.hashCode());
+        assertNotEquals(rotated, otherAccount);
+        assertNotEquals(key, new CacheKey(sessionCredentials("rotatedAccessKey", "111122223333"),
+            Permission.READ, "s3://test-bucket/test-key"));
+    }
+
+    @Test
+    public void testCredentialsWithoutResolvedPrincipalAreKeyedByKeyPair() {
+        CacheKey key = new CacheKey(testCredentials, PrincipalResolver.ACCOUNT_AND_PROVIDER, Permission.READ,
+            "s3://test-bucket/test-key");
+
+        assertEquals(cacheKey, key);
+        // A name equal to the key pair's text still identifies another principal.
+        assertNotEquals(cacheKey, new CacheKey(testCredentials, credentials -> "accessKey\0secretKey", Permission.READ,
+            "s3://test-bucket/test-key"));
+    }
+
+    private static AwsSessionCredentials sessionCredentials(String accessKeyId, String accountId) {
+        return AwsSessionCredentials.builder()
+            .accessKeyId(accessKeyId)
+            .secretAccessKey("secretKey")
+            .sessionToken("sessionToken")
+            .accountId(accountId)
+            .providerName("StsAssumeRoleCredentialsProvider")
+            .build();
+    }
 }
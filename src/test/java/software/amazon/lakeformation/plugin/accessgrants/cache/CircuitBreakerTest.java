@@ -0,0 +1,215 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.lakeformation.model.InternalServiceException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
+
+/**
+ * Test class for CircuitBreaker.
+ */
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 1000;
+
+    private final AtomicLong now = new AtomicLong();
+    private final RecordingMetricsListener metrics = new RecordingMetricsListener();
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    public void setUp() {
+        breaker = new CircuitBreaker(50, 100, 10, 4, OPEN_MILLIS, 2, now::get, metrics);
+    }
+
+    private static RuntimeException unavailable() {
+        return InternalServiceException.builder().message("Service unavailable").build();
+    }
+
+    private void fail(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThrows(InternalServiceException.class, () -> breaker.call(() -> {
+                throw unavailable();
+            }));
+        }
+    }
+
+    private void succeed(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertEquals("ok", breaker.call(() -> "ok"));
+        }
+    }
+
+    @Test
+    public void testBreakerStaysClosedBelowTheMinimumCalls() {
+        fail(3);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailureRateAtTheThresholdOpensTheBreaker() {
+        succeed(2);
+        fail(2);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTransitionCount(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testSlowCallsOpenTheBreaker() {
+        for (int i = 0; i < 4; i++) {
+            breaker.call(() -> now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200)));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testOpenBreakerRejectsWithoutCalling() {
+        fail(4);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(SdkClientException.class, () -> breaker.call(calls::incrementAndGet));
+        assertEquals(0, calls.get());
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void testTransitionsAndRejectionsAreReported() {
+        fail(4);
+        assertThrows(SdkClientException.class, breaker::rejectIfOpen);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        succeed(2);
+
+        assertEquals(Arrays.asList("circuitBreaker CLOSED OPEN", "circuitBreakerRejection",
+            "circuitBreaker OPEN HALF_OPEN", "circuitBreaker HALF_OPEN CLOSED"), metrics.events());
+    }
+
+    @Test
+    public void testRejectIfOpen() {
+        breaker.rejectIfOpen();
+        fail(4);
+
+        assertThrows(SdkClientException.class, breaker::rejectIfOpen);
+        assertEquals(1, breaker.getRejectedCount());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        breaker.rejectIfOpen();
+    }
+
+    @Test
+    public void testOpenBreakerFailsAsyncCallsWithoutCalling() {
+        fail(4);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<Integer> rejected =
+            breaker.callAsync(() -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(SdkClientException.class, thrown.getCause());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void testSuccessfulProbesCloseTheBreaker() {
+        fail(4);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+
+        succeed(1);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        succeed(1);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getTransitionCount(CircuitBreaker.State.HALF_OPEN));
+        assertEquals(1, breaker.getTransitionCount(CircuitBreaker.State.CLOSED));
+        // The window starts over, so one failure does not reopen the breaker.
+        fail(1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailedProbeReopensTheBreaker() {
+        fail(4);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+
+        fail(1);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTransitionCount(CircuitBreaker.State.OPEN));
+        assertThrows(SdkClientException.class, () -> breaker.call(() -> "rejected"));
+    }
+
+    @Test
+    public void testHalfOpenBreakerLimitsConcurrentProbes() {
+        fail(4);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+
+        breaker.callAsync(() -> first);
+        breaker.callAsync(() -> second);
+        assertThrows(SdkClientException.class, () -> breaker.call(() -> "third"));
+
+        first.complete("ok");
+        second.complete("ok");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testCallsStartedBeforeATransitionAreNotRecorded() {
+        CompletableFuture<String> lingering = new CompletableFuture<>();
+        breaker.callAsync(() -> lingering);
+        fail(4);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        succeed(2);
+
+        lingering.completeExceptionally(unavailable());
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testAWindowOfThrottledCallsLeavesTheBreakerClosed() {
+        for (int i = 0; i < 10; i++) {
+            assertThrows(ThrottledException.class, () -> breaker.call(() -> {
+                throw ThrottledException.builder().message("Rate exceeded").build();
+            }));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getTransitionCount(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testIsFailure() {
+        assertTrue(CircuitBreaker.isFailure(unavailable()));
+        assertTrue(CircuitBreaker.isFailure(SdkClientException.create("Connect timed out")));
+        assertTrue(CircuitBreaker.isFailure(LakeFormationException.builder().statusCode(503).build()));
+        assertFalse(CircuitBreaker.isFailure(LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").build())
+            .statusCode(403)
+            .build()));
+        assertFalse(CircuitBreaker.isFailure(ThrottledException.builder().message("Rate exceeded").build()));
+        assertFalse(CircuitBreaker.isFailure(LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build())
+            .statusCode(503)
+            .build()));
+        assertFalse(CircuitBreaker.isFailure(new RuntimeException("other")));
+        assertFalse(CircuitBreaker.isFailure(null));
+    }
+}
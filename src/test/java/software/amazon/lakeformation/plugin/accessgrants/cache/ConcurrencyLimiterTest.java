@@ -0,0 +1,237 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.lakeformation.model.ConflictException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
+
+/**
+ * Test class for ConcurrencyLimiter.
+ */
+public class ConcurrencyLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ConcurrencyLimiter limiter(final int initialLimit, final int maxQueueSize, final long maxWaitMillis) {
+        return new ConcurrencyLimiter(initialLimit, 1, 100, maxQueueSize, maxWaitMillis, now::get);
+    }
+
+    private static RuntimeException throttled() {
+        return ThrottledException.builder().message("Rate exceeded").build();
+    }
+
+    /**
+     * Starts a blocking call on another thread that holds its permit until {@code release} is counted down.
+     */
+    private Future<String> holdPermit(final ConcurrencyLimiter limiter, final CountDownLatch release) {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> call = executor.submit(() -> limiter.call(() -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "held";
+        }));
+        try {
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return call;
+    }
+
+    @Test
+    public void testCallsWithinTheLimitRunImmediately() {
+        ConcurrencyLimiter limiter = limiter(2, 10, 1000);
+
+        assertEquals("result", limiter.call(() -> "result"));
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void testCallOverTheLimitWaitsForAPermit() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 10, 10000);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> held = holdPermit(limiter, release);
+
+        Future<String> queued = executor.submit(() -> limiter.call(() -> "queued"));
+        while (limiter.getQueueDepth() == 0) {
+            Thread.sleep(5);
+        }
+        assertFalse(queued.isDone());
+
+        release.countDown();
+        assertEquals("held", held.get(10, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(10, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testCallIsRejectedWhenTheQueueIsFull() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 0, 10000);
+        CountDownLatch release = new CountDownLatch(1);
+        holdPermit(limiter, release);
+
+        assertThrows(SdkClientException.class, () -> limiter.call(() -> "rejected"));
+        assertEquals(1, limiter.getRejectedCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testQueuedCallIsRejectedAfterItsDeadline() {
+        ConcurrencyLimiter limiter = limiter(1, 10, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        holdPermit(limiter, release);
+
+        assertThrows(SdkClientException.class, () -> limiter.call(() -> "late"));
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getRejectedCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testAsyncCallOverTheLimitStartsWhenAPermitIsReleased() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 10, 10000);
+        CompletableFuture<String> first = new CompletableFuture<>();
+
+        CompletableFuture<String> held = limiter.callAsync(() -> first);
+        CompletableFuture<String> queued = limiter.callAsync(() -> CompletableFuture.completedFuture("queued"));
+        assertEquals(1, limiter.getQueueDepth());
+        assertFalse(queued.isDone());
+
+        first.complete("held");
+        assertEquals("held", held.get(10, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(10, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testAsyncQueuedCallIsRejectedAfterItsDeadline() {
+        ConcurrencyLimiter limiter = limiter(1, 10, 50);
+        limiter.callAsync(CompletableFuture::new);
+
+        CompletableFuture<String> queued = limiter.callAsync(() -> CompletableFuture.completedFuture("late"));
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> queued.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(SdkClientException.class, thrown.getCause());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testThrottlingHalvesTheLimitOncePerBurst() {
+        ConcurrencyLimiter limiter = limiter(8, 10, 1000);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        limiter.callAsync(() -> first);
+        limiter.callAsync(() -> second);
+
+        now.addAndGet(1);
+        first.completeExceptionally(throttled());
+        assertEquals(4, limiter.getLimit());
+
+        // The second call started before the decrease, so its throttling is part of the same burst.
+        second.completeExceptionally(throttled());
+        assertEquals(4, limiter.getLimit());
+
+        assertThrows(ThrottledException.class, () -> limiter.call(() -> {
+            throw throttled();
+        }));
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitDoesNotDropBelowTheMinimum() {
+        ConcurrencyLimiter limiter = limiter(1, 10, 1000);
+
+        assertThrows(ThrottledException.class, () -> limiter.call(() -> {
+            throw throttled();
+        }));
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    public void testFastCallsAtFullUseRaiseTheLimit() {
+        ConcurrencyLimiter limiter = limiter(1, 10, 1000);
+
+        limiter.call(() -> {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            return "fast";
+        });
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testSlowCallsLowerTheLimit() {
+        ConcurrencyLimiter limiter = limiter(20, 10, 1000);
+        limiter.call(() -> {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            return "fast";
+        });
+
+        limiter.call(() -> {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+            return "slow";
+        });
+
+        assertEquals(18, limiter.getLimit());
+    }
+
+    @Test
+    public void testOtherFailuresLeaveTheLimitUnchanged() {
+        ConcurrencyLimiter limiter = limiter(8, 10, 1000);
+        RuntimeException conflict = ConflictException.builder().message("Conflict").build();
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> limiter.call(() -> {
+            throw conflict;
+        }));
+        assertSame(conflict, thrown);
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testIsThrottled() {
+        assertTrue(ConcurrencyLimiter.isThrottled(throttled()));
+        assertTrue(ConcurrencyLimiter.isThrottled(LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build())
+            .build()));
+        assertTrue(ConcurrencyLimiter.isThrottled(LakeFormationException.builder().statusCode(429).build()));
+        assertFalse(ConcurrencyLimiter.isThrottled(ConflictException.builder().message("Conflict").build()));
+        assertFalse(ConcurrencyLimiter.isThrottled(new RuntimeException("other")));
+    }
+}
@@ -1,9 +1,9 @@
 package software.amazon.lakeformation.plugin.accessgrants.cache;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
-import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -37,6 +37,16 @@ public class ExceptionCacheTest {
             .build();
     }
 
+    /**
+     * Asserts that {@code cached} carries the type and error code of {@code expected}; the exception itself is
+     * not retained.
+     */
+    private static void assertCached(final LakeFormationException expected, final LakeFormationException cached) {
+        assertNotNull(cached);
+        assertEquals(expected.getClass(), cached.getClass());
+        assertEquals(expected.awsErrorDetails().errorCode(), cached.awsErrorDetails().errorCode());
+    }
+
     private CacheKey key(final Permission permission, final String s3Prefix) {
         return new CacheKey(testCredentials, permission, s3Prefix);
     }
@@ -87,7 +97,7 @@ public class ExceptionCacheTest {
             key("s3://bucket/folder1/folder2/folder3/file.csv"), conflictException);
 
         // A repeat request for the same object hits via its immediate parent (folder3).
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(
                 key("s3://bucket/folder1/folder2/folder3/file.csv")));
     }
@@ -98,7 +108,7 @@ public class ExceptionCacheTest {
             key("s3://bucket/folder1/folder2/folder3/fileA.csv"), conflictException);
 
         // A different object under the same folder shares the immediate parent -> hit.
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(
                 key("s3://bucket/folder1/folder2/folder3/fileB.csv")));
     }
@@ -142,13 +152,13 @@ public class ExceptionCacheTest {
         cache.cacheForImmediateParent(
             key(Permission.WRITE, "s3://bucket/folder1/file.csv"), conflictException);
 
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(
                 key(Permission.READ, "s3://bucket/folder1/file.csv")));
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(
                 key(Permission.READWRITE, "s3://bucket/folder1/file.csv")));
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(
                 key(Permission.WRITE, "s3://bucket/folder1/file.csv")));
     }
@@ -173,13 +183,13 @@ public class ExceptionCacheTest {
         cache.cacheForImmediateParent(
             key("s3://bucket/folder1/folder2/*"), conflictException);
 
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(key("s3://bucket/folder1/folder2/file.csv")));
 
         ExceptionCache slashCache = new ExceptionCache();
         slashCache.cacheForImmediateParent(
             key("s3://bucket/folder1/folder2/"), conflictException);
-        assertSame(conflictException,
+        assertCached(conflictException,
             slashCache.getIfParentCached(
                 key("s3://bucket/folder1/folder2/file.csv")));
     }
@@ -195,7 +205,7 @@ public class ExceptionCacheTest {
             key("s3://bucket/folder1/file.csv"), entityNotFound);
 
         // Sibling in same folder should hit (they share immediate parent "folder1").
-        assertSame(entityNotFound,
+        assertCached(entityNotFound,
             cache.getIfParentCached(key("s3://bucket/folder1/other.csv")));
     }
 
@@ -240,7 +250,7 @@ public class ExceptionCacheTest {
         // It should cache at the bucket root so that files directly under the bucket are suppressed.
         cache.cacheForImmediateParent(key("s3://bucket/*"), conflictException);
 
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(key("s3://bucket/file.csv")));
     }
 
@@ -249,7 +259,7 @@ public class ExceptionCacheTest {
         // A bucket-root trailing slash (s3://bucket/) is a directory reference at the bucket level.
         cache.cacheForImmediateParent(key("s3://bucket/"), conflictException);
 
-        assertSame(conflictException,
+        assertCached(conflictException,
             cache.getIfParentCached(key("s3://bucket/file.csv")));
     }
 }
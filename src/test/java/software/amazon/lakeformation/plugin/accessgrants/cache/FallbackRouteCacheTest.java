@@ -0,0 +1,99 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.services.lakeformation.model.EntityNotFoundException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Test class for FallbackRouteCache.
+ */
+public class FallbackRouteCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private FallbackRouteCache cache;
+    private AwsCredentialsIdentity testCredentials;
+    private EntityNotFoundException notRegistered;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new FallbackRouteCache(2, 60, new NegativeIndex(now::get));
+        testCredentials = AwsBasicCredentials.create("accessKey", "secretKey");
+        notRegistered = EntityNotFoundException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("EntityNotFoundException").build())
+            .message("Location is not registered")
+            .build();
+    }
+
+    private CacheKey key(final Permission permission, final String s3Prefix) {
+        return new CacheKey(testCredentials, permission, s3Prefix);
+    }
+
+    @Test
+    public void testRouteCoversTheParentSubtree() {
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/logs/2024/01/file.json"), notRegistered);
+
+        assertTrue(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/logs/2024/01/other.json")));
+        assertTrue(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/logs/2024/01/02/file.json")));
+        assertTrue(cache.isRoutedToFallback(key(Permission.WRITE, "s3://bucket/logs/2024/01/02/")));
+        assertFalse(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/logs/2024/02/file.json")));
+        assertFalse(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/logs/2024/file.json")));
+    }
+
+    @Test
+    public void testRouteIsPerPrincipal() {
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/logs/file.json"), notRegistered);
+
+        assertFalse(cache.isRoutedToFallback(new CacheKey(AwsBasicCredentials.create("otherKey", "otherSecret"),
+            Permission.READ, "s3://bucket/logs/file.json")));
+    }
+
+    @Test
+    public void testOnlyRegistrationFailuresAreRouted() {
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/a/file.json"),
+            ThrottledException.builder().message("Rate exceeded").build());
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/b/file.json"),
+            (LakeFormationException) LakeFormationException.builder()
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").build())
+                .build());
+
+        assertFalse(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/a/file.json")));
+        assertFalse(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/b/file.json")));
+    }
+
+    @Test
+    public void testRouteExpiresAfterTtl() {
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/logs/file.json"), notRegistered);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        assertFalse(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/logs/file.json")));
+    }
+
+    @Test
+    public void testRoutesAreBoundedInSize() {
+        NegativeIndex index = new NegativeIndex(now::get);
+        cache = new FallbackRouteCache(2, 60, index);
+
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/a/file.json"), notRegistered);
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/b/file.json"), notRegistered);
+        cache.routeToFallback(key(Permission.READ, "s3://bucket/c/file.json"), notRegistered);
+
+        // A full kind makes room by evicting its oldest route.
+        assertEquals(2, index.size(NegativeIndex.Kind.FALLBACK_ROUTE));
+        assertFalse(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/a/file.json")));
+        assertTrue(cache.isRoutedToFallback(key(Permission.READ, "s3://bucket/c/file.json")));
+    }
+}
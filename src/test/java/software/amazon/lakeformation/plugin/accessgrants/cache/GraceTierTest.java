@@ -0,0 +1,101 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Test class for GraceTier.
+ */
+public class GraceTierTest {
+
+    private static final Instant ORIGIN = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final AtomicLong now = new AtomicLong();
+    private GraceTier graceTier;
+    private AwsCredentialsIdentity testCredentials;
+
+    @BeforeEach
+    public void setUp() {
+        graceTier = new GraceTier(Caffeine.newBuilder().maximumSize(100).ticker(now::get).executor(Runnable::run),
+            now::get, (expiration, currentTime) -> Duration.between(ORIGIN, expiration).toNanos() - currentTime);
+        testCredentials = AwsBasicCredentials.create("accessKey", "secretKey");
+    }
+
+    private CacheKey key(final String s3Prefix) {
+        return new CacheKey(testCredentials, Permission.READ, s3Prefix);
+    }
+
+    private static AwsCredentials expiringIn(final Duration lifetime) {
+        return AwsSessionCredentials.builder()
+            .accessKeyId("akid")
+            .secretAccessKey("secret")
+            .sessionToken("token")
+            .expirationTime(ORIGIN.plus(lifetime))
+            .build();
+    }
+
+    @Test
+    public void testGrantIsServedUntilItsCredentialsExpire() {
+        AwsCredentials credentials = expiringIn(Duration.ofMinutes(5));
+        graceTier.admit(key("s3://bucket/folder"), credentials);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5) - 1);
+        GrantIndex.Grant grant = graceTier.find(key("s3://bucket/folder/file.csv"));
+        assertNotNull(grant);
+        assertSame(credentials, grant.getCredentials());
+
+        now.addAndGet(1);
+        assertNull(graceTier.find(key("s3://bucket/folder/file.csv")));
+    }
+
+    @Test
+    public void testCredentialsWithoutAnExpirationAreNotAdmitted() {
+        graceTier.admit(key("s3://bucket/folder"), AwsSessionCredentials.create("akid", "secret", "token"));
+        graceTier.admit(key("s3://bucket/other"), AwsBasicCredentials.create("akid", "secret"));
+
+        assertNull(graceTier.find(key("s3://bucket/folder/file.csv")));
+        assertNull(graceTier.find(key("s3://bucket/other/file.csv")));
+        assertEquals(0, graceTier.occupancy());
+    }
+
+    @Test
+    public void testAlreadyExpiredCredentialsAreNotAdmitted() {
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        graceTier.admit(key("s3://bucket/folder"), expiringIn(Duration.ofMinutes(5)));
+
+        assertNull(graceTier.find(key("s3://bucket/folder/file.csv")));
+    }
+
+    @Test
+    public void testRemoveDropsTheGrant() {
+        AwsCredentials credentials = expiringIn(Duration.ofMinutes(5));
+        graceTier.admit(key("s3://bucket/folder"), credentials);
+        graceTier.admit(key("s3://bucket/other"), credentials);
+
+        graceTier.remove(key("s3://bucket/folder"));
+        graceTier.remove(key("s3://bucket/other"), AwsSessionCredentials.create("refreshed", "secret", "token"));
+
+        assertNull(graceTier.find(key("s3://bucket/folder/file.csv")));
+        // Only the credentials the grant still holds are removed.
+        assertNotNull(graceTier.find(key("s3://bucket/other/file.csv")));
+        graceTier.remove(key("s3://bucket/other"), credentials);
+        assertNull(graceTier.find(key("s3://bucket/other/file.csv")));
+    }
+}
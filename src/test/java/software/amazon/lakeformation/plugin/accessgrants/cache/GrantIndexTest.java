@@ -0,0 +1,161 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Test class for GrantIndex.
+ */
+public class GrantIndexTest {
+
+    private GrantIndex index;
+    private AwsCredentialsIdentity testCredentials;
+
+    @BeforeEach
+    public void setUp() {
+        index = new GrantIndex();
+        testCredentials = AwsBasicCredentials.create("accessKey", "secretKey");
+    }
+
+    private CacheKey key(final Permission permission, final String s3Prefix) {
+        return new CacheKey(testCredentials, permission, s3Prefix);
+    }
+
+    private AwsCredentials add(final Permission permission, final String target) {
+        AwsCredentials credentials = AwsSessionCredentials.create("akid-" + target, "secret", "token");
+        index.add(key(permission, target), credentials);
+        return credentials;
+    }
+
+    private AwsCredentials find(final Permission permission, final String path) {
+        GrantIndex.Grant grant = index.findLongestMatch(key(permission, path));
+        return grant == null ? null : grant.getCredentials();
+    }
+
+    @Test
+    public void testExactTargetMatches() {
+        AwsCredentials credentials = add(Permission.READ, "s3://bucket/folder");
+        assertSame(credentials, find(Permission.READ, "s3://bucket/folder"));
+    }
+
+    @Test
+    public void testPrefixGrantMatchesOnlyAtSegmentBoundary() {
+        AwsCredentials credentials = add(Permission.READ, "s3://bucket/folder");
+
+        assertSame(credentials, find(Permission.READ, "s3://bucket/folder/file.csv"));
+        assertSame(credentials, find(Permission.READ, "s3://bucket/folder/"));
+        assertNull(find(Permission.READ, "s3://bucket/folder2/file.csv"));
+        assertNull(find(Permission.READ, "s3://bucket/fold"));
+    }
+
+    @Test
+    public void testLongestPrefixGrantWins() {
+        add(Permission.READ, "s3://bucket");
+        add(Permission.READ, "s3://bucket/a");
+        AwsCredentials deepest = add(Permission.READ, "s3://bucket/a/b/c");
+
+        assertSame(deepest, find(Permission.READ, "s3://bucket/a/b/c/d/file.csv"));
+        assertEquals("akid-s3://bucket/a", find(Permission.READ, "s3://bucket/a/b/file.csv").accessKeyId());
+        assertEquals("akid-s3://bucket", find(Permission.READ, "s3://bucket/z").accessKeyId());
+    }
+
+    @Test
+    public void testWildcardGrantMatchesAnyContinuation() {
+        AwsCredentials credentials = add(Permission.READ, "s3://bucket/data*");
+
+        assertSame(credentials, find(Permission.READ, "s3://bucket/data-files/file.txt"));
+        assertSame(credentials, find(Permission.READ, "s3://bucket/data"));
+        assertNull(find(Permission.READ, "s3://bucket/dat"));
+    }
+
+    @Test
+    public void testPrefixGrantTakesPrecedenceOverLongerWildcard() {
+        AwsCredentials prefix = add(Permission.READ, "s3://bucket/folder");
+        add(Permission.READ, "s3://bucket/folder/sub*");
+
+        assertSame(prefix, find(Permission.READ, "s3://bucket/folder/subfolder/file.txt"));
+    }
+
+    @Test
+    public void testReadWriteGrantServesReadAndWrite() {
+        AwsCredentials readWrite = add(Permission.READWRITE, "s3://bucket/data");
+
+        assertSame(readWrite, find(Permission.READ, "s3://bucket/data/file.csv"));
+        assertSame(readWrite, find(Permission.WRITE, "s3://bucket/data/file.csv"));
+    }
+
+    @Test
+    public void testRequestedPermissionPreferredOverReadWrite() {
+        add(Permission.READWRITE, "s3://bucket/data/deeper");
+        AwsCredentials read = add(Permission.READ, "s3://bucket/data");
+
+        assertSame(read, find(Permission.READ, "s3://bucket/data/deeper/file.csv"));
+    }
+
+    @Test
+    public void testReadWriteRequestDoesNotMatchReadGrant() {
+        add(Permission.READ, "s3://bucket/data");
+        assertNull(find(Permission.READWRITE, "s3://bucket/data/file.csv"));
+    }
+
+    @Test
+    public void testGrantsAreScopedToPrincipal() {
+        add(Permission.READ, "s3://bucket/data");
+        CacheKey otherPrincipal = new CacheKey(
+            AwsBasicCredentials.create("otherAccessKey", "otherSecretKey"), Permission.READ, "s3://bucket/data/file");
+        assertNull(index.findLongestMatch(otherPrincipal));
+    }
+
+    @Test
+    public void testSchemeIsNeverAGrant() {
+        add(Permission.READ, "s3://*");
+        assertNull(find(Permission.READ, "s3://bucket/file.csv"));
+    }
+
+    @Test
+    public void testRemoveRequiresMatchingCredentials() {
+        AwsCredentials original = add(Permission.READ, "s3://bucket/data");
+        AwsCredentials refreshed = add(Permission.READ, "s3://bucket/data");
+
+        // A late eviction of the replaced value must not remove the refreshed grant.
+        index.remove(key(Permission.READ, "s3://bucket/data"), original);
+        assertSame(refreshed, find(Permission.READ, "s3://bucket/data/file.csv"));
+
+        index.remove(key(Permission.READ, "s3://bucket/data"), refreshed);
+        assertNull(find(Permission.READ, "s3://bucket/data/file.csv"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testRemoveKeepsSiblingAndParentGrants() {
+        AwsCredentials parent = add(Permission.READ, "s3://bucket/table");
+        AwsCredentials first = add(Permission.READ, "s3://bucket/table/dt=2024-01-01");
+        AwsCredentials second = add(Permission.READ, "s3://bucket/table/dt=2024-01-02");
+
+        index.remove(key(Permission.READ, "s3://bucket/table/dt=2024-01-01"), first);
+
+        assertSame(parent, find(Permission.READ, "s3://bucket/table/dt=2024-01-01/part-0.parquet"));
+        assertSame(second, find(Permission.READ, "s3://bucket/table/dt=2024-01-02/part-0.parquet"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testPrefixAndWildcardAtSameTargetAreIndependent() {
+        AwsCredentials prefix = add(Permission.READ, "s3://bucket/data");
+        AwsCredentials wildcard = add(Permission.READ, "s3://bucket/data*");
+
+        assertSame(wildcard, find(Permission.READ, "s3://bucket/data-2024/file.csv"));
+        index.remove(key(Permission.READ, "s3://bucket/data*"), wildcard);
+        assertSame(prefix, find(Permission.READ, "s3://bucket/data/file.csv"));
+        assertNull(find(Permission.READ, "s3://bucket/data-2024/file.csv"));
+    }
+}
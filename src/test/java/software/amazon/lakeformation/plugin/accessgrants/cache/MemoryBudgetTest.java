@@ -0,0 +1,86 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for MemoryBudget.
+ */
+public class MemoryBudgetTest {
+
+    private MemoryBudget budget;
+
+    @BeforeEach
+    public void setUp() {
+        Map<MetricsListener.CacheLayer, Long> floors = new EnumMap<>(MetricsListener.CacheLayer.class);
+        floors.put(MetricsListener.CacheLayer.ACCESS_GRANTS, 300L);
+        floors.put(MetricsListener.CacheLayer.EXCEPTION, 200L);
+        budget = new MemoryBudget(1000, floors);
+    }
+
+    @Test
+    public void testEachCacheMayUseItsFloorAndTheSharedPool() {
+        assertEquals(800, budget.limitBytes(MetricsListener.CacheLayer.ACCESS_GRANTS));
+        assertEquals(500, budget.limitBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+        assertEquals(700, budget.limitBytes(MetricsListener.CacheLayer.EXCEPTION));
+    }
+
+    @Test
+    public void testCachesCompeteForTheSharedPoolButKeepTheirFloors() {
+        assertTrue(budget.tryCharge(MetricsListener.CacheLayer.ACCESS_DENIED, 400));
+
+        assertEquals(400, budget.limitBytes(MetricsListener.CacheLayer.ACCESS_GRANTS));
+        assertEquals(300, budget.limitBytes(MetricsListener.CacheLayer.EXCEPTION));
+        assertFalse(budget.tryCharge(MetricsListener.CacheLayer.ACCESS_DENIED, 200));
+        assertEquals(400, budget.usedBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+
+        // The first 200 bytes come from the floor, only the last 50 from the pool.
+        assertTrue(budget.tryCharge(MetricsListener.CacheLayer.EXCEPTION, 250));
+        assertEquals(450, budget.limitBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+        assertEquals(650, budget.usedBytes());
+    }
+
+    @Test
+    public void testReleasedBytesReturnToTheSharedPool() {
+        budget.charge(MetricsListener.CacheLayer.ACCESS_DENIED, 400);
+        budget.release(MetricsListener.CacheLayer.ACCESS_DENIED, 400);
+
+        assertEquals(0, budget.usedBytes());
+        assertEquals(800, budget.limitBytes(MetricsListener.CacheLayer.ACCESS_GRANTS));
+    }
+
+    @Test
+    public void testUpdateReplacesTheUsageOfACache() {
+        budget.update(MetricsListener.CacheLayer.ACCESS_GRANTS, 500);
+        assertEquals(300, budget.limitBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+
+        budget.update(MetricsListener.CacheLayer.ACCESS_GRANTS, 100);
+        assertEquals(500, budget.limitBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+        assertEquals(100, budget.usedBytes());
+    }
+
+    @Test
+    public void testInvalidBudgetsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MemoryBudget(0));
+        assertThrows(IllegalArgumentException.class, () -> new MemoryBudget(100,
+            Collections.singletonMap(MetricsListener.CacheLayer.ACCESS_DENIED, -1L)));
+        assertThrows(IllegalArgumentException.class, () -> new MemoryBudget(100,
+            Collections.singletonMap(MetricsListener.CacheLayer.ACCESS_DENIED, 101L)));
+    }
+
+    @Test
+    public void testUnlimitedBudgetNeverLimits() {
+        assertTrue(MemoryBudget.UNLIMITED.tryCharge(MetricsListener.CacheLayer.ACCESS_DENIED, Long.MAX_VALUE / 2));
+
+        assertEquals(Long.MAX_VALUE, MemoryBudget.UNLIMITED.limitBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+        assertEquals(0, MemoryBudget.UNLIMITED.usedBytes());
+    }
+}
@@ -0,0 +1,207 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+/**
+ * Test class for MetricPublisherListener.
+ */
+@ExtendWith(MockitoExtension.class)
+public class MetricPublisherListenerTest {
+
+    @Mock
+    private MetricPublisher publisher;
+
+    private MetricPublisherListener listener;
+
+    @BeforeEach
+    public void setUp() {
+        listener = new MetricPublisherListener(publisher);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        listener.close();
+    }
+
+    @Test
+    public void testCacheLookupsAreCountedUntilPublished() {
+        listener.onCacheHit(MetricsListener.CacheLayer.ACCESS_GRANTS, MetricsListener.HitType.PREFIX);
+        listener.onCacheHit(MetricsListener.CacheLayer.ACCESS_GRANTS, MetricsListener.HitType.PREFIX);
+        listener.onCacheMiss(MetricsListener.CacheLayer.ACCESS_DENIED);
+        verify(publisher, never()).publish(any());
+
+        listener.publish();
+
+        MetricCollection published = publishedOnce();
+        assertEquals(MetricPublisherListener.METRICS, published.name());
+        List<MetricCollection> lookups = children(published, MetricPublisherListener.CACHE_LOOKUP);
+        assertEquals(2, lookups.size());
+        assertEquals(Collections.singletonList("ACCESS_GRANTS"), lookups.get(0).metricValues(MetricPublisherListener.CACHE));
+        assertEquals(Collections.singletonList("PREFIX"), lookups.get(0).metricValues(MetricPublisherListener.CACHE_RESULT));
+        assertEquals(Collections.singletonList(2L), lookups.get(0).metricValues(MetricPublisherListener.COUNT));
+        assertEquals(Collections.singletonList("ACCESS_DENIED"), lookups.get(1).metricValues(MetricPublisherListener.CACHE));
+        assertEquals(Collections.singletonList("MISS"), lookups.get(1).metricValues(MetricPublisherListener.CACHE_RESULT));
+        assertEquals(Collections.singletonList(1L), lookups.get(1).metricValues(MetricPublisherListener.COUNT));
+    }
+
+    @Test
+    public void testLakeFormationCallsAreCountedByErrorCodeWithALatencyHistogram() {
+        listener.onLakeFormationCall(Duration.ofMillis(40).toNanos(), null);
+        listener.onLakeFormationCall(Duration.ofMillis(45).toNanos(), null);
+        listener.onLakeFormationCall(Duration.ofMillis(5).toNanos(), "ThrottledException");
+
+        listener.publish();
+
+        MetricCollection published = publishedOnce();
+        List<MetricCollection> calls = children(published, MetricPublisherListener.LAKE_FORMATION_CALL);
+        assertEquals(2, calls.size());
+        for (MetricCollection call : calls) {
+            List<String> errorCode = call.metricValues(MetricPublisherListener.LAKE_FORMATION_ERROR_CODE);
+            long count = call.metricValues(MetricPublisherListener.COUNT).get(0);
+            if (errorCode.isEmpty()) {
+                assertEquals(2, count);
+            } else {
+                assertEquals(Collections.singletonList("ThrottledException"), errorCode);
+                assertEquals(1, count);
+            }
+        }
+        List<MetricCollection> latency = children(published, MetricPublisherListener.LAKE_FORMATION_CALL_LATENCY);
+        assertEquals(2, latency.size());
+        assertEquals(Collections.singletonList(Duration.ofMillis(4)),
+            latency.get(0).metricValues(MetricPublisherListener.LATENCY_BUCKET_FLOOR));
+        assertEquals(Collections.singletonList(1L), latency.get(0).metricValues(MetricPublisherListener.COUNT));
+        assertEquals(Collections.singletonList(Duration.ofMillis(32)),
+            latency.get(1).metricValues(MetricPublisherListener.LATENCY_BUCKET_FLOOR));
+        assertEquals(Collections.singletonList(2L), latency.get(1).metricValues(MetricPublisherListener.COUNT));
+    }
+
+    @Test
+    public void testEvictionsFallbacksAndResolveIdentityAreCounted() {
+        listener.onCacheEviction(MetricsListener.CacheLayer.EXCEPTION);
+        listener.onFallback(MetricsListener.FallbackReason.ROUTE);
+        listener.onResolveIdentity(Duration.ofNanos(300).toNanos());
+
+        listener.publish();
+
+        MetricCollection published = publishedOnce();
+        MetricCollection eviction = children(published, MetricPublisherListener.CACHE_EVICTION).get(0);
+        assertEquals(Collections.singletonList("EXCEPTION"), eviction.metricValues(MetricPublisherListener.CACHE));
+        MetricCollection fallback = children(published, MetricPublisherListener.FALLBACK).get(0);
+        assertEquals(Collections.singletonList("ROUTE"), fallback.metricValues(MetricPublisherListener.FALLBACK_REASON));
+        MetricCollection resolveIdentity = children(published, MetricPublisherListener.RESOLVE_IDENTITY_LATENCY).get(0);
+        assertEquals(Collections.singletonList(Duration.ZERO),
+            resolveIdentity.metricValues(MetricPublisherListener.LATENCY_BUCKET_FLOOR));
+        assertEquals(Collections.singletonList(1L), resolveIdentity.metricValues(MetricPublisherListener.COUNT));
+    }
+
+    @Test
+    public void testCircuitBreakerTransitionsAndRejectionsAreCounted() {
+        listener.onCircuitBreakerTransition(CircuitBreaker.State.CLOSED, CircuitBreaker.State.OPEN);
+        listener.onCircuitBreakerRejection();
+        listener.onCircuitBreakerRejection();
+
+        listener.publish();
+
+        MetricCollection published = publishedOnce();
+        List<MetricCollection> transitions = children(published, MetricPublisherListener.CIRCUIT_BREAKER_TRANSITION);
+        assertEquals(1, transitions.size());
+        assertEquals(Collections.singletonList("CLOSED"),
+            transitions.get(0).metricValues(MetricPublisherListener.CIRCUIT_BREAKER_FROM));
+        assertEquals(Collections.singletonList("OPEN"),
+            transitions.get(0).metricValues(MetricPublisherListener.CIRCUIT_BREAKER_TO));
+        assertEquals(Collections.singletonList(1L), transitions.get(0).metricValues(MetricPublisherListener.COUNT));
+        MetricCollection rejections = children(published, MetricPublisherListener.CIRCUIT_BREAKER_REJECTION).get(0);
+        assertEquals(Collections.singletonList(2L), rejections.metricValues(MetricPublisherListener.COUNT));
+    }
+
+    @Test
+    public void testPartitionLookupsAndOccupancyArePublishedPerPrincipal() {
+        listener.onPartitionLookup("0123456789abcdef", true);
+        listener.onPartitionOccupancy("0123456789abcdef", 7, 10);
+        listener.onPartitionOccupancy("0123456789abcdef", 8, 10);
+
+        listener.publish();
+
+        MetricCollection published = publishedOnce();
+        MetricCollection lookup = children(published, MetricPublisherListener.PARTITION_LOOKUP).get(0);
+        assertEquals(Collections.singletonList("0123456789abcdef"), lookup.metricValues(MetricPublisherListener.PRINCIPAL));
+        assertEquals(Collections.singletonList("HIT"), lookup.metricValues(MetricPublisherListener.CACHE_RESULT));
+        List<MetricCollection> occupancy = children(published, MetricPublisherListener.PARTITION_OCCUPANCY);
+        assertEquals(1, occupancy.size());
+        assertEquals(Collections.singletonList(8L),
+            occupancy.get(0).metricValues(MetricPublisherListener.PARTITION_OCCUPANCY_VALUE));
+        assertEquals(Collections.singletonList(10L), occupancy.get(0).metricValues(MetricPublisherListener.PARTITION_LIMIT));
+    }
+
+    @Test
+    public void testPublishStartsANewIntervalAndSkipsEmptyOnes() {
+        listener.onFallback(MetricsListener.FallbackReason.FAILURE);
+        listener.publish();
+        listener.publish();
+
+        verify(publisher, times(1)).publish(any());
+    }
+
+    @Test
+    public void testClosePublishesWhatWasCountedSinceTheLastPublish() {
+        listener.onFallback(MetricsListener.FallbackReason.FAILURE);
+
+        listener.close();
+        listener.close();
+
+        assertEquals(Collections.singletonList(1L),
+            children(publishedOnce(), MetricPublisherListener.FALLBACK).get(0).metricValues(MetricPublisherListener.COUNT));
+    }
+
+    @Test
+    public void testMetricsArePublishedPeriodically() {
+        listener.close();
+        listener = new MetricPublisherListener(publisher, 10);
+
+        listener.onFallback(MetricsListener.FallbackReason.ROUTE);
+
+        verify(publisher, timeout(10000)).publish(any());
+    }
+
+    @Test
+    public void testLatencyBucketsDoubleFromOneMillisecond() {
+        assertEquals(0, MetricPublisherListener.latencyBucket(Duration.ofNanos(999_999).toNanos()));
+        assertEquals(1, MetricPublisherListener.latencyBucket(Duration.ofMillis(1).toNanos()));
+        assertEquals(2, MetricPublisherListener.latencyBucket(Duration.ofMillis(3).toNanos()));
+        assertEquals(3, MetricPublisherListener.latencyBucket(Duration.ofMillis(4).toNanos()));
+        assertEquals(MetricPublisherListener.latencyBucket(Duration.ofHours(1).toNanos()),
+            MetricPublisherListener.latencyBucket(Long.MAX_VALUE));
+    }
+
+    private MetricCollection publishedOnce() {
+        ArgumentCaptor<MetricCollection> captor = ArgumentCaptor.forClass(MetricCollection.class);
+        verify(publisher, times(1)).publish(captor.capture());
+        return captor.getValue();
+    }
+
+    private static List<MetricCollection> children(final MetricCollection published, final String name) {
+        return published.children().stream()
+            .filter(child -> child.name().equals(name))
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,180 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for MicroBatcher.
+ */
+public class MicroBatcherTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long LONG_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService callers;
+    private AtomicInteger flushes;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        callers = Executors.newCachedThreadPool();
+        flushes = new AtomicInteger();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    private String joinItems(final List<String> items) {
+        flushes.incrementAndGet();
+        List<String> sorted = new ArrayList<>(items);
+        Collections.sort(sorted);
+        return String.join(",", sorted);
+    }
+
+    private List<Future<String>> submitConcurrently(
+            final MicroBatcher<String, String, String> batcher,
+            final String key,
+            final int count) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String item = "item-" + i;
+            results.add(callers.submit(() -> {
+                start.await();
+                return batcher.submit(key, item, this::joinItems);
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new MicroBatcher<String, String, String>(0, 10, scheduler));
+        assertThrows(IllegalArgumentException.class, () -> new MicroBatcher<String, String, String>(WINDOW_NANOS, 1, scheduler));
+    }
+
+    @Test
+    public void testLoneItemIsNotFlushed() {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(WINDOW_NANOS, 10, scheduler);
+
+        assertNull(batcher.submit("key", "item", this::joinItems));
+        assertEquals(0, flushes.get());
+    }
+
+    @Test
+    public void testItemsWithinWindowShareOneFlush() throws Exception {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(WINDOW_NANOS, 10, scheduler);
+
+        List<Future<String>> results = submitConcurrently(batcher, "key", 3);
+
+        for (Future<String> result : results) {
+            assertEquals("item-0,item-1,item-2", result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void testFullBatchIsFlushedWithoutWaitingForWindow() throws Exception {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(LONG_WINDOW_NANOS, 4, scheduler);
+
+        List<Future<String>> results = submitConcurrently(batcher, "key", 4);
+
+        for (Future<String> result : results) {
+            assertEquals("item-0,item-1,item-2,item-3", result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void testItemsUnderDifferentKeysAreNotBatchedTogether() throws Exception {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(WINDOW_NANOS, 10, scheduler);
+
+        Future<String> first = callers.submit(() -> batcher.submit("first", "a", this::joinItems));
+        Future<String> second = callers.submit(() -> batcher.submit("second", "b", this::joinItems));
+
+        assertNull(first.get(10, TimeUnit.SECONDS));
+        assertNull(second.get(10, TimeUnit.SECONDS));
+        assertEquals(0, flushes.get());
+    }
+
+    @Test
+    public void testFlushFailureIsSharedWithMembers() throws Exception {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(WINDOW_NANOS, 2, scheduler);
+        IllegalStateException failure = new IllegalStateException("batch failed");
+
+        Future<String> first = callers.submit(() -> batcher.submit("key", "a", items -> {
+            throw failure;
+        }));
+        Future<String> second = callers.submit(() -> batcher.submit("key", "b", items -> {
+            throw failure;
+        }));
+
+        ExecutionException firstThrown = assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+        ExecutionException secondThrown = assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, firstThrown.getCause());
+        assertInstanceOf(IllegalStateException.class, secondThrown.getCause());
+    }
+
+    @Test
+    public void testAsyncItemsAreFlushedWhenWindowElapses() throws Exception {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(WINDOW_NANOS, 10, scheduler);
+
+        CompletableFuture<String> first = batcher.submitAsync("key", "item-0",
+            items -> CompletableFuture.completedFuture(joinItems(items)));
+        CompletableFuture<String> second = batcher.submitAsync("key", "item-1",
+            items -> CompletableFuture.completedFuture(joinItems(items)));
+
+        assertEquals("item-0,item-1", first.get(10, TimeUnit.SECONDS));
+        assertEquals("item-0,item-1", second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void testAsyncFullBatchIsFlushedBySubmitter() {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(LONG_WINDOW_NANOS, 2, scheduler);
+
+        CompletableFuture<String> first = batcher.submitAsync("key", "item-0",
+            items -> CompletableFuture.completedFuture(joinItems(items)));
+        CompletableFuture<String> second = batcher.submitAsync("key", "item-1",
+            items -> CompletableFuture.completedFuture(joinItems(items)));
+
+        assertTrue(first.isDone());
+        assertEquals("item-0,item-1", second.join());
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void testAsyncLoneItemCompletesWithNull() throws Exception {
+        MicroBatcher<String, String, String> batcher = new MicroBatcher<>(WINDOW_NANOS, 10, scheduler);
+
+        CompletableFuture<String> result = batcher.submitAsync("key", "item",
+            items -> CompletableFuture.completedFuture(joinItems(items)));
+
+        assertNull(result.get(10, TimeUnit.SECONDS));
+        assertEquals(0, flushes.get());
+    }
+}
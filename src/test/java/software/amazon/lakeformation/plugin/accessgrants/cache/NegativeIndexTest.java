@@ -0,0 +1,395 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Scheduler;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.services.lakeformation.model.AccessDeniedException;
+import software.amazon.awssdk.services.lakeformation.model.ConflictException;
+import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Test class for NegativeIndex.
+ */
+public class NegativeIndexTest {
+
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int CAPACITY = 100;
+
+    private final AtomicLong now = new AtomicLong();
+    private NegativeIndex index;
+    private AwsCredentialsIdentity testCredentials;
+    private Exception exception;
+
+    @BeforeEach
+    public void setUp() {
+        index = new NegativeIndex(now::get);
+        testCredentials = AwsBasicCredentials.create("accessKey", "secretKey");
+        exception = new RuntimeException("Access denied");
+    }
+
+    private CacheKey key(final Permission permission, final String s3Prefix) {
+        return new CacheKey(testCredentials, permission, s3Prefix);
+    }
+
+    private boolean put(final String path, final NegativeIndex.Scope scope) {
+        return index.put(key(Permission.READ, path), path, NegativeIndex.Kind.ACCESS_DENIED, Permission.READ, scope,
+            exception, TTL_NANOS, CAPACITY) == NegativeIndex.Admission.RECORDED;
+    }
+
+    private NegativeEntry find(final String path) {
+        return index.find(key(Permission.READ, path), NegativeIndex.Kind.ACCESS_DENIED);
+    }
+
+    @Test
+    public void testImmediateParent() {
+        assertEquals("s3://bucket/f1/f2", NegativeIndex.immediateParent("s3://bucket/f1/f2/file.csv"));
+        assertEquals("s3://bucket", NegativeIndex.immediateParent("s3://bucket/file.csv"));
+        assertEquals("s3://bucket/folder", NegativeIndex.immediateParent("s3://bucket/folder/"));
+        assertEquals("s3://bucket/folder", NegativeIndex.immediateParent("s3://bucket/folder/*"));
+        assertEquals("s3://bucket", NegativeIndex.immediateParent("s3://bucket/*"));
+        assertEquals("s3://bucket", NegativeIndex.immediateParent("s3://bucket/"));
+        assertNull(NegativeIndex.immediateParent("s3://bucket"));
+        assertNull(NegativeIndex.immediateParent("not-an-s3-path/file.csv"));
+    }
+
+    @Test
+    public void testExactScopeCoversOnlyThePath() {
+        put("s3://bucket/folder", NegativeIndex.Scope.EXACT);
+
+        assertNotNull(find("s3://bucket/folder"));
+        assertNotNull(find("s3://bucket/folder/"));
+        assertNull(find("s3://bucket/folder/file.csv"));
+        assertNull(find("s3://bucket"));
+    }
+
+    @Test
+    public void testSiblingsScopeCoversTheFolderAndItsDirectChildren() {
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+
+        assertNotNull(find("s3://bucket/folder"));
+        assertNotNull(find("s3://bucket/folder/file.csv"));
+        // A directory reference stands for the objects inside it, which are not direct children of the folder.
+        assertNull(find("s3://bucket/folder/sub/"));
+        assertNull(find("s3://bucket/folder/sub/file.csv"));
+        assertNull(find("s3://bucket/folder2/file.csv"));
+    }
+
+    @Test
+    public void testSubtreeScopeCoversEveryPathBelow() {
+        put("s3://bucket/folder", NegativeIndex.Scope.SUBTREE);
+
+        assertNotNull(find("s3://bucket/folder/a/b/c/file.csv"));
+        assertNull(find("s3://bucket/other/file.csv"));
+        assertNull(find("s3://bucket/folderX/file.csv"));
+    }
+
+    @Test
+    public void testPermissionSpecificEntriesOnlyMatchTheirPermission() {
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+
+        assertNull(index.find(key(Permission.WRITE, "s3://bucket/folder/file.csv"), NegativeIndex.Kind.ACCESS_DENIED));
+    }
+
+    @Test
+    public void testPermissionAgnosticEntriesMatchEveryPermission() {
+        final Exception conflict = ConflictException.builder().message("Conflict").build();
+        index.put(key(Permission.WRITE, "s3://bucket/folder"), "s3://bucket/folder", NegativeIndex.Kind.NON_RETRYABLE,
+            null, NegativeIndex.Scope.SIBLINGS, conflict, TTL_NANOS, CAPACITY);
+
+        for (Permission permission : new Permission[] {Permission.READ, Permission.WRITE, Permission.READWRITE}) {
+            assertEquals("ConflictException", index.find(key(permission, "s3://bucket/folder/file.csv"),
+                NegativeIndex.Kind.NON_RETRYABLE).getErrorCode());
+        }
+    }
+
+    @Test
+    public void testKindsDoNotMatchEachOther() {
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+
+        assertNull(index.find(key(Permission.READ, "s3://bucket/folder/file.csv"), NegativeIndex.Kind.NON_RETRYABLE));
+    }
+
+    @Test
+    public void testDifferentPrincipalMisses() {
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+
+        CacheKey otherPrincipal = new CacheKey(AwsBasicCredentials.create("otherKey", "otherSecret"), Permission.READ,
+            "s3://bucket/folder/file.csv");
+        assertNull(index.find(otherPrincipal, NegativeIndex.Kind.ACCESS_DENIED));
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+
+        now.addAndGet(TTL_NANOS - 1);
+        assertNotNull(find("s3://bucket/folder/file.csv"));
+
+        now.addAndGet(1);
+        assertNull(find("s3://bucket/folder/file.csv"));
+    }
+
+    @Test
+    public void testReplacingAnEntryKeepsOneEntry() {
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+
+        assertEquals(1, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+    }
+
+    @Test
+    public void testReplacingAnEntryDoesNotGrowTheRecordingOrder() {
+        for (int i = 0; i < 1000; i++) {
+            put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+        }
+
+        assertEquals(1, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+        assertTrue(index.recordingOrderLength(NegativeIndex.Kind.ACCESS_DENIED) <= 2);
+        assertNotNull(find("s3://bucket/folder/file.csv"));
+    }
+
+    @Test
+    public void testFullIndexEvictsItsOldestEntryToRecordTheNewestDenial() {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(put("s3://bucket/folder" + i, NegativeIndex.Scope.SIBLINGS));
+        }
+
+        assertTrue(put("s3://bucket/overflow", NegativeIndex.Scope.SIBLINGS));
+
+        assertNotNull(find("s3://bucket/overflow/file.csv"));
+        assertNull(find("s3://bucket/folder0/file.csv"));
+        assertNotNull(find("s3://bucket/folder1/file.csv"));
+        assertEquals(CAPACITY, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+    }
+
+    @Test
+    public void testRecordingAnEntryRemovesExpiredEntries() {
+        for (int i = 0; i < CAPACITY; i++) {
+            put("s3://bucket/folder" + i, NegativeIndex.Scope.SIBLINGS);
+        }
+
+        now.addAndGet(TTL_NANOS);
+        assertTrue(put("s3://bucket/overflow", NegativeIndex.Scope.SIBLINGS));
+
+        assertEquals(1, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+        assertNotNull(find("s3://bucket/overflow/file.csv"));
+    }
+
+    @Test
+    public void testEvictionSkipsReplacedEntries() {
+        for (int i = 0; i < CAPACITY; i++) {
+            put("s3://bucket/folder" + i, NegativeIndex.Scope.SIBLINGS);
+        }
+        // Re-recording the oldest denial makes it the newest.
+        put("s3://bucket/folder0", NegativeIndex.Scope.SIBLINGS);
+
+        assertTrue(put("s3://bucket/overflow", NegativeIndex.Scope.SIBLINGS));
+
+        assertNotNull(find("s3://bucket/folder0/file.csv"));
+        assertNull(find("s3://bucket/folder1/file.csv"));
+        assertEquals(CAPACITY, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+    }
+
+    @Test
+    public void testEntriesKeepOnlyErrorCodeAndShortMessage() {
+        StringBuilder longMessage = new StringBuilder();
+        for (int i = 0; i < NegativeEntry.MAX_MESSAGE_LENGTH; i++) {
+            longMessage.append("x");
+        }
+        Exception denied = AccessDeniedException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder()
+                .errorCode("AccessDeniedException")
+                .errorMessage(longMessage + "tail")
+                .build())
+            .requestId("request-id")
+            .build();
+        index.put(key(Permission.READ, "s3://bucket/folder"), "s3://bucket/folder", NegativeIndex.Kind.ACCESS_DENIED,
+            Permission.READ, NegativeIndex.Scope.SIBLINGS, denied, TTL_NANOS, CAPACITY);
+
+        NegativeEntry entry = find("s3://bucket/folder/file.csv");
+
+        assertEquals("AccessDeniedException", entry.getErrorCode());
+        assertEquals(longMessage.toString(), entry.getMessage());
+        assertTrue(entry.isAccessDenied());
+        LakeFormationException rebuilt = entry.toException();
+        assertTrue(rebuilt instanceof AccessDeniedException);
+        assertEquals("AccessDeniedException", rebuilt.awsErrorDetails().errorCode());
+        assertNull(rebuilt.requestId());
+    }
+
+    @Test
+    public void testEntriesFallBackToTheExceptionClassName() {
+        index.put(key(Permission.READ, "s3://bucket/folder"), "s3://bucket/folder", NegativeIndex.Kind.NON_RETRYABLE,
+            null, NegativeIndex.Scope.SIBLINGS, ConflictException.builder().message("Conflict").build(), TTL_NANOS,
+            CAPACITY);
+
+        NegativeEntry entry = index.find(key(Permission.READ, "s3://bucket/folder/file.csv"),
+            NegativeIndex.Kind.NON_RETRYABLE);
+
+        assertEquals("ConflictException", entry.getErrorCode());
+        assertEquals("Conflict", entry.getMessage());
+        assertTrue(entry.toException() instanceof ConflictException);
+    }
+
+    @Test
+    public void testCachesSharingAnIndexRecordOneEntryPerFailure() {
+        NegativeIndex shared = new NegativeIndex();
+        AccessDeniedCache accessDeniedCache = new AccessDeniedCache(shared);
+        ExceptionCache exceptionCache = new ExceptionCache(shared);
+        Exception denied = AccessDeniedException.builder().message("Access denied").build();
+
+        accessDeniedCache.putValueInCache(key(Permission.READ, "s3://bucket/folder/file.csv"), denied);
+
+        assertEquals(1, shared.size(NegativeIndex.Kind.ACCESS_DENIED));
+        assertTrue(accessDeniedCache.getEntryFromCache(key(Permission.READ, "s3://bucket/folder/other.csv"))
+            .isAccessDenied());
+        assertNull(exceptionCache.getIfParentCached(key(Permission.READ, "s3://bucket/folder/other.csv")));
+    }
+
+    @Test
+    public void testLookupsAndExpiriesAreReportedPerCache() {
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        index = new NegativeIndex(now::get, metrics);
+        put("s3://bucket/folder", NegativeIndex.Scope.SIBLINGS);
+        index.put(key(Permission.READ, "s3://bucket/failed"), "s3://bucket/failed", NegativeIndex.Kind.NON_RETRYABLE,
+            null, NegativeIndex.Scope.SIBLINGS, exception, TTL_NANOS, CAPACITY);
+
+        find("s3://bucket/folder");
+        find("s3://bucket/folder/file.csv");
+        find("s3://bucket/other/file.csv");
+        index.find(new CacheKey(AwsBasicCredentials.create("otherKey", "otherSecret"), Permission.READ,
+            "s3://bucket/folder/file.csv"), NegativeIndex.Kind.ACCESS_DENIED);
+        index.find(key(Permission.READ, "s3://bucket/failed/file.csv"), NegativeIndex.Kind.NON_RETRYABLE);
+
+        assertEquals(Arrays.asList(
+            "hit ACCESS_DENIED EXACT",
+            "hit ACCESS_DENIED PREFIX",
+            "miss ACCESS_DENIED",
+            "miss ACCESS_DENIED",
+            "hit EXCEPTION PREFIX"), metrics.events());
+
+        metrics.clear();
+        now.addAndGet(TTL_NANOS);
+        index.purgeExpired(now.get());
+
+        List<String> evictions = metrics.events();
+        Collections.sort(evictions);
+        assertEquals(Arrays.asList("eviction ACCESS_DENIED", "eviction EXCEPTION"), evictions);
+    }
+
+    @Test
+    public void testExpirySchedulerPurgesEntriesOnceTheyExpire() {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<Long> delays = new ArrayList<>();
+        index = new NegativeIndex(now::get, MetricsListener.NONE, (executor, command, delay, unit) -> {
+            scheduled.add(command);
+            delays.add(unit.toNanos(delay));
+            return CompletableFuture.completedFuture(null);
+        });
+        long tolerance = TimeUnit.SECONDS.toNanos(1);
+
+        put("s3://bucket/first", NegativeIndex.Scope.SIBLINGS);
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        put("s3://bucket/second", NegativeIndex.Scope.SIBLINGS);
+
+        // The second entry expires after the pending purge, so it waits for it rather than scheduling its own.
+        assertEquals(Collections.singletonList(TTL_NANOS + tolerance), delays);
+
+        now.addAndGet(TTL_NANOS - TimeUnit.MINUTES.toNanos(2) + tolerance);
+        scheduled.get(0).run();
+
+        assertEquals(1, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+        assertEquals(Arrays.asList(TTL_NANOS + tolerance, TimeUnit.MINUTES.toNanos(2)), delays);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        scheduled.get(1).run();
+
+        assertEquals(0, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+        assertEquals(2, scheduled.size());
+    }
+
+    @Test
+    public void testMemoryBudgetEvictsTheOldestEntriesOnceTheKindReachesItsLimit() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        index = new NegativeIndex(now::get, MetricsListener.NONE, Scheduler.disabledScheduler(), budget);
+
+        assertTrue(put("s3://bucket/table/part-0", NegativeIndex.Scope.SIBLINGS));
+        long firstEntryBytes = budget.usedBytes(MetricsListener.CacheLayer.ACCESS_DENIED);
+        for (int i = 1; i < 50; i++) {
+            assertTrue(put("s3://bucket/table/part-" + i, NegativeIndex.Scope.SIBLINGS));
+        }
+
+        int recorded = index.size(NegativeIndex.Kind.ACCESS_DENIED);
+        assertTrue(recorded > 1 && recorded < 50);
+        assertNull(find("s3://bucket/table/part-0/file.csv"));
+        assertNotNull(find("s3://bucket/table/part-49/file.csv"));
+        assertEquals(0, budget.usedBytes(MetricsListener.CacheLayer.EXCEPTION));
+
+        // Once the entries expire, recording a new one returns their bytes, and those of their nodes, to the budget.
+        now.addAndGet(TTL_NANOS);
+        assertTrue(put("s3://bucket/table/part-0", NegativeIndex.Scope.SIBLINGS));
+        assertEquals(1, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+        assertEquals(firstEntryBytes, budget.usedBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+    }
+
+    @Test
+    public void testRejectedEntryReportsTheLimitThatKeptItOut() {
+        assertEquals(NegativeIndex.Admission.OVER_CAPACITY, index.put(key(Permission.READ, "s3://bucket/folder"),
+            "s3://bucket/folder", NegativeIndex.Kind.ACCESS_DENIED, Permission.READ, NegativeIndex.Scope.SIBLINGS,
+            exception, TTL_NANOS, 0));
+
+        index = new NegativeIndex(now::get, MetricsListener.NONE, Scheduler.disabledScheduler(), new MemoryBudget(1));
+        assertEquals(NegativeIndex.Admission.OVER_MEMORY_BUDGET, index.put(key(Permission.READ, "s3://bucket/folder"),
+            "s3://bucket/folder", NegativeIndex.Kind.ACCESS_DENIED, Permission.READ, NegativeIndex.Scope.SIBLINGS,
+            exception, TTL_NANOS, CAPACITY));
+        assertEquals(0, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+    }
+
+    @Test
+    public void testSharedNodesAreChargedToEachKindThatUsesThem() {
+        MemoryBudget budget = new MemoryBudget(1_000_000);
+        index = new NegativeIndex(now::get, MetricsListener.NONE, Scheduler.disabledScheduler(), budget);
+        ConflictException conflict = ConflictException.builder().message("Conflict").build();
+
+        assertTrue(put("s3://bucket/table", NegativeIndex.Scope.SIBLINGS));
+        long accessDeniedBytes = budget.usedBytes(MetricsListener.CacheLayer.ACCESS_DENIED);
+        assertEquals(NegativeIndex.Admission.RECORDED, index.put(key(Permission.READ, "s3://bucket/table/part-0"),
+            "s3://bucket/table/part-0", NegativeIndex.Kind.NON_RETRYABLE, null, NegativeIndex.Scope.SUBTREE, conflict,
+            2 * TTL_NANOS, CAPACITY));
+        long exceptionBytes = budget.usedBytes(MetricsListener.CacheLayer.EXCEPTION);
+
+        // The exception entry pays for the nodes it sits under, including those the denial created.
+        assertEquals(accessDeniedBytes, budget.usedBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+        assertTrue(exceptionBytes > accessDeniedBytes);
+
+        // Once the denial expires, the nodes it shared are no longer charged to it.
+        now.addAndGet(TTL_NANOS);
+        index.purgeExpired(now.get());
+        assertEquals(0, index.size(NegativeIndex.Kind.ACCESS_DENIED));
+        assertEquals(0, budget.usedBytes(MetricsListener.CacheLayer.ACCESS_DENIED));
+        assertEquals(exceptionBytes, budget.usedBytes(MetricsListener.CacheLayer.EXCEPTION));
+
+        now.addAndGet(TTL_NANOS);
+        index.purgeExpired(now.get());
+        assertEquals(0, budget.usedBytes(MetricsListener.CacheLayer.EXCEPTION));
+    }
+}
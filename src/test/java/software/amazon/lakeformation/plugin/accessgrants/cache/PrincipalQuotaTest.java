@@ -0,0 +1,47 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for PrincipalQuota.
+ */
+public class PrincipalQuotaTest {
+
+    @Test
+    public void testSharesArePercentagesOfTheCapacity() {
+        PrincipalQuota quota = new PrincipalQuota(80, 20);
+
+        assertEquals(800, quota.maxShare(1000));
+        assertEquals(200, quota.guaranteedShare(1000, 3));
+        assertEquals(Long.MAX_VALUE / 100 * 80 + Long.MAX_VALUE % 100 * 80 / 100, quota.maxShare(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testGuaranteedShareIsSplitEvenlyWhenTooManyPrincipalsAreActive() {
+        PrincipalQuota quota = new PrincipalQuota(80, 20);
+
+        assertEquals(100, quota.guaranteedShare(1000, 10));
+    }
+
+    @Test
+    public void testNoneDoesNotPartitionEvenWithTheSameShares() {
+        PrincipalQuota quota = new PrincipalQuota(100, 0);
+
+        assertFalse(PrincipalQuota.NONE.isPartitioned());
+        assertTrue(quota.isPartitioned());
+        assertNotEquals(PrincipalQuota.NONE, quota);
+    }
+
+    @Test
+    public void testInvalidSharesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new PrincipalQuota(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PrincipalQuota(101, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PrincipalQuota(50, -1));
+        assertThrows(IllegalArgumentException.class, () -> new PrincipalQuota(50, 60));
+    }
+}
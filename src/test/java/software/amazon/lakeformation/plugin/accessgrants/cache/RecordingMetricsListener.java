@@ -0,0 +1,84 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the events reported to a {@link MetricsListener} as short strings, such as
+ * {@code "hit ACCESS_GRANTS EXACT"} or {@code "lakeFormationCall ConflictException"}, in the order they were reported.
+ */
+public class RecordingMetricsListener implements MetricsListener {
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void onCacheHit(final CacheLayer cache, final HitType hitType) {
+        events.add("hit " + cache + " " + hitType);
+    }
+
+    @Override
+    public void onCacheMiss(final CacheLayer cache) {
+        events.add("miss " + cache);
+    }
+
+    @Override
+    public void onCacheEviction(final CacheLayer cache) {
+        events.add("eviction " + cache);
+    }
+
+    @Override
+    public void onLakeFormationCall(final long latencyNanos, final String errorCode) {
+        events.add("lakeFormationCall " + (errorCode == null ? "OK" : errorCode));
+        latencies.add(latencyNanos);
+    }
+
+    @Override
+    public void onCircuitBreakerTransition(final CircuitBreaker.State from, final CircuitBreaker.State to) {
+        events.add("circuitBreaker " + from + " " + to);
+    }
+
+    @Override
+    public void onCircuitBreakerRejection() {
+        events.add("circuitBreakerRejection");
+    }
+
+    @Override
+    public void onFallback(final FallbackReason reason) {
+        events.add("fallback " + reason);
+    }
+
+    @Override
+    public void onResolveIdentity(final long latencyNanos) {
+        events.add("resolveIdentity");
+        latencies.add(latencyNanos);
+    }
+
+    @Override
+    public void onPartitionLookup(final String principal, final boolean hit) {
+        events.add("partitionLookup " + principal + " " + (hit ? "HIT" : "MISS"));
+    }
+
+    @Override
+    public void onPartitionOccupancy(final String principal, final long occupancy, final long limit) {
+        events.add("partitionOccupancy " + principal + " " + occupancy + "/" + limit);
+    }
+
+    public List<String> events() {
+        synchronized (events) {
+            return new ArrayList<>(events);
+        }
+    }
+
+    public List<Long> latencies() {
+        synchronized (latencies) {
+            return new ArrayList<>(latencies);
+        }
+    }
+
+    public void clear() {
+        events.clear();
+        latencies.clear();
+    }
+}
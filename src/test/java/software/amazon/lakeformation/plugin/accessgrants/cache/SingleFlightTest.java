@@ -0,0 +1,143 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
+import software.amazon.awssdk.services.lakeformation.model.AccessDeniedException;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
+import software.amazon.awssdk.services.s3control.model.Permission;
+
+/**
+ * Test class for SingleFlight.
+ */
+public class SingleFlightTest {
+
+    private final AtomicReference<AwsCredentials> cached = new AtomicReference<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CompletableFuture<AwsCredentials> leaderCall = new CompletableFuture<>();
+    private SingleFlight singleFlight;
+    private ExceptionCache exceptionCache;
+    private AwsCredentialsIdentity testCredentials;
+    private AwsCredentials credentials;
+
+    @BeforeEach
+    public void setUp() {
+        singleFlight = new SingleFlight(cacheKey -> cached.get());
+        exceptionCache = new ExceptionCache();
+        testCredentials = AwsBasicCredentials.create("accessKey", "secretKey");
+        credentials = AwsSessionCredentials.create("akid", "secret", "token");
+    }
+
+    private CacheKey key(final String s3Prefix) {
+        return new CacheKey(testCredentials, Permission.READ, s3Prefix);
+    }
+
+    /**
+     * Issues a miss whose first call is the pending leader call and whose later calls vend {@link #credentials}.
+     */
+    private CompletableFuture<AwsCredentials> fetch(final String s3Prefix) {
+        return singleFlight.fetchAsync(key(s3Prefix), exceptionCache,
+            () -> calls.getAndIncrement() == 0 ? leaderCall : CompletableFuture.completedFuture(credentials));
+    }
+
+    @Test
+    public void testFlightKeyIsTheImmediateParent() {
+        assertEquals("s3://bucket/folder", SingleFlight.flightKey(key("s3://bucket/folder/file.csv")).getS3Prefix());
+        assertEquals("s3://bucket", SingleFlight.flightKey(key("s3://bucket")).getS3Prefix());
+    }
+
+    @Test
+    public void testSiblingsShareTheLeadersCall() throws Exception {
+        CompletableFuture<AwsCredentials> leader = fetch("s3://bucket/folder/a.csv");
+        CompletableFuture<AwsCredentials> waiter = fetch("s3://bucket/folder/b.csv");
+
+        cached.set(credentials);
+        leaderCall.complete(credentials);
+
+        assertSame(credentials, leader.get());
+        assertSame(credentials, waiter.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testWaiterNotCoveredByTheLeaderMakesItsOwnCall() throws Exception {
+        fetch("s3://bucket/folder/a.csv");
+        CompletableFuture<AwsCredentials> waiter = fetch("s3://bucket/folder/b.csv");
+
+        leaderCall.complete(AwsSessionCredentials.create("other", "secret", "token"));
+
+        assertSame(credentials, waiter.get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testAccessDeniedIsSharedWithWaiters() {
+        AccessDeniedException accessDenied = AccessDeniedException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDeniedException").build())
+            .message("Access Denied")
+            .build();
+        fetch("s3://bucket/folder/a.csv");
+        CompletableFuture<AwsCredentials> waiter = fetch("s3://bucket/folder/b.csv");
+
+        leaderCall.completeExceptionally(accessDenied);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, waiter::get);
+        assertSame(accessDenied, thrown.getCause());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testWaitersRetryAfterAThrottledLeader() throws Exception {
+        ThrottledException throttled = ThrottledException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottledException").build())
+            .message("Rate exceeded")
+            .build();
+        fetch("s3://bucket/folder/a.csv");
+        CompletableFuture<AwsCredentials> waiter = fetch("s3://bucket/folder/b.csv");
+
+        leaderCall.completeExceptionally(throttled);
+
+        assertSame(credentials, waiter.get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testFlightEndsWithTheLeadersCall() throws Exception {
+        fetch("s3://bucket/folder/a.csv");
+        cached.set(credentials);
+        leaderCall.complete(credentials);
+        cached.set(null);
+
+        // A later miss leads a flight of its own.
+        assertSame(credentials, fetch("s3://bucket/folder/b.csv").get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testFlightEndsWhenTheLeadersCallThrows() throws Exception {
+        IllegalStateException failure = new IllegalStateException("Client closed");
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> singleFlight.fetchAsync(
+            key("s3://bucket/folder/a.csv"), exceptionCache, () -> {
+                throw failure;
+            })));
+
+        // The failed flight does not hold back a later miss.
+        assertSame(credentials, singleFlight.fetchAsync(key("s3://bucket/folder/b.csv"), exceptionCache,
+            () -> CompletableFuture.completedFuture(credentials)).get(1, TimeUnit.SECONDS));
+    }
+}
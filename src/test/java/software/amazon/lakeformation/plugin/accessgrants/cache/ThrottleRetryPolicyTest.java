@@ -0,0 +1,134 @@
+package software.amazon.lakeformation.plugin.accessgrants.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.lakeformation.model.ThrottledException;
+import software.amazon.awssdk.services.s3control.model.Permission;
+import software.amazon.awssdk.utils.CompletableFutureUtils;
+
+/**
+ * Test class for ThrottleRetryPolicy.
+ */
+public class ThrottleRetryPolicyTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private ThrottleRetryPolicy policy;
+    private CacheKey scope;
+
+    @BeforeEach
+    public void setUp() {
+        policy = new ThrottleRetryPolicy(3, new RetryBudget(), now::get);
+        scope = new CacheKey(AwsBasicCredentials.create("accessKey", "secretKey"), Permission.READ, "s3://bucket/folder");
+    }
+
+    @Test
+    public void testRetriesStopAtMaxAttempts() {
+        assertTrue(policy.tryRetry(1));
+        assertTrue(policy.tryRetry(2));
+        assertFalse(policy.tryRetry(3));
+    }
+
+    @Test
+    public void testRetryBudgetIsToppedUpByFirstAttempts() {
+        int retries = 0;
+        while (policy.tryRetry(1)) {
+            retries++;
+        }
+        assertEquals(20, retries);
+
+        // Each first attempt earns a tenth of a retry.
+        for (int i = 0; i < 9; i++) {
+            policy.onFirstAttempt();
+        }
+        assertFalse(policy.tryRetry(1));
+        policy.onFirstAttempt();
+        assertTrue(policy.tryRetry(1));
+        assertFalse(policy.tryRetry(1));
+    }
+
+    @Test
+    public void testDelaysAreJitteredWithinBounds() {
+        long previous = 0;
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.nextDelayNanos(previous);
+            assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(50), "delay below base: " + delay);
+            assertTrue(delay <= Math.max(TimeUnit.MILLISECONDS.toNanos(150), previous * 3), "delay above 3x: " + delay);
+            assertTrue(delay <= TimeUnit.SECONDS.toNanos(2), "delay above cap: " + delay);
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void testThrottledScopeBacksOffUntilItsMarkerPasses() {
+        assertEquals(0, policy.remainingBackoffNanos(scope));
+
+        policy.markThrottled(scope, 100);
+        assertEquals(100, policy.remainingBackoffNanos(scope));
+
+        now.addAndGet(60);
+        assertEquals(40, policy.remainingBackoffNanos(scope));
+
+        now.addAndGet(40);
+        assertEquals(0, policy.remainingBackoffNanos(scope));
+    }
+
+    @Test
+    public void testShorterMarkerDoesNotShortenBackoff() {
+        policy.markThrottled(scope, 100);
+        policy.markThrottled(scope, 10);
+
+        assertEquals(100, policy.remainingBackoffNanos(scope));
+    }
+
+    @Test
+    public void testMarkerIsPerScope() {
+        policy.markThrottled(scope, 100);
+
+        CacheKey otherScope = scope.derive(Permission.READ, "s3://bucket/other");
+        assertEquals(0, policy.remainingBackoffNanos(otherScope));
+    }
+
+    @Test
+    public void testDelayCompletesAfterTheBackoff() throws Exception {
+        assertTrue(policy.delay(0).isDone());
+
+        CompletableFuture<Void> delayed = policy.delay(TimeUnit.MILLISECONDS.toNanos(20));
+        delayed.get(10, TimeUnit.SECONDS);
+        assertTrue(delayed.isDone());
+    }
+
+    @Test
+    public void testThrottledCallIsRetriedAndMarksItsScope() throws Exception {
+        ThrottledException throttled = ThrottledException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottledException").build())
+            .message("Rate exceeded")
+            .build();
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertEquals("response", policy.call(scope, () -> {
+            if (attempts.getAndIncrement() == 0) {
+                throw throttled;
+            }
+            return "response";
+        }));
+        assertEquals(2, attempts.get());
+        assertTrue(policy.remainingBackoffNanos(scope) > 0);
+
+        attempts.set(0);
+        assertEquals("response", policy.callAsync(scope, () -> attempts.getAndIncrement() == 0
+            ? CompletableFutureUtils.<String>failedFuture(throttled)
+            : CompletableFuture.completedFuture("response")).get(10, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+    }
+}
@@ -2,7 +2,13 @@ package software.amazon.lakeformation.plugin.accessgrants.plugin;
 
 import software.amazon.lakeformation.plugin.accessgrants.cache.AccessDeniedCache;
 import software.amazon.lakeformation.plugin.accessgrants.cache.AccessGrantsCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.CacheKey;
 import software.amazon.lakeformation.plugin.accessgrants.cache.ExceptionCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.FallbackRouteCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricsListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalQuota;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalResolver;
+import software.amazon.lakeformation.plugin.accessgrants.cache.RecordingMetricsListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,17 +23,24 @@ import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.identity.spi.IdentityProvider;
 import software.amazon.awssdk.identity.spi.ResolveIdentityRequest;
+import software.amazon.awssdk.services.lakeformation.LakeFormationAsyncClient;
 import software.amazon.awssdk.services.lakeformation.LakeFormationClient;
 import software.amazon.awssdk.services.lakeformation.model.ConflictException;
+import software.amazon.awssdk.services.lakeformation.model.EntityNotFoundException;
 import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsRequest;
 import software.amazon.awssdk.services.lakeformation.model.GetTemporaryDataLocationCredentialsResponse;
 import software.amazon.awssdk.services.lakeformation.model.LakeFormationException;
 import software.amazon.awssdk.services.lakeformation.model.TemporaryCredentials;
 import software.amazon.awssdk.services.s3control.model.Permission;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
 
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -50,6 +63,9 @@ public class LakeFormationAccessGrantsIdentityProviderTest {
     @Mock
     private LakeFormationClient mockLfClient;
 
+    @Mock
+    private LakeFormationAsyncClient mockLfAsyncClient;
+
     private AccessDeniedCache accessDeniedCache;
     private AccessGrantsCache accessGrantsCache;
     private ExceptionCache exceptionCache;
@@ -169,6 +185,50 @@ public class LakeFormationAccessGrantsIdentityProviderTest {
             .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
     }
 
+    @Test
+    public void testCachedDenialIsSurfacedAsIsWhenFallbackDisabled() {
+        LakeFormationException accessDenied = (LakeFormationException) LakeFormationException.builder()
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("AccessDenied").build())
+            .message("Access Denied")
+            .build();
+        accessDeniedCache.putValueInCache(new CacheKey(testCredentials, Permission.READ, TEST_S3_PREFIX), accessDenied);
+        LakeFormationAccessGrantsIdentityProvider providerWithoutFallback =
+            new LakeFormationAccessGrantsIdentityProvider(
+                mockOriginalProvider,
+                mockLfClient,
+                accessDeniedCache,
+                accessGrantsCache,
+                exceptionCache,
+                false, // fallback disabled
+                mockS3AccessGrantsIdentityProvider
+            );
+
+        ExecutionException ex = assertThrows(ExecutionException.class,
+            () -> providerWithoutFallback.resolveIdentity(mockResolveIdentityRequest).get());
+
+        assertTrue(ex.getCause() instanceof SdkClientException);
+        LakeFormationException cause = (LakeFormationException) ex.getCause().getCause();
+        assertEquals("AccessDenied", cause.awsErrorDetails().errorCode());
+        assertTrue(cause.getMessage().startsWith("Access Denied"));
+        verify(mockLfClient, never()).getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testAsyncCachedNonRetryableFailureFallsBackWithoutCallingLakeFormation() throws Exception {
+        exceptionCache.cacheForImmediateParent(new CacheKey(testCredentials, Permission.READ, "s3://test-bucket/other"),
+            ConflictException.builder().message("Multiple resources exist with the same Amazon S3 location").build());
+        AwsCredentialsIdentity fallbackCredentials = AwsBasicCredentials.create("fallbackKey", "fallbackSecret");
+        doReturn(CompletableFuture.completedFuture(fallbackCredentials))
+            .when(mockS3AccessGrantsIdentityProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        AwsCredentialsIdentity resolvedCredentials =
+            asyncIdentityProvider().resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertEquals("fallbackKey", resolvedCredentials.accessKeyId());
+        verify(mockLfAsyncClient, never())
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
     @Test
     public void testResolveIdentityFallsBackToS3AccessGrants() throws Exception {
         // Mock Lake Formation failure with non-access-denied error
@@ -531,4 +591,485 @@ public class LakeFormationAccessGrantsIdentityProviderTest {
         assertEquals("fallbackKey", credentialsA.accessKeyId());
         assertEquals("fallbackKey", credentialsB.accessKeyId());
     }
+
+    @Test
+    public void testFallbackRouteSkipsLakeFormationForNewSubdirectories()
+            throws ExecutionException, InterruptedException {
+        ResolveIdentityRequest requestA = mock(ResolveIdentityRequest.class);
+        when(requestA.property(PREFIX_PROPERTY)).thenReturn("s3://test-bucket/logs/fileA.json");
+        when(requestA.property(PERMISSION_PROPERTY)).thenReturn(Permission.READ.toString());
+        doReturn(CompletableFuture.completedFuture(testCredentials)).when(mockOriginalProvider)
+                .resolveIdentity(requestA);
+
+        // Object in a subdirectory the sibling-level negative cache does not cover.
+        ResolveIdentityRequest requestB = mock(ResolveIdentityRequest.class);
+        when(requestB.property(PREFIX_PROPERTY)).thenReturn("s3://test-bucket/logs/2024/fileB.json");
+        when(requestB.property(PERMISSION_PROPERTY)).thenReturn(Permission.WRITE.toString());
+        doReturn(CompletableFuture.completedFuture(testCredentials)).when(mockOriginalProvider)
+                .resolveIdentity(requestB);
+
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenThrow(EntityNotFoundException.builder()
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("EntityNotFoundException").build())
+                .message("Location is not registered")
+                .build());
+        AwsCredentialsIdentity fallbackCredentials = AwsBasicCredentials.create("fallbackKey", "fallbackSecret");
+        doReturn(CompletableFuture.completedFuture(fallbackCredentials)).when(mockS3AccessGrantsIdentityProvider)
+                .resolveIdentity(any(ResolveIdentityRequest.class));
+
+        AwsCredentialsIdentity credentialsA = identityProvider.resolveIdentity(requestA).get();
+        AwsCredentialsIdentity credentialsB = identityProvider.resolveIdentity(requestB).get();
+
+        verify(mockLfClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+        assertEquals("fallbackKey", credentialsA.accessKeyId());
+        assertEquals("fallbackKey", credentialsB.accessKeyId());
+    }
+
+    @Test
+    public void testFallbackRouteIsNotUsedWhenFallbackDisabled() {
+        FallbackRouteCache fallbackRouteCache = new FallbackRouteCache();
+        fallbackRouteCache.routeToFallback(
+            new CacheKey(testCredentials, Permission.READ, TEST_S3_PREFIX),
+            EntityNotFoundException.builder().message("Location is not registered").build());
+        LakeFormationAccessGrantsIdentityProvider providerWithoutFallback = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfClient,
+            null,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            fallbackRouteCache,
+            false, // enableFallback
+            mockS3AccessGrantsIdentityProvider,
+            null,
+            MetricsListener.NONE,
+            PrincipalResolver.ACCESS_KEY,
+            LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS
+        );
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+
+        providerWithoutFallback.resolveIdentity(mockResolveIdentityRequest).join();
+
+        verify(mockLfClient).getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+        verify(mockS3AccessGrantsIdentityProvider, never()).resolveIdentity(any(ResolveIdentityRequest.class));
+    }
+
+    private LakeFormationAccessGrantsIdentityProvider asyncIdentityProvider() {
+        return new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfAsyncClient,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            true, // enableFallback
+            mockS3AccessGrantsIdentityProvider
+        );
+    }
+
+    @Test
+    public void testAsyncResolveIdentityDoesNotBlockOnCallerIdentity() throws Exception {
+        CompletableFuture<AwsCredentialsIdentity> callerIdentity = new CompletableFuture<>();
+        doReturn(callerIdentity).when(mockOriginalProvider).resolveIdentity(mockResolveIdentityRequest);
+        CompletableFuture<GetTemporaryDataLocationCredentialsResponse> lfCall = new CompletableFuture<>();
+        when(mockLfAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(lfCall);
+
+        CompletableFuture<? extends AwsCredentialsIdentity> result =
+            asyncIdentityProvider().resolveIdentity(mockResolveIdentityRequest);
+
+        // Neither the caller identity nor Lake Formation has answered, yet the call has returned.
+        assertFalse(result.isDone());
+        callerIdentity.complete(testCredentials);
+        assertFalse(result.isDone());
+
+        lfCall.complete(GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId(TEST_ACCESS_KEY)
+                .secretAccessKey(TEST_SECRET_KEY)
+                .sessionToken(TEST_SESSION_TOKEN)
+                .build())
+            .accessibleDataLocations(Collections.singletonList(TEST_S3_PREFIX))
+            .build());
+
+        AwsCredentialsIdentity resolvedCredentials = result.get();
+        assertEquals(TEST_ACCESS_KEY, resolvedCredentials.accessKeyId());
+        assertTrue(resolvedCredentials instanceof AwsSessionCredentials);
+        assertEquals(TEST_SESSION_TOKEN, ((AwsSessionCredentials) resolvedCredentials).sessionToken());
+        verify(mockLfClient, never()).getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testAsyncResolveIdentityFallsBackToS3AccessGrants() throws Exception {
+        CompletableFuture<GetTemporaryDataLocationCredentialsResponse> failedCall = new CompletableFuture<>();
+        failedCall.completeExceptionally(new RuntimeException("Lake Formation service error"));
+        when(mockLfAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(failedCall);
+        AwsCredentialsIdentity fallbackCredentials = AwsBasicCredentials.create("fallbackKey", "fallbackSecret");
+        doReturn(CompletableFuture.completedFuture(fallbackCredentials))
+            .when(mockS3AccessGrantsIdentityProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        AwsCredentialsIdentity resolvedCredentials =
+            asyncIdentityProvider().resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertEquals("fallbackKey", resolvedCredentials.accessKeyId());
+        verify(mockS3AccessGrantsIdentityProvider).resolveIdentity(mockResolveIdentityRequest);
+    }
+
+    @Test
+    public void testAsyncResolveIdentityFailsWhenFallbackDisabled() {
+        CompletableFuture<GetTemporaryDataLocationCredentialsResponse> failedCall = new CompletableFuture<>();
+        failedCall.completeExceptionally(new RuntimeException("Lake Formation service error"));
+        when(mockLfAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(failedCall);
+        LakeFormationAccessGrantsIdentityProvider providerWithoutFallback = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfAsyncClient,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            false, // enableFallback
+            mockS3AccessGrantsIdentityProvider
+        );
+
+        CompletableFuture<? extends AwsCredentialsIdentity> result =
+            providerWithoutFallback.resolveIdentity(mockResolveIdentityRequest);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+        assertTrue(thrown.getCause() instanceof SdkClientException);
+        verify(mockS3AccessGrantsIdentityProvider, never()).resolveIdentity(any(ResolveIdentityRequest.class));
+    }
+
+    @Test
+    public void testCloseReleasesPluginManagedResources() {
+        SdkAutoCloseable resources = mock(SdkAutoCloseable.class);
+        LakeFormationAccessGrantsIdentityProvider managedProvider = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfClient,
+            null,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            new FallbackRouteCache(),
+            true, // enableFallback
+            mockS3AccessGrantsIdentityProvider,
+            resources,
+            MetricsListener.NONE,
+            PrincipalResolver.ACCOUNT_AND_PROVIDER,
+            LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS
+        );
+
+        managedProvider.close();
+
+        verify(resources).close();
+    }
+
+    @Test
+    public void testFallbacksAndResolutionsAreReportedToMetricsListener() throws Exception {
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        LakeFormationAccessGrantsIdentityProvider provider = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfClient,
+            null,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            new FallbackRouteCache(),
+            true, // enableFallback
+            mockS3AccessGrantsIdentityProvider,
+            null,
+            metrics,
+            PrincipalResolver.ACCOUNT_AND_PROVIDER,
+            LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS
+        );
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenThrow(EntityNotFoundException.builder()
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("EntityNotFoundException").build())
+                .message("Location is not registered")
+                .build());
+        doReturn(CompletableFuture.completedFuture(AwsBasicCredentials.create("fallbackKey", "fallbackSecret")))
+            .when(mockS3AccessGrantsIdentityProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        provider.resolveIdentity(mockResolveIdentityRequest).get();
+        provider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertEquals(Arrays.asList("fallback FAILURE", "resolveIdentity", "fallback ROUTE", "resolveIdentity"),
+            metrics.events());
+        assertTrue(metrics.latencies().stream().allMatch(latency -> latency >= 0));
+    }
+
+    @Test
+    public void testCacheMissIsReportedOnce() throws Exception {
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        AccessGrantsCache cache = AccessGrantsCache.builder()
+            .metricsListener(metrics)
+            .principalQuota(new PrincipalQuota(80, 20))
+            .staleWhileRevalidate(true)
+            .build();
+        LakeFormationAccessGrantsIdentityProvider provider = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider, mockLfClient, accessDeniedCache, cache, exceptionCache, true,
+            mockS3AccessGrantsIdentityProvider);
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+
+        provider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertEquals(1, metrics.events().stream().filter("miss ACCESS_GRANTS"::equals).count());
+        assertEquals(1, metrics.events().stream()
+            .filter(event -> event.startsWith("partitionLookup") && event.endsWith("MISS")).count());
+    }
+
+    @Test
+    public void testAsyncCacheMissIsReportedOnce() throws Exception {
+        RecordingMetricsListener metrics = new RecordingMetricsListener();
+        AccessGrantsCache cache = AccessGrantsCache.builder()
+            .metricsListener(metrics)
+            .principalQuota(new PrincipalQuota(80, 20))
+            .staleWhileRevalidate(true)
+            .build();
+        LakeFormationAccessGrantsIdentityProvider provider = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider, mockLfAsyncClient, accessDeniedCache, cache, exceptionCache, true,
+            mockS3AccessGrantsIdentityProvider);
+        when(mockLfAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(successfulResponse()));
+
+        provider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertEquals(1, metrics.events().stream().filter("miss ACCESS_GRANTS"::equals).count());
+        assertEquals(1, metrics.events().stream()
+            .filter(event -> event.startsWith("partitionLookup") && event.endsWith("MISS")).count());
+    }
+
+    @Test
+    public void testCloseLeavesCallerSuppliedClientOpen() {
+        identityProvider.close();
+
+        verify(mockLfClient, never()).close();
+    }
+
+    private static GetTemporaryDataLocationCredentialsResponse successfulResponse() {
+        return GetTemporaryDataLocationCredentialsResponse.builder()
+            .credentials(TemporaryCredentials.builder()
+                .accessKeyId(TEST_ACCESS_KEY)
+                .secretAccessKey(TEST_SECRET_KEY)
+                .sessionToken(TEST_SESSION_TOKEN)
+                .build())
+            .accessibleDataLocations(Collections.singletonList(TEST_S3_PREFIX))
+            .build();
+    }
+
+    @Test
+    public void testCachedGrantsSurviveCallerCredentialRotation() throws Exception {
+        // Rotation only keeps the grants when principals are resolved by account and provider, which is opt-in.
+        LakeFormationAccessGrantsIdentityProvider identityProvider = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfClient,
+            null,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            new FallbackRouteCache(),
+            true, // enableFallback
+            mockS3AccessGrantsIdentityProvider,
+            null,
+            MetricsListener.NONE,
+            PrincipalResolver.ACCOUNT_AND_PROVIDER,
+            LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS
+        );
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+        doReturn(CompletableFuture.completedFuture(roleSessionCredentials("firstAccessKey")),
+            CompletableFuture.completedFuture(roleSessionCredentials("rotatedAccessKey")))
+            .when(mockOriginalProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        AwsCredentialsIdentity first = identityProvider.resolveIdentity(mockResolveIdentityRequest).get();
+        AwsCredentialsIdentity afterRotation = identityProvider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertSame(first, afterRotation);
+        verify(mockLfClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    private static AwsSessionCredentials roleSessionCredentials(String accessKeyId) {
+        return AwsSessionCredentials.builder()
+            .accessKeyId(accessKeyId)
+            .secretAccessKey(accessKeyId + "Secret")
+            .sessionToken("roleSessionToken")
+            .accountId("111122223333")
+            .providerName("StsAssumeRoleCredentialsProvider")
+            // Close enough to expiring that the caller identity is resolved again for every request.
+            .expirationTime(Instant.now().plusSeconds(30))
+            .build();
+    }
+
+    @Test
+    public void testCallerIdentityIsMemoizedAcrossRequests() throws Exception {
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+
+        identityProvider.resolveIdentity(mockResolveIdentityRequest).get();
+        identityProvider.resolveIdentity(mockResolveIdentityRequest).get();
+        identityProvider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        verify(mockOriginalProvider, times(1)).resolveIdentity(mockResolveIdentityRequest);
+    }
+
+    @Test
+    public void testCallerIdentityNearExpiryIsRefreshedInTheBackground() throws Exception {
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+        AwsSessionCredentials expiringSoon = AwsSessionCredentials.builder()
+            .accessKeyId("accessKey")
+            .secretAccessKey("secretKey")
+            .sessionToken("sessionToken")
+            .expirationTime(Instant.now().plusSeconds(180))
+            .build();
+        doReturn(CompletableFuture.completedFuture(expiringSoon))
+            .when(mockOriginalProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        identityProvider.resolveIdentity(mockResolveIdentityRequest).get();
+        // Still served, but within the refresh-ahead window, so a refresh starts on the refresher thread.
+        AwsCredentialsIdentity resolved = identityProvider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertEquals(TEST_ACCESS_KEY, resolved.accessKeyId());
+        verify(mockOriginalProvider, timeout(5000).times(2)).resolveIdentity(mockResolveIdentityRequest);
+        verify(mockLfClient, times(1))
+            .getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testWaitForCallerIdentityIsBoundedByTimeout() throws Exception {
+        LakeFormationAccessGrantsIdentityProvider provider = new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfClient,
+            null,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            new FallbackRouteCache(),
+            true, // enableFallback
+            mockS3AccessGrantsIdentityProvider,
+            null,
+            MetricsListener.NONE,
+            PrincipalResolver.ACCOUNT_AND_PROVIDER,
+            50
+        );
+        CompletableFuture<AwsCredentialsIdentity> callerIdentity = new CompletableFuture<>();
+        doReturn(callerIdentity).when(mockOriginalProvider).resolveIdentity(mockResolveIdentityRequest);
+        doReturn(CompletableFuture.completedFuture(AwsBasicCredentials.create("fallbackKey", "fallbackSecret")))
+            .when(mockS3AccessGrantsIdentityProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        AwsCredentialsIdentity resolved = provider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        assertEquals("fallbackKey", resolved.accessKeyId());
+        verify(mockLfClient, never()).getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testInterruptedWaitForCallerIdentityFallsBackAndKeepsTheInterrupt() throws Exception {
+        LakeFormationAccessGrantsIdentityProvider provider = tickingIdentityProvider(new AtomicLong(),
+            LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS);
+        doReturn(new CompletableFuture<AwsCredentialsIdentity>())
+            .when(mockOriginalProvider).resolveIdentity(mockResolveIdentityRequest);
+        doReturn(CompletableFuture.completedFuture(AwsBasicCredentials.create("fallbackKey", "fallbackSecret")))
+            .when(mockS3AccessGrantsIdentityProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        Thread.currentThread().interrupt();
+        CompletableFuture<? extends AwsCredentialsIdentity> resolved =
+            provider.resolveIdentity(mockResolveIdentityRequest);
+
+        assertTrue(Thread.interrupted());
+        assertEquals("fallbackKey", resolved.get().accessKeyId());
+        verify(mockLfClient, never()).getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testLateCallerIdentityDoesNotReplaceANewerOne() throws Exception {
+        LakeFormationAccessGrantsIdentityProvider provider = tickingIdentityProvider(new AtomicLong(), 50);
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+        doReturn(CompletableFuture.completedFuture(AwsBasicCredentials.create("fallbackKey", "fallbackSecret")))
+            .when(mockS3AccessGrantsIdentityProvider).resolveIdentity(mockResolveIdentityRequest);
+        CompletableFuture<AwsCredentialsIdentity> lateIdentity = new CompletableFuture<>();
+        doReturn(lateIdentity, CompletableFuture.completedFuture(testCredentials))
+            .when(mockOriginalProvider).resolveIdentity(mockResolveIdentityRequest);
+
+        // The first resolution times out, and the second memoizes the caller identity.
+        assertEquals("fallbackKey", provider.resolveIdentity(mockResolveIdentityRequest).get().accessKeyId());
+        assertEquals(TEST_ACCESS_KEY, provider.resolveIdentity(mockResolveIdentityRequest).get().accessKeyId());
+        lateIdentity.complete(AwsBasicCredentials.create("lateKey", "lateSecret"));
+        provider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        // The grant cached for the newer identity is still found, so Lake Formation is not called for the late one.
+        verify(mockOriginalProvider, times(2)).resolveIdentity(mockResolveIdentityRequest);
+        verify(mockLfClient, times(1)).getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testStaleCallerIdentityIsResolvedAgainByTheTicker() throws Exception {
+        AtomicLong now = new AtomicLong();
+        LakeFormationAccessGrantsIdentityProvider provider = tickingIdentityProvider(now,
+            LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS);
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+
+        provider.resolveIdentity(mockResolveIdentityRequest).get();
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        provider.resolveIdentity(mockResolveIdentityRequest).get();
+
+        verify(mockOriginalProvider, times(2)).resolveIdentity(mockResolveIdentityRequest);
+    }
+
+    private LakeFormationAccessGrantsIdentityProvider tickingIdentityProvider(
+            final AtomicLong now,
+            final long callerIdentityTimeoutMillis) {
+        return new LakeFormationAccessGrantsIdentityProvider(
+            mockOriginalProvider,
+            mockLfClient,
+            null,
+            accessDeniedCache,
+            accessGrantsCache,
+            exceptionCache,
+            new FallbackRouteCache(),
+            true, // enableFallback
+            mockS3AccessGrantsIdentityProvider,
+            null,
+            MetricsListener.NONE,
+            PrincipalResolver.ACCOUNT_AND_PROVIDER,
+            callerIdentityTimeoutMillis,
+            now::get
+        );
+    }
+
+    @Test
+    public void testCacheHitReturnsSharedCompletedFuture() {
+        when(mockLfClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(successfulResponse());
+
+        CompletableFuture<? extends AwsCredentialsIdentity> miss =
+            identityProvider.resolveIdentity(mockResolveIdentityRequest);
+        CompletableFuture<? extends AwsCredentialsIdentity> firstHit =
+            identityProvider.resolveIdentity(mockResolveIdentityRequest);
+        CompletableFuture<? extends AwsCredentialsIdentity> secondHit =
+            identityProvider.resolveIdentity(mockResolveIdentityRequest);
+
+        assertSame(miss.join(), firstHit.join());
+        assertSame(firstHit, secondHit);
+        verify(mockLfClient, times(1)).getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class));
+    }
+
+    @Test
+    public void testAsyncCacheHitReturnsSharedCompletedFuture() {
+        when(mockLfAsyncClient.getTemporaryDataLocationCredentials(any(GetTemporaryDataLocationCredentialsRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(successfulResponse()));
+        LakeFormationAccessGrantsIdentityProvider provider = asyncIdentityProvider();
+
+        provider.resolveIdentity(mockResolveIdentityRequest).join();
+        CompletableFuture<? extends AwsCredentialsIdentity> firstHit = provider.resolveIdentity(mockResolveIdentityRequest);
+        CompletableFuture<? extends AwsCredentialsIdentity> secondHit = provider.resolveIdentity(mockResolveIdentityRequest);
+
+        assertSame(firstHit, secondHit);
+        assertEquals(TEST_SESSION_TOKEN, ((AwsSessionCredentials) firstHit.join()).sessionToken());
+    }
 }
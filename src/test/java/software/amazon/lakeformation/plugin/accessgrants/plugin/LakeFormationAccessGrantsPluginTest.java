@@ -7,13 +7,22 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.SdkServiceClientConfiguration;
 import software.amazon.awssdk.identity.spi.AwsCredentialsIdentity;
 import software.amazon.awssdk.identity.spi.IdentityProvider;
+import software.amazon.awssdk.metrics.MetricPublisher;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.s3accessgrants.plugin.S3AccessGrantsPlugin;
+import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
 import software.amazon.awssdk.services.s3.auth.scheme.S3AuthSchemeProvider;
+import software.amazon.lakeformation.plugin.accessgrants.cache.AccessGrantsCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MemoryBudget;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricsListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalQuota;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalResolver;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -209,4 +218,241 @@ public class LakeFormationAccessGrantsPluginTest {
         assertEquals(originalPlugin.enabled(), copiedPlugin.enabled());
         assertEquals(originalPlugin.enableFallback(), copiedPlugin.enableFallback());
     }
+
+    @Test
+    public void testPluginBuilderAsyncResolutionDisabledByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertFalse(defaultPlugin.enableAsyncResolution());
+    }
+
+    @Test
+    public void testToBuilderPreservesAsyncResolutionSetting() {
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .enableAsyncResolution(true)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertTrue(copiedPlugin.enableAsyncResolution());
+    }
+
+    @Test
+    public void testConfigureClientWithAsyncResolution() {
+        LakeFormationAccessGrantsPlugin asyncPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .enabled(true)
+            .enableAsyncResolution(true)
+            .build();
+
+        assertDoesNotThrow(() -> {
+            asyncPlugin.configureClient(mockServiceClientConfiguration);
+        });
+
+        verify(mockServiceClientConfiguration).credentialsProvider(any(LakeFormationAccessGrantsIdentityProvider.class));
+    }
+
+    @Test
+    public void testPluginBuilderCredentialsLifetimeDefaults() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertEquals(AccessGrantsCache.GET_DATA_ACCESS_DURATION, defaultPlugin.credentialsDurationSeconds());
+        assertEquals(AccessGrantsCache.DEFAULT_EXPIRATION_SAFETY_MARGIN, defaultPlugin.expirationSafetyMarginSeconds());
+    }
+
+    @Test
+    public void testToBuilderPreservesCredentialsLifetimeSettings() {
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .credentialsDurationSeconds(43200)
+            .expirationSafetyMarginSeconds(900)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertEquals(43200, copiedPlugin.credentialsDurationSeconds());
+        assertEquals(900, copiedPlugin.expirationSafetyMarginSeconds());
+    }
+
+    @Test
+    public void testPluginBuilderShareResourcesDisabledByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertFalse(defaultPlugin.shareResources());
+    }
+
+    @Test
+    public void testToBuilderPreservesShareResourcesSetting() {
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .shareResources(true)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertTrue(copiedPlugin.shareResources());
+    }
+
+    @Test
+    public void testPluginBuilderStaleWhileRevalidateDisabledByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertFalse(defaultPlugin.staleWhileRevalidate());
+    }
+
+    @Test
+    public void testToBuilderPreservesStaleWhileRevalidateSetting() {
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .staleWhileRevalidate(true)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertTrue(copiedPlugin.staleWhileRevalidate());
+    }
+
+    @Test
+    public void testPluginBuilderScheduledExpiryDisabledByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertFalse(defaultPlugin.scheduledExpiry());
+    }
+
+    @Test
+    public void testToBuilderPreservesScheduledExpirySetting() {
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .scheduledExpiry(true)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertTrue(copiedPlugin.scheduledExpiry());
+    }
+
+    @Test
+    public void testPluginBuilderHasNoMemoryBudgetByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertSame(MemoryBudget.UNLIMITED, defaultPlugin.memoryBudget());
+    }
+
+    @Test
+    public void testToBuilderPreservesMemoryBudget() {
+        MemoryBudget budget = new MemoryBudget(64L * 1024 * 1024);
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .memoryBudget(budget)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertSame(budget, copiedPlugin.memoryBudget());
+    }
+
+    @Test
+    public void testPluginBuilderDoesNotPartitionByPrincipalByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertSame(PrincipalQuota.NONE, defaultPlugin.principalQuota());
+    }
+
+    @Test
+    public void testToBuilderPreservesPrincipalQuota() {
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .principalQuota(new PrincipalQuota(50, 5))
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertEquals(new PrincipalQuota(50, 5), copiedPlugin.principalQuota());
+    }
+
+    @Test
+    public void testPluginBuilderResolvesPrincipalsByAccessKeyByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .principalResolver(null)
+            .build();
+
+        assertSame(PrincipalResolver.ACCESS_KEY, defaultPlugin.principalResolver());
+    }
+
+    @Test
+    public void testToBuilderPreservesPrincipalResolver() {
+        PrincipalResolver resolver = credentials -> "analytics";
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .principalResolver(resolver)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertSame(resolver, copiedPlugin.principalResolver());
+    }
+
+    @Test
+    public void testPluginBuilderHasDefaultCallerIdentityTimeout() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertEquals(LakeFormationAccessGrantsIdentityProvider.DEFAULT_CALLER_IDENTITY_TIMEOUT_MILLIS,
+            defaultPlugin.callerIdentityTimeoutMillis());
+    }
+
+    @Test
+    public void testToBuilderPreservesCallerIdentityTimeout() {
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .callerIdentityTimeoutMillis(2500)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertEquals(2500, copiedPlugin.callerIdentityTimeoutMillis());
+    }
+
+    @Test
+    public void testPluginBuilderRecordsNoMetricsByDefault() {
+        LakeFormationAccessGrantsPlugin defaultPlugin = LakeFormationAccessGrantsPlugin.builder().build();
+
+        assertSame(MetricsListener.NONE, defaultPlugin.metricsListener());
+    }
+
+    @Test
+    public void testToBuilderPreservesMetricsListener() {
+        MetricsListener listener = new MetricsListener() {
+        };
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .metricsListener(listener)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertSame(listener, copiedPlugin.metricsListener());
+    }
+
+    @Test
+    public void testToBuilderPreservesMetricPublisher() {
+        MetricPublisher publisher = mock(MetricPublisher.class);
+        LakeFormationAccessGrantsPlugin originalPlugin = LakeFormationAccessGrantsPlugin.builder()
+            .metricPublisher(publisher)
+            .build();
+
+        LakeFormationAccessGrantsPlugin copiedPlugin = originalPlugin.toBuilder().build();
+
+        assertSame(publisher, copiedPlugin.metricPublisher());
+        assertSame(MetricsListener.NONE, copiedPlugin.metricsListener());
+    }
+
+    @Test
+    public void testClosingS3ClientReleasesSharedResources() {
+        try (LakeFormationResources.Lease lease =
+                 LakeFormationResources.acquireShared(LakeFormationResourcesTest.key("ap-southeast-2", false, null))) {
+            S3Client s3Client = S3Client.builder()
+                .region(Region.AP_SOUTHEAST_2)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("akid", "secret")))
+                .addPlugin(LakeFormationAccessGrantsPlugin.builder()
+                    .enabled(true)
+                    .shareResources(true)
+                    .build())
+                .build();
+            assertEquals(2, lease.resources().references());
+
+            s3Client.close();
+
+            assertEquals(1, lease.resources().references());
+        }
+    }
 }
@@ -0,0 +1,125 @@
+package software.amazon.lakeformation.plugin.accessgrants.plugin;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.lakeformation.plugin.accessgrants.cache.AccessGrantsCache;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MemoryBudget;
+import software.amazon.lakeformation.plugin.accessgrants.cache.MetricsListener;
+import software.amazon.lakeformation.plugin.accessgrants.cache.PrincipalQuota;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test class for LakeFormationResources.
+ */
+public class LakeFormationResourcesTest {
+
+    private LakeFormationResources.Key key(final String region, final boolean asyncResolution) {
+        return key(region, asyncResolution, null);
+    }
+
+    static LakeFormationResources.Key key(
+            final String region,
+            final boolean asyncResolution,
+            final MetricPublisher metricPublisher) {
+        return new LakeFormationResources.Key(region, asyncResolution,
+            AccessGrantsCache.GET_DATA_ACCESS_DURATION, AccessGrantsCache.DEFAULT_EXPIRATION_SAFETY_MARGIN,
+            AccessGrantsCache.DEFAULT_BATCH_WINDOW_MILLIS, AccessGrantsCache.DEFAULT_MAX_BATCH_SIZE,
+            AccessGrantsCache.DEFAULT_STALE_WHILE_REVALIDATE, false, MemoryBudget.UNLIMITED,
+            PrincipalQuota.NONE, MetricsListener.NONE, metricPublisher);
+    }
+
+    @Test
+    public void testSameKeySharesResources() {
+        try (LakeFormationResources.Lease first = LakeFormationResources.acquireShared(key("us-east-1", false));
+             LakeFormationResources.Lease second = LakeFormationResources.acquireShared(key("us-east-1", false))) {
+            assertSame(first.resources(), second.resources());
+            assertNotNull(first.resources().lfClient());
+            assertNull(first.resources().lfAsyncClient());
+        }
+    }
+
+    @Test
+    public void testDifferentKeysDoNotShareResources() {
+        try (LakeFormationResources.Lease east = LakeFormationResources.acquireShared(key("us-east-1", false));
+             LakeFormationResources.Lease west = LakeFormationResources.acquireShared(key("us-west-2", false));
+             LakeFormationResources.Lease async = LakeFormationResources.acquireShared(key("us-east-1", true))) {
+            assertNotSame(east.resources(), west.resources());
+            assertNotSame(east.resources(), async.resources());
+            assertNotNull(async.resources().lfAsyncClient());
+            assertNull(async.resources().lfClient());
+        }
+    }
+
+    @Test
+    public void testRetryBudgetIsSharedPerRegion() {
+        assertSame(LakeFormationResources.retryBudget("us-east-1"), LakeFormationResources.retryBudget("us-east-1"));
+        assertNotSame(LakeFormationResources.retryBudget("us-east-1"), LakeFormationResources.retryBudget("us-west-2"));
+    }
+
+    @Test
+    public void testResourcesReleasedWhenLastLeaseClosed() {
+        LakeFormationResources.Lease first = LakeFormationResources.acquireShared(key("eu-west-1", false));
+        LakeFormationResources.Lease second = LakeFormationResources.acquireShared(key("eu-west-1", false));
+        LakeFormationResources released = first.resources();
+
+        first.close();
+        try (LakeFormationResources.Lease third = LakeFormationResources.acquireShared(key("eu-west-1", false))) {
+            assertSame(released, third.resources());
+        }
+        second.close();
+
+        try (LakeFormationResources.Lease fresh = LakeFormationResources.acquireShared(key("eu-west-1", false))) {
+            assertNotSame(released, fresh.resources());
+        }
+    }
+
+    @Test
+    public void testClosingLeaseTwiceReleasesOnlyOnce() {
+        LakeFormationResources.Lease first = LakeFormationResources.acquireShared(key("eu-central-1", false));
+        LakeFormationResources.Lease second = LakeFormationResources.acquireShared(key("eu-central-1", false));
+
+        first.close();
+        first.close();
+
+        try (LakeFormationResources.Lease third = LakeFormationResources.acquireShared(key("eu-central-1", false))) {
+            assertSame(second.resources(), third.resources());
+        }
+        second.close();
+    }
+
+    @Test
+    public void testUnsharedResourcesAreNeverReused() {
+        try (LakeFormationResources.Lease first = LakeFormationResources.create(key("us-east-1", false));
+             LakeFormationResources.Lease second = LakeFormationResources.create(key("us-east-1", false))) {
+            assertNotSame(first.resources(), second.resources());
+            assertNotSame(first.resources().accessGrantsCache(), second.resources().accessGrantsCache());
+        }
+    }
+
+    @Test
+    public void testSameMetricPublisherSharesResourcesThatPublishOnceReleased() {
+        MetricPublisher publisher = mock(MetricPublisher.class);
+        LakeFormationResources.Lease first = LakeFormationResources.acquireShared(key("ca-central-1", false, publisher));
+        try (LakeFormationResources.Lease second = LakeFormationResources.acquireShared(key("ca-central-1", false, publisher));
+             LakeFormationResources.Lease other = LakeFormationResources.acquireShared(
+                 key("ca-central-1", false, mock(MetricPublisher.class)))) {
+            assertSame(first.resources(), second.resources());
+            assertNotSame(first.resources(), other.resources());
+
+            first.resources().metricsListener().onFallback(MetricsListener.FallbackReason.ROUTE);
+            first.close();
+
+            verify(publisher, never()).publish(any());
+        } finally {
+            first.close();
+        }
+
+        verify(publisher, times(1)).publish(any());
+    }
+}